@@ -20,6 +20,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.Header;
@@ -42,6 +45,13 @@ import org.geotools.util.logging.Logging;
  * An Apache commons HTTP client based {@link HTTPClient} backed by a multithreaded connection
  * manager that allows to reuse connections to the backing server and to limit the
  * {@link #setMaxConnections(int) max number of concurrent connections}.
+ * <p>
+ * The clients share a single connection manager, limited as configured in the default
+ * {@link HTTPConnectionPool}, which also collects the request statistics. A client setting its
+ * own {@link #setMaxConnections(int) limit} or {@link #setConnectTimeout(int) connect timeout}
+ * switches to a connection manager of its own, since those settings would otherwise affect all
+ * the others.
+ * </p>
  * 
  * <p>
  * Java System properties {@code http.proxyHost}, {@code http.proxyPort}, {@code http.proxyUser},
@@ -54,9 +64,20 @@ import org.geotools.util.logging.Logging;
 public class MultithreadedHttpClient implements HTTPClient {
 
     private static final Logger LOGGER = Logging.getLogger(MultithreadedHttpClient.class);
-    
+
+    private static final int DEFAULT_TIMEOUT = 30000;
+
+    /**
+     * The connection manager shared by the clients, so that they reuse each other's connections
+     */
+    private static MultiThreadedHttpConnectionManager sharedConnectionManager;
+
     private MultiThreadedHttpConnectionManager connectionManager;
 
+    private boolean sharedConnections = true;
+
+    private int readTimeout = DEFAULT_TIMEOUT;
+
     private HttpClient client;
 
     private String user;
@@ -65,22 +86,58 @@ public class MultithreadedHttpClient implements HTTPClient {
     
     private boolean tryGzip = true;
 
-    public MultithreadedHttpClient() {
-        connectionManager = new MultiThreadedHttpConnectionManager();
+    private HTTPConnectionPool connectionPool = HTTPConnectionPool.getDefault();
 
-        HttpConnectionManagerParams params = new HttpConnectionManagerParams();
-        params.setSoTimeout(30000);
-        params.setConnectionTimeout(30000);
-        params.setMaxTotalConnections(6);
-        params.setDefaultMaxConnectionsPerHost(6);
-        
-        connectionManager.setParams(params);
+    public MultithreadedHttpClient() {
+        connectionManager = getSharedConnectionManager(connectionPool);
 
         client = new HttpClient(connectionManager);
         
         applySystemProxySettings();
     }
 
+    /**
+     * Returns the connection manager shared by the clients, updated with the current limits of
+     * the pool
+     */
+    private static synchronized MultiThreadedHttpConnectionManager getSharedConnectionManager(
+            HTTPConnectionPool pool) {
+        if (sharedConnectionManager == null) {
+            HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+            params.setSoTimeout(DEFAULT_TIMEOUT);
+            params.setConnectionTimeout(DEFAULT_TIMEOUT);
+            sharedConnectionManager = new MultiThreadedHttpConnectionManager();
+            sharedConnectionManager.setParams(params);
+        }
+        final int maxConnections = pool.getMaxConnections();
+        final int maxPerHost = pool.getMaxConnectionsPerHost();
+        HttpConnectionManagerParams params = sharedConnectionManager.getParams();
+        params.setMaxTotalConnections(maxConnections);
+        params.setDefaultMaxConnectionsPerHost(maxPerHost > 0 ? Math.min(maxPerHost,
+                maxConnections) : maxConnections);
+        return sharedConnectionManager;
+    }
+
+    /**
+     * Switches to a connection manager of its own, starting from the shared settings, so that
+     * changing them does not affect the other clients
+     */
+    private synchronized MultiThreadedHttpConnectionManager getOwnConnectionManager() {
+        if (sharedConnections) {
+            HttpConnectionManagerParams shared = connectionManager.getParams();
+            HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+            params.setSoTimeout(shared.getSoTimeout());
+            params.setConnectionTimeout(shared.getConnectionTimeout());
+            params.setMaxTotalConnections(shared.getMaxTotalConnections());
+            params.setDefaultMaxConnectionsPerHost(shared.getDefaultMaxConnectionsPerHost());
+            connectionManager = new MultiThreadedHttpConnectionManager();
+            connectionManager.setParams(params);
+            client.setHttpConnectionManager(connectionManager);
+            sharedConnections = false;
+        }
+        return connectionManager;
+    }
+
     private void applySystemProxySettings() {
         final String proxyHost = System.getProperty("http.proxyHost");
         final int proxyPort = Integer.parseInt(System.getProperty("http.proxyPort", "80"));
@@ -121,7 +178,7 @@ public class MultithreadedHttpClient implements HTTPClient {
         PostMethod postMethod = new PostMethod(url.toExternalForm());
         postMethod.setDoAuthentication(user != null && password != null);
         if (tryGzip) {
-            postMethod.setRequestHeader("Accept-Encoding", "gzip");
+            postMethod.setRequestHeader("Accept-Encoding", "gzip, deflate");
         }
         if (postContentType != null) {
             postMethod.setRequestHeader("Content-type", postContentType);
@@ -129,7 +186,7 @@ public class MultithreadedHttpClient implements HTTPClient {
         RequestEntity requestEntity = new InputStreamRequestEntity(postContent);
         postMethod.setRequestEntity(requestEntity);
 
-        int responseCode = client.executeMethod(postMethod);
+        int responseCode = execute(postMethod);
         if (200 != responseCode) {
             postMethod.releaseConnection();
             throw new IOException("Server returned HTTP error code " + responseCode + " for URL "
@@ -145,9 +202,9 @@ public class MultithreadedHttpClient implements HTTPClient {
         GetMethod getMethod = new GetMethod(url.toExternalForm());
         getMethod.setDoAuthentication(user != null && password != null);
         if (tryGzip) {
-            getMethod.setRequestHeader("Accept-Encoding", "gzip");
+            getMethod.setRequestHeader("Accept-Encoding", "gzip, deflate");
         }
-        int responseCode = client.executeMethod(getMethod);
+        int responseCode = execute(getMethod);
         if (200 != responseCode) {
             getMethod.releaseConnection();
             throw new IOException("Server returned HTTP error code " + responseCode + " for URL "
@@ -156,6 +213,23 @@ public class MultithreadedHttpClient implements HTTPClient {
         return new HttpMethodResponse(getMethod);
     }
 
+    /**
+     * Executes the method, recording the time spent waiting for the response in the connection
+     * pool statistics
+     */
+    private int execute(HttpMethod method) throws IOException {
+        // the read timeout goes with the method, the connections being shared
+        method.getParams().setSoTimeout(readTimeout);
+        final long start = connectionPool.requestStarted();
+        int responseCode = -1;
+        try {
+            responseCode = client.executeMethod(method);
+            return responseCode;
+        } finally {
+            connectionPool.requestCompleted(start, responseCode == 200);
+        }
+    }
+
     @Override
     public String getUser() {
         return user;
@@ -198,17 +272,19 @@ public class MultithreadedHttpClient implements HTTPClient {
 
     @Override
     public void setConnectTimeout(int connectTimeout) {
-        connectionManager.getParams().setConnectionTimeout(connectTimeout * 1000);
+        if (connectTimeout != getConnectTimeout()) {
+            getOwnConnectionManager().getParams().setConnectionTimeout(connectTimeout * 1000);
+        }
     }
 
     @Override
     public int getReadTimeout() {
-        return connectionManager.getParams().getSoTimeout() / 1000;
+        return readTimeout / 1000;
     }
 
     @Override
     public void setReadTimeout(int readTimeout) {
-        connectionManager.getParams().setSoTimeout(readTimeout * 1000);
+        this.readTimeout = readTimeout * 1000;
     }
 
     public int getMaxConnections() {
@@ -216,8 +292,9 @@ public class MultithreadedHttpClient implements HTTPClient {
     }
 
     public void setMaxConnections(final int maxConnections) {
-        connectionManager.getParams().setMaxTotalConnections(maxConnections);
-        connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+        HttpConnectionManagerParams params = getOwnConnectionManager().getParams();
+        params.setMaxTotalConnections(maxConnections);
+        params.setDefaultMaxConnectionsPerHost(maxConnections);
     }
 
     private static class HttpMethodResponse implements HTTPResponse {
@@ -260,6 +337,16 @@ public class MultithreadedHttpClient implements HTTPClient {
         public InputStream getResponseStream() throws IOException {
             if (responseBodyAsStream == null) {
                 responseBodyAsStream = methodResponse.getResponseBodyAsStream();
+                // the commons client does not decode the content itself
+                String contentEncoding = getResponseHeader("Content-Encoding");
+                if (responseBodyAsStream != null && contentEncoding != null) {
+                    if (contentEncoding.indexOf("gzip") != -1) {
+                        responseBodyAsStream = new GZIPInputStream(responseBodyAsStream);
+                    } else if (contentEncoding.indexOf("deflate") != -1) {
+                        responseBodyAsStream = new InflaterInputStream(responseBodyAsStream,
+                                new Inflater());
+                    }
+                }
             }
             return responseBodyAsStream;
         }
@@ -1,10 +1,13 @@
 package org.geotools.map;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -12,7 +15,17 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +51,7 @@ import org.geotools.referencing.CRS.AxisOrder;
 import org.geotools.renderer.lite.RendererUtilities;
 import org.geotools.util.Version;
 import org.opengis.coverage.grid.Format;
+import org.opengis.geometry.BoundingBox;
 import org.opengis.geometry.Envelope;
 import org.opengis.parameter.GeneralParameterValue;
 import org.opengis.parameter.ParameterValue;
@@ -55,6 +69,38 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
     
     static GridCoverageFactory gcf = new GridCoverageFactory();
 
+    /**
+     * The maximum number of tiles fetched for a single read, larger requests are not tiled
+     */
+    static final int MAX_TILES = 256;
+
+    /**
+     * The number of threads fetching the tiles, shared by all the tiled readers
+     */
+    static final int TILE_THREADS = Integer.getInteger("org.geotools.map.wmsTileThreads", 4);
+
+    static ExecutorService tileLoaders;
+
+    /**
+     * The tiles being fetched right now, so that concurrent reads wait for the same request
+     * instead of issuing it again
+     */
+    static final ConcurrentHashMap<String, Future<BufferedImage>> PENDING_TILES = new ConcurrentHashMap<String, Future<BufferedImage>>();
+
+    static synchronized ExecutorService getTileLoaders() {
+        if (tileLoaders == null) {
+            final AtomicInteger threadNumber = new AtomicInteger(1);
+            tileLoaders = Executors.newFixedThreadPool(TILE_THREADS, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "gt-wms-tile-loader-" + threadNumber.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return tileLoaders;
+    }
+
     /**
      * The WMS server
      */
@@ -114,6 +160,32 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
      * Last request CRS (used for reprojected GetFeatureInfo)
      */
     CoordinateReferenceSystem requestCRS;
+
+    /**
+     * Last request SRS name
+     */
+    String requestSrs;
+
+    /**
+     * Whether the GetMap requests are aligned to a tile grid, the tiles being fetched in
+     * parallel and cached
+     */
+    boolean tiled;
+
+    /**
+     * The size of the tiles, in pixels
+     */
+    int tileSize = 256;
+
+    /**
+     * The cache of the tiles
+     */
+    WMSTileCache tileCache = WMSTileCache.getDefault();
+
+    /**
+     * The layer bounds in each of the request SRS, the extent of the tile grids
+     */
+    Map<String, ReferencedEnvelope> gridExtents = new ConcurrentHashMap<String, ReferencedEnvelope>();
     
     /**
      * Builds a new WMS coverage reader
@@ -286,6 +358,13 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
             throws IOException {
         // build the request
         ReferencedEnvelope gridEnvelope = initMapRequest(requestedEnvelope, width, height, backgroundColor);
+        if (tiled) {
+            GridCoverage2D mosaic = getTiledMap(gridEnvelope, this.width, this.height,
+                    backgroundColor);
+            if (mosaic != null) {
+                return mosaic;
+            }
+        }
 
         // issue the request and wrap response in a grid coverage
         InputStream is = null;
@@ -355,6 +434,27 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
                     .initCause(e);
         }
 
+        try {
+            this.requestCRS = CRS.decode(requestSrs);
+        } catch(Exception e) {
+            throw new IOException("Could not decode request SRS " + requestSrs);
+        }
+        
+        this.mapRequest = createMapRequest(requestSrs, gridEnvelope, width, height,
+                backgroundColor);
+        this.requestSrs = requestSrs;
+        this.requestedEnvelope = gridEnvelope;
+        this.width = width;
+        this.height = height;
+
+        return gridEnvelope;
+    }
+
+    /**
+     * Builds a GetMap request for the specified area, expressed in the request SRS
+     */
+    GetMapRequest createMapRequest(String requestSrs, ReferencedEnvelope gridEnvelope,
+            int width, int height, Color backgroundColor) {
         GetMapRequest mapRequest = wms.createGetMapRequest();
         // for some silly reason GetMapRequest will list the layers in the opposite order...
         List<Layer> reversed = new ArrayList<Layer>(layers);
@@ -374,12 +474,6 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
             mapRequest.setTransparent(backgroundColor.getAlpha() < 255);
         }
 
-        try {
-            this.requestCRS = CRS.decode(requestSrs);
-        } catch(Exception e) {
-            throw new IOException("Could not decode request SRS " + requestSrs);
-        }
-        
         // bbox might need flipping
         ReferencedEnvelope requestEnvelope = gridEnvelope;
         if(axisFlipped(requestSrs)) {
@@ -387,12 +481,184 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
         }
         mapRequest.setBBox(requestEnvelope);
         
-        this.mapRequest = mapRequest;
-        this.requestedEnvelope = gridEnvelope;
-        this.width = width;
-        this.height = height;
+        return mapRequest;
+    }
 
-        return gridEnvelope;
+    /**
+     * Fetches the tiles covering the requested area and mosaics them. The tiles are taken from
+     * a grid covering the layer bounds in the request SRS, at the first zoom level whose
+     * resolution is at least as good as the requested one, so that the same tiles are reused
+     * by the requests panning and zooming around.
+     * 
+     * @return the mosaic, or null if the request cannot be tiled
+     */
+    GridCoverage2D getTiledMap(ReferencedEnvelope gridEnvelope, int width, int height,
+            Color backgroundColor) throws IOException {
+        CoordinateReferenceSystem crs = gridEnvelope.getCoordinateReferenceSystem();
+        ReferencedEnvelope extent = getGridExtent(requestSrs, crs);
+        if (extent == null || extent.isEmpty() || !extent.intersects((BoundingBox) gridEnvelope)) {
+            return null;
+        }
+        ReferencedEnvelope area = new ReferencedEnvelope(extent.intersection(gridEnvelope), crs);
+
+        // pick the zoom level, level 0 covering the whole extent with a single tile
+        double span = Math.max(extent.getWidth(), extent.getHeight());
+        double resolution = Math.min(gridEnvelope.getWidth() / width, gridEnvelope.getHeight()
+                / height);
+        int level = (int) Math.ceil(Math.log(span / (tileSize * resolution)) / Math.log(2) - 1e-6);
+        level = Math.max(0, Math.min(30, level));
+        double tileSpan = span / (1 << level);
+
+        int minCol = (int) Math.floor((area.getMinX() - extent.getMinX()) / tileSpan);
+        int maxCol = Math.max(minCol, (int) Math.ceil((area.getMaxX() - extent.getMinX())
+                / tileSpan) - 1);
+        int minRow = (int) Math.floor((area.getMinY() - extent.getMinY()) / tileSpan);
+        int maxRow = Math.max(minRow, (int) Math.ceil((area.getMaxY() - extent.getMinY())
+                / tileSpan) - 1);
+        int cols = maxCol - minCol + 1;
+        int rows = maxRow - minRow + 1;
+        if ((long) cols * rows > MAX_TILES) {
+            LOGGER.fine("Too many tiles needed, issuing a single GetMap request");
+            return null;
+        }
+
+        // queue the tile requests, rows top to bottom
+        List<Future<BufferedImage>> tiles = new ArrayList<Future<BufferedImage>>();
+        for (int row = maxRow; row >= minRow; row--) {
+            for (int col = minCol; col <= maxCol; col++) {
+                double minx = extent.getMinX() + col * tileSpan;
+                double miny = extent.getMinY() + row * tileSpan;
+                ReferencedEnvelope tileEnvelope = new ReferencedEnvelope(minx, minx + tileSpan,
+                        miny, miny + tileSpan, crs);
+                final GetMapRequest request = createMapRequest(requestSrs, tileEnvelope,
+                        tileSize, tileSize, backgroundColor);
+                tiles.add(getTileLoaders().submit(new Callable<BufferedImage>() {
+                    public BufferedImage call() throws Exception {
+                        return getTile(request);
+                    }
+                }));
+            }
+        }
+
+        // mosaic them
+        BufferedImage mosaic = new BufferedImage(cols * tileSize, rows * tileSize,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = mosaic.createGraphics();
+        try {
+            if (backgroundColor != null) {
+                graphics.setColor(backgroundColor);
+                graphics.fillRect(0, 0, mosaic.getWidth(), mosaic.getHeight());
+            }
+            for (int i = 0; i < tiles.size(); i++) {
+                BufferedImage tile = tiles.get(i).get();
+                graphics.drawImage(tile, (i % cols) * tileSize, (i / cols) * tileSize, tileSize,
+                        tileSize, null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted while fetching the tiles")
+                    .initCause(e);
+        } catch (ExecutionException e) {
+            throw (IOException) new IOException("GetMap failed").initCause(e.getCause());
+        } finally {
+            graphics.dispose();
+            for (Future<BufferedImage> tile : tiles) {
+                tile.cancel(false);
+            }
+        }
+
+        ReferencedEnvelope mosaicEnvelope = new ReferencedEnvelope(extent.getMinX() + minCol
+                * tileSpan, extent.getMinX() + (maxCol + 1) * tileSpan, extent.getMinY()
+                + minRow * tileSpan, extent.getMinY() + (maxRow + 1) * tileSpan, crs);
+        return gcf.create(layers.get(0).getTitle(), mosaic, mosaicEnvelope);
+    }
+
+    /**
+     * Returns the extent of the tile grid for the specified request SRS, that is, the layer
+     * bounds expressed in it
+     */
+    ReferencedEnvelope getGridExtent(String srs, CoordinateReferenceSystem crs) {
+        ReferencedEnvelope extent = gridExtents.get(srs);
+        if (extent == null) {
+            try {
+                extent = bounds.transform(crs, true);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not compute the tile grid for " + srs, e);
+                return null;
+            }
+            gridExtents.put(srs, extent);
+        }
+        return extent;
+    }
+
+    /**
+     * Returns the tile from the cache, or fetches it from the server
+     */
+    BufferedImage getTile(final GetMapRequest request) throws IOException {
+        final String key = request.getFinalURL().toExternalForm();
+        BufferedImage image = tileCache.get(key);
+        if (image != null) {
+            return image;
+        }
+
+        FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(
+                new Callable<BufferedImage>() {
+                    public BufferedImage call() throws Exception {
+                        return fetchTile(key, request);
+                    }
+                });
+        Future<BufferedImage> pending = PENDING_TILES.putIfAbsent(key, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                PENDING_TILES.remove(key);
+            }
+        }
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new IOException("Interrupted while fetching a tile")
+                    .initCause(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw (IOException) new IOException("GetMap failed").initCause(e.getCause());
+        }
+    }
+
+    BufferedImage fetchTile(String key, GetMapRequest request) throws IOException {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Issuing request: " + key);
+        }
+        try {
+            GetMapResponse response = wms.issueRequest(request);
+            try {
+                // keep the encoded tile around for the disk cache
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                InputStream is = response.getInputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                byte[] encoded = bytes.toByteArray();
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+                if (image == null) {
+                    throw new IOException("GetMap failed: " + key);
+                }
+                tileCache.put(key, image, encoded, response.getResponseHeader("Cache-Control"),
+                        response.getResponseHeader("Expires"));
+                return image;
+            } finally {
+                response.dispose();
+            }
+        } catch (ServiceException e) {
+            throw (IOException) new IOException("GetMap failed").initCause(e);
+        }
     }
 
     private boolean axisFlipped(String srsName) {
@@ -454,6 +720,7 @@ class WMSCoverageReader extends AbstractGridCoverage2DReader {
 
         this.bounds = result;
         this.originalEnvelope = new GeneralEnvelope(result);
+        this.gridExtents.clear();
     }
     
     /**
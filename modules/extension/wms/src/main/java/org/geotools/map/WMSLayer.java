@@ -220,6 +220,46 @@ public class WMSLayer extends GridReaderLayer {
         getReader().addLayer(layer);
     }
 
+    /**
+     * Returns true if the GetMap requests are aligned to a tile grid
+     * 
+     * @return
+     */
+    public boolean isTiled() {
+        return getReader().tiled;
+    }
+
+    /**
+     * Enables or disables the tiled mode. When enabled the requested area is split in tiles 
+     * aligned to a fixed grid for each CRS, which are fetched in parallel, cached, and mosaicked 
+     * locally. This allows the repeated and overlapping requests (e.g., panning and zooming 
+     * around) to reuse the tiles fetched before instead of hitting the server again.
+     * 
+     * @param tiled
+     */
+    public void setTiled(boolean tiled) {
+        getReader().tiled = tiled;
+    }
+
+    /**
+     * Returns the cache of the tiles fetched in tiled mode
+     * 
+     * @return
+     */
+    public WMSTileCache getTileCache() {
+        return getReader().tileCache;
+    }
+
+    /**
+     * Sets the cache of the tiles fetched in tiled mode, by default a memory only cache shared
+     * by all the layers
+     * 
+     * @param tileCache
+     */
+    public void setTileCache(WMSTileCache tileCache) {
+        getReader().tileCache = tileCache;
+    }
+
     /**
      * Returns true if the specified CRS can be used directly to perform WMS requests. Natively
      * supported crs will provide the best rendering quality as no client side reprojection is
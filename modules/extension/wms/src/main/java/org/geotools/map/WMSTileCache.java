@@ -0,0 +1,358 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.map;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A least recently used cache of the tiles fetched by the tiled {@link WMSLayer}s, keyed by the
+ * GetMap request URL. The decoded tiles are kept in memory, and optionally the encoded ones are
+ * saved in a directory too, so that they survive the memory cache evictions and the restarts.
+ * <p>
+ * The expiration of each tile follows the {@code Cache-Control} and {@code Expires} headers of
+ * the response, the tiles the server asked not to cache are not stored at all. Tiles without
+ * any caching header expire after the {@link #getDefaultTimeToLive() default time to live}.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class WMSTileCache {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geotools.map");
+
+    static final Pattern MAX_AGE = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+    static final String TILE_EXTENSION = ".tile";
+
+    static final WMSTileCache DEFAULT = new WMSTileCache(64 * 1024 * 1024, null, 0);
+
+    /**
+     * Returns the memory only cache shared by default by all the tiled layers
+     */
+    public static WMSTileCache getDefault() {
+        return DEFAULT;
+    }
+
+    static class Tile {
+        final BufferedImage image;
+
+        final long expires;
+
+        final long size;
+
+        Tile(BufferedImage image, long expires) {
+            this.image = image;
+            this.expires = expires;
+            this.size = 4L * image.getWidth() * image.getHeight();
+        }
+    }
+
+    final long maxMemory;
+
+    final File directory;
+
+    final long maxDiskSize;
+
+    long defaultTimeToLive = 60 * 60 * 1000;
+
+    long memoryUsed;
+
+    long diskUsed;
+
+    LinkedHashMap<String, Tile> tiles = new LinkedHashMap<String, Tile>(16, 0.75f, true);
+
+    /**
+     * The sizes of the tile files, in least recently used order
+     */
+    LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Builds a new tile cache
+     *
+     * @param maxMemory the maximum memory used by the decoded tiles, in bytes
+     * @param directory the directory the encoded tiles are saved in, or null to keep the tiles in
+     *        memory only
+     * @param maxDiskSize the maximum size of the saved tiles, in bytes
+     */
+    public WMSTileCache(long maxMemory, File directory, long maxDiskSize) {
+        this.maxMemory = maxMemory;
+        this.directory = directory;
+        this.maxDiskSize = maxDiskSize;
+        if (directory != null) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IllegalArgumentException("Could not create the tile cache directory "
+                        + directory);
+            }
+            loadIndex();
+        }
+    }
+
+    /**
+     * Indexes the tiles saved by a previous run, oldest first
+     */
+    void loadIndex() {
+        File[] existing = directory.listFiles();
+        if (existing == null) {
+            return;
+        }
+        Arrays.sort(existing, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                return f1.lastModified() < f2.lastModified() ? -1
+                        : (f1.lastModified() == f2.lastModified() ? 0 : 1);
+            }
+        });
+        for (File file : existing) {
+            if (file.getName().endsWith(TILE_EXTENSION)) {
+                files.put(file.getName(), file.length());
+                diskUsed += file.length();
+            }
+        }
+        evictFiles();
+    }
+
+    /**
+     * @return the time to live of the tiles whose response had no caching headers, in
+     *         milliseconds
+     */
+    public long getDefaultTimeToLive() {
+        return defaultTimeToLive;
+    }
+
+    public void setDefaultTimeToLive(long defaultTimeToLive) {
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    /**
+     * Returns the cached tile, or null if missing or expired
+     */
+    BufferedImage get(String key) {
+        synchronized (this) {
+            Tile tile = tiles.get(key);
+            if (tile != null) {
+                if (tile.expires >= System.currentTimeMillis()) {
+                    return tile.image;
+                }
+                tiles.remove(key);
+                memoryUsed -= tile.size;
+            }
+        }
+
+        if (directory != null) {
+            return load(key);
+        }
+        return null;
+    }
+
+    /**
+     * Caches a tile, the expiration being computed from the response headers
+     *
+     * @param encoded the tile as it came from the server, used to save it on disk
+     * @param cacheControl the Cache-Control header of the response, if any
+     * @param expires the Expires header of the response, if any
+     */
+    void put(String key, BufferedImage image, byte[] encoded, String cacheControl,
+            String expires) {
+        long expiration = getExpiration(cacheControl, expires);
+        if (expiration <= System.currentTimeMillis()) {
+            return;
+        }
+
+        putInMemory(key, new Tile(image, expiration));
+        if (directory != null) {
+            save(key, encoded, expiration);
+        }
+    }
+
+    synchronized void putInMemory(String key, Tile tile) {
+        Tile previous = tiles.put(key, tile);
+        if (previous != null) {
+            memoryUsed -= previous.size;
+        }
+        memoryUsed += tile.size;
+        for (Iterator<Tile> it = tiles.values().iterator(); it.hasNext()
+                && memoryUsed > maxMemory;) {
+            memoryUsed -= it.next().size;
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns the time the tile expires at, according to the HTTP caching headers
+     */
+    long getExpiration(String cacheControl, String expires) {
+        long now = System.currentTimeMillis();
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase();
+            if (directives.contains("no-store") || directives.contains("no-cache")) {
+                return now;
+            }
+            Matcher matcher = MAX_AGE.matcher(directives);
+            if (matcher.find()) {
+                return now + Long.parseLong(matcher.group(1)) * 1000;
+            }
+        }
+        if (expires != null) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+                    Locale.ENGLISH);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return format.parse(expires.trim()).getTime();
+            } catch (ParseException e) {
+                // invalid dates mean already expired
+                return now;
+            }
+        }
+        return now + defaultTimeToLive;
+    }
+
+    File getFile(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+            }
+            return new File(directory, sb.append(TILE_EXTENSION).toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Saves the encoded tile preceded by its expiration time
+     */
+    void save(String key, byte[] encoded, long expiration) {
+        File file = getFile(key);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(file));
+            out.writeLong(expiration);
+            out.write(encoded);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to save the tile in " + file, e);
+            close(out);
+            file.delete();
+            return;
+        } finally {
+            close(out);
+        }
+
+        synchronized (this) {
+            Long previous = files.put(file.getName(), file.length());
+            diskUsed += file.length() - (previous != null ? previous : 0);
+            evictFiles();
+        }
+    }
+
+    BufferedImage load(String key) {
+        File file = getFile(key);
+        synchronized (this) {
+            if (files.get(file.getName()) == null) {
+                return null;
+            }
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            long expiration = in.readLong();
+            if (expiration >= System.currentTimeMillis()) {
+                BufferedImage image = ImageIO.read(in);
+                if (image != null) {
+                    putInMemory(key, new Tile(image, expiration));
+                    return image;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read the tile in " + file, e);
+        } finally {
+            close(in);
+        }
+
+        // expired or invalid
+        synchronized (this) {
+            Long size = files.remove(file.getName());
+            if (size != null) {
+                diskUsed -= size;
+            }
+        }
+        file.delete();
+        return null;
+    }
+
+    static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    synchronized void evictFiles() {
+        for (Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator(); it.hasNext()
+                && diskUsed > maxDiskSize;) {
+            Map.Entry<String, Long> entry = it.next();
+            new File(directory, entry.getKey()).delete();
+            diskUsed -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drops all the cached tiles, both in memory and on disk
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        memoryUsed = 0;
+        if (directory != null) {
+            for (String name : files.keySet()) {
+                new File(directory, name).delete();
+            }
+            files.clear();
+            diskUsed = 0;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.httpclient.NameValuePair;
 import org.apache.commons.httpclient.util.ParameterParser;
@@ -24,6 +25,7 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.parameter.Parameter;
 import org.geotools.referencing.CRS;
 import org.junit.Test;
+import org.opengis.geometry.BoundingBox;
 import org.opengis.parameter.GeneralParameterValue;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -121,6 +123,59 @@ public class WMSCoverageReaderTest {
         assertEquals(worldEnvelope, new ReferencedEnvelope(coverage.getEnvelope()));
     }
 
+    @Test
+    public void testTiled() throws Exception {
+        final AtomicInteger getMapCount = new AtomicInteger();
+        MockHttpClient client = new MockHttpClient() {
+
+            public HTTPResponse get(URL url) throws IOException {
+                if (url.getQuery().contains("GetCapabilities")) {
+                    URL caps130 = WMSCoverageReaderTest.class.getResource("caps130.xml");
+                    return new MockHttpResponse(caps130, "text/xml");
+                } else if (url.getQuery().contains("GetMap")
+                        && url.getQuery().contains("world4326")) {
+                    getMapCount.incrementAndGet();
+                    Map<String, String> params = parseParams(url.getQuery());
+                    assertEquals("256", params.get("WIDTH"));
+                    assertEquals("256", params.get("HEIGHT"));
+                    URL world = WMSCoverageReaderTest.class.getResource("world.png");
+                    return new MockHttpResponse(world, "image/png");
+                } else {
+                    throw new IllegalArgumentException(
+                            "Don't know how to handle a get request over " + url.toExternalForm());
+                }
+            }
+
+        };
+        WebMapServer server = new WebMapServer(new URL("http://geoserver.org/geoserver/wms"),
+                client);
+        WMSTileCache cache = new WMSTileCache(1024 * 1024, null, 0);
+
+        CoordinateReferenceSystem wgs84 = CRS.decode("EPSG:4326", true);
+        ReferencedEnvelope envelope = new ReferencedEnvelope(0, 90, 0, 45, wgs84);
+        GridGeometry2D gg = new GridGeometry2D(new GridEnvelope2D(0, 0, 180, 90), envelope);
+        final Parameter<GridGeometry2D> ggParam = (Parameter<GridGeometry2D>) AbstractGridFormat.READ_GRIDGEOMETRY2D
+                .createValue();
+        ggParam.setValue(gg);
+
+        WMSCoverageReader reader = new WMSCoverageReader(server, getLayer(server, "world4326"));
+        reader.tiled = true;
+        reader.tileCache = cache;
+        GridCoverage2D coverage = reader.read(new GeneralParameterValue[] { ggParam });
+        ReferencedEnvelope mosaicEnvelope = new ReferencedEnvelope(coverage.getEnvelope());
+        assertTrue(mosaicEnvelope.contains((BoundingBox) envelope));
+        int fetched = getMapCount.get();
+        assertTrue(fetched > 0);
+
+        // the same area read again, even by another reader, comes from the cache
+        reader = new WMSCoverageReader(server, getLayer(server, "world4326"));
+        reader.tiled = true;
+        reader.tileCache = cache;
+        coverage = reader.read(new GeneralParameterValue[] { ggParam });
+        assertEquals(mosaicEnvelope, new ReferencedEnvelope(coverage.getEnvelope()));
+        assertEquals(fetched, getMapCount.get());
+    }
+
     private Layer getLayer(WebMapServer server, String layerName) {
         for (Layer layer : server.getCapabilities().getLayerList()) {
             if (layerName.equals(layer.getName())) {
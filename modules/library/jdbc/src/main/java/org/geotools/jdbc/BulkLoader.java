@@ -0,0 +1,49 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * Loads the chunks of new features added in a single call to a {@link JDBCFeatureStore}, see
+ * {@link SQLDialect#createBulkLoader(org.opengis.feature.simple.SimpleFeatureType, PrimaryKey, java.sql.Connection)}.
+ * <p>
+ * A loader is created once for all the chunks, so it can hold the state computed while
+ * preparing the load, such as the encoding of each column.
+ * </p>
+ *
+ * @source $URL$
+ */
+public interface BulkLoader {
+
+    /**
+     * Loads a chunk of new features.
+     * <p>
+     * The primary key values of the features have already been computed, and are provided in
+     * the same order as the features. Attribute values should be read by name, as the features
+     * might not have the exact same type as the table.
+     * </p>
+     *
+     * @return the number of rows loaded
+     */
+    public long load(List<SimpleFeature> features, List<List<Object>> keyValues)
+            throws SQLException, IOException;
+}
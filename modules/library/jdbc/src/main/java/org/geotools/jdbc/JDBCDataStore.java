@@ -74,6 +74,7 @@ import org.geotools.filter.FilterCapabilities;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.JoinInfo.JoinPart;
 import org.geotools.referencing.CRS;
+import org.geotools.renderer.ScreenMap;
 import org.geotools.util.Converters;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
@@ -162,6 +163,21 @@ public final class JDBCDataStore extends ContentDataStore
      */
     public static final String JDBC_COLUMN_ALIAS = "org.geotools.jdbc.columnAlias";
 
+    /**
+     * The key of the {@link Transaction} property enabling bulk loads when adding features 
+     * through a {@link JDBCFeatureStore}. The value is either {@link Boolean#TRUE}, or an 
+     * {@link Integer} setting the number of features loaded in each chunk.
+     * 
+     * @see SQLDialect#createBulkLoader(SimpleFeatureType, PrimaryKey, Connection)
+     */
+    public static final String BULK_LOAD = "org.geotools.jdbc.bulkLoad";
+    
+    /**
+     * The number of features loaded in each chunk when the {@link #BULK_LOAD} transaction 
+     * property does not specify it
+     */
+    static final int DEFAULT_BULK_LOAD_CHUNK = 10000;
+
     /**
      * name of table to use to store geometries when {@link #associations}
      * is set.
@@ -255,6 +271,41 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected boolean exposePrimaryKeyColumns = false;
     
+    /**
+     * flag controlling whether features are read with a {@link JDBCPipelinedFeatureReader}
+     */
+    protected boolean pipelinedReads = false;
+    
+    /**
+     * flag controlling whether rendering level of detail reduction is pushed down to the database
+     */
+    protected boolean lodPushdown = false;
+    
+    /**
+     * cache of the SQL generated for queries with the same structure, null if disabled
+     */
+    protected volatile SQLTemplateCache sqlTemplates;
+    
+    /**
+     * cursors remembering where the pages read in primary key order ended, null if disabled
+     */
+    protected volatile KeysetPaging keysetPaging;
+    
+    /**
+     * maximum number of primary key ranges full table scans are split into, 1 disables the split
+     */
+    protected int scanPartitions = 1;
+    
+    /**
+     * minimum number of primary key values in each partition of a full table scan
+     */
+    protected int scanPartitionMinSize = 10000;
+    
+    /**
+     * cache of the estimated row counts and optimized bounds of the tables, null if disabled
+     */
+    protected volatile TableStatistics tableStatistics;
+    
     /**
      * Finds the primary key definitions (instantiated here because the finders might keep state)
      */
@@ -290,6 +341,7 @@ public final class JDBCDataStore extends ContentDataStore
             virtualTables.put(vtable.getName(), new VirtualTable(vtable));
             // the new vtable might be overriding a previous definition
             entries.remove(new NameImpl(namespaceURI, vtable.getName()));
+            clearSQLTemplates();
             getSchema(vtable.getName());
         } catch(IOException e) {
             virtualTables.remove(vtable.getName());
@@ -315,6 +367,7 @@ public final class JDBCDataStore extends ContentDataStore
         VirtualTable vt =  virtualTables.remove(name);
         if(vt != null) {
             entries.remove(new NameImpl(namespaceURI, name));
+            clearSQLTemplates();
         }
         return vt;
     }
@@ -381,6 +434,183 @@ public final class JDBCDataStore extends ContentDataStore
      */
     public void setExposePrimaryKeyColumns(boolean exposePrimaryKeyColumns) {
         this.exposePrimaryKeyColumns = exposePrimaryKeyColumns;
+        clearSQLTemplates();
+    }
+    
+    /**
+     * Determines if features are read in a pipeline, with the result set drained on a background
+     * thread and the rows decoded on a pool of worker threads, while the caller consumes the
+     * features already decoded.
+     */
+    public boolean isPipelinedReads() {
+        return pipelinedReads;
+    }
+    
+    /**
+     * Sets the flag controlling if features are read in a pipeline.
+     * 
+     * @see JDBCPipelinedFeatureReader
+     */
+    public void setPipelinedReads(boolean pipelinedReads) {
+        this.pipelinedReads = pipelinedReads;
+    }
+    
+    /**
+     * Determines if the rendering level of detail reduction is pushed down to the database. When
+     * enabled the store honours the {@link Hints#SCREENMAP} and {@link Hints#GEOMETRY_DISTANCE}
+     * hints provided by the renderer, asking the dialect to snap the geometries to the rendering
+     * grid and to return a single sub-pixel feature per pixel, and skipping the features falling
+     * in pixels already painted.
+     */
+    public boolean isLODPushdown() {
+        return lodPushdown;
+    }
+    
+    /**
+     * Sets the flag controlling if the rendering level of detail reduction is pushed down to the
+     * database.
+     * 
+     * @see SQLDialect#encodeGeometryColumnSnapped(GeometryDescriptor, String, int, Hints, StringBuffer, double)
+     * @see SQLDialect#encodeScreenMapDistinct(GeometryDescriptor, PrimaryKey, double, double, StringBuffer)
+     */
+    public void setLODPushdown(boolean lodPushdown) {
+        this.lodPushdown = lodPushdown;
+        clearSQLTemplates();
+    }
+    
+    /**
+     * Sets the maximum number of query structures whose prepared SELECT statement is cached, 
+     * 0 or a negative number disables the cache. 
+     * <p>
+     * Queries that differ only in the values of their filter literals, such as the bounding box 
+     * queries issued when rendering tiles, then skip the SQL encoding and generate the very same 
+     * statement, allowing the connection pool to reuse the statement prepared on the connection
+     * (see {@link JDBCDataStoreFactory#MAX_OPEN_PREPARED_STATEMENTS}). Only used with 
+     * {@link PreparedStatementSQLDialect} based dialects.
+     * </p>
+     */
+    public void setSQLTemplateCacheSize(int size) {
+        this.sqlTemplates = size > 0 ? new SQLTemplateCache(size) : null;
+    }
+    
+    /**
+     * Returns true if the SQL of the SELECT statements is cached by query structure
+     */
+    public boolean isSQLTemplateCacheEnabled() {
+        return sqlTemplates != null;
+    }
+    
+    /**
+     * Determines if deep pages are read with keyset pagination. When enabled the store remembers
+     * the primary key of the last feature of the pages explicitly sorted by natural order or by
+     * the primary key, and the query for the page that follows is encoded as
+     * <code>WHERE pk > ? ORDER BY pk LIMIT n</code> instead of making the database skip
+     * <code>startIndex</code> rows with an offset.
+     * <p>
+     * Only tables with a single column primary key are paged this way, see
+     * {@link JDBCQueryCapabilities#isKeysetPagingSupported()}. Rows inserted or deleted by other
+     * clients between two page requests are not accounted for, the pages following the last one
+     * read stay stable instead of shifting.
+     * </p>
+     */
+    public boolean isKeysetPaging() {
+        return keysetPaging != null;
+    }
+    
+    /**
+     * Sets the flag controlling if deep pages are read with keyset pagination.
+     */
+    public void setKeysetPaging(boolean keysetPaging) {
+        if (keysetPaging != isKeysetPaging()) {
+            this.keysetPaging = keysetPaging ? new KeysetPaging() : null;
+        }
+    }
+    
+    /**
+     * Returns the maximum number of partitions full table scans are split into.
+     */
+    public int getScanPartitions() {
+        return scanPartitions;
+    }
+    
+    /**
+     * Sets the maximum number of partitions full table scans are split into, 1 or less disables
+     * partitioned scans.
+     * <p>
+     * Reading all the rows of a table with a single column integral primary key, with no sorting,
+     * paging or open transaction involved, is then split in ranges of primary key values, each
+     * read on its own pooled connection by a background thread. This speeds up exports, and the
+     * aggregates and counts that need to be computed in memory, as long as the database can
+     * serve the ranges in parallel. Each scan uses up to this many connections, the pool should
+     * be sized accordingly.
+     * </p>
+     */
+    public void setScanPartitions(int scanPartitions) {
+        this.scanPartitions = scanPartitions;
+    }
+    
+    /**
+     * Returns the minimum number of primary key values in each partition of a full table scan.
+     */
+    public int getScanPartitionMinSize() {
+        return scanPartitionMinSize;
+    }
+    
+    /**
+     * Sets the minimum number of primary key values in each partition of a full table scan, 
+     * smaller tables are read with less partitions or in a single scan.
+     */
+    public void setScanPartitionMinSize(int scanPartitionMinSize) {
+        this.scanPartitionMinSize = Math.max(1, scanPartitionMinSize);
+    }
+    
+    /**
+     * Returns how long, in seconds, the estimated row counts and the optimized bounds of the
+     * tables are cached, 0 if they are not cached at all.
+     */
+    public int getStatisticsCacheTTL() {
+        TableStatistics statistics = tableStatistics;
+        return statistics != null ? (int) (statistics.timeToLive / 1000) : 0;
+    }
+    
+    /**
+     * Sets how long, in seconds, the estimated row counts and the optimized bounds of the
+     * tables are cached. Reading them is cheap compared to a full scan, but still a round trip
+     * to the database catalogs for each request. A value of 0 or less disables the cache.
+     */
+    public void setStatisticsCacheTTL(int seconds) {
+        this.tableStatistics = seconds > 0 ? new TableStatistics(seconds * 1000L) : null;
+    }
+    
+    /**
+     * Drops the cached statistics of a feature type, as the table contents changed
+     */
+    void clearTableStatistics(String typeName) {
+        TableStatistics statistics = tableStatistics;
+        if (statistics != null) {
+            statistics.clear(typeName);
+        }
+    }
+    
+    /**
+     * Drops the keyset pagination cursors of a feature type, as the start indexes they record
+     * do not match the table contents anymore
+     */
+    void clearKeysetCursors(String typeName) {
+        KeysetPaging paging = keysetPaging;
+        if (paging != null) {
+            paging.clear(typeName);
+        }
+    }
+    
+    /**
+     * Drops the cached SQL templates, as the statements they hold might be stale
+     */
+    void clearSQLTemplates() {
+        SQLTemplateCache templates = sqlTemplates;
+        if (templates != null) {
+            templates.clear();
+        }
     }
     
     /**
@@ -1120,8 +1350,7 @@ public final class JDBCDataStore extends ContentDataStore
         try {
             // try optimized bounds computation only if we're targeting the entire table
             if (isFullBoundsQuery(query, featureType)) {
-                List<ReferencedEnvelope> result = dialect.getOptimizedBounds(databaseSchema,
-                        featureType, cx);
+                List<ReferencedEnvelope> result = getOptimizedBounds(featureType, cx);
                 if (result != null && !result.isEmpty()) {
                     // merge the envelopes into one
                     for (ReferencedEnvelope envelope : result) {
@@ -1174,6 +1403,58 @@ public final class JDBCDataStore extends ContentDataStore
         return bounds;
     }
 
+    /**
+     * Returns the bounds computed by the dialect from the table metadata, going through the
+     * statistics cache if enabled
+     */
+    List<ReferencedEnvelope> getOptimizedBounds(SimpleFeatureType featureType, Connection cx)
+            throws SQLException, IOException {
+        TableStatistics statistics = tableStatistics;
+        String typeName = featureType.getTypeName();
+        if (statistics != null) {
+            List<ReferencedEnvelope> result = statistics.getBounds(typeName);
+            if (result != null) {
+                return result;
+            }
+        }
+        
+        List<ReferencedEnvelope> result = dialect.getOptimizedBounds(databaseSchema, featureType,
+                cx);
+        if (statistics != null && result != null && !result.isEmpty()) {
+            statistics.putBounds(typeName, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the estimated number of rows of the table backing the feature type, as reported 
+     * by the database statistics, or null if not available. Goes through the statistics cache 
+     * if enabled.
+     */
+    Long getEstimatedCount(SimpleFeatureType featureType, Connection cx) {
+        TableStatistics statistics = tableStatistics;
+        String typeName = featureType.getTypeName();
+        if (statistics != null) {
+            Long count = statistics.getCount(typeName);
+            if (count != null) {
+                return count;
+            }
+        }
+        
+        Long count;
+        try {
+            count = dialect.getEstimatedCount(databaseSchema, featureType, cx);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to read the estimated count of " + typeName
+                    + ", falling back on an exact count", e);
+            return null;
+        }
+        if (statistics != null && count != null) {
+            statistics.putCount(typeName, count);
+        }
+        return count;
+    }
+    
     /**
      * Returns true if the query will hit all the geometry columns with no row filtering
      * (a condition that allows to use spatial index statistics to compute the table bounds)
@@ -1321,6 +1602,43 @@ public final class JDBCDataStore extends ContentDataStore
         }
     }
 
+    /**
+     * Returns the minimum and maximum value of an integral primary key column, or null if the
+     * table is empty.
+     */
+    long[] getPrimaryKeyRange(SimpleFeatureType featureType, PrimaryKeyColumn column, 
+            Hints hints, Connection cx) throws IOException {
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            StringBuffer sql = new StringBuffer();
+            sql.append("SELECT MIN(");
+            dialect.encodeColumnName(null, column.getName(), sql);
+            sql.append("), MAX(");
+            dialect.encodeColumnName(null, column.getName(), sql);
+            sql.append(") FROM ");
+            encodeTableName(featureType.getTypeName(), sql, hints);
+            LOGGER.fine( sql.toString() );
+            
+            st = cx.createStatement();
+            rs = st.executeQuery(sql.toString());
+            if (!rs.next()) {
+                return null;
+            }
+            Number min = (Number) rs.getObject(1);
+            Number max = (Number) rs.getObject(2);
+            if (min == null || max == null) {
+                return null;
+            }
+            return new long[] { min.longValue(), max.longValue() };
+        } catch (SQLException e) {
+            throw (IOException) new IOException().initCause(e);
+        } finally {
+            closeSafe(rs);
+            closeSafe(st);
+        }
+    }
+
     /**
      * Helper method for getting the expression from a visitor
      * TODO: Remove this method when there is an interface for aggregate visitors.
@@ -1403,6 +1721,8 @@ public final class JDBCDataStore extends ContentDataStore
     protected void insert(Collection features, SimpleFeatureType featureType, Connection cx)
         throws IOException {
         PrimaryKey key = getPrimaryKey(featureType);
+        clearKeysetCursors(featureType.getTypeName());
+        clearTableStatistics(featureType.getTypeName());
 
         // we do this in a synchronized block because we need to do two queries,
         // first to figure out what the id will be, then the insert statement
@@ -1467,6 +1787,122 @@ public final class JDBCDataStore extends ContentDataStore
         }
     }
 
+    /**
+     * Returns the loader of the new features of the specified type, or null if they cannot be
+     * loaded in bulk, that is, the dialect does not support it or the primary key values cannot
+     * be computed before loading.
+     */
+    protected BulkLoader createBulkLoader(SimpleFeatureType featureType, Connection cx)
+        throws IOException {
+        PrimaryKey key = getPrimaryKey(featureType);
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            if (col instanceof AutoGeneratedPrimaryKeyColumn) {
+                // we would not know the identifiers of the new features
+                return null;
+            }
+        }
+        try {
+            return dialect.createBulkLoader(featureType, key, cx);
+        } catch (SQLException e) {
+            throw (IOException) new IOException("Error preparing the bulk load").initCause(e);
+        }
+    }
+    
+    /**
+     * Loads a chunk of new features in bulk, reporting the feature ids in the "fid" user data
+     * of each feature, as {@link #insert(Collection, SimpleFeatureType, Connection)} does.
+     */
+    protected void insertBulk(BulkLoader loader, List<SimpleFeature> features,
+            SimpleFeatureType featureType, Connection cx) throws IOException {
+        PrimaryKey key = getPrimaryKey(featureType);
+        clearKeysetCursors(featureType.getTypeName());
+        clearTableStatistics(featureType.getTypeName());
+
+        try {
+            // as in insert, the key values are computed and then used in a synchronized block, 
+            // so that concurrent loads cannot allocate the same values
+            List<List<Object>> keyValues;
+            synchronized (this) {
+                keyValues = getNextValues(key, features, cx);
+                loader.load(features, keyValues);
+            }
+            
+            for (int i = 0; i < features.size(); i++) {
+                String fid = featureType.getTypeName() + "." + encodeFID(keyValues.get(i));
+                features.get(i).getUserData().put("fid", fid);
+            }
+        } catch (SQLException e) {
+            String msg = "Error loading features";
+            throw (IOException) new IOException(msg).initCause(e);
+        }
+    }
+    
+    /**
+     * Computes the primary key values of a list of new features, reusing the provided ones
+     * when the features ask so, and otherwise allocating the values in as few round trips as
+     * possible.
+     */
+    List<List<Object>> getNextValues(PrimaryKey key, List<SimpleFeature> features, Connection cx)
+        throws SQLException, IOException {
+        List<List<Object>> keyValues = new ArrayList<List<Object>>(features.size());
+        int generated = 0;
+        for (SimpleFeature feature : features) {
+            if (Boolean.TRUE.equals(feature.getUserData().get(Hints.USE_PROVIDED_FID))) {
+                keyValues.add(decodeFID(key, feature.getID(), true));
+            } else {
+                keyValues.add(null);
+                generated++;
+            }
+        }
+        if (generated == 0) {
+            return keyValues;
+        }
+        
+        // allocate the values column by column
+        List<List<Object>> columnValues = new ArrayList<List<Object>>();
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            List<Object> values = null;
+            if (col instanceof SequencedPrimaryKeyColumn) {
+                String sequenceName = ((SequencedPrimaryKeyColumn) col).getSequenceName();
+                values = dialect.getNextSequenceValues(databaseSchema, sequenceName, generated, cx);
+            } else if (col instanceof NonIncrementingPrimaryKeyColumn 
+                    && Number.class.isAssignableFrom(col.getType())) {
+                // the maximum won't change until the features are loaded, increment ourselves
+                Object first = getNextValue(col, key, cx);
+                BigInteger next = new BigDecimal(first.toString()).toBigInteger();
+                values = new ArrayList<Object>(generated);
+                for (int i = 0; i < generated; i++) {
+                    Object value = Converters.convert(next, col.getType());
+                    values.add(value != null ? value : next);
+                    next = next.add(BigInteger.ONE);
+                }
+            } else {
+                values = new ArrayList<Object>(generated);
+                for (int i = 0; i < generated; i++) {
+                    values.add(getNextValue(col, key, cx));
+                }
+            }
+            if (values == null || values.size() != generated) {
+                throw new IOException("Could not allocate the values of primary key column " 
+                        + col.getName());
+            }
+            columnValues.add(values);
+        }
+        
+        int g = 0;
+        for (int i = 0; i < keyValues.size(); i++) {
+            if (keyValues.get(i) == null) {
+                List<Object> values = new ArrayList<Object>(columnValues.size());
+                for (List<Object> column : columnValues) {
+                    values.add(column.get(g));
+                }
+                keyValues.set(i, values);
+                g++;
+            }
+        }
+        return keyValues;
+    }
+
     /**
      * Updates an existing feature(s) in the database for a particular feature type / table.
      */
@@ -1487,6 +1923,8 @@ public final class JDBCDataStore extends ContentDataStore
 
             return;
         }
+        clearKeysetCursors(featureType.getTypeName());
+        clearTableStatistics(featureType.getTypeName());
 
         if ( dialect instanceof PreparedStatementSQLDialect ) {
             try {
@@ -1539,6 +1977,8 @@ public final class JDBCDataStore extends ContentDataStore
      */
     protected void delete(SimpleFeatureType featureType, Filter filter, Connection cx)
         throws IOException {
+        clearKeysetCursors(featureType.getTypeName());
+        clearTableStatistics(featureType.getTypeName());
         
         Statement st = null;
         try {
@@ -2861,6 +3301,7 @@ public final class JDBCDataStore extends ContentDataStore
     protected String selectSQL(SimpleFeatureType featureType, Query query) throws IOException, SQLException {
         StringBuffer sql = new StringBuffer();
         sql.append("SELECT ");
+        encodeScreenMapDistinct(featureType, query, sql);
 
         //column names
         selectColumns(featureType, null, query, sql);
@@ -2924,6 +3365,31 @@ public final class JDBCDataStore extends ContentDataStore
         return sql.toString();
     }
 
+    /**
+     * Asks the dialect to return a single sub-pixel feature per pixel of the {@link ScreenMap}
+     * provided in the query hints, when the level of detail pushdown is enabled and the query
+     * does not need a specific order or paging, which would be altered by the thinning.
+     */
+    void encodeScreenMapDistinct(SimpleFeatureType featureType, Query query, StringBuffer sql)
+            throws IOException {
+        if (!lodPushdown || query.getHints() == null) {
+            return;
+        }
+        ScreenMap screenMap = (ScreenMap) query.getHints().get(Hints.SCREENMAP);
+        GeometryDescriptor gatt = featureType.getGeometryDescriptor();
+        if (screenMap == null || gatt == null || screenMap.getSpanX() <= 0
+                || screenMap.getSpanY() <= 0) {
+            return;
+        }
+        if ((query.getSortBy() != null && query.getSortBy().length > 0)
+                || query.getStartIndex() != null || !query.isMaxFeaturesUnlimited()) {
+            return;
+        }
+
+        dialect.encodeScreenMapDistinct(gatt, getPrimaryKey(featureType), screenMap.getSpanX(),
+                screenMap.getSpanY(), sql);
+    }
+
     void selectColumns(SimpleFeatureType featureType, String prefix, Query query, StringBuffer sql) 
         throws IOException {
         
@@ -3058,8 +3524,34 @@ public final class JDBCDataStore extends ContentDataStore
     protected PreparedStatement selectSQLPS( SimpleFeatureType featureType, Query query, Connection cx )
         throws SQLException, IOException {
         
+        // check if a query with the same structure has been encoded already
+        SQLTemplateCache templates = sqlTemplates;
+        String templateKey = null;
+        List<Literal> literals = null;
+        if (templates != null) {
+            literals = new ArrayList<Literal>();
+            templateKey = SQLTemplateCache.getKey(featureType, query, literals);
+            SQLTemplateCache.Template template = templateKey != null ? templates.get(templateKey) : null;
+            if (template == SQLTemplateCache.UNCACHEABLE) {
+                templateKey = null;
+            } else if (template != null) {
+                PreparedFilterToSQL toSQL = template.bind((PreparedStatementSQLDialect) dialect, literals);
+                if (toSQL != null) {
+                    LOGGER.fine( template.getSQL() );
+                    PreparedStatement ps = cx.prepareStatement(template.getSQL(), 
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    setPreparedFilterValues( ps, toSQL, 0, cx );
+                    return ps;
+                }
+                // the values convert to different types, encode from scratch
+                templateKey = null;
+            }
+        }
+        
         StringBuffer sql = new StringBuffer();
         sql.append("SELECT ");
+        encodeScreenMapDistinct(featureType, query, sql);
 
         //column names
         selectColumns(featureType, null, query, sql);
@@ -3071,10 +3563,18 @@ public final class JDBCDataStore extends ContentDataStore
 
         //filtering
         PreparedFilterToSQL toSQL = null;
+        SQLTemplateCache.Parameters parameters = null;
         Filter filter = query.getFilter();
         if (filter != null && !Filter.INCLUDE.equals(filter)) {
             sql.append(" WHERE ");
             
+            // when building a template replace the literals with parameters, to track
+            // if the encoding depends on their values
+            if (templateKey != null) {
+                parameters = new SQLTemplateCache.Parameters();
+                filter = SQLTemplateCache.parameterize(filter, parameters);
+            }
+            
             //encode filter
             toSQL = (PreparedFilterToSQL) filter(featureType, filter, sql);
         }
@@ -3085,6 +3585,11 @@ public final class JDBCDataStore extends ContentDataStore
         // finally encode limit/offset, if necessary
         applyLimitOffset(sql, query);
 
+        if (templateKey != null) {
+            templates.put(templateKey, SQLTemplateCache.createTemplate(sql.toString(), toSQL,
+                    parameters, literals.size()));
+        }
+
         LOGGER.fine( sql.toString() );
         PreparedStatement ps = cx.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
         ps.setFetchSize(fetchSize);
@@ -4383,6 +4888,15 @@ public final class JDBCDataStore extends ContentDataStore
     		return;    		
     	}
 
+        if (lodPushdown && isGeometryReduceRequired(hints, gatt, Hints.GEOMETRY_DISTANCE)) {
+            Number distance = (Number) hints.get(Hints.GEOMETRY_DISTANCE);
+            if (distance != null && distance.doubleValue() > 0) {
+                dialect.encodeGeometryColumnSnapped(gatt, prefix, srid, hints, sql,
+                        distance.doubleValue());
+                return;
+            }
+        }
+
         dialect.encodeGeometryColumn(gatt,prefix,srid, hints, sql);
     }
     
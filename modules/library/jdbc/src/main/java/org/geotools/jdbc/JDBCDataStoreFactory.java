@@ -110,10 +110,41 @@ public abstract class JDBCDataStoreFactory extends AbstractDataStoreFactory {
             "Maximum number of prepared statements kept open and cached for each connection in the pool. " +
             "Set to 0 to have unbounded caching, to -1 to disable caching", false, 50);
     
+    /** number of query structures whose SQL is cached */
+    public static final Param SQL_TEMPLATE_CACHE_SIZE = new Param("SQL template cache size", Integer.class,
+            "Maximum number of query structures (feature type, properties and filter with the literals " +
+            "turned into parameters) whose prepared SQL statement is cached and reused. " +
+            "Set to 0 to disable caching", false, 0);
+    
     /** expose primary key columns as attributes */
     public static final Param EXPOSE_PK = new Param("Expose primary keys", Boolean.class, "Expose primary key columns as " +
     		"attributes of the feature type", false, false);
     
+    /** read features on background threads, overlapping database access and decoding */
+    public static final Param PIPELINED_READS = new Param("Pipelined reads", Boolean.class,
+            "Read features in a pipeline, draining the result set on a background thread and " +
+            "decoding rows on a pool of worker threads", false, false);
+    
+    /** push the rendering level of detail reduction down to the database */
+    public static final Param LOD_PUSHDOWN = new Param("Rendering LOD pushdown", Boolean.class,
+            "When rendering, snap the geometries to the pixel grid and return a single " +
+            "sub-pixel feature per pixel, using the database functions where available", false, false);
+    
+    /** read deep pages starting after the last primary key of the previous page */
+    public static final Param KEYSET_PAGING = new Param("Keyset pagination", Boolean.class,
+            "When reading pages in primary key order, remember the last key of each page and " +
+            "start the following page after it rather than skipping rows with an offset", false, false);
+    
+    /** split full table scans in primary key ranges read in parallel */
+    public static final Param SCAN_PARTITIONS = new Param("Scan partitions", Integer.class,
+            "Maximum number of primary key ranges read in parallel, each on its own connection, " +
+            "when scanning a whole table. Set to 1 to disable partitioned scans", false, 1);
+    
+    /** cache the estimated counts and optimized bounds of the tables for a number of seconds */
+    public static final Param STATISTICS_CACHE_TTL = new Param("Statistics cache TTL", Integer.class,
+            "Number of seconds the table row estimates and optimized bounds read from the " +
+            "database statistics are cached. Set to 0 to disable the cache", false, 0);
+    
     /** SQL executed when the session begins */
     public static final Param SQL_ON_BORROW = new Param("Session startup SQL", String.class, 
             "SQL statement executed when the connection is grabbed from the pool", false, null, 
@@ -219,6 +250,41 @@ public abstract class JDBCDataStoreFactory extends AbstractDataStoreFactory {
             dataStore.setExposePrimaryKeyColumns(exposePk);
         }
         
+        // pipelined reads
+        Boolean pipelined = (Boolean) PIPELINED_READS.lookUp(params);
+        if(pipelined != null) {
+            dataStore.setPipelinedReads(pipelined);
+        }
+        
+        // sql templates (only used by prepared statement dialects)
+        Integer templateCacheSize = (Integer) SQL_TEMPLATE_CACHE_SIZE.lookUp(params);
+        if(templateCacheSize != null) {
+            dataStore.setSQLTemplateCacheSize(templateCacheSize);
+        }
+        
+        // rendering level of detail pushdown
+        Boolean lodPushdown = (Boolean) LOD_PUSHDOWN.lookUp(params);
+        if(lodPushdown != null) {
+            dataStore.setLODPushdown(lodPushdown);
+        }
+        
+        // keyset pagination
+        Boolean keysetPaging = (Boolean) KEYSET_PAGING.lookUp(params);
+        if(keysetPaging != null) {
+            dataStore.setKeysetPaging(keysetPaging);
+        }
+        
+        // partitioned scans
+        Integer scanPartitions = (Integer) SCAN_PARTITIONS.lookUp(params);
+        if(scanPartitions != null) {
+            dataStore.setScanPartitions(scanPartitions);
+        }
+        
+        Integer statisticsTTL = (Integer) STATISTICS_CACHE_TTL.lookUp(params);
+        if(statisticsTTL != null) {
+            dataStore.setStatisticsCacheTTL(statisticsTTL);
+        }
+        
         // session startup and teardown
         String sqlOnBorrow = (String) SQL_ON_BORROW.lookUp(params);
         String sqlOnRelease = (String) SQL_ON_RELEASE.lookUp(params);
@@ -308,6 +374,11 @@ public abstract class JDBCDataStoreFactory extends AbstractDataStoreFactory {
         parameters.put(MAXCONN.key, MAXCONN);
         parameters.put(MINCONN.key, MINCONN);
         parameters.put(FETCHSIZE.key, FETCHSIZE);
+        parameters.put(PIPELINED_READS.key, PIPELINED_READS);
+        parameters.put(LOD_PUSHDOWN.key, LOD_PUSHDOWN);
+        parameters.put(KEYSET_PAGING.key, KEYSET_PAGING);
+        parameters.put(SCAN_PARTITIONS.key, SCAN_PARTITIONS);
+        parameters.put(STATISTICS_CACHE_TTL.key, STATISTICS_CACHE_TTL);
         parameters.put(MAXWAIT.key, MAXWAIT);
         if(getValidationQuery() != null)
             parameters.put(VALIDATECONN.key, VALIDATECONN);
@@ -17,6 +17,7 @@
 package org.geotools.jdbc;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
@@ -51,6 +52,8 @@ import org.geotools.filter.visitor.PostPreProcessFilterSplittingVisitor;
 import org.geotools.filter.visitor.SimplifyingFilterVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
+import org.geotools.renderer.ScreenMap;
+import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
 import org.opengis.feature.Association;
 import org.opengis.feature.FeatureVisitor;
@@ -58,6 +61,9 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -107,7 +113,15 @@ public class JDBCFeatureSource extends ContentFeatureSource {
         // mark the features as detached, that is, the user can directly alter them
         // without altering the state of the datastore
         hints.add(Hints.FEATURE_DETACHED);
+        // counts can be estimated from the database statistics
+        hints.add(Hints.ESTIMATED_STATISTICS);
         getDataStore().getSQLDialect().addSupportedHints(hints);
+        // with the level of detail pushdown we take over the screenmap checks and the
+        // geometry reduction from the renderer
+        if (getDataStore().isLODPushdown()) {
+            hints.add(Hints.SCREENMAP);
+            hints.add(Hints.GEOMETRY_DISTANCE);
+        }
     }
 
     /**
@@ -427,6 +441,14 @@ public class JDBCFeatureSource extends ContentFeatureSource {
                 // either way we can use the datastore optimization
                 Connection cx = dataStore.getConnection(getState());
                 try {
+                    // the planner statistics are good enough if the caller allows estimates
+                    if (isEstimatedCountAllowed(query)) {
+                        Long estimate = dataStore.getEstimatedCount(getSchema(), cx);
+                        if (estimate != null) {
+                            return (int) Math.min(estimate, Integer.MAX_VALUE);
+                        }
+                    }
+                    
                     DefaultQuery q = new DefaultQuery(query);
                     q.setFilter(preFilter);
                     int count = dataStore.getCount(getSchema(), q, cx);
@@ -449,6 +471,28 @@ public class JDBCFeatureSource extends ContentFeatureSource {
             } 
         
     }
+
+    /**
+     * Returns true if the query counts all the rows of a table outside of a transaction, and
+     * the caller allows the count to be estimated with the {@link Hints#ESTIMATED_STATISTICS}
+     * hint
+     */
+    boolean isEstimatedCountAllowed(Query query) {
+        Hints hints = query.getHints();
+        if (hints == null || !Boolean.TRUE.equals(hints.get(Hints.ESTIMATED_STATISTICS))) {
+            return false;
+        }
+        if (query.getFilter() != null && !Filter.INCLUDE.equals(query.getFilter())) {
+            return false;
+        }
+        if ((query.getStartIndex() != null && query.getStartIndex() > 0)
+                || !query.isMaxFeaturesUnlimited() || !query.getJoins().isEmpty()) {
+            return false;
+        }
+        // the statistics do not see the changes in progress, nor describe virtual tables
+        return getState().getTransaction() == Transaction.AUTO_COMMIT
+                && !getDataStore().getVirtualTables().containsKey(getSchema().getTypeName());
+    }
     
     protected ReferencedEnvelope getBoundsInternal(Query query)
             throws IOException {
@@ -537,14 +581,48 @@ public class JDBCFeatureSource extends ContentFeatureSource {
     }
     
     protected  FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query) throws IOException {
+        // full table scans can be split in primary key ranges read in parallel
+        List<Filter> partitions = getScanPartitions(query);
+        if (partitions != null) {
+            return new JDBCPartitionedFeatureReader(this, query, partitions);
+        }
+        return getReaderInternal(query, null);
+    }
+    
+    /**
+     * Returns a reader for the query, restricted to the rows matching the partition filter, if
+     * not null
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query, 
+            Filter partition) throws IOException {
         // split the filter
         Filter[] split = splitFilter(query.getFilter());
         Filter preFilter = split[0];
         Filter postFilter = split[1];
+        if (partition != null) {
+            preFilter = preFilter == null || Filter.INCLUDE.equals(preFilter) ? partition : 
+                getDataStore().getFilterFactory().and(preFilter, partition);
+        }
 
         // rebuild a new query with the same params, but just the pre-filter
         DefaultQuery preQuery = new DefaultQuery(query);
         preQuery.setFilter(preFilter);
+        
+        // when paging in primary key order start after the last key of the previous page,
+        // if we have seen it, instead of making the database skip all the previous rows
+        KeysetPaging keysetPaging = getDataStore().keysetPaging;
+        Query pageQuery = preQuery;
+        if (keysetPaging != null
+                && ((JDBCQueryCapabilities) getQueryCapabilities()).isKeysetPagingSupported()
+                && KeysetPaging.isKeysetQuery(query, getPrimaryKey(), postFilter)) {
+            Query seek = keysetPaging.seek(getSchema().getTypeName(), pageQuery, getPrimaryKey(),
+                    getDataStore().getFilterFactory());
+            if (seek != null) {
+                preQuery = new DefaultQuery(seek);
+            }
+        } else {
+            keysetPaging = null;
+        }
 
         // Build the feature type returned by this query. Also build an eventual extra feature type
         // containing the attributes we might need in order to evaluate the post filter
@@ -571,13 +649,21 @@ public class JDBCFeatureSource extends ContentFeatureSource {
                 //regular query
                 if ( dialect instanceof PreparedStatementSQLDialect ) {
                     PreparedStatement ps = getDataStore().selectSQLPS(querySchema, preQuery, cx);
-                    reader = new JDBCFeatureReader( ps, cx, this, querySchema, query.getHints() );
+                    if (getDataStore().isPipelinedReads()) {
+                        reader = new JDBCPipelinedFeatureReader( ps, cx, this, querySchema, query.getHints() );
+                    } else {
+                        reader = new JDBCFeatureReader( ps, cx, this, querySchema, query.getHints() );
+                    }
                 } else {
                     //build up a statement for the content
                     String sql = getDataStore().selectSQL(querySchema, preQuery);
                     getDataStore().getLogger().fine(sql);
         
-                    reader = new JDBCFeatureReader( sql, cx, this, querySchema, query.getHints() );
+                    if (getDataStore().isPipelinedReads()) {
+                        reader = new JDBCPipelinedFeatureReader( sql, cx, this, querySchema, query.getHints() );
+                    } else {
+                        reader = new JDBCFeatureReader( sql, cx, this, querySchema, query.getHints() );
+                    }
                 }
             }
             else {
@@ -618,10 +704,95 @@ public class JDBCFeatureSource extends ContentFeatureSource {
             if(!returnedSchema.equals(querySchema))
                 reader = new ReTypeFeatureReader(reader, returnedSchema);
         }
+        
+        // record where the page ended, for the next one to start from there
+        if (keysetPaging != null) {
+            reader = keysetPaging.record(reader, getSchema().getTypeName(), pageQuery,
+                    getDataStore(), getPrimaryKey());
+        }
+        
+        // if the renderer left us the screenmap, skip the features hitting painted pixels
+        if (getDataStore().isLODPushdown() && query.getJoins().isEmpty() 
+                && query.getHints() != null && returnedSchema.getGeometryDescriptor() != null) {
+            ScreenMap screenMap = (ScreenMap) query.getHints().get(Hints.SCREENMAP);
+            if (screenMap != null) {
+                reader = new JDBCScreenMapFeatureReader(reader, screenMap);
+            }
+        }
 
         return reader;
     }
 
+    /**
+     * Splits the full table scan requested by the query in primary key ranges, when partitioned
+     * scans are enabled, the table has a single column integral primary key, and the query
+     * does not need a specific order, a subset of the rows, or the transaction state. 
+     * 
+     * @return the filters selecting each range, or null if the scan should not be split
+     * @see JDBCDataStore#setScanPartitions(int)
+     */
+    List<Filter> getScanPartitions(Query query) throws IOException {
+        JDBCDataStore dataStore = getDataStore();
+        int maxPartitions = dataStore.getScanPartitions();
+        if (maxPartitions <= 1 || !query.getJoins().isEmpty() 
+                || getState().getTransaction() != Transaction.AUTO_COMMIT
+                || (query.getSortBy() != null && query.getSortBy().length > 0)
+                || !query.isMaxFeaturesUnlimited()
+                || (query.getStartIndex() != null && query.getStartIndex() > 0)
+                || (query.getHints() != null && query.getHints().get(Hints.SCREENMAP) != null)) {
+            return null;
+        }
+        
+        PrimaryKey key = getPrimaryKey();
+        if (key instanceof NullPrimaryKey || key.getColumns().size() != 1) {
+            return null;
+        }
+        PrimaryKeyColumn column = key.getColumns().get(0);
+        Class binding = column.getType();
+        if (binding != Integer.class && binding != Long.class && binding != Short.class
+                && binding != BigInteger.class) {
+            return null;
+        }
+        
+        long[] range;
+        Connection cx = dataStore.getConnection(getState());
+        try {
+            range = dataStore.getPrimaryKeyRange(getSchema(), column, query.getHints(), cx);
+        } finally {
+            dataStore.releaseConnection(cx, getState());
+        }
+        if (range == null) {
+            return null;
+        }
+        
+        // compute in double to avoid overflows on very sparse keys
+        double size = (double) range[1] - range[0] + 1;
+        int count = (int) Math.min(maxPartitions, size / dataStore.getScanPartitionMinSize());
+        if (count <= 1) {
+            return null;
+        }
+        
+        FilterFactory ff = dataStore.getFilterFactory();
+        PropertyName pk = ff.property(column.getName());
+        List<Filter> partitions = new ArrayList<Filter>(count);
+        long lower = range[0];
+        for (int i = 0; i < count; i++) {
+            long upper = range[0] + (long) (size * (i + 1) / count);
+            Literal lo = ff.literal(Converters.convert(lower, binding));
+            Literal hi = ff.literal(Converters.convert(upper, binding));
+            if (i == 0) {
+                partitions.add(ff.less(pk, hi));
+            } else if (i == count - 1) {
+                // open ended, to catch the rows added after the range has been computed
+                partitions.add(ff.greaterOrEqual(pk, lo));
+            } else {
+                partitions.add(ff.and(ff.greaterOrEqual(pk, lo), ff.less(pk, hi)));
+            }
+            lower = upper;
+        }
+        return partitions;
+    }
+
     SimpleFeatureType[] buildQueryAndReturnFeatureTypes(SimpleFeatureType featureType, 
         String[] propertyNames, Filter filter) {
 
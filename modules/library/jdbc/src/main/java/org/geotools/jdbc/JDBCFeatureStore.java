@@ -20,8 +20,10 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.geotools.data.DefaultQuery;
@@ -38,6 +40,8 @@ import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureStore;
 import org.geotools.data.store.ContentState;
 import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
@@ -45,6 +49,8 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.identity.FeatureId;
 
 import com.vividsolutions.jts.geom.Geometry;
 
@@ -326,6 +332,78 @@ public final class JDBCFeatureStore extends ContentFeatureStore {
         return writer;
     }
     
+    /**
+     * Adds the features to the store. When the {@link JDBCDataStore#BULK_LOAD} property is set
+     * on the transaction and the dialect supports it, the features are loaded in bulk, in 
+     * chunks, instead of being inserted one by one.
+     */
+    @Override
+    public List<FeatureId> addFeatures(
+            FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection)
+            throws IOException {
+        Transaction tx = getState().getTransaction();
+        Object bulkLoad = tx == null || tx == Transaction.AUTO_COMMIT ? null : tx
+                .getProperty(JDBCDataStore.BULK_LOAD);
+        int chunkSize = bulkLoad instanceof Number ? ((Number) bulkLoad).intValue() : 
+            Boolean.TRUE.equals(bulkLoad) ? JDBCDataStore.DEFAULT_BULK_LOAD_CHUNK : 0;
+        if (chunkSize <= 0) {
+            return super.addFeatures(featureCollection);
+        }
+        
+        Connection cx = getDataStore().getConnection(tx);
+        SimpleFeatureType featureType = getSchema();
+        BulkLoader loader = getDataStore().createBulkLoader(featureType, cx);
+        if (loader == null) {
+            return super.addFeatures(featureCollection);
+        }
+        
+        ContentState state = getEntry().getState(transaction);
+        ReferencedEnvelope bounds = state.hasListener() ? 
+                new ReferencedEnvelope( featureType.getCoordinateReferenceSystem() ) : null;
+        List<FeatureId> ids = new ArrayList<FeatureId>();
+        FeatureIterator<SimpleFeature> features = featureCollection.features();
+        try {
+            List<SimpleFeature> chunk = new ArrayList<SimpleFeature>(chunkSize);
+            while (features.hasNext()) {
+                chunk.add(features.next());
+                if (chunk.size() == chunkSize) {
+                    insertBulk(loader, chunk, cx, ids, bounds);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                insertBulk(loader, chunk, cx, ids, bounds);
+            }
+        } finally {
+            features.close();
+        }
+        
+        if (!ids.isEmpty() && bounds != null) {
+            // issue a single notification for all the features
+            FilterFactory ff = getDataStore().getFilterFactory();
+            FeatureEvent event = new FeatureEvent(this, Type.ADDED, bounds, 
+                    ff.id(new HashSet<FeatureId>(ids)));
+            state.fireFeatureEvent(event);
+        }
+        return ids;
+    }
+    
+    /**
+     * Loads a chunk of features, collecting their ids and, if not null, their bounds, and then
+     * clears the chunk
+     */
+    void insertBulk(BulkLoader loader, List<SimpleFeature> chunk, Connection cx,
+            List<FeatureId> ids, ReferencedEnvelope bounds) throws IOException {
+        getDataStore().insertBulk(loader, chunk, getSchema(), cx);
+        FilterFactory ff = getDataStore().getFilterFactory();
+        for (SimpleFeature feature : chunk) {
+            ids.add(ff.featureId((String) feature.getUserData().get("fid")));
+            if (bounds != null) {
+                bounds.expandToInclude(ReferencedEnvelope.reference(feature.getBounds()));
+            }
+        }
+        chunk.clear();
+    }
+    
     @Override
     public void modifyFeatures(Name[] names, Object[] values, Filter filter)
             throws IOException {
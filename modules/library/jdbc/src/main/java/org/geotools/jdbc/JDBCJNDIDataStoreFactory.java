@@ -157,6 +157,11 @@ public abstract class JDBCJNDIDataStoreFactory extends JDBCDataStoreFactory {
         parameters.put(SCHEMA.key, SCHEMA);
         parameters.put(NAMESPACE.key, NAMESPACE);
         parameters.put(EXPOSE_PK.key, EXPOSE_PK);
+        parameters.put(PIPELINED_READS.key, PIPELINED_READS);
+        parameters.put(LOD_PUSHDOWN.key, LOD_PUSHDOWN);
+        parameters.put(KEYSET_PAGING.key, KEYSET_PAGING);
+        parameters.put(SCAN_PARTITIONS.key, SCAN_PARTITIONS);
+        parameters.put(STATISTICS_CACHE_TTL.key, STATISTICS_CACHE_TTL);
         parameters.put(PK_METADATA_TABLE.key, PK_METADATA_TABLE);
         parameters.put(SQL_ON_BORROW.key, SQL_ON_BORROW);
         parameters.put(SQL_ON_RELEASE.key, SQL_ON_RELEASE);
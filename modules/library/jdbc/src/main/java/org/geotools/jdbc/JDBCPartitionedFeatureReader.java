@@ -0,0 +1,235 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+
+/**
+ * Reads the features of a full table scan split in primary key ranges, each partition being read
+ * on its own pooled connection by a background thread. The features are returned in the order
+ * they come from the partitions, which is fine as the query did not ask for any sorting.
+ * <p>
+ * Each partition reader hands batches of features to a bounded queue, so the memory used
+ * stays limited no matter how large the table is. Closing the reader stops the partition
+ * readers and waits for them to release their connections.
+ * </p>
+ *
+ * @see JDBCDataStore#setScanPartitions(int)
+ * @source $URL$
+ */
+class JDBCPartitionedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    static final Logger LOGGER = Logging.getLogger(JDBCPartitionedFeatureReader.class);
+
+    /**
+     * Number of features handed over to the consumer at once
+     */
+    static final int BATCH_SIZE = 256;
+
+    /**
+     * Marks the end of a partition in the queue
+     */
+    static final Object END = new Object();
+
+    final JDBCFeatureSource source;
+
+    final Query query;
+
+    final SimpleFeatureType featureType;
+
+    final int partitionCount;
+
+    final BlockingQueue<Object> queue;
+
+    final CountDownLatch readersDone;
+
+    volatile boolean closed;
+
+    int ended;
+
+    Iterator<SimpleFeature> current;
+
+    public JDBCPartitionedFeatureReader(JDBCFeatureSource source, Query query,
+            List<Filter> partitions) throws IOException {
+        this.source = source;
+        this.query = query;
+        this.partitionCount = partitions.size();
+        this.queue = new ArrayBlockingQueue<Object>(partitionCount * 2);
+        this.readersDone = new CountDownLatch(partitionCount);
+
+        // open the first partition right away to get the feature type and report the
+        // errors in the query early
+        FeatureReader<SimpleFeatureType, SimpleFeature> first = source.getReaderInternal(query,
+                partitions.get(0));
+        this.featureType = first.getFeatureType();
+        start(first, null);
+        for (Filter partition : partitions.subList(1, partitionCount)) {
+            start(null, partition);
+        }
+    }
+
+    void start(final FeatureReader<SimpleFeatureType, SimpleFeature> reader,
+            final Filter partition) {
+        JDBCPipelinedFeatureReader.getProducers().submit(new Runnable() {
+            public void run() {
+                try {
+                    drain(reader, partition);
+                } finally {
+                    readersDone.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads a whole partition, putting its features on the queue in batches
+     */
+    void drain(FeatureReader<SimpleFeatureType, SimpleFeature> reader, Filter partition) {
+        try {
+            if (reader == null) {
+                if (closed) {
+                    return;
+                }
+                reader = source.getReaderInternal(query, partition);
+            }
+            List<SimpleFeature> batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+            while (!closed && reader.hasNext()) {
+                batch.add(reader.next());
+                if (batch.size() >= BATCH_SIZE) {
+                    if (!put(batch)) {
+                        return;
+                    }
+                    batch = new ArrayList<SimpleFeature>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty() && !put(batch)) {
+                return;
+            }
+            put(END);
+        } catch (Throwable t) {
+            if (closed) {
+                LOGGER.log(Level.FINEST, "Error while stopping the partitioned reader", t);
+            } else {
+                try {
+                    put(new JDBCPipelinedFeatureReader.Failure(t));
+                } catch (InterruptedException e) {
+                    // nobody to report to
+                }
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Throwable t) {
+                    LOGGER.log(Level.FINE, "Failed to close the partition reader", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts an item on the queue, waiting for room unless the reader is closed
+     *
+     * @return false if the reader has been closed
+     */
+    boolean put(Object item) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        if (closed) {
+            throw new IOException("Reader is closed");
+        }
+        while (current == null || !current.hasNext()) {
+            if (ended == partitionCount) {
+                return false;
+            }
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new IOException("Interrupted while reading features")
+                        .initCause(e);
+            }
+            if (item == END) {
+                ended++;
+            } else if (item instanceof JDBCPipelinedFeatureReader.Failure) {
+                ended = partitionCount;
+                throw (IOException) new IOException("Failed to read features")
+                        .initCause(((JDBCPipelinedFeatureReader.Failure) item).cause);
+            } else {
+                @SuppressWarnings("unchecked")
+                List<SimpleFeature> batch = (List<SimpleFeature>) item;
+                current = batch.iterator();
+            }
+        }
+        return true;
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features in this reader, you should call "
+                    + "hasNext() to check for feature availability");
+        }
+        return current.next();
+    }
+
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        try {
+            if (!readersDone.await(JDBCPipelinedFeatureReader.CLOSE_TIMEOUT,
+                    TimeUnit.MILLISECONDS)) {
+                LOGGER.warning("The partition readers did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        current = null;
+    }
+}
@@ -0,0 +1,404 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.geotools.factory.Hints;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.util.Converters;
+import org.opengis.feature.FeatureFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * A {@link JDBCFeatureReader} reading features in a pipeline.
+ * <p>
+ * A producer thread drains the result set in batches of fetch size rows, reading the plain
+ * attribute values and the still encoded geometries. Each batch is then handed to a pool of
+ * worker threads which decode the geometries (see
+ * {@link SQLDialect#readGeometryValue(GeometryDescriptor, java.sql.ResultSet, int, GeometryFactory, Connection)})
+ * and build the features. The consumer takes the decoded batches, in order, from a bounded
+ * queue, so that database round trips, geometry decoding and the consumer's own work overlap,
+ * while the number of rows held in memory stays bounded.
+ * </p>
+ * <p>
+ * Closing the reader stops the producer, cancelling the running statement if need be, and waits
+ * for it to let go of the result set before the statement and the connection are released.
+ * </p>
+ * <p>
+ * The number of decoding threads is set by the <code>org.geotools.jdbc.pipelineThreads</code>
+ * system property, and defaults to the number of available processors.
+ * </p>
+ *
+ * @source $URL$
+ */
+public class JDBCPipelinedFeatureReader extends JDBCFeatureReader {
+
+    static final int DECODER_COUNT = Math.max(1, Integer.getInteger(
+            "org.geotools.jdbc.pipelineThreads", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Maximum number of batches read from the database and not yet consumed
+     */
+    static final int MAX_PENDING_BATCHES = DECODER_COUNT + 2;
+
+    /**
+     * Maximum time the reader waits for the producer to stop when closing, in milliseconds
+     */
+    static final long CLOSE_TIMEOUT = 60000;
+
+    /**
+     * Marks the end of the rows in the queue
+     */
+    static final Object END = new Object();
+
+    /**
+     * Marks a failure of the producer in the queue
+     */
+    static class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private static ExecutorService producers;
+
+    private static ExecutorService decoders;
+
+    static synchronized ExecutorService getProducers() {
+        if (producers == null) {
+            producers = Executors.newCachedThreadPool(new DaemonThreadFactory("gt-jdbc-reader-"));
+        }
+        return producers;
+    }
+
+    static synchronized ExecutorService getDecoders() {
+        if (decoders == null) {
+            decoders = Executors.newFixedThreadPool(DECODER_COUNT, new DaemonThreadFactory(
+                    "gt-jdbc-decoder-"));
+        }
+        return decoders;
+    }
+
+    static class DaemonThreadFactory implements ThreadFactory {
+        final String prefix;
+
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(MAX_PENDING_BATCHES);
+
+    final CountDownLatch producerDone = new CountDownLatch(1);
+
+    volatile boolean closed;
+
+    Future<?> producer;
+
+    boolean finished;
+
+    Iterator<SimpleFeature> current;
+
+    // the state used by the background threads, which must survive cleanup()
+    SimpleFeatureType pipelineType;
+
+    SQLDialect dialect;
+
+    FeatureFactory featureFactory;
+
+    GeometryFactory pipelineGeometryFactory;
+
+    int batchSize;
+
+    public JDBCPipelinedFeatureReader(String sql, Connection cx, JDBCFeatureSource featureSource,
+            SimpleFeatureType featureType, Hints hints) throws SQLException {
+        super(sql, cx, featureSource, featureType, hints);
+        start();
+    }
+
+    public JDBCPipelinedFeatureReader(PreparedStatement st, Connection cx,
+            JDBCFeatureSource featureSource, SimpleFeatureType featureType, Hints hints)
+            throws SQLException {
+        super(st, cx, featureSource, featureType, hints);
+        start();
+    }
+
+    void start() {
+        pipelineType = featureType;
+        dialect = dataStore.getSQLDialect();
+        pipelineGeometryFactory = geometryFactory;
+        featureFactory = (FeatureFactory) hints.get(Hints.FEATURE_FACTORY);
+        if (featureFactory == null) {
+            featureFactory = dataStore.getFeatureFactory();
+        }
+        int fetchSize = dataStore.getFetchSize();
+        batchSize = fetchSize > 0 ? fetchSize : 1000;
+
+        final int[] attributeRsIndex = buildAttributeRsIndex();
+        producer = getProducers().submit(new Runnable() {
+            public void run() {
+                try {
+                    produce(attributeRsIndex);
+                } finally {
+                    producerDone.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Drains the result set, handing batches of rows to the decoders
+     */
+    void produce(int[] attributeRsIndex) {
+        final Connection cx = this.cx;
+        final int attributeCount = pipelineType.getAttributeCount();
+        try {
+            List<Object[]> batch = new ArrayList<Object[]>(batchSize);
+            while (!closed && rs.next()) {
+                Object[] row = new Object[attributeCount + 1];
+                String fid = dataStore.encodeFID(pkey, rs, offset);
+                // fid could be null during an outer join
+                row[0] = fid == null ? null : pipelineType.getTypeName() + "." + fid;
+                for (int i = 0; i < attributeCount; i++) {
+                    AttributeDescriptor type = pipelineType.getDescriptor(i);
+                    int column = offset + attributeRsIndex[i];
+                    if (type instanceof GeometryDescriptor) {
+                        row[i + 1] = dialect.readGeometryValue((GeometryDescriptor) type, rs,
+                                column, pipelineGeometryFactory, cx);
+                    } else {
+                        // convert here, the value might still be bound to the connection
+                        row[i + 1] = convert(rs.getObject(column), type);
+                    }
+                }
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    if (!put(decode(batch))) {
+                        return;
+                    }
+                    batch = new ArrayList<Object[]>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && !put(decode(batch))) {
+                return;
+            }
+            put(END);
+        } catch (Throwable t) {
+            if (closed) {
+                // most likely caused by the statement cancellation
+                LOGGER.log(Level.FINEST, "Error while stopping the pipelined reader", t);
+            } else {
+                try {
+                    put(new Failure(t));
+                } catch (InterruptedException e) {
+                    // nobody to report to
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts an item on the queue, waiting for room unless the reader is closed
+     *
+     * @return false if the reader has been closed
+     */
+    boolean put(Object item) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Schedules the decoding of a batch of rows
+     */
+    Future<List<SimpleFeature>> decode(final List<Object[]> rows) {
+        return getDecoders().submit(new Callable<List<SimpleFeature>>() {
+            public List<SimpleFeature> call() throws Exception {
+                final int attributeCount = pipelineType.getAttributeCount();
+                final SimpleFeatureBuilder fb = new SimpleFeatureBuilder(pipelineType,
+                        featureFactory);
+                final List<SimpleFeature> features = new ArrayList<SimpleFeature>(rows.size());
+                for (Object[] row : rows) {
+                    if (closed) {
+                        break;
+                    }
+                    String fid = (String) row[0];
+                    if (fid == null) {
+                        features.add(null);
+                        continue;
+                    }
+                    for (int i = 0; i < attributeCount; i++) {
+                        AttributeDescriptor type = pipelineType.getDescriptor(i);
+                        Object value = row[i + 1];
+                        if (type instanceof GeometryDescriptor) {
+                            GeometryDescriptor gatt = (GeometryDescriptor) type;
+                            Geometry geometry = dialect.decodeGeometryValue(gatt, value,
+                                    pipelineGeometryFactory);
+                            if (geometry != null && geometry.getUserData() == null) {
+                                // if not set, set from descriptor
+                                geometry.setUserData(gatt.getCoordinateReferenceSystem());
+                            }
+                            value = convert(geometry, type);
+                        }
+                        fb.add(value);
+                    }
+                    features.add(fb.buildFeature(fid));
+                }
+                return features;
+            }
+        });
+    }
+
+    Object convert(Object value, AttributeDescriptor type) {
+        if (value != null) {
+            Object converted = Converters.convert(value, type.getType().getBinding());
+            if (converted != null) {
+                return converted;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        ensureOpen();
+        while (current == null || !current.hasNext()) {
+            if (finished) {
+                return false;
+            }
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new IOException("Interrupted while reading features")
+                        .initCause(e);
+            }
+            if (item == END) {
+                finished = true;
+                return false;
+            } else if (item instanceof Failure) {
+                finished = true;
+                throw (IOException) new IOException("Failed to read features")
+                        .initCause(((Failure) item).cause);
+            }
+            try {
+                @SuppressWarnings("unchecked")
+                List<SimpleFeature> features = ((Future<List<SimpleFeature>>) item).get();
+                current = features.iterator();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new IOException("Interrupted while reading features")
+                        .initCause(e);
+            } catch (ExecutionException e) {
+                finished = true;
+                throw (IOException) new IOException("Failed to decode features").initCause(e
+                        .getCause());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        ensureOpen();
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features in this reader, you should call "
+                    + "hasNext() to check for feature availability");
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed && producer != null) {
+            closed = true;
+            stopProducer();
+        }
+        super.close();
+    }
+
+    /**
+     * Stops the producer and waits for it to release the result set
+     */
+    void stopProducer() {
+        if (producerDone.getCount() > 0) {
+            // abort a round trip to the database that might be in progress
+            try {
+                st.cancel();
+            } catch (Throwable t) {
+                LOGGER.log(Level.FINE, "Failed to cancel the statement", t);
+            }
+        }
+        // drop the batches not consumed yet
+        for (Object item : queue) {
+            if (item instanceof Future) {
+                ((Future<?>) item).cancel(false);
+            }
+        }
+        queue.clear();
+        try {
+            if (!producerDone.await(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOGGER.warning("The pipelined reader did not stop in time, closing the result "
+                        + "set anyways");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        current = null;
+        finished = true;
+    }
+}
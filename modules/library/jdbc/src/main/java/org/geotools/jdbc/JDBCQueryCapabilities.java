@@ -100,6 +100,20 @@ class JDBCQueryCapabilities extends QueryCapabilities {
         return source.getDataStore().getSQLDialect().isLimitOffsetSupported();
     }
     
+    /**
+     * Returns true if the pages read in primary key order are fetched with keyset pagination,
+     * starting right after the last primary key value of the previous page instead of using an
+     * offset. This requires the store to have keyset paging enabled, native limit/offset support
+     * and a single column primary key.
+     * 
+     * @see JDBCDataStore#setKeysetPaging(boolean)
+     */
+    public boolean isKeysetPagingSupported() {
+        PrimaryKey key = source.getPrimaryKey();
+        return source.getDataStore().isKeysetPaging() && isOffsetSupported()
+                && !(key instanceof NullPrimaryKey) && key.getColumns().size() == 1;
+    }
+    
     @Override
     public boolean isUseProvidedFIDSupported() {
         return true;
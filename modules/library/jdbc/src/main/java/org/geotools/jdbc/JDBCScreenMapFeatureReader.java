@@ -0,0 +1,99 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.DelegatingFeatureReader;
+import org.geotools.data.FeatureReader;
+import org.geotools.renderer.ScreenMap;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Feature reader skipping the features smaller than a pixel that fall in a pixel of the
+ * {@link ScreenMap} already painted. Used when the level of detail reduction is pushed down to
+ * the store, as the renderer then leaves the screen map checks to the store.
+ *
+ * @source $URL$
+ */
+class JDBCScreenMapFeatureReader implements
+        DelegatingFeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+    ScreenMap screenMap;
+
+    SimpleFeature next;
+
+    public JDBCScreenMapFeatureReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+            ScreenMap screenMap) {
+        this.delegate = delegate;
+        this.screenMap = screenMap;
+    }
+
+    public FeatureReader<SimpleFeatureType, SimpleFeature> getDelegate() {
+        return delegate;
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return delegate.getFeatureType();
+    }
+
+    public boolean hasNext() throws IOException {
+        if (next != null) {
+            return true;
+        }
+
+        while (delegate.hasNext()) {
+            SimpleFeature peek = delegate.next();
+            Geometry geometry = (Geometry) peek.getDefaultGeometry();
+            if (geometry != null && !geometry.isEmpty()) {
+                try {
+                    if (screenMap.checkAndSet(geometry.getEnvelopeInternal())) {
+                        continue;
+                    }
+                } catch (TransformException e) {
+                    // cannot tell where it falls, paint it
+                }
+            }
+            next = peek;
+            break;
+        }
+
+        return next != null;
+    }
+
+    public SimpleFeature next() throws IOException, IllegalArgumentException,
+            NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more features");
+        }
+
+        SimpleFeature f = next;
+        next = null;
+        return f;
+    }
+
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
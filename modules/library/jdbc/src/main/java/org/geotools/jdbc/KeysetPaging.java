@@ -0,0 +1,226 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.geotools.data.DelegatingFeatureReader;
+import org.geotools.data.FeatureReader;
+import org.geotools.data.Query;
+import org.geotools.factory.Hints;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+/**
+ * Remembers the primary key of the last feature returned by the pages read in primary key
+ * order, so that the query for the following page can start right after it with a
+ * <code>WHERE pk > ?</code> condition instead of having the database scan and discard all the
+ * rows before the requested start index.
+ * <p>
+ * Only tables with a single column primary key are handled. The cursors of a table are dropped
+ * when features are inserted, updated or deleted through the store, as the positions they record would
+ * not match the start indexes anymore.
+ * </p>
+ *
+ * @source $URL$
+ */
+class KeysetPaging {
+
+    /**
+     * The maximum number of cursors kept around
+     */
+    static final int MAX_CURSORS = 256;
+
+    Map<List<Object>, Object> cursors = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    };
+
+    /**
+     * Returns true if the query reads a page of features in primary key order, that is, it has
+     * a limit, no post filter to be applied in memory, and is explicitly sorted by natural order
+     * or ascending on the primary key column. Unsorted queries do not qualify, the order of their
+     * results is up to the database.
+     */
+    static boolean isKeysetQuery(Query query, PrimaryKey key, Filter postFilter) {
+        if (key == null || key instanceof NullPrimaryKey || key.getColumns().size() != 1) {
+            return false;
+        }
+        if (query.isMaxFeaturesUnlimited() || !query.getJoins().isEmpty()) {
+            return false;
+        }
+        if (postFilter != null && postFilter != Filter.INCLUDE) {
+            return false;
+        }
+        SortBy[] sortBy = query.getSortBy();
+        if (sortBy == null || sortBy.length != 1) {
+            return false;
+        }
+        if (SortBy.NATURAL_ORDER.equals(sortBy[0])) {
+            return true;
+        }
+        return sortBy[0].getPropertyName() != null
+                && sortBy[0].getSortOrder() == SortOrder.ASCENDING
+                && key.getColumns().get(0).getName().equals(
+                        sortBy[0].getPropertyName().getPropertyName());
+    }
+
+    /**
+     * Builds the key of the cursor positioned at the specified index of the query results
+     */
+    static List<Object> getKey(String typeName, Query query, Filter filter, int index) {
+        Object vtParams = query.getHints() != null ?
+                query.getHints().get(Hints.VIRTUAL_TABLE_PARAMETERS) : null;
+        return Arrays.asList(typeName, filter, vtParams, index);
+    }
+
+    /**
+     * Returns the primary key value of the last feature before the specified position, or null
+     * if no page read so far ended there
+     */
+    synchronized Object get(List<Object> key) {
+        return cursors.get(key);
+    }
+
+    synchronized void put(List<Object> key, Object lastKey) {
+        cursors.put(key, lastKey);
+    }
+
+    /**
+     * Drops the cursors of the specified feature type
+     */
+    synchronized void clear(String typeName) {
+        for (Iterator<List<Object>> it = cursors.keySet().iterator(); it.hasNext();) {
+            if (typeName.equals(it.next().get(0))) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the query to start after the remembered primary key value, if a previous page
+     * ended at the query start index. Returns null if no such page was read.
+     */
+    Query seek(String typeName, Query query, PrimaryKey key, FilterFactory ff) {
+        Integer startIndex = query.getStartIndex();
+        if (startIndex == null || startIndex <= 0) {
+            return null;
+        }
+        Object lastKey = get(getKey(typeName, query, query.getFilter(), startIndex));
+        if (lastKey == null) {
+            return null;
+        }
+
+        Filter after = ff.greater(ff.property(key.getColumns().get(0).getName()),
+                ff.literal(lastKey));
+        Filter filter = query.getFilter();
+        Query seek = new Query(query);
+        seek.setFilter(filter == null || Filter.INCLUDE.equals(filter) ? after : ff.and(filter,
+                after));
+        seek.setStartIndex(null);
+        seek.setSortBy(new SortBy[] { SortBy.NATURAL_ORDER });
+        return seek;
+    }
+
+    /**
+     * Wraps the reader so that the primary key of the last feature is recorded once a full page
+     * has been read
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> record(
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader, String typeName,
+            Query query, JDBCDataStore dataStore, PrimaryKey key) {
+        int start = query.getStartIndex() != null ? query.getStartIndex() : 0;
+        List<Object> cursorKey = getKey(typeName, query, query.getFilter(),
+                start + query.getMaxFeatures());
+        return new RecordingReader(reader, cursorKey, query.getMaxFeatures(), dataStore, key);
+    }
+
+    class RecordingReader implements DelegatingFeatureReader<SimpleFeatureType, SimpleFeature> {
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> delegate;
+
+        List<Object> cursorKey;
+
+        int pageSize;
+
+        JDBCDataStore dataStore;
+
+        PrimaryKey key;
+
+        int count;
+
+        String lastId;
+
+        RecordingReader(FeatureReader<SimpleFeatureType, SimpleFeature> delegate,
+                List<Object> cursorKey, int pageSize, JDBCDataStore dataStore, PrimaryKey key) {
+            this.delegate = delegate;
+            this.cursorKey = cursorKey;
+            this.pageSize = pageSize;
+            this.dataStore = dataStore;
+            this.key = key;
+        }
+
+        public FeatureReader<SimpleFeatureType, SimpleFeature> getDelegate() {
+            return delegate;
+        }
+
+        public SimpleFeatureType getFeatureType() {
+            return delegate.getFeatureType();
+        }
+
+        public boolean hasNext() throws IOException {
+            return delegate.hasNext();
+        }
+
+        public SimpleFeature next() throws IOException, IllegalArgumentException,
+                NoSuchElementException {
+            SimpleFeature f = delegate.next();
+            lastId = f.getID();
+            count++;
+            return f;
+        }
+
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                if (count == pageSize && lastId != null) {
+                    try {
+                        Object value = dataStore.decodeFID(key, lastId, true).get(0);
+                        if (value != null) {
+                            put(cursorKey, value);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        // not a fid we can map back to a key value, the next page will
+                        // use an offset
+                    }
+                }
+            }
+        }
+    }
+}
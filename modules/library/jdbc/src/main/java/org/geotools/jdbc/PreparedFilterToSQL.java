@@ -56,6 +56,13 @@ public class PreparedFilterToSQL extends FilterToSQL {
     protected PreparedStatementSQLDialect dialect;
     boolean prepareEnabled = true;
     
+    /**
+     * for each literal value, the index of the {@link SQLTemplateCache.ParameterLiteral} it
+     * comes from (or -1), and the type it has been converted to
+     */
+    List<Integer> parameterLiterals = new ArrayList<Integer>();
+    List<Class> parameterTargets = new ArrayList<Class>();
+    
     /**
      * Default constructor
      * @deprecated Use {@link PreparedFilterToSQL(PreparedStatementSQLDialect)} instead
@@ -96,7 +103,17 @@ public class PreparedFilterToSQL extends FilterToSQL {
             return super.visit(expression, context);
         
         // evaluate the literal and store it for later
-        Object literalValue = evaluateLiteral( expression, (context instanceof Class ? (Class) context : null) );
+        Class target = context instanceof Class ? (Class) context : null;
+        Object literalValue;
+        if (expression instanceof SQLTemplateCache.ParameterLiteral) {
+            SQLTemplateCache.ParameterLiteral parameter = (SQLTemplateCache.ParameterLiteral) expression;
+            literalValue = evaluateLiteral( parameter.getDelegate(), target );
+            parameterLiterals.add(parameter.getIndex());
+        } else {
+            literalValue = evaluateLiteral( expression, target );
+            parameterLiterals.add(-1);
+        }
+        parameterTargets.add(target);
         literalValues.add(literalValue);
         SRIDs.add(currentSRID);
         
@@ -193,6 +210,19 @@ public class PreparedFilterToSQL extends FilterToSQL {
         return extraData;
     }
     
+    /**
+     * Evaluates and stores a literal value the same way {@link #visit(Literal, Object)} does,
+     * without encoding it. Used to bind the values of a cached statement.
+     */
+    Object bindParameter(Literal literal, Class target, Integer srid) {
+        Object literalValue = evaluateLiteral(literal, target);
+        literalValues.add(literalValue);
+        SRIDs.add(srid);
+        literalTypes.add(target != null ? target : 
+            (literalValue != null ? literalValue.getClass() : null));
+        return literalValue;
+    }
+    
     public List<Object> getLiteralValues() {
         return literalValues;
     }
@@ -26,6 +26,7 @@ import java.sql.SQLException;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -616,6 +617,24 @@ public abstract class SQLDialect {
         return null;
     }
 
+    /**
+     * Returns the number of rows in the table backing the feature type as estimated by the
+     * database statistics (e.g., the ones gathered for the query planner), or null if no 
+     * estimate is available. Used instead of a full count only when the caller explicitly 
+     * allowed approximate answers with the {@link Hints#ESTIMATED_STATISTICS} hint.
+     * 
+     * @param schema
+     *            The database schema, if any, or null
+     * @param featureType
+     *            The feature type whose table rows need to be counted
+     * @param cx
+     * @return the estimated number of rows, or null if unknown
+     */
+    public Long getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException, IOException {
+        return null;
+    }
+
     /**
      * Encodes the spatial extent function of a geometry column in a SELECT statement.
      * <p>
@@ -798,6 +817,43 @@ public abstract class SQLDialect {
         throw new UnsupportedOperationException("Geometry simplification not supported");
     }
 
+    /**
+     * Encodes a geometry column snapped to a grid whose cells are <code>cellSize</code> wide,
+     * dropping the vertices that end up in the same cell, in order to reduce the amount of data
+     * transferred when rendering.
+     * <p>
+     * Only called when the store has {@link JDBCDataStore#isLODPushdown() level of detail pushdown}
+     * enabled and {@link Hints#GEOMETRY_DISTANCE} is provided. The distance is a hint, the
+     * renderer still performs its own generalization on the returned geometries.
+     * </p>
+     * <p>
+     * This default implementation does not perform any reduction and simply delegates to
+     * {@link #encodeGeometryColumn(GeometryDescriptor, String, int, Hints, StringBuffer)}.
+     * </p>
+     */
+    public void encodeGeometryColumnSnapped(GeometryDescriptor gatt, String prefix, int srid,
+            Hints hints, StringBuffer sql, double cellSize) {
+        encodeGeometryColumn(gatt, prefix, srid, hints, sql);
+    }
+
+    /**
+     * Encodes a clause that returns a single feature per screen pixel among the ones smaller
+     * than a pixel, right after the <code>SELECT</code> keyword.
+     * <p>
+     * Only called when the store has {@link JDBCDataStore#isLODPushdown() level of detail pushdown}
+     * enabled, a {@link Hints#SCREENMAP} is provided and the query does not specify sorting or
+     * paging. The pixel size is expressed in the native units of the geometry column. Features
+     * larger than a pixel must all be returned.
+     * </p>
+     * <p>
+     * This default implementation does nothing, the thinning is then performed only on the client
+     * side, while reading the features.
+     * </p>
+     */
+    public void encodeScreenMapDistinct(GeometryDescriptor gatt, PrimaryKey key, double spanX,
+            double spanY, StringBuffer sql) {
+    }
+
     /**
      * Decodes a geometry value from the result of a query.
      * <p>
@@ -843,7 +899,37 @@ public abstract class SQLDialect {
         String columnName = rs.getMetaData().getColumnName( column );
         return decodeGeometryValue(descriptor, rs, columnName, factory, cx);
     }
-    
+
+    /**
+     * Reads the encoded value of a geometry column from the result of a query, without decoding
+     * it, so that the decoding can happen later on another thread by means of
+     * {@link #decodeGeometryValue(GeometryDescriptor, Object, GeometryFactory)}.
+     * <p>
+     * This method is used by pipelined readers, which drain the result set on one thread and
+     * decode geometries on others. The default implementation decodes the geometry right away
+     * and returns it. Dialects whose encoded values (e.g. WKB bytes) can be decoded without access
+     * to the result set or the connection should override both methods.
+     * </p>
+     */
+    public Object readGeometryValue(GeometryDescriptor descriptor, ResultSet rs, int column,
+            GeometryFactory factory, Connection cx) throws IOException, SQLException {
+        return decodeGeometryValue(descriptor, rs, column, factory, cx);
+    }
+
+    /**
+     * Decodes a geometry value read by
+     * {@link #readGeometryValue(GeometryDescriptor, ResultSet, int, GeometryFactory, Connection)}.
+     * <p>
+     * This method can be called concurrently from different threads. Implementations must handle
+     * <code>null</code> values. The default implementation expects the value to be a geometry
+     * already.
+     * </p>
+     */
+    public Geometry decodeGeometryValue(GeometryDescriptor descriptor, Object value,
+            GeometryFactory factory) throws IOException {
+        return (Geometry) value;
+    }
+
     /**
      * Encodes the primary key definition in a CREATE TABLE statement.
      * <p>
@@ -1106,6 +1192,34 @@ public abstract class SQLDialect {
         return null;
     }
     
+    /**
+     * Obtains several values of a sequence at once, used to compute the primary keys of the
+     * features loaded in bulk.
+     * <p>
+     * This implementation calls {@link #getNextSequenceValue(String, String, Connection)} 
+     * <tt>count</tt> times, subclasses should override if the database can allocate several 
+     * values in a single round trip.
+     * </p>
+     * @param schemaName The schema name, this might be <code>null</code>.
+     * @param sequenceName The name of the sequence.
+     * @param count The number of values to obtain
+     * @param cx The database connection.
+     *
+     * @return The next values of the sequence, or <code>null</code> if they can't be obtained.
+     */
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        List<Object> values = new ArrayList<Object>(count);
+        for (int i = 0; i < count; i++) {
+            Object value = getNextSequenceValue(schemaName, sequenceName, cx);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+    
     /**
      * Returns true if this dialect can encode both {@linkplain Query#getStartIndex()}
      * and {@linkplain Query#getMaxFeatures()} into native SQL. 
@@ -1168,4 +1282,22 @@ public abstract class SQLDialect {
     public boolean isAutoCommitQuery() {
         return false;
     }
+    
+    /**
+     * Prepares loading new features of the specified type in bulk, returning the loader that
+     * will be handed all the chunks of features added in a single call, or null if the dialect
+     * cannot load them in bulk.
+     * <p>
+     * The default implementation returns null, subclasses should override for databases 
+     * providing a faster way than INSERT statements to load many rows.
+     * </p>
+     * <p>
+     * The loader is given a direct connection to the database, but this connection
+     * should never be closed.
+     * </p>
+     */
+    public BulkLoader createBulkLoader(SimpleFeatureType featureType, PrimaryKey key,
+            Connection cx) throws SQLException {
+        return null;
+    }
 }
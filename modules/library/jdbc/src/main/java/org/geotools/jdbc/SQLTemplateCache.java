@@ -0,0 +1,488 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.filter.spatial.BBOXImpl;
+import org.geotools.renderer.ScreenMap;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.BinaryLogicOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.MultiValuedFilter.MatchAction;
+import org.opengis.filter.Not;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.opengis.filter.PropertyIsNull;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.ExpressionVisitor;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.spatial.BBOX3D;
+import org.opengis.filter.spatial.BinarySpatialOperator;
+import org.opengis.filter.spatial.Contains;
+import org.opengis.filter.spatial.Crosses;
+import org.opengis.filter.spatial.Disjoint;
+import org.opengis.filter.spatial.Equals;
+import org.opengis.filter.spatial.Intersects;
+import org.opengis.filter.spatial.Overlaps;
+import org.opengis.filter.spatial.Touches;
+import org.opengis.filter.spatial.Within;
+
+/**
+ * Caches the prepared SELECT statements generated for queries sharing the same structure, that
+ * is, the same feature type, properties, sorting, paging, encoding hints and filter, with the
+ * filter literals turned into statement parameters. A cache hit skips the SQL encoding and, since
+ * the statement text is identical, allows the connection pool to reuse the statement already
+ * prepared on the connection.
+ * <p>
+ * Only filters made of logic operators, comparisons and non distance based spatial operators
+ * between property names and literals are considered. The SQL generated for a shape is cached
+ * only if the filter encoder did not look at the literal values while building it (e.g. to
+ * sanitize a geography bounding box), as a different value might then generate a different
+ * statement.
+ * </p>
+ *
+ * @source $URL$
+ */
+class SQLTemplateCache {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    /**
+     * The hints that can alter the generated SQL
+     */
+    static final Hints.Key[] SQL_HINTS = new Hints.Key[] { Hints.FEATURE_2D,
+            Hints.GEOMETRY_GENERALIZATION, Hints.GEOMETRY_SIMPLIFICATION, Hints.GEOMETRY_DISTANCE,
+            Hints.VIRTUAL_TABLE_PARAMETERS };
+
+    /**
+     * The supported comparison and spatial operators, in lookup order
+     */
+    static final Class<?>[] OPERATORS = new Class<?>[] { PropertyIsEqualTo.class,
+            PropertyIsNotEqualTo.class, PropertyIsGreaterThan.class,
+            PropertyIsGreaterThanOrEqualTo.class, PropertyIsLessThan.class,
+            PropertyIsLessThanOrEqualTo.class, BBOX.class, Contains.class, Crosses.class,
+            Disjoint.class, Equals.class, Intersects.class, Overlaps.class, Touches.class,
+            Within.class };
+
+    /**
+     * Marks the query shapes whose SQL depends on the literal values
+     */
+    static final Template UNCACHEABLE = new Template(null, null, null);
+
+    final Map<String, Template> templates;
+
+    public SQLTemplateCache(final int maxSize) {
+        this.templates = new LinkedHashMap<String, Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized Template get(String key) {
+        return templates.get(key);
+    }
+
+    public synchronized void put(String key, Template template) {
+        templates.put(key, template);
+    }
+
+    public synchronized void clear() {
+        templates.clear();
+    }
+
+    /**
+     * Builds the key identifying the structure of the query, collecting the filter literals in
+     * <code>literals</code>. Returns null if the query cannot be cached.
+     */
+    public static String getKey(SimpleFeatureType featureType, Query query, List<Literal> literals) {
+        StringBuilder sb = new StringBuilder(featureType.getTypeName()).append('|');
+        for (AttributeDescriptor ad : featureType.getAttributeDescriptors()) {
+            sb.append(ad.getLocalName()).append(',');
+        }
+        sb.append('|');
+        if (query.getSortBy() != null) {
+            for (SortBy sort : query.getSortBy()) {
+                sb.append(sort.getPropertyName() == null ? null : sort.getPropertyName()
+                        .getPropertyName());
+                sb.append(' ').append(sort.getSortOrder()).append(',');
+            }
+        }
+        sb.append('|').append(query.getStartIndex()).append('|').append(query.getMaxFeatures());
+
+        Hints hints = query.getHints();
+        if (hints != null) {
+            for (Hints.Key key : SQL_HINTS) {
+                Object value = hints.get(key);
+                if (value instanceof Map) {
+                    // parameter maps are not ordered
+                    value = new TreeMap<Object, Object>((Map<?, ?>) value);
+                }
+                sb.append('|').append(value);
+            }
+            ScreenMap screenMap = (ScreenMap) hints.get(Hints.SCREENMAP);
+            if (screenMap != null) {
+                sb.append('|').append(screenMap.getSpanX()).append(',')
+                        .append(screenMap.getSpanY());
+            }
+        }
+
+        sb.append('|');
+        Filter filter = query.getFilter();
+        if (filter != null && !encodeShape(filter, sb, literals)) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    static boolean encodeShape(Filter filter, StringBuilder sb, List<Literal> literals) {
+        if (filter == Filter.INCLUDE) {
+            sb.append("INCLUDE");
+        } else if (filter == Filter.EXCLUDE) {
+            sb.append("EXCLUDE");
+        } else if (filter instanceof BinaryLogicOperator) {
+            sb.append(filter instanceof And ? "AND(" : "OR(");
+            for (Filter child : ((BinaryLogicOperator) filter).getChildren()) {
+                if (!encodeShape(child, sb, literals)) {
+                    return false;
+                }
+                sb.append(',');
+            }
+            sb.append(')');
+        } else if (filter instanceof Not) {
+            sb.append("NOT(");
+            if (!encodeShape(((Not) filter).getFilter(), sb, literals)) {
+                return false;
+            }
+            sb.append(')');
+        } else if (filter instanceof PropertyIsNull) {
+            sb.append("NULL(");
+            if (!encodeShape(((PropertyIsNull) filter).getExpression(), sb, literals)) {
+                return false;
+            }
+            sb.append(')');
+        } else if (filter instanceof PropertyIsBetween) {
+            PropertyIsBetween between = (PropertyIsBetween) filter;
+            sb.append("BETWEEN ").append(between.getMatchAction()).append('(');
+            if (!encodeShape(between.getExpression(), sb, literals)
+                    || !encodeShape(between.getLowerBoundary(), sb, literals)
+                    || !encodeShape(between.getUpperBoundary(), sb, literals)) {
+                return false;
+            }
+            sb.append(')');
+        } else if (filter instanceof BinarySpatialOperator) {
+            // spatial operators are checked first, the GeoTools ones are also comparisons
+            Class<?> operator = getOperator(filter);
+            if (operator == null || filter instanceof BBOX3D) {
+                return false;
+            }
+            BinarySpatialOperator op = (BinarySpatialOperator) filter;
+            sb.append(operator.getSimpleName()).append(' ').append(op.getMatchAction())
+                    .append('(');
+            if (!encodeShape(op.getExpression1(), sb, literals)
+                    || !encodeShape(op.getExpression2(), sb, literals)) {
+                return false;
+            }
+            sb.append(')');
+        } else if (filter instanceof BinaryComparisonOperator) {
+            Class<?> operator = getOperator(filter);
+            if (operator == null) {
+                return false;
+            }
+            BinaryComparisonOperator op = (BinaryComparisonOperator) filter;
+            sb.append(operator.getSimpleName()).append(' ').append(op.isMatchingCase())
+                    .append(' ').append(op.getMatchAction()).append('(');
+            if (!encodeShape(op.getExpression1(), sb, literals)
+                    || !encodeShape(op.getExpression2(), sb, literals)) {
+                return false;
+            }
+            sb.append(')');
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    static boolean encodeShape(Expression expression, StringBuilder sb, List<Literal> literals) {
+        if (expression instanceof PropertyName) {
+            sb.append('[').append(((PropertyName) expression).getPropertyName()).append(']');
+        } else if (expression instanceof Literal) {
+            Object value = ((Literal) expression).getValue();
+            sb.append('?').append(value == null ? null : value.getClass().getName());
+            literals.add((Literal) expression);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    static Class<?> getOperator(Filter filter) {
+        for (Class<?> operator : OPERATORS) {
+            if (operator.isInstance(filter)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds a filter accepted by {@link #getKey(SimpleFeatureType, Query, List)} replacing
+     * its literals with {@link ParameterLiteral}, in the same order they have been collected
+     */
+    public static Filter parameterize(Filter filter, Parameters parameters) {
+        Filter result = rebuild(filter, parameters);
+        // the filter constructors can look at the literals, only the encoder cannot
+        parameters.tracking = true;
+        return result;
+    }
+
+    static Filter rebuild(Filter filter, Parameters parameters) {
+        if (filter == Filter.INCLUDE || filter == Filter.EXCLUDE) {
+            return filter;
+        } else if (filter instanceof BinaryLogicOperator) {
+            List<Filter> children = new ArrayList<Filter>();
+            for (Filter child : ((BinaryLogicOperator) filter).getChildren()) {
+                children.add(rebuild(child, parameters));
+            }
+            return filter instanceof And ? FF.and(children) : FF.or(children);
+        } else if (filter instanceof Not) {
+            return FF.not(rebuild(((Not) filter).getFilter(), parameters));
+        } else if (filter instanceof PropertyIsNull) {
+            return FF.isNull(parameterize(((PropertyIsNull) filter).getExpression(), parameters));
+        } else if (filter instanceof PropertyIsBetween) {
+            PropertyIsBetween between = (PropertyIsBetween) filter;
+            Expression expression = parameterize(between.getExpression(), parameters);
+            Expression lower = parameterize(between.getLowerBoundary(), parameters);
+            Expression upper = parameterize(between.getUpperBoundary(), parameters);
+            return FF.between(expression, lower, upper, between.getMatchAction());
+        } else if (filter instanceof BinarySpatialOperator) {
+            BinarySpatialOperator op = (BinarySpatialOperator) filter;
+            Expression e1 = parameterize(op.getExpression1(), parameters);
+            Expression e2 = parameterize(op.getExpression2(), parameters);
+            MatchAction ma = op.getMatchAction();
+            Class<?> operator = getOperator(filter);
+            if (operator == BBOX.class) {
+                return new BBOXImpl(FF, e1, e2, ma);
+            } else if (operator == Contains.class) {
+                return FF.contains(e1, e2, ma);
+            } else if (operator == Crosses.class) {
+                return FF.crosses(e1, e2, ma);
+            } else if (operator == Disjoint.class) {
+                return FF.disjoint(e1, e2, ma);
+            } else if (operator == Equals.class) {
+                return FF.equal(e1, e2, ma);
+            } else if (operator == Intersects.class) {
+                return FF.intersects(e1, e2, ma);
+            } else if (operator == Overlaps.class) {
+                return FF.overlaps(e1, e2, ma);
+            } else if (operator == Touches.class) {
+                return FF.touches(e1, e2, ma);
+            } else {
+                return FF.within(e1, e2, ma);
+            }
+        } else {
+            BinaryComparisonOperator op = (BinaryComparisonOperator) filter;
+            Expression e1 = parameterize(op.getExpression1(), parameters);
+            Expression e2 = parameterize(op.getExpression2(), parameters);
+            boolean mc = op.isMatchingCase();
+            MatchAction ma = op.getMatchAction();
+            Class<?> operator = getOperator(filter);
+            if (operator == PropertyIsEqualTo.class) {
+                return FF.equal(e1, e2, mc, ma);
+            } else if (operator == PropertyIsNotEqualTo.class) {
+                return FF.notEqual(e1, e2, mc, ma);
+            } else if (operator == PropertyIsGreaterThan.class) {
+                return FF.greater(e1, e2, mc, ma);
+            } else if (operator == PropertyIsGreaterThanOrEqualTo.class) {
+                return FF.greaterOrEqual(e1, e2, mc, ma);
+            } else if (operator == PropertyIsLessThan.class) {
+                return FF.less(e1, e2, mc, ma);
+            } else {
+                return FF.lessOrEqual(e1, e2, mc, ma);
+            }
+        }
+    }
+
+    static Expression parameterize(Expression expression, Parameters parameters) {
+        if (expression instanceof Literal) {
+            return new ParameterLiteral(parameters.count++, (Literal) expression, parameters);
+        }
+        return expression;
+    }
+
+    /**
+     * Builds the template for the statement generated out of a parameterized filter, or returns
+     * {@link #UNCACHEABLE} if the statement depends on the literal values
+     */
+    public static Template createTemplate(String sql, PreparedFilterToSQL toSQL,
+            Parameters parameters, int literalCount) {
+        if (toSQL == null) {
+            return literalCount == 0 ? new Template(sql, null, null) : UNCACHEABLE;
+        }
+        if (parameters == null || parameters.valueDependent || parameters.count != literalCount
+                || toSQL.parameterLiterals.size() != toSQL.getLiteralValues().size()
+                || toSQL.parameterLiterals.contains(-1)) {
+            return UNCACHEABLE;
+        }
+        return new Template(sql, toSQL, toSQL.parameterLiterals);
+    }
+
+    /**
+     * Tracks the parameterization of a filter
+     */
+    static class Parameters {
+        int count;
+
+        boolean tracking;
+
+        boolean valueDependent;
+    }
+
+    /**
+     * A literal standing for a statement parameter. The filter encoders are supposed to only visit
+     * it, accessing its value marks the encoded statement as dependent on the literal values.
+     */
+    static class ParameterLiteral implements Literal {
+
+        final int index;
+
+        final Literal delegate;
+
+        final Parameters parameters;
+
+        ParameterLiteral(int index, Literal delegate, Parameters parameters) {
+            this.index = index;
+            this.delegate = delegate;
+            this.parameters = parameters;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Literal getDelegate() {
+            return delegate;
+        }
+
+        void accessed() {
+            if (parameters.tracking) {
+                parameters.valueDependent = true;
+            }
+        }
+
+        public Object getValue() {
+            accessed();
+            return delegate.getValue();
+        }
+
+        public Object evaluate(Object object) {
+            accessed();
+            return delegate.evaluate(object);
+        }
+
+        public <T> T evaluate(Object object, Class<T> context) {
+            accessed();
+            return delegate.evaluate(object, context);
+        }
+
+        public Object accept(ExpressionVisitor visitor, Object extraData) {
+            return visitor.visit(this, extraData);
+        }
+
+        @Override
+        public String toString() {
+            accessed();
+            return delegate.toString();
+        }
+    }
+
+    /**
+     * The SQL generated for a query shape, along with the information needed to bind the literals
+     * of another query with the same shape
+     */
+    static class Template {
+        final String sql;
+
+        final int[] literals;
+
+        final Class[] targets;
+
+        final Integer[] srids;
+
+        final Class[] valueClasses;
+
+        Template(String sql, PreparedFilterToSQL toSQL, List<Integer> parameterLiterals) {
+            this.sql = sql;
+            int count = toSQL == null ? 0 : parameterLiterals.size();
+            this.literals = new int[count];
+            this.targets = new Class[count];
+            this.srids = new Integer[count];
+            this.valueClasses = new Class[count];
+            for (int i = 0; i < count; i++) {
+                literals[i] = parameterLiterals.get(i);
+                targets[i] = toSQL.parameterTargets.get(i);
+                srids[i] = toSQL.getSRIDs().get(i);
+                Object value = toSQL.getLiteralValues().get(i);
+                valueClasses[i] = value == null ? null : value.getClass();
+            }
+        }
+
+        public String getSQL() {
+            return sql;
+        }
+
+        /**
+         * Evaluates the literals of a query with the same shape as the one that generated the
+         * template. Returns null if the evaluated values are not compatible with the template
+         * statement.
+         */
+        public PreparedFilterToSQL bind(PreparedStatementSQLDialect dialect,
+                List<Literal> queryLiterals) {
+            PreparedFilterToSQL toSQL = new PreparedFilterToSQL(dialect);
+            for (int i = 0; i < literals.length; i++) {
+                Object value = toSQL.bindParameter(queryLiterals.get(literals[i]), targets[i],
+                        srids[i]);
+                Class valueClass = value == null ? null : value.getClass();
+                if (valueClass != valueClasses[i]) {
+                    return null;
+                }
+            }
+            return toSQL;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+
+/**
+ * Keeps the estimated row counts and the optimized bounds of the tables for a limited time, so
+ * that repeated requests do not hit the database catalogs over and over. The entries of a table
+ * are dropped when its features are modified through the store.
+ *
+ * @see JDBCDataStore#setStatisticsCacheTTL(int)
+ * @source $URL$
+ */
+class TableStatistics {
+
+    static class Entry<T> {
+        final T value;
+
+        final long expires;
+
+        Entry(T value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    final long timeToLive;
+
+    Map<String, Entry<Long>> counts = new ConcurrentHashMap<String, Entry<Long>>();
+
+    Map<String, Entry<List<ReferencedEnvelope>>> bounds = new ConcurrentHashMap<String, Entry<List<ReferencedEnvelope>>>();
+
+    /**
+     * @param timeToLive how long the entries are kept, in milliseconds
+     */
+    TableStatistics(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the cached row count of the table, or null if missing or expired
+     */
+    Long getCount(String typeName) {
+        return get(counts, typeName);
+    }
+
+    void putCount(String typeName, Long count) {
+        counts.put(typeName, new Entry<Long>(count, System.currentTimeMillis() + timeToLive));
+    }
+
+    /**
+     * Returns a copy of the cached bounds of the table, or null if missing or expired
+     */
+    List<ReferencedEnvelope> getBounds(String typeName) {
+        List<ReferencedEnvelope> envelopes = get(bounds, typeName);
+        return envelopes != null ? copy(envelopes) : null;
+    }
+
+    void putBounds(String typeName, List<ReferencedEnvelope> envelopes) {
+        bounds.put(typeName, new Entry<List<ReferencedEnvelope>>(copy(envelopes),
+                System.currentTimeMillis() + timeToLive));
+    }
+
+    /**
+     * Drops the entries of the specified feature type
+     */
+    void clear(String typeName) {
+        counts.remove(typeName);
+        bounds.remove(typeName);
+    }
+
+    <T> T get(Map<String, Entry<T>> map, String typeName) {
+        Entry<T> entry = map.get(typeName);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            map.remove(typeName);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * The envelopes get expanded while merged, so the cache never hands out its own instances
+     */
+    List<ReferencedEnvelope> copy(List<ReferencedEnvelope> envelopes) {
+        List<ReferencedEnvelope> result = new ArrayList<ReferencedEnvelope>(envelopes.size());
+        for (ReferencedEnvelope envelope : envelopes) {
+            result.add(envelope != null ? new ReferencedEnvelope(envelope) : null);
+        }
+        return result;
+    }
+}
@@ -16,11 +16,33 @@
  */
 package org.geotools.jdbc;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
 import org.geotools.data.DefaultQuery;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
 import org.geotools.data.Transaction;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
+import org.geotools.renderer.ScreenMap;
+import org.geotools.util.logging.Logging;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
@@ -46,4 +68,270 @@ public abstract class JDBCFeatureReaderTest extends JDBCTestSupport {
         reader.close();
     }
 
+    public void testLODPushdownScreenMap() throws Exception {
+        // all the ft1 points fall in the same pixel
+        ScreenMap screenMap = new ScreenMap(0, 0, 10, 10, 
+                new AffineTransform2D(0.1, 0, 0, 0.1, 0, 0));
+        screenMap.setSpans(1, 1);
+        Hints hints = new Hints(Hints.SCREENMAP, screenMap);
+        hints.put(Hints.GEOMETRY_DISTANCE, 1d);
+        DefaultQuery query = new DefaultQuery( tname("ft1") );
+        query.setHints(hints);
+        
+        // without the pushdown the screenmap is not considered
+        assertFalse( dataStore.getFeatureSource(tname("ft1")).getSupportedHints()
+                .contains(Hints.SCREENMAP) );
+        assertEquals( 3, count(query) );
+
+        dataStore.setLODPushdown(true);
+        try {
+            assertTrue( dataStore.getFeatureSource(tname("ft1")).getSupportedHints()
+                    .contains(Hints.SCREENMAP) );
+            assertEquals( 1, count(query) );
+        } finally {
+            dataStore.setLODPushdown(false);
+        }
+    }
+    
+    public void testSQLTemplateCache() throws Exception {
+        if (!(dataStore.getSQLDialect() instanceof PreparedStatementSQLDialect)) {
+            return;
+        }
+        
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(null);
+        dataStore.setSQLTemplateCacheSize(10);
+        try {
+            // same structure, different literals, the second query reuses the sql
+            DefaultQuery query = new DefaultQuery( tname("ft1") );
+            query.setFilter( ff.bbox(aname("geometry"), -1, -1, 0.5, 0.5, "EPSG:4326") );
+            assertEquals( 1, count(query) );
+            query.setFilter( ff.bbox(aname("geometry"), 0.5, 0.5, 2.5, 2.5, "EPSG:4326") );
+            assertEquals( 2, count(query) );
+            assertEquals( 1, dataStore.sqlTemplates.templates.size() );
+            
+            Filter bbox = ff.bbox(aname("geometry"), -1, -1, 2.5, 2.5, "EPSG:4326");
+            query.setFilter( ff.and(bbox, ff.equals(ff.property(aname("intProperty")), ff.literal(1))) );
+            assertEquals( 1, count(query) );
+            query.setFilter( ff.and(bbox, ff.equals(ff.property(aname("intProperty")), ff.literal(2))) );
+            assertEquals( 1, count(query) );
+            query.setFilter( ff.and(bbox, ff.equals(ff.property(aname("intProperty")), ff.literal(5))) );
+            assertEquals( 0, count(query) );
+            assertEquals( 2, dataStore.sqlTemplates.templates.size() );
+        } finally {
+            dataStore.setSQLTemplateCacheSize(0);
+        }
+    }
+    
+    int count(Query query) throws Exception {
+        int count = 0;
+        FeatureReader reader = dataStore.getFeatureReader( query, Transaction.AUTO_COMMIT );
+        try {
+            while( reader.hasNext() ) {
+                reader.next();
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    public void testKeysetPaging() throws Exception {
+        if (!dataStore.getSQLDialect().isLimitOffsetSupported()) {
+            return;
+        }
+        
+        // page through using offsets first
+        List<String> expected = readPages(tname("ft1"), 1);
+        assertEquals(3, expected.size());
+        
+        // unsorted pages are left alone, the database decides their order
+        dataStore.setKeysetPaging(true);
+        try {
+            DefaultQuery unsorted = new DefaultQuery(tname("ft1"));
+            unsorted.setMaxFeatures(1);
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(
+                    unsorted, Transaction.AUTO_COMMIT);
+            try {
+                while (reader.hasNext()) {
+                    reader.next();
+                }
+            } finally {
+                reader.close();
+            }
+            assertEquals(0, dataStore.keysetPaging.cursors.size());
+            
+            // the first pass records the last key of each page, the second one seeks to them
+            assertEquals(expected, readPages(tname("ft1"), 1));
+            assertEquals(3, dataStore.keysetPaging.cursors.size());
+            
+            final List<String> statements = new ArrayList<String>();
+            Handler handler = new Handler() {
+                public void publish(LogRecord record) {
+                    String message = record.getMessage();
+                    if (message != null && message.trim().toUpperCase().startsWith("SELECT")) {
+                        statements.add(message);
+                    }
+                }
+                
+                public void flush() {
+                }
+                
+                public void close() {
+                }
+            };
+            Logger logger = Logging.getLogger(dataStore.getClass().getPackage().getName());
+            Level level = logger.getLevel();
+            logger.setLevel(Level.FINE);
+            logger.addHandler(handler);
+            try {
+                assertEquals(expected, readPages(tname("ft1"), 1));
+            } finally {
+                logger.removeHandler(handler);
+                logger.setLevel(level);
+            }
+            
+            // all the pages but the first started after the previous key
+            String pk = dataStore.getPrimaryKey(dataStore.getSchema(tname("ft1"))).getColumns()
+                    .get(0).getName();
+            Pattern seek = Pattern.compile(".*" + Pattern.quote(pk) + "\\W*>.*",
+                    Pattern.DOTALL);
+            int seeks = 0;
+            for (String sql : statements) {
+                if (seek.matcher(sql).matches()) {
+                    seeks++;
+                }
+            }
+            assertEquals(statements.toString(), 3, seeks);
+            
+            // writes through the store invalidate the cursors
+            SimpleFeatureStore store = (SimpleFeatureStore) dataStore.getFeatureSource(tname("ft1"));
+            FilterFactory ff = dataStore.getFilterFactory();
+            store.modifyFeatures(aname("stringProperty"), "zero", ff.id(Collections
+                    .singleton(ff.featureId(expected.get(0)))));
+            assertEquals(0, dataStore.keysetPaging.cursors.size());
+            
+            assertEquals(expected, readPages(tname("ft1"), 1));
+            assertEquals(3, dataStore.keysetPaging.cursors.size());
+            store.removeFeatures(ff.id(Collections.singleton(ff.featureId(expected.get(2)))));
+            assertEquals(0, dataStore.keysetPaging.cursors.size());
+            assertEquals(expected.subList(0, 2), readPages(tname("ft1"), 1));
+        } finally {
+            dataStore.setKeysetPaging(false);
+        }
+    }
+    
+    List<String> readPages(String typeName, int pageSize) throws Exception {
+        List<String> ids = new ArrayList<String>();
+        for (int start = 0;; start += pageSize) {
+            DefaultQuery query = new DefaultQuery(typeName);
+            query.setSortBy(new SortBy[] { SortBy.NATURAL_ORDER });
+            query.setStartIndex(start);
+            query.setMaxFeatures(pageSize);
+            int read = 0;
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(
+                    query, Transaction.AUTO_COMMIT);
+            try {
+                while (reader.hasNext()) {
+                    ids.add(reader.next().getID());
+                    read++;
+                }
+            } finally {
+                reader.close();
+            }
+            if (read < pageSize) {
+                return ids;
+            }
+        }
+    }
+
+    public void testPartitionedScan() throws Exception {
+        Set<String> expected = new HashSet<String>(readPages(tname("ft1"), Integer.MAX_VALUE));
+        assertEquals(3, expected.size());
+        
+        dataStore.setScanPartitions(3);
+        dataStore.setScanPartitionMinSize(1);
+        try {
+            JDBCFeatureSource source = dataStore.getAbsoluteFeatureSource(tname("ft1"));
+            List<Filter> partitions = source.getScanPartitions(new DefaultQuery(tname("ft1")));
+            if (partitions == null) {
+                // not an integral primary key
+                return;
+            }
+            assertEquals(3, partitions.size());
+            
+            Set<String> ids = new HashSet<String>();
+            FeatureReader<SimpleFeatureType, SimpleFeature> reader = dataStore.getFeatureReader(
+                    new DefaultQuery(tname("ft1")), Transaction.AUTO_COMMIT);
+            try {
+                while (reader.hasNext()) {
+                    assertTrue(ids.add(reader.next().getID()));
+                }
+            } finally {
+                reader.close();
+            }
+            assertEquals(expected, ids);
+            
+            // sorted reads are not split
+            DefaultQuery sorted = new DefaultQuery(tname("ft1"));
+            sorted.setSortBy(new SortBy[] { SortBy.NATURAL_ORDER });
+            assertNull(source.getScanPartitions(sorted));
+        } finally {
+            dataStore.setScanPartitions(1);
+        }
+    }
+    
+    public void testPipelinedRead() throws Exception {
+        Query query = new DefaultQuery( tname("ft1") );
+        Set<String> expected = new HashSet<String>();
+        FeatureReader reader = dataStore.getFeatureReader( query, Transaction.AUTO_COMMIT );
+        while( reader.hasNext() ) {
+            expected.add( ((SimpleFeature) reader.next()).getID() );
+        }
+        reader.close();
+
+        int fetchSize = dataStore.getFetchSize();
+        dataStore.setPipelinedReads(true);
+        // force several batches
+        dataStore.setFetchSize(1);
+        try {
+            reader = dataStore.getFeatureReader( query, Transaction.AUTO_COMMIT );
+            assertTrue( reader instanceof JDBCPipelinedFeatureReader );
+            Set<String> actual = new HashSet<String>();
+            while( reader.hasNext() ) {
+                SimpleFeature feature = (SimpleFeature) reader.next();
+                Geometry g = (Geometry) feature.getDefaultGeometry();
+                assertNotNull( g );
+                assertTrue( g.getUserData() instanceof CoordinateReferenceSystem );
+                actual.add( feature.getID() );
+            }
+            reader.close();
+            assertEquals( expected, actual );
+        } finally {
+            dataStore.setPipelinedReads(false);
+            dataStore.setFetchSize(fetchSize);
+        }
+    }
+
+    public void testPipelinedEarlyClose() throws Exception {
+        int fetchSize = dataStore.getFetchSize();
+        dataStore.setPipelinedReads(true);
+        dataStore.setFetchSize(1);
+        try {
+            Query query = new DefaultQuery( tname("ft1") );
+            FeatureReader reader = dataStore.getFeatureReader( query, Transaction.AUTO_COMMIT );
+            assertTrue( reader.hasNext() );
+            assertNotNull( reader.next() );
+            reader.close();
+            
+            // the connection has been released and the store is still usable
+            reader = dataStore.getFeatureReader( query, Transaction.AUTO_COMMIT );
+            assertTrue( reader.hasNext() );
+            reader.close();
+        } finally {
+            dataStore.setPipelinedReads(false);
+            dataStore.setFetchSize(fetchSize);
+        }
+    }
+
 }
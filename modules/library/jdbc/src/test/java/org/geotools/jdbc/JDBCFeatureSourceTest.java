@@ -126,6 +126,25 @@ public abstract class JDBCFeatureSourceTest extends JDBCTestSupport {
         assertEquals(1, featureSource.getCount(query));
     }
     
+    public void testEstimatedCount() throws Exception {
+        assertTrue(featureSource.getSupportedHints().contains(Hints.ESTIMATED_STATISTICS));
+        dataStore.setStatisticsCacheTTL(60);
+        try {
+            // tables this small are either analyzed or fall back on the exact count
+            Query query = new Query();
+            query.setHints(new Hints(Hints.ESTIMATED_STATISTICS, Boolean.TRUE));
+            assertEquals(3, featureSource.getCount(query));
+            assertEquals(3, featureSource.getCount(query));
+
+            // filtered counts are never estimated
+            FilterFactory ff = dataStore.getFilterFactory();
+            query.setFilter(ff.equals(ff.property(aname("stringProperty")), ff.literal("one")));
+            assertEquals(1, featureSource.getCount(query));
+        } finally {
+            dataStore.setStatisticsCacheTTL(0);
+        }
+    }
+
     public void testGetFeatures() throws Exception {
         SimpleFeatureCollection features = featureSource.getFeatures();
         assertEquals(3, features.size());
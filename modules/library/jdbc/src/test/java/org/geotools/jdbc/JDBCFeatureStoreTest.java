@@ -112,6 +112,48 @@ public abstract class JDBCFeatureStoreTest extends JDBCTestSupport {
         }
     }
     
+    public void testAddFeaturesBulkLoad() throws IOException {
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder(featureStore.getSchema());
+        DefaultFeatureCollection collection = new DefaultFeatureCollection(null,
+                featureStore.getSchema());
+        for (int i = 3; i < 8; i++) {
+            b.set(aname("intProperty"), new Integer(i));
+            b.set(aname("geometry"), new GeometryFactory().createPoint(new Coordinate(i, i)));
+            collection.add(b.buildFeature(null));
+        }
+        
+        // load in chunks of two features, falls back on inserts if bulk loads are not supported
+        Transaction t = new DefaultTransaction();
+        t.putProperty(JDBCDataStore.BULK_LOAD, 2);
+        List<FeatureId> fids;
+        try {
+            featureStore.setTransaction(t);
+            fids = featureStore.addFeatures((SimpleFeatureCollection) collection);
+            t.commit();
+        } finally {
+            t.close();
+            featureStore.setTransaction(Transaction.AUTO_COMMIT);
+        }
+        assertEquals(5, fids.size());
+        assertEquals(5, new HashSet<FeatureId>(fids).size());
+        assertEquals(8, featureStore.getFeatures().size());
+
+        FilterFactory ff = dataStore.getFilterFactory();
+        for (int i = 0; i < fids.size(); i++) {
+            SimpleFeatureIterator iterator = featureStore.getFeatures(
+                    ff.id(Collections.singleton(fids.get(i)))).features();
+            try {
+                assertTrue(iterator.hasNext());
+                SimpleFeature feature = iterator.next();
+                assertEquals(fids.get(i).getID(), feature.getID());
+                assertEquals(i + 3, ((Number) feature.getAttribute(aname("intProperty"))).intValue());
+                assertEquals(i + 3, ((Point) feature.getDefaultGeometry()).getX(), 0d);
+            } finally {
+                iterator.close();
+            }
+        }
+    }
+    
     public void testAddFeaturesUseProvidedFid() throws IOException {
         // check we advertise the ability to reuse feature ids
         assertTrue(featureStore.getQueryCapabilities().isUseProvidedFIDSupported());
@@ -0,0 +1,232 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ows;
+
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * The connection limits and request statistics shared by the {@link HTTPClient}
+ * implementations used by the {@link AbstractOpenWebService} subclasses.
+ * <p>
+ * This class does not hold connections itself, the pooling is left to the clients:
+ * <ul>
+ * <li>{@link SimpleHttpClient} keeps the connections alive and fully consumes the responses once
+ * done with them, so that the JDK keep-alive cache reuses the sockets (and the TLS sessions) for
+ * the following requests to the same host. The number of concurrent requests to each host is
+ * limited with permits handed out here, a request waiting at most for the connect timeout for
+ * its turn.</li>
+ * <li>The Apache commons based clients share a single connection manager, limited to
+ * {@link #getMaxConnections()} connections overall and {@link #getMaxConnectionsPerHost()} per
+ * host.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The defaults can be set with the following system properties:
+ * <ul>
+ * <li>{@code org.geotools.http.maxConnectionsPerHost}: the maximum number of concurrent requests
+ * to a single host, 0 (the default) means no limit</li>
+ * <li>{@code org.geotools.http.maxConnections}: the maximum number of pooled connections for the
+ * clients that manage their own pool, 20 by default</li>
+ * </ul>
+ * </p>
+ *
+ * @source $URL$
+ */
+public class HTTPConnectionPool {
+
+    static final Logger LOGGER = Logging.getLogger(HTTPConnectionPool.class);
+
+    static final HTTPConnectionPool DEFAULT = new HTTPConnectionPool(Integer.getInteger(
+            "org.geotools.http.maxConnectionsPerHost", 0), Integer.getInteger(
+            "org.geotools.http.maxConnections", 20));
+
+    /**
+     * Returns the pool shared by default by all the HTTP clients
+     */
+    public static HTTPConnectionPool getDefault() {
+        return DEFAULT;
+    }
+
+    private volatile int maxConnectionsPerHost;
+
+    private volatile int maxConnections;
+
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong responseTime = new AtomicLong();
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    public HTTPConnectionPool(int maxConnectionsPerHost, int maxConnections) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return the maximum number of concurrent requests to a single host, 0 if not limited
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests to a single host. Only affects the hosts
+     * not contacted yet, and the shared connection manager of the commons based clients once
+     * the next client is created; a value of 0 or less removes the limit.
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        hostPermits.clear();
+    }
+
+    /**
+     * @return the maximum number of connections pooled by the clients managing their own pool
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections pooled by the clients managing their own pool,
+     * applied to their shared connection manager once the next client is created
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Waits for the turn of a request to the host of the specified URL.
+     *
+     * @param timeout the maximum time to wait, in seconds
+     * @return the permit to hand back with {@link #release(Semaphore)} once the response is
+     *         consumed, or null if the host is not limited or no permit got available in time
+     */
+    Semaphore acquire(URL url, int timeout) {
+        int max = maxConnectionsPerHost;
+        if (max <= 0) {
+            return null;
+        }
+
+        String host = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(max, true);
+            permits = hostPermits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        try {
+            if (permits.tryAcquire(timeout > 0 ? timeout : Integer.MAX_VALUE, TimeUnit.SECONDS)) {
+                return permits;
+            }
+            // most likely a response that was never disposed, do not block forever on it
+            LOGGER.log(Level.WARNING, "Timed out waiting for a connection to " + host
+                    + ", going on without");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    void release(Semaphore permit) {
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    /**
+     * Records the beginning of a request
+     *
+     * @return the start time to pass to {@link #requestCompleted(long, boolean)}
+     */
+    public long requestStarted() {
+        activeRequests.incrementAndGet();
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Records the end of a request, that is, the time the response headers got back
+     */
+    public void requestCompleted(long start, boolean success) {
+        activeRequests.decrementAndGet();
+        requests.incrementAndGet();
+        if (!success) {
+            failures.incrementAndGet();
+        }
+        responseTime.addAndGet(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return the number of requests executed so far
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests that failed or returned an HTTP error code
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of requests waiting for the response headers right now
+     */
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    /**
+     * @return the total time spent waiting for the response headers, in milliseconds
+     */
+    public long getTotalResponseTime() {
+        return responseTime.get();
+    }
+
+    /**
+     * @return the average time spent waiting for the response headers, in milliseconds
+     */
+    public double getAverageResponseTime() {
+        long count = requests.get();
+        return count > 0 ? responseTime.get() / (double) count : 0;
+    }
+
+    /**
+     * Resets the request statistics
+     */
+    public void resetStatistics() {
+        requests.set(0);
+        failures.set(0);
+        responseTime.set(0);
+    }
+}
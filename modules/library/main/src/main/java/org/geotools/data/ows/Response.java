@@ -64,6 +64,13 @@ public abstract class Response {
         return httpResponse.getContentType();
     }
 
+    /**
+     * Returns the value of the specified HTTP response header, or null if missing
+     */
+    public String getResponseHeader(String headerName) {
+        return httpResponse.getResponseHeader(headerName);
+    }
+
     /**
      * Returns the InputStream that contains the response from the server. 
      * The contents of this stream vary according to the type of request
@@ -16,19 +16,28 @@
  */
 package org.geotools.data.ows;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.concurrent.Semaphore;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.geotools.data.Base64;
 
 /**
  * A simple {@link HTTPClient} that creates a new {@link HttpURLConnection HTTP connection} for each
  * request.
+ * <p>
+ * The connections are not closed once the response is disposed, but left to the JVM keep-alive
+ * cache so that the following requests to the same host reuse the socket. The concurrent requests
+ * per host and the request statistics are governed by the {@link HTTPConnectionPool}.
+ * </p>
  * 
  * @author groldan
  * 
@@ -47,6 +56,20 @@ public class SimpleHttpClient implements HTTPClient {
 
     private boolean tryGzip = true;
 
+    private HTTPConnectionPool connectionPool = HTTPConnectionPool.getDefault();
+
+    /**
+     * @return the pool governing the concurrent requests per host and collecting the request
+     *         statistics
+     */
+    public HTTPConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public void setConnectionPool(HTTPConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
     @Override
     public String getUser() {
         return user;
@@ -92,14 +115,26 @@ public class SimpleHttpClient implements HTTPClient {
      */
     public HTTPResponse get(final URL url) throws IOException {
 
-        URLConnection connection = openConnection(url);
-        if(connection instanceof HttpURLConnection){
-            ((HttpURLConnection) connection).setRequestMethod("GET");
-        }
+        final Semaphore permit = connectionPool.acquire(url, getConnectTimeout());
+        final long start = connectionPool.requestStarted();
+        boolean success = false;
+        try {
+            URLConnection connection = openConnection(url);
+            if(connection instanceof HttpURLConnection){
+                ((HttpURLConnection) connection).setRequestMethod("GET");
+            }
 
-        connection.connect();
+            connection.connect();
 
-        return new SimpleHTTPResponse(connection);
+            HTTPResponse response = new SimpleHTTPResponse(connection, connectionPool, permit);
+            success = true;
+            return response;
+        } finally {
+            connectionPool.requestCompleted(start, success);
+            if (!success) {
+                connectionPool.release(permit);
+            }
+        }
     }
 
     /**
@@ -109,36 +144,48 @@ public class SimpleHttpClient implements HTTPClient {
     public HTTPResponse post(final URL url, final InputStream postContent,
             final String postContentType) throws IOException {
 
-        URLConnection connection = openConnection(url);
-        if (connection instanceof HttpURLConnection) {
-            ((HttpURLConnection) connection).setRequestMethod("POST");
-        }
-        connection.setDoOutput(true);
-        if (postContentType != null) {
-            connection.setRequestProperty("Content-type", postContentType);
-        }
+        final Semaphore permit = connectionPool.acquire(url, getConnectTimeout());
+        final long start = connectionPool.requestStarted();
+        boolean success = false;
+        try {
+            URLConnection connection = openConnection(url);
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).setRequestMethod("POST");
+            }
+            connection.setDoOutput(true);
+            if (postContentType != null) {
+                connection.setRequestProperty("Content-type", postContentType);
+            }
 
-        connection.connect();
+            connection.connect();
 
-        OutputStream outputStream = connection.getOutputStream();
-        try {
-            byte[] buff = new byte[512];
-            int count;
-            while ((count = postContent.read(buff)) > -1) {
-                outputStream.write(buff, 0, count);
+            OutputStream outputStream = connection.getOutputStream();
+            try {
+                byte[] buff = new byte[4096];
+                int count;
+                while ((count = postContent.read(buff)) > -1) {
+                    outputStream.write(buff, 0, count);
+                }
+            } finally {
+                outputStream.flush();
+                outputStream.close();
             }
+
+            HTTPResponse response = new SimpleHTTPResponse(connection, connectionPool, permit);
+            success = true;
+            return response;
         } finally {
-            outputStream.flush();
-            outputStream.close();
+            connectionPool.requestCompleted(start, success);
+            if (!success) {
+                connectionPool.release(permit);
+            }
         }
-
-        return new SimpleHTTPResponse(connection);
     }
 
     private HttpURLConnection openConnection(URL finalURL) throws IOException {
         HttpURLConnection connection = (HttpURLConnection) finalURL.openConnection();
         if(tryGzip){
-            connection.addRequestProperty("Accept-Encoding", "gzip");
+            connection.addRequestProperty("Accept-Encoding", "gzip, deflate");
         }
         // mind, connect timeout is in seconds
         if (getConnectTimeout() > 0) {
@@ -161,40 +208,112 @@ public class SimpleHttpClient implements HTTPClient {
 
     public static class SimpleHTTPResponse implements HTTPResponse {
 
+        /**
+         * Responses disposed with more than this many bytes left unread are not worth draining,
+         * their connection is closed instead of being reused
+         */
+        static final int MAX_DRAIN = 64 * 1024;
+
         private URLConnection connection;
 
+        private InputStream rawStream;
+
         private InputStream responseStream;
 
+        private HTTPConnectionPool connectionPool;
+
+        private Semaphore permit;
+
         public SimpleHTTPResponse(final URLConnection connection) throws IOException {
+            this(connection, null, null);
+        }
+
+        SimpleHTTPResponse(final URLConnection connection, HTTPConnectionPool connectionPool,
+                Semaphore permit) throws IOException {
             this.connection = connection;
-            InputStream inputStream = connection.getInputStream();
+            this.connectionPool = connectionPool;
+            this.permit = permit;
+            InputStream inputStream;
+            try {
+                inputStream = connection.getInputStream();
+            } catch (IOException e) {
+                // consume the error body so that the connection can be reused
+                if (connection instanceof HttpURLConnection) {
+                    drain(((HttpURLConnection) connection).getErrorStream());
+                }
+                throw e;
+            }
+            rawStream = inputStream;
 
             final String contentEncoding = connection.getContentEncoding();
 
-            if (contentEncoding != null && connection.getContentEncoding().indexOf("gzip") != -1) {
+            if (contentEncoding != null && contentEncoding.indexOf("gzip") != -1) {
                 inputStream = new GZIPInputStream(inputStream);
+            } else if (contentEncoding != null && contentEncoding.indexOf("deflate") != -1) {
+                // servers disagree on whether deflate means zlib wrapped or raw data
+                inputStream = new BufferedInputStream(inputStream, 2);
+                inputStream.mark(2);
+                int header = (inputStream.read() << 8) | inputStream.read();
+                inputStream.reset();
+                boolean zlib = header > 0 && (header & 0x0F00) == 0x0800 && header % 31 == 0;
+                inputStream = new InflaterInputStream(inputStream, new Inflater(!zlib));
             }
             responseStream = inputStream;
         }
 
         /**
-         * @see org.geotools.data.ows.HTTPResponse#dispose()
+         * Reads what is left of the response so that the connection goes back to the keep-alive
+         * cache, up to {@link #MAX_DRAIN} bytes
+         * 
+         * @return true if the whole stream has been consumed
          */
-        public void dispose() {
-            if (responseStream != null) {
+        static boolean drain(InputStream stream) {
+            if (stream == null) {
+                return true;
+            }
+            try {
+                byte[] buffer = new byte[4096];
+                int total = 0;
+                int read;
+                while ((read = stream.read(buffer)) > 0) {
+                    total += read;
+                    if (total > MAX_DRAIN) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                return false;
+            } finally {
                 try {
-                    responseStream.close();
+                    stream.close();
                 } catch (IOException e) {
                     // ignore
                 }
+            }
+        }
+
+        /**
+         * @see org.geotools.data.ows.HTTPResponse#dispose()
+         */
+        public void dispose() {
+            boolean reusable = true;
+            if (rawStream != null) {
+                reusable = drain(rawStream);
+                rawStream = null;
                 responseStream = null;
             }
             if (connection != null) {
-                if (connection instanceof HttpURLConnection) {
+                if (!reusable && connection instanceof HttpURLConnection) {
                     ((HttpURLConnection) connection).disconnect();
                 }
                 connection = null;
             }
+            if (connectionPool != null) {
+                connectionPool.release(permit);
+                connectionPool = null;
+                permit = null;
+            }
         }
 
         /**
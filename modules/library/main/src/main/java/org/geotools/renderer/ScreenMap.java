@@ -113,6 +113,20 @@ public class ScreenMap {
         this.spanY = spanY;
     }
 
+    /**
+     * The horizontal generalization span, in the units of the data
+     */
+    public double getSpanX() {
+        return spanX;
+    }
+
+    /**
+     * The vertical generalization span, in the units of the data
+     */
+    public double getSpanY() {
+        return spanY;
+    }
+
     /**
      * Checks if the geometry should be skipped. If the test returns true it means the geometry
      * sits in a pixel that has already been used
@@ -0,0 +1,141 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.ows;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class SimpleHttpClientTest {
+
+    static final String CONTENT = "<WMT_MS_Capabilities version=\"1.1.1\"/>";
+
+    HttpServer server;
+
+    URL base;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                OutputStream encoder = bytes;
+                if (path.endsWith("gzip") && accepted.contains("gzip")) {
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                    encoder = new GZIPOutputStream(bytes);
+                } else if (path.endsWith("deflate") && accepted.contains("deflate")) {
+                    exchange.getResponseHeaders().add("Content-Encoding", "deflate");
+                    encoder = new DeflaterOutputStream(bytes);
+                }
+                encoder.write(CONTENT.getBytes("UTF-8"));
+                encoder.close();
+                exchange.getResponseHeaders().add("Content-Type", "text/xml; charset=UTF-8");
+                exchange.sendResponseHeaders(200, bytes.size());
+                exchange.getResponseBody().write(bytes.toByteArray());
+                exchange.close();
+            }
+        });
+        server.start();
+        base = new URL("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    String read(HTTPResponse response) throws IOException {
+        try {
+            InputStream in = response.getResponseStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            response.dispose();
+        }
+    }
+
+    @Test
+    public void testContentEncodings() throws Exception {
+        SimpleHttpClient client = new SimpleHttpClient();
+        assertEquals(CONTENT, read(client.get(new URL(base, "plain"))));
+        assertEquals(CONTENT, read(client.get(new URL(base, "gzip"))));
+        assertEquals(CONTENT, read(client.get(new URL(base, "deflate"))));
+
+        HTTPResponse response = client.get(new URL(base, "plain"));
+        assertEquals("UTF-8", response.getResponseCharset());
+        response.dispose();
+    }
+
+    @Test
+    public void testConnectionPool() throws Exception {
+        HTTPConnectionPool pool = new HTTPConnectionPool(1, 20);
+        SimpleHttpClient client = new SimpleHttpClient();
+        client.setConnectionPool(pool);
+        client.setConnectTimeout(1);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(CONTENT, read(client.get(new URL(base, "gzip"))));
+        }
+        assertEquals(3, pool.getRequestCount());
+        assertEquals(0, pool.getFailureCount());
+        assertEquals(0, pool.getActiveRequests());
+
+        // failed requests are counted and do not hold on to the host permit
+        try {
+            client.post(new URL("http://localhost:1/"), new ByteArrayInputStream(
+                    new byte[0]), "text/xml");
+            fail("Should have failed to connect");
+        } catch (IOException e) {
+            // fine
+        }
+        assertEquals(4, pool.getRequestCount());
+        assertEquals(1, pool.getFailureCount());
+        assertEquals(CONTENT, read(client.get(new URL(base, "plain"))));
+
+        pool.resetStatistics();
+        assertEquals(0, pool.getRequestCount());
+    }
+}
@@ -599,6 +599,15 @@ public class Hints extends RenderingHints {
      */
     public static final Key MAX_MEMORY_SORT = new Key(Integer.class);
     
+    /**
+     * Allows a datastore to answer the count and bounds requests over a whole feature type with
+     * estimates, such as the statistics collected by a database query planner, instead of
+     * computing the exact values.
+     *
+     * @since 10.0
+     */
+    public static final Key ESTIMATED_STATISTICS = new Key(Boolean.class);
+    
     /**
      * Asks a datastore having a vector pyramid (pre-generalized geometries)
      * to return the geometry version whose points have been generalized
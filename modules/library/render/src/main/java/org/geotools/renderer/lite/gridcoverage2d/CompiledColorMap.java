@@ -0,0 +1,333 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.referencing.piecewise.PiecewiseTransform1DElement;
+import org.geotools.renderer.i18n.ErrorKeys;
+import org.geotools.renderer.i18n.Errors;
+import org.geotools.util.SoftValueHashMap;
+import org.opengis.referencing.operation.TransformException;
+
+/**
+ * A {@link LinearColorMap} compiled into primitive arrays, so that classifying a tile does not
+ * go through the synchronized domain element lookups and transforms for each pixel.
+ * <p>
+ * Byte, unsigned short and short data are classified through a lookup table holding the output
+ * of every possible sample value, other types through a binary search on the sorted domain
+ * element bounds, followed by the linear transform of the element. The results are the same as
+ * {@link LinearColorMap#findDomainElement(double)} followed by the element transform, NaN
+ * samples are actually classified that way.
+ * </p>
+ * <p>
+ * The compiled maps are cached, so that the equal color maps built for each request out of the
+ * same {@link org.geotools.styling.ColorMap} and nodata values share their tables.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class CompiledColorMap {
+
+	/** The output of the samples no element contains, when there is no default value */
+	private static final int UNMAPPED = -1;
+
+	/** The areas above this number of pixels are classified in parallel strips */
+	private static final int PARALLEL_THRESHOLD = 128 * 1024;
+
+	private static final int MIN_STRIP_HEIGHT = 32;
+
+	private static final Map<LinearColorMap, CompiledColorMap> CACHE = new SoftValueHashMap<LinearColorMap, CompiledColorMap>(
+			16);
+
+	private static final ExecutorService CLASSIFIER_POOL = Executors.newFixedThreadPool(Runtime
+			.getRuntime().availableProcessors(), new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			final Thread thread = new ClassifierThread(r, "Color map classifier "
+					+ count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The threads of the pool, which classify their strips inline
+	 */
+	private static final class ClassifierThread extends Thread {
+		ClassifierThread(Runnable target, String name) {
+			super(target, name);
+		}
+	}
+
+	private final LinearColorMap colorMap;
+
+	// the values to preserve, checked first
+	private final double[] preservedMinimums;
+
+	private final double[] preservedMaximums;
+
+	private final double[] preservedScales;
+
+	private final double[] preservedOffsets;
+
+	// the standard elements, sorted on their minimum
+	private final double[] minimums;
+
+	private final double[] maximums;
+
+	private final double[] scales;
+
+	private final double[] offsets;
+
+	private final boolean hasDefaultValue;
+
+	private final double defaultValue;
+
+	private int[] byteTable;
+
+	private int[] ushortTable;
+
+	private int[] shortTable;
+
+	private CompiledColorMap(LinearColorMap colorMap) {
+		this.colorMap = colorMap;
+		hasDefaultValue = colorMap.hasDefaultValue();
+		defaultValue = hasDefaultValue ? colorMap.getDefaultValue() : Double.NaN;
+
+		final LinearColorMapElement[] elements = colorMap.getDomainElements();
+		Arrays.sort(elements, new Comparator<LinearColorMapElement>() {
+			public int compare(LinearColorMapElement e1, LinearColorMapElement e2) {
+				return Double.compare(e1.getInputMinimum(), e2.getInputMinimum());
+			}
+		});
+		minimums = new double[elements.length];
+		maximums = new double[elements.length];
+		scales = new double[elements.length];
+		offsets = new double[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			minimums[i] = elements[i].getInputMinimum();
+			maximums[i] = elements[i].getInputMaximum();
+			scales[i] = elements[i].getScale();
+			offsets[i] = elements[i].getOffset();
+		}
+
+		final int preserved = colorMap.size() - elements.length;
+		preservedMinimums = new double[preserved];
+		preservedMaximums = new double[preserved];
+		preservedScales = new double[preserved];
+		preservedOffsets = new double[preserved];
+		for (int i = 0; i < preserved; i++) {
+			final LinearColorMapElement element = colorMap.get(elements.length + i);
+			preservedMinimums[i] = element.getInputMinimum();
+			preservedMaximums[i] = element.getInputMaximum();
+			preservedScales[i] = element.getScale();
+			preservedOffsets[i] = element.getOffset();
+		}
+	}
+
+	/**
+	 * Returns the compiled form of a color map, from the cache if available
+	 *
+	 * @return the compiled map, or <code>null</code> if the map cannot be compiled
+	 */
+	static CompiledColorMap get(ColorMapTransform<?> transform) {
+		if (!(transform instanceof LinearColorMap))
+			return null;
+		final LinearColorMap colorMap = (LinearColorMap) transform;
+		synchronized (CACHE) {
+			CompiledColorMap compiled = CACHE.get(colorMap);
+			if (compiled == null) {
+				try {
+					compiled = new CompiledColorMap(colorMap);
+				} catch (ClassCastException e) {
+					// an element is not a linear transform
+					return null;
+				}
+				CACHE.put(colorMap, compiled);
+			}
+			return compiled;
+		}
+	}
+
+	/**
+	 * Classifies a sample
+	 *
+	 * @return the output, or {@link #UNMAPPED} if no element contains the sample and there is no
+	 *         default value
+	 */
+	private int classify(double value) {
+		if (Double.isNaN(value))
+			return classifyNaN(value);
+		for (int i = 0; i < preservedMinimums.length; i++) {
+			if (value >= preservedMinimums[i] && value <= preservedMaximums[i])
+				return transform(value, preservedScales[i], preservedOffsets[i]);
+		}
+		int i = Arrays.binarySearch(minimums, value);
+		if (i < 0)
+			i = -i - 2;
+		if (i >= 0 && value <= maximums[i])
+			return transform(value, scales[i], offsets[i]);
+		return hasDefaultValue ? (int) defaultValue : UNMAPPED;
+	}
+
+	private static int transform(double value, double scale, double offset) {
+		// a constant transform ignores the value, which may be infinite
+		return (int) (scale == 0 ? offset : offset + scale * value);
+	}
+
+	/**
+	 * Classifies NaN samples through the color map, matching them against the NaN values to
+	 * preserve
+	 */
+	private int classifyNaN(double value) {
+		final PiecewiseTransform1DElement element = colorMap.findDomainElement(value);
+		if (element == null)
+			return hasDefaultValue ? (int) defaultValue : UNMAPPED;
+		try {
+			return (int) element.transform(value);
+		} catch (TransformException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Returns the lookup table of a type of integer data, indexed by the sample value minus the
+	 * minimum value of the type
+	 *
+	 * @return the table, <code>null</code> for types too large for a table
+	 */
+	private synchronized int[] getTable(int dataType) {
+		switch (dataType) {
+		case DataBuffer.TYPE_BYTE:
+			if (byteTable == null)
+				byteTable = buildTable(0, 256);
+			return byteTable;
+		case DataBuffer.TYPE_USHORT:
+			if (ushortTable == null)
+				ushortTable = buildTable(0, 65536);
+			return ushortTable;
+		case DataBuffer.TYPE_SHORT:
+			if (shortTable == null)
+				shortTable = buildTable(Short.MIN_VALUE, 65536);
+			return shortTable;
+		default:
+			return null;
+		}
+	}
+
+	private int[] buildTable(int minimum, int size) {
+		final int[] table = new int[size];
+		for (int i = 0; i < size; i++) {
+			table[i] = classify(minimum + i);
+		}
+		return table;
+	}
+
+	/**
+	 * Classifies a band of a source raster into a single band destination
+	 *
+	 * @param source the raster holding the samples, covering the area
+	 * @param band the band to classify
+	 * @param dest the raster receiving the outputs
+	 * @param area the area to classify
+	 */
+	void classify(final Raster source, final int band, final WritableRaster dest,
+			final Rectangle area) {
+		final int dataType = source.getSampleModel().getDataType();
+		final int[] table = getTable(dataType);
+		final int minimum = dataType == DataBuffer.TYPE_SHORT ? Short.MIN_VALUE : 0;
+		final int strips = Math.min(area.height / MIN_STRIP_HEIGHT, Runtime.getRuntime()
+				.availableProcessors());
+		if ((long) area.width * area.height < PARALLEL_THRESHOLD || strips < 2
+				|| Thread.currentThread() instanceof ClassifierThread) {
+			classify(source, band, dest, area.x, area.y, area.width, area.height, table, minimum);
+			return;
+		}
+
+		// split the area in horizontal strips
+		final List<Future<?>> futures = new ArrayList<Future<?>>(strips);
+		final int stripHeight = (area.height + strips - 1) / strips;
+		for (int y = area.y; y < area.y + area.height; y += stripHeight) {
+			final int top = y;
+			final int height = Math.min(stripHeight, area.y + area.height - y);
+			futures.add(CLASSIFIER_POOL.submit(new Callable<Object>() {
+				public Object call() {
+					classify(source, band, dest, area.x, top, area.width, height, table, minimum);
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void classify(Raster source, int band, WritableRaster dest, int x, int y,
+			int width, int height, int[] table, int minimum) {
+		final int length = width * height;
+		final int[] outputs = new int[length];
+		if (table != null) {
+			final int[] samples = source.getSamples(x, y, width, height, band, (int[]) null);
+			for (int i = 0; i < length; i++) {
+				final int output = table[samples[i] - minimum];
+				if (output == UNMAPPED)
+					throw unmapped(samples[i]);
+				outputs[i] = output;
+			}
+		} else {
+			final double[] samples = source.getSamples(x, y, width, height, band,
+					(double[]) null);
+			for (int i = 0; i < length; i++) {
+				final int output = classify(samples[i]);
+				if (output == UNMAPPED)
+					throw unmapped(samples[i]);
+				outputs[i] = output;
+			}
+		}
+		dest.setSamples(x, y, width, height, 0, outputs);
+	}
+
+	private static IllegalArgumentException unmapped(double value) {
+		return new IllegalArgumentException(Errors.format(ErrorKeys.ILLEGAL_ARGUMENT_$1, Double
+				.toString(value)));
+	}
+}
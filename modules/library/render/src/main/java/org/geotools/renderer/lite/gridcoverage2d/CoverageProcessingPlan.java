@@ -0,0 +1,406 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.Interpolation;
+import javax.media.jai.JAI;
+import javax.media.jai.operator.BandCombineDescriptor;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.coverage.processing.CoverageProcessor;
+import org.geotools.coverage.processing.operation.Crop;
+import org.geotools.coverage.processing.operation.Resample;
+import org.geotools.factory.Hints;
+import org.geotools.geometry.GeneralEnvelope;
+import org.geotools.image.ImageWorker;
+import org.opengis.coverage.grid.GridCoverage;
+import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.sun.media.imageioimpl.common.BogusColorSpace;
+
+/**
+ * A deferred chain of coverage processing steps.
+ * <p>
+ * Steps are recorded by the builder methods and nothing is computed until {@link #execute}
+ * is called. Before executing, adjacent steps which can be expressed as a single operation are
+ * fused, so that fewer intermediate images are created and each source pixel is interpolated at
+ * most once:
+ * <ul>
+ * <li>consecutive crops are merged into a crop on the intersection of their envelopes;</li>
+ * <li>a crop followed by a resample onto an explicit target grid is dropped, since the warp only
+ * pulls the source area which maps onto the target grid anyway. This allows a crop, a
+ * reprojection and the final scaling to the output device to run as a single warp;</li>
+ * <li>consecutive band selections are composed;</li>
+ * <li>a band selection followed by a rescale to bytes becomes a single <code>BandCombine</code>
+ * whose statistics are computed on the selected bands only.</li>
+ * </ul>
+ * The executed steps are JAI operations, so pixels are still computed lazily, tile by tile, when
+ * the final image is pulled by the renderer.
+ *
+ * @source $URL$
+ */
+final class CoverageProcessingPlan {
+
+    private static final Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger("org.geotools.rendering");
+
+    /** Cached factory for the {@link Crop} operation. */
+    private final static Crop CROP_FACTORY = new Crop();
+
+    /** Cached factory for the {@link Resample} operation. */
+    private final static Resample RESAMPLE_FACTORY = new Resample();
+
+    /** Parameters used to control the {@link Resample} operation. */
+    private final static ParameterValueGroup RESAMPLE_PARAMS;
+
+    /** Parameters used to control the {@link Crop} operation. */
+    private final static ParameterValueGroup CROP_PARAMS;
+
+    static {
+        final CoverageProcessor processor = new CoverageProcessor(new Hints(
+                Hints.LENIENT_DATUM_SHIFT, Boolean.TRUE));
+        RESAMPLE_PARAMS = processor.getOperation("Resample").getParameters();
+        CROP_PARAMS = processor.getOperation("CoverageCrop").getParameters();
+    }
+
+    /**
+     * A single processing step.
+     */
+    static abstract class Step {
+        /**
+         * Applies this step, returning null if the result is empty.
+         */
+        abstract GridCoverage2D apply(GridCoverage2D coverage, Hints hints);
+
+        /**
+         * Returns a single step equivalent to this step followed by the given one, or null if the
+         * two cannot be fused.
+         */
+        Step fuse(Step next) {
+            return null;
+        }
+    }
+
+    /**
+     * Crops the coverage to an envelope, expressed in the coverage CRS.
+     */
+    static final class CropStep extends Step {
+        final GeneralEnvelope envelope;
+
+        CropStep(GeneralEnvelope envelope) {
+            this.envelope = envelope;
+        }
+
+        @Override
+        GridCoverage2D apply(GridCoverage2D coverage, Hints hints) {
+            final GeneralEnvelope intersection = new GeneralEnvelope(envelope);
+            intersection.setCoordinateReferenceSystem(coverage.getCoordinateReferenceSystem());
+            intersection.intersect((GeneralEnvelope) coverage.getEnvelope());
+            if (intersection.isEmpty()) {
+                return null;
+            }
+            try {
+                final ParameterValueGroup param = (ParameterValueGroup) CROP_PARAMS.clone();
+                param.parameter("source").setValue(coverage);
+                param.parameter("Envelope").setValue(intersection);
+                return (GridCoverage2D) CROP_FACTORY.doOperation(param, hints);
+            } catch (Throwable t) {
+                // the crop is only an optimization, things might work out anyway
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.log(Level.FINE, "Crop Failed for reason: " + t.getLocalizedMessage(), t);
+                return coverage;
+            }
+        }
+
+        @Override
+        Step fuse(Step next) {
+            if (next instanceof CropStep) {
+                final GeneralEnvelope intersection = new GeneralEnvelope(envelope);
+                intersection.intersect(((CropStep) next).envelope);
+                return new CropStep(intersection);
+            }
+            if (next instanceof ResampleStep && ((ResampleStep) next).gridGeometry != null) {
+                return next;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reprojects the coverage, optionally onto an explicit target grid.
+     */
+    static final class ResampleStep extends Step {
+        final CoordinateReferenceSystem crs;
+
+        final GridGeometry2D gridGeometry;
+
+        final Interpolation interpolation;
+
+        ResampleStep(CoordinateReferenceSystem crs, GridGeometry2D gridGeometry,
+                Interpolation interpolation) {
+            this.crs = crs;
+            this.gridGeometry = gridGeometry;
+            this.interpolation = interpolation;
+        }
+
+        @Override
+        GridCoverage2D apply(GridCoverage2D coverage, Hints hints) {
+            final ParameterValueGroup param = (ParameterValueGroup) RESAMPLE_PARAMS.clone();
+            param.parameter("source").setValue(coverage);
+            param.parameter("CoordinateReferenceSystem").setValue(crs);
+            param.parameter("InterpolationType").setValue(interpolation);
+            if (gridGeometry != null) {
+                param.parameter("GridGeometry").setValue(gridGeometry);
+            }
+            return (GridCoverage2D) RESAMPLE_FACTORY.doOperation(param, hints);
+        }
+    }
+
+    /**
+     * Retains a subset of the coverage bands.
+     */
+    static final class BandSelectStep extends Step {
+        final int[] bands;
+
+        BandSelectStep(int[] bands) {
+            this.bands = bands.clone();
+        }
+
+        @Override
+        GridCoverage2D apply(GridCoverage2D coverage, Hints hints) {
+            final RenderedImage image = new ImageWorker(coverage.getRenderedImage())
+                    .setRenderingHints(hints).retainBands(bands).getRenderedImage();
+            return wrap(coverage, image, selectSampleDimensions(coverage, bands), hints);
+        }
+
+        @Override
+        Step fuse(Step next) {
+            if (next instanceof BandSelectStep) {
+                final int[] nextBands = ((BandSelectStep) next).bands;
+                final int[] composed = new int[nextBands.length];
+                for (int i = 0; i < nextBands.length; i++) {
+                    composed[i] = bands[nextBands[i]];
+                }
+                return new BandSelectStep(composed);
+            }
+            if (next instanceof RescaleToBytesStep) {
+                return new SelectAndRescaleStep(bands);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Rescales the coverage values to the byte range, using the image extrema.
+     */
+    static final class RescaleToBytesStep extends Step {
+        @Override
+        GridCoverage2D apply(GridCoverage2D coverage, Hints hints) {
+            final RenderedImage image = new ImageWorker(coverage.getRenderedImage())
+                    .setRenderingHints(hints).rescaleToBytes().getRenderedImage();
+            return wrap(coverage, image, coverage.getSampleDimensions(), hints);
+        }
+    }
+
+    /**
+     * A band selection fused with a rescale to bytes, computed by a single
+     * <code>BandCombine</code> operation writing straight into a byte image.
+     */
+    static final class SelectAndRescaleStep extends Step {
+        final int[] bands;
+
+        SelectAndRescaleStep(int[] bands) {
+            this.bands = bands;
+        }
+
+        @Override
+        GridCoverage2D apply(GridCoverage2D coverage, Hints hints) {
+            final RenderedImage source = coverage.getRenderedImage();
+            final GridSampleDimension[] sd = selectSampleDimensions(coverage, bands);
+            final int dataType = source.getSampleModel().getDataType();
+            if (dataType == DataBuffer.TYPE_BYTE || source.getColorModel() instanceof IndexColorModel) {
+                // nothing to fuse, fall back on the separate operations
+                final GridCoverage2D selected = new BandSelectStep(bands).apply(coverage, hints);
+                return new RescaleToBytesStep().apply(selected, hints);
+            }
+
+            // statistics on the selected bands only
+            final ImageWorker selected = new ImageWorker(source).setRenderingHints(hints)
+                    .retainBands(bands);
+            final double[] minimums = selected.getMinimums();
+            final double[] maximums = selected.getMaximums();
+
+            final int sourceBands = source.getSampleModel().getNumBands();
+            final double[][] matrix = new double[bands.length][sourceBands + 1];
+            for (int i = 0; i < bands.length; i++) {
+                final double delta = maximums[i] - minimums[i];
+                // same rule as ImageWorker.rescaleToBytes, values already in range are
+                // only clamped
+                if (Math.abs(delta) > 1E-6 && (maximums[i] - 255 > 1E-6 || minimums[i] < -1E-6)) {
+                    final double scale = 255 / delta;
+                    matrix[i][bands[i]] = scale;
+                    matrix[i][sourceBands] = -scale * minimums[i];
+                } else {
+                    matrix[i][bands[i]] = 1;
+                }
+            }
+
+            final ColorSpace cs;
+            if (bands.length == 1) {
+                cs = ColorSpace.getInstance(ColorSpace.CS_GRAY);
+            } else if (bands.length == 3) {
+                cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+            } else {
+                cs = new BogusColorSpace(bands.length);
+            }
+            final ColorModel cm = new ComponentColorModel(cs, false, false, Transparency.OPAQUE,
+                    DataBuffer.TYPE_BYTE);
+            final ImageLayout layout = new ImageLayout(source);
+            layout.setColorModel(cm);
+            layout.setSampleModel(cm.createCompatibleSampleModel(source.getSampleModel()
+                    .getWidth(), source.getSampleModel().getHeight()));
+            final RenderingHints localHints = new RenderingHints(null);
+            if (hints != null) {
+                localHints.add(hints);
+            }
+            localHints.put(JAI.KEY_IMAGE_LAYOUT, layout);
+            final RenderedImage image = BandCombineDescriptor.create(source, matrix, localHints);
+            return wrap(coverage, image, sd, hints);
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<Step>();
+
+    private final Hints hints;
+
+    /**
+     * Creates an empty plan.
+     *
+     * @param hints the hints used when executing the steps
+     */
+    CoverageProcessingPlan(Hints hints) {
+        this.hints = hints;
+    }
+
+    /**
+     * Crops the coverage to the given envelope, expressed in the coverage CRS.
+     */
+    CoverageProcessingPlan crop(GeneralEnvelope envelope) {
+        steps.add(new CropStep(new GeneralEnvelope(envelope)));
+        return this;
+    }
+
+    /**
+     * Reprojects the coverage to the given CRS. If a target grid is provided the result is
+     * computed straight on that grid, otherwise the grid is derived from the source coverage.
+     */
+    CoverageProcessingPlan resample(CoordinateReferenceSystem crs, GridGeometry2D gridGeometry,
+            Interpolation interpolation) {
+        steps.add(new ResampleStep(crs, gridGeometry, interpolation));
+        return this;
+    }
+
+    /**
+     * Retains the given bands of the coverage, in the given order.
+     */
+    CoverageProcessingPlan selectBands(int[] bands) {
+        steps.add(new BandSelectStep(bands));
+        return this;
+    }
+
+    /**
+     * Rescales the coverage values to bytes, based on their extrema.
+     */
+    CoverageProcessingPlan rescaleToBytes() {
+        steps.add(new RescaleToBytesStep());
+        return this;
+    }
+
+    boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    /**
+     * Returns the steps which will be executed, after fusing adjacent steps.
+     */
+    List<Step> getOptimizedSteps() {
+        final List<Step> optimized = new ArrayList<Step>(steps.size());
+        for (Step step : steps) {
+            Step current = step;
+            while (!optimized.isEmpty()) {
+                final Step fused = optimized.get(optimized.size() - 1).fuse(current);
+                if (fused == null) {
+                    break;
+                }
+                optimized.remove(optimized.size() - 1);
+                current = fused;
+            }
+            optimized.add(current);
+        }
+        return Collections.unmodifiableList(optimized);
+    }
+
+    /**
+     * Builds the processing chain on the given coverage.
+     *
+     * @return the processed coverage, or null if a step produced an empty result
+     */
+    GridCoverage2D execute(GridCoverage2D source) {
+        GridCoverage2D result = source;
+        for (Step step : getOptimizedSteps()) {
+            result = step.apply(result, hints);
+            if (result == null) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    static GridSampleDimension[] selectSampleDimensions(GridCoverage2D coverage, int[] bands) {
+        final GridSampleDimension[] sd = new GridSampleDimension[bands.length];
+        for (int i = 0; i < bands.length; i++) {
+            sd[i] = coverage.getSampleDimension(bands[i]);
+        }
+        return sd;
+    }
+
+    static GridCoverage2D wrap(GridCoverage2D source, RenderedImage image,
+            GridSampleDimension[] sd, Hints hints) {
+        return CoverageFactoryFinder.getGridCoverageFactory(hints).create(source.getName(), image,
+                (GridGeometry2D) source.getGridGeometry(), sd, new GridCoverage[] { source },
+                source.getProperties());
+    }
+}
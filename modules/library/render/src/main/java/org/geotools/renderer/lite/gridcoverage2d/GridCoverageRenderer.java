@@ -31,6 +31,8 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -49,10 +51,9 @@ import org.geotools.coverage.grid.GridCoverageFactory;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.ViewType;
-import org.geotools.coverage.processing.CoverageProcessor;
-import org.geotools.coverage.processing.operation.Crop;
-import org.geotools.coverage.processing.operation.Resample;
-import org.geotools.coverage.processing.operation.Scale;
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.OverviewPolicy;
 import org.geotools.factory.Hints;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -61,6 +62,7 @@ import org.geotools.referencing.CRS;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.operation.builder.GridToEnvelopeMapper;
 import org.geotools.referencing.operation.matrix.XAffineTransform;
+import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.geotools.resources.i18n.ErrorKeys;
 import org.geotools.resources.i18n.Errors;
 import org.geotools.styling.RasterSymbolizer;
@@ -68,7 +70,8 @@ import org.jaitools.imageutils.ImageLayout2;
 import org.opengis.coverage.grid.GridCoverage;
 import org.opengis.filter.expression.Expression;
 import org.opengis.metadata.spatial.PixelOrientation;
-import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.datum.PixelInCell;
@@ -163,24 +166,15 @@ public final class GridCoverageRenderer {
     } 
 
 
-    /** Cached factory for the {@link Crop} operation. */
-    private final static Crop coverageCropFactory = new Crop();
-
     /** Logger. */
     private static final Logger LOGGER = org.geotools.util.logging.Logging
             .getLogger("org.geotools.rendering");
 
-    static {
-
-        // ///////////////////////////////////////////////////////////////////
-        //
-        // Caching parameters for performing the various operations.
-        //	
-        // ///////////////////////////////////////////////////////////////////
-        final CoverageProcessor processor = new CoverageProcessor(new Hints(Hints.LENIENT_DATUM_SHIFT, Boolean.TRUE));
-        resampleParams = processor.getOperation("Resample").getParameters();
-        cropParams = processor.getOperation("CoverageCrop").getParameters();
-    }
+    /**
+     * Maximum error, in pixels, allowed when approximating the reprojection warp of a coverage
+     * read at the display resolution.
+     */
+    private static final Double DEFAULT_RESAMPLE_TOLERANCE = 0.5;
 
     /** The Display (User defined) CRS * */
     private final CoordinateReferenceSystem destinationCRS;
@@ -259,14 +253,6 @@ public final class GridCoverageRenderer {
     
         private static float rationalTolerance = 0.000001F;
 
-    /** Parameters used to control the {@link Resample} operation. */
-    private final static ParameterValueGroup resampleParams;
-
-    /** Parameters used to control the {@link Crop} operation. */
-    private static ParameterValueGroup cropParams;
-
-    /** Parameters used to control the {@link Scale} operation. */
-    private static final Resample resampleFactory = new Resample();
     
 
     /**
@@ -371,65 +357,144 @@ public final class GridCoverageRenderer {
     }
 
     /**
-     * Reprojecting the input coverage using the provided parameters.
+     * Returns the portion of the screen grid covered by the given envelope, so that the
+     * coverage can be resampled directly at the display resolution. Returns null if the
+     * display is rotated, or if the envelope cannot be mapped on the screen, in which case
+     * the resample has to compute its own grid.
      * 
-     * @param gc
-     * @param crs
-     * @param interpolation
-     * @return
-     * @throws FactoryException
+     * @param sourceEnvelope the area to render, in the source coverage CRS
+     * @param sourceToDestination the transform from the source to the display CRS
+     */
+    private GridGeometry2D getScreenGridGeometry(final GeneralEnvelope sourceEnvelope,
+            final MathTransform sourceToDestination) {
+        if (finalWorldToGrid.getShearX() != 0.0 || finalWorldToGrid.getShearY() != 0.0) {
+            return null;
+        }
+        final Rectangle pixels = getScreenArea(sourceEnvelope, sourceToDestination);
+        if (pixels == null) {
+            return null;
+        }
+        return new GridGeometry2D(new GridEnvelope2D(pixels), PixelInCell.CELL_CORNER,
+                new AffineTransform2D(finalGridToWorld), destinationCRS, null);
+    }
+
+    /**
+     * Returns the pixels of the screen covered by the given envelope, or null if the
+     * envelope cannot be mapped on the screen or falls outside of it.
+     * 
+     * @param sourceEnvelope an envelope in the source CRS
+     * @param sourceToDestination the transform from the source to the display CRS
+     */
+    private Rectangle getScreenArea(final GeneralEnvelope sourceEnvelope,
+            final MathTransform sourceToDestination) {
+        try {
+            final GeneralEnvelope envelope = CRS.transform(sourceToDestination, sourceEnvelope);
+            final Rectangle2D screenArea = XAffineTransform.transform(finalWorldToGrid,
+                    new Rectangle2D.Double(envelope.getMinimum(0), envelope.getMinimum(1),
+                            envelope.getSpan(0), envelope.getSpan(1)), null);
+            final Rectangle pixels = screenArea.getBounds().intersection(destinationSize);
+            return pixels.isEmpty() ? null : pixels;
+        } catch (TransformException e) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.log(Level.FINE, "Unable to map the envelope "+sourceEnvelope+" on the screen", e);
+            return null;
+        }
+    }
+
+    /**
+     * Computes the grid geometry to be used for reading the coverage backing the provided reader
+     * in order to render it on this renderer's display. The grid geometry is expressed in the
+     * native CRS of the reader, covers only the native area which is visible on screen, and has
+     * as many cells as screen pixels, so that the reader can pick the best overview level and
+     * subsampling before reading any pixel.
+     * 
+     * @param reader the reader to negotiate with
+     * @return the read grid geometry, or null if the coverage is not visible on the display
+     * @throws FactoryException if the native CRS cannot be related to the display CRS
+     * @throws TransformException if the transform between the display and the native CRS
+     *         cannot be inverted
      */
-    private static GridCoverage2D resample(final GridCoverage2D gc,
-            CoordinateReferenceSystem crs, final Interpolation interpolation,
-            final GeneralEnvelope destinationEnvelope, final Hints hints) throws FactoryException {
-        // paranoiac check
-        assert CRS.equalsIgnoreMetadata(destinationEnvelope
-                .getCoordinateReferenceSystem(), crs)
-                || CRS
-                        .findMathTransform(
-                                destinationEnvelope
-                                        .getCoordinateReferenceSystem(), crs)
-                        .isIdentity();
-
-        final ParameterValueGroup param = (ParameterValueGroup) resampleParams
-                .clone();
-        param.parameter("source").setValue(gc);
-        param.parameter("CoordinateReferenceSystem").setValue(crs);
-        param.parameter("InterpolationType").setValue(interpolation);
-        return (GridCoverage2D) resampleFactory.doOperation(param, hints);
+    public GridGeometry2D getReadGridGeometry(final AbstractGridCoverage2DReader reader)
+            throws FactoryException, TransformException {
+        final GeneralEnvelope nativeEnvelope = reader.getOriginalEnvelope();
+        final CoordinateReferenceSystem nativeCRS = CRS.getHorizontalCRS(reader.getCrs());
+        if (nativeCRS == null)
+            throw new FactoryException(Errors.format(ErrorKeys.CANT_SEPARATE_CRS_$1, reader.getCrs()));
+        final MathTransform destinationToNative = CRS.findMathTransform(destinationCRS, nativeCRS, true);
+
+        GeneralEnvelope readEnvelope;
+        try {
+            readEnvelope = CRS.transform(destinationToNative, destinationEnvelope);
+        } catch (TransformException e) {
+            // the display area cannot be expressed in the native CRS, read all of it and let
+            // the resolution be driven by the screen size
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.log(Level.FINE, "Unable to transform the display envelope to the native CRS", e);
+            readEnvelope = new GeneralEnvelope(nativeEnvelope);
+        }
+        readEnvelope.setCoordinateReferenceSystem(nativeCRS);
+        readEnvelope.intersect(nativeEnvelope);
+        if (readEnvelope.isEmpty() || readEnvelope.isNull()) {
+            return null;
+        }
 
+        final Rectangle pixels = getScreenArea(readEnvelope, destinationToNative.inverse());
+        if (pixels == null) {
+            return null;
+        }
+        return new GridGeometry2D(new GridEnvelope2D(0, 0, pixels.width, pixels.height), readEnvelope);
     }
 
     /**
-     * Cropping the provided coverage to the requested geographic area.
+     * Reads from the provided reader only the data needed to render it on this renderer's
+     * display, at the resolution of the display.
      * 
-     * @param gc
-     * @param envelope
-     * @param crs
-     * @return
+     * @param reader the reader to read from
+     * @param readParams optional additional read parameters, may be null. A provided
+     *        {@link AbstractGridFormat#READ_GRIDGEOMETRY2D} is replaced with the one computed
+     *        by {@link #getReadGridGeometry(AbstractGridCoverage2DReader)}. If no
+     *        {@link AbstractGridFormat#OVERVIEW_POLICY} is provided the one in the rendering
+     *        hints is used, defaulting to {@link OverviewPolicy#QUALITY}.
+     * @return the coverage, or null if there is nothing to render
      */
-    private static GridCoverage2D getCroppedCoverage(GridCoverage2D gc,
-            GeneralEnvelope envelope, CoordinateReferenceSystem crs, final Hints hints) {
-        final GeneralEnvelope oldEnvelope = (GeneralEnvelope) gc.getEnvelope();
-        // intersect the envelopes in order to prepare for crooping the coverage
-        // down to the neded resolution
-        final GeneralEnvelope intersectionEnvelope = new GeneralEnvelope(
-                envelope);
-        intersectionEnvelope.setCoordinateReferenceSystem(crs);
-        intersectionEnvelope.intersect((GeneralEnvelope) oldEnvelope);
-
-        // Do we have something to show? After the crop I could get a null
-        // coverage which would mean nothing to show.
-        if (intersectionEnvelope.isEmpty())
+    private GridCoverage2D readCoverage(final AbstractGridCoverage2DReader reader,
+            final GeneralParameterValue[] readParams) throws FactoryException, TransformException,
+            IOException {
+        final GridGeometry2D readGG = getReadGridGeometry(reader);
+        if (readGG == null) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("The coverage is not visible on the display, skipping the read");
             return null;
+        }
 
-        // crop
-        final ParameterValueGroup param = (ParameterValueGroup) cropParams
-                .clone();
-        param.parameter("source").setValue(gc);
-        param.parameter("Envelope").setValue(intersectionEnvelope);
-        return (GridCoverage2D) coverageCropFactory.doOperation(param, hints);
+        final List<GeneralParameterValue> params = new ArrayList<GeneralParameterValue>();
+        boolean hasOverviewPolicy = false;
+        if (readParams != null) {
+            final String ggName = AbstractGridFormat.READ_GRIDGEOMETRY2D.getName().toString();
+            final String opName = AbstractGridFormat.OVERVIEW_POLICY.getName().toString();
+            for (GeneralParameterValue param : readParams) {
+                final String name = param.getDescriptor().getName().toString();
+                if (name.equalsIgnoreCase(ggName)) {
+                    continue;
+                }
+                hasOverviewPolicy |= name.equalsIgnoreCase(opName);
+                params.add(param);
+            }
+        }
+        final ParameterValue<GridGeometry2D> ggParam = AbstractGridFormat.READ_GRIDGEOMETRY2D
+                .createValue();
+        ggParam.setValue(readGG);
+        params.add(ggParam);
+        if (!hasOverviewPolicy) {
+            final ParameterValue<OverviewPolicy> opParam = AbstractGridFormat.OVERVIEW_POLICY
+                    .createValue();
+            final Object policy = hints.get(Hints.OVERVIEW_POLICY);
+            opParam.setValue(policy instanceof OverviewPolicy ? (OverviewPolicy) policy
+                    : OverviewPolicy.QUALITY);
+            params.add(opParam);
+        }
 
+        return (GridCoverage2D) reader.read(params.toArray(new GeneralParameterValue[params.size()]));
     }
 
     /**
@@ -461,6 +526,7 @@ public final class GridCoverageRenderer {
      * 
      * @param gridCoverage
      * @param symbolizer
+     * @param displayResolution true if the coverage was read at the display resolution
      * @return
      * @throws FactoryException
      * @throws TransformException
@@ -468,7 +534,8 @@ public final class GridCoverageRenderer {
      */
     private GCpair prepareFinalImage(
             final GridCoverage2D gridCoverage,
-            final RasterSymbolizer symbolizer
+            final RasterSymbolizer symbolizer,
+            final boolean displayResolution
             )throws FactoryException, TransformException,NoninvertibleTransformException {
 
         // Initial checks
@@ -620,50 +687,40 @@ public final class GridCoverageRenderer {
             localHints.add(new RenderingHints(JAI.KEY_REPLACE_INDEX_COLOR_MODEL, Boolean.FALSE));
             localHints.add(new RenderingHints(JAI.KEY_TRANSFORM_ON_COLORMAP, Boolean.TRUE));
         }
+        if (displayResolution && !localHints.containsKey(Hints.RESAMPLE_TOLERANCE)
+                && Hints.getSystemDefault(Hints.RESAMPLE_TOLERANCE) == null) {
+            // the coverage has the resolution of the display, an approximated warp grid is
+            // good enough as long as the error stays below half a pixel
+            localHints.put(Hints.RESAMPLE_TOLERANCE, DEFAULT_RESAMPLE_TOLERANCE);
+        }
 
 
         // /////////////////////////////////////////////////////////////////////
         //
-        // CROPPING Coverage
-        //
-        // /////////////////////////////////////////////////////////////////////
-        GridCoverage2D preResample=gridCoverage;
-    	try{
-		    preResample = getCroppedCoverage(gridCoverage, intersectionEnvelope, sourceCoverageCRS,localHints);
-		    if (preResample == null) {
-		        // nothing to render, the AOI does not overlap
-		        if (LOGGER.isLoggable(Level.FINE))
-		            LOGGER.fine("Skipping current coverage because cropped to an empty area");
-                return null;
-		    }
-    	}catch (Throwable t) {
-    		////
-    		//
-    		// If it happens that the crop fails we try to proceed since the crop does only an optimization. Things might
-    		// work out anyway.
-    		//
-    		////
-            if (LOGGER.isLoggable(Level.FINE))
-                LOGGER.log(Level.FINE,"Crop Failed for reason: "+t.getLocalizedMessage(),t);
-            preResample=gridCoverage;
-		}
-        if (DEBUG) {
-            writeRenderedImage(preResample.geophysics(false).getRenderedImage(),"preresample");
-        }
-            
-        
-        // /////////////////////////////////////////////////////////////////////
+        // CROPPING and REPROJECTION if needed
         //
-        // REPROJECTION if needed
+        // The steps are planned together: when reprojecting onto an axis aligned
+        // display the coverage is resampled straight onto the screen grid, so that
+        // crop, reprojection and final scale are performed by a single warp.
         //
         // /////////////////////////////////////////////////////////////////////
-        GridCoverage2D preSymbolizer;
+        final CoverageProcessingPlan plan = new CoverageProcessingPlan(localHints);
+        plan.crop(intersectionEnvelope);
         if (doReprojection) {
-            preSymbolizer = resample(preResample, destinationCRS,interpolation == null ? new InterpolationNearest(): interpolation, destinationEnvelope,localHints);
+            final GridGeometry2D screenGrid = getScreenGridGeometry(intersectionEnvelope,
+                    sourceCRSToDestinationCRSTransformation);
+            plan.resample(destinationCRS, screenGrid,
+                    interpolation == null ? new InterpolationNearest() : interpolation);
             if (LOGGER.isLoggable(Level.FINE))
                 LOGGER.fine("Reprojecting to crs "+ destinationCRS.toWKT());
-        } else
-            preSymbolizer = preResample;
+        }
+        final GridCoverage2D preSymbolizer = plan.execute(gridCoverage);
+        if (preSymbolizer == null) {
+            // nothing to render, the AOI does not overlap
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("Skipping current coverage because cropped to an empty area");
+            return null;
+        }
         if (DEBUG) {
             writeRenderedImage(preSymbolizer.geophysics(false).getRenderedImage(),"preSymbolizer");
         }
@@ -779,9 +836,22 @@ public final class GridCoverageRenderer {
             final int tileSizeX, 
             final int tileSizeY
             ) throws FactoryException, TransformException, NoninvertibleTransformException {
+        return renderImage(gridCoverage, symbolizer, interpolation, background, tileSizeX,
+                tileSizeY, false);
+    }
+
+    private RenderedImage renderImage(
+            final GridCoverage2D gridCoverage,
+            final RasterSymbolizer symbolizer, 
+            final Interpolation interpolation, 
+            final Color background,
+            final int tileSizeX, 
+            final int tileSizeY,
+            final boolean displayResolution
+            ) throws FactoryException, TransformException, NoninvertibleTransformException {
 
         // Build the final image and the associated world to grid transformation
-        final GCpair couple = prepareFinalImage(gridCoverage, symbolizer);
+        final GCpair couple = prepareFinalImage(gridCoverage, symbolizer, displayResolution);
         if (couple == null)
             return null;
         // NOTICE that at this stage the image we get should be 8 bits, either RGB, RGBA, Gray, GrayA
@@ -837,6 +907,60 @@ public final class GridCoverageRenderer {
 
     }
     
+    /**
+     * Reads the coverage from the provided reader at the resolution and extent of the display,
+     * then turns it into a rendered image applying the necessary transformations and the
+     * symbolizer.
+     * 
+     * @param reader the reader providing the coverage
+     * @param readParams optional additional read parameters, may be null
+     * @return The transformed image, or null if the coverage does not lie within the rendering
+     *         bounds
+     * @see #getReadGridGeometry(AbstractGridCoverage2DReader)
+     */
+    public RenderedImage renderImage(
+            final AbstractGridCoverage2DReader reader,
+            final GeneralParameterValue[] readParams,
+            final RasterSymbolizer symbolizer, 
+            final Interpolation interpolation, 
+            final Color background,
+            final int tileSizeX, 
+            final int tileSizeY
+            ) throws FactoryException, TransformException, NoninvertibleTransformException, IOException {
+        final GridCoverage2D coverage = readCoverage(reader, readParams);
+        if (coverage == null)
+            return null;
+        return renderImage(coverage, symbolizer, interpolation, background, tileSizeX, tileSizeY,
+                true);
+    }
+
+    /**
+     * Reads the coverage from the provided reader at the resolution and extent of the display,
+     * and paints it.
+     * 
+     * @param graphics the {@link Graphics2D} context in which to paint
+     * @param reader the reader providing the coverage
+     * @param readParams optional additional read parameters, may be null
+     * @see #getReadGridGeometry(AbstractGridCoverage2DReader)
+     */
+    public void paint(
+            final Graphics2D graphics,
+            final AbstractGridCoverage2DReader reader,
+            final GeneralParameterValue[] readParams,
+            final RasterSymbolizer symbolizer)
+            throws FactoryException, TransformException, NoninvertibleTransformException,
+            IOException {
+        final GridCoverage2D coverage = readCoverage(reader, readParams);
+        if (coverage == null)
+            return;
+        try {
+            paint(graphics, coverage, symbolizer, true);
+        } finally {
+            // painting is synchronous, the coverage won't be used again
+            coverage.dispose(true);
+        }
+    }
+
     /**
      * Paint this grid coverage. The caller must ensure that
      * <code>graphics</code> has an affine transform mapping "real world"
@@ -860,6 +984,16 @@ public final class GridCoverageRenderer {
             final RasterSymbolizer symbolizer)
             throws FactoryException, TransformException,
             NoninvertibleTransformException {
+        paint(graphics, gridCoverage, symbolizer, false);
+    }
+
+    private void paint(
+            final Graphics2D graphics,
+            final GridCoverage2D gridCoverage, 
+            final RasterSymbolizer symbolizer,
+            final boolean displayResolution)
+            throws FactoryException, TransformException,
+            NoninvertibleTransformException {
 
         //
         // Initial checks
@@ -877,7 +1011,7 @@ public final class GridCoverageRenderer {
         
         
         // Build the final image and the transformation
-        GCpair couple = prepareFinalImage(gridCoverage, symbolizer);
+        GCpair couple = prepareFinalImage(gridCoverage, symbolizer, displayResolution);
         if (couple == null)
             return;
 
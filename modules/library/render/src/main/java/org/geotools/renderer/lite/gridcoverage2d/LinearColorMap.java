@@ -833,7 +833,7 @@ public final class LinearColorMap extends AbstractList<LinearColorMapElement>
             return false;
         if(!Utilities.equals(defaultColor, that.defaultColor))
             return false;
-        if(preFilteringColor!=that.preFilteringColor)
+        if(!Utilities.equals(preFilteringColor, that.preFilteringColor))
             return false;
         if(!Utilities.equals(preFilteringElements, that.preFilteringElements))
             return false;
@@ -851,8 +851,8 @@ public final class LinearColorMap extends AbstractList<LinearColorMapElement>
         hashCode=Utilities.hash( name,hashCode);
         hashCode=Utilities.hash( defaultColor,hashCode);
         hashCode=Utilities.hash( preFilteringColor,hashCode);
-        hashCode=Utilities.hash( preFilteringElements,hashCode);
-        hashCode=Utilities.hash( standardElements,hashCode);
+        hashCode=Utilities.hash( Utilities.deepHashCode(preFilteringElements),hashCode);
+        hashCode=Utilities.hash( Utilities.deepHashCode(standardElements),hashCode);
         hashCode=Utilities.hash( piecewise,hashCode);
         return hashCode;
         
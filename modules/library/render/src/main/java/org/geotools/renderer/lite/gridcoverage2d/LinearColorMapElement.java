@@ -198,7 +198,7 @@ public class LinearColorMapElement extends DefaultLinearPiecewiseTransform1DElem
             final LinearColorMapElement that = (LinearColorMapElement) object;
             if(getEquivalenceClass()!=that.getEquivalenceClass())
                 return false;
-            if(Arrays.equals(this.getColors(), that.getColors()))
+            if(!Arrays.equals(this.getColors(), that.getColors()))
                 return false;
             return super.equals(that);
 	}
@@ -245,7 +245,7 @@ public class LinearColorMapElement extends DefaultLinearPiecewiseTransform1DElem
         if(hashCode>=0)
             return hashCode;
         hashCode=37;
-        hashCode=Utilities.hash( colors,hashCode);
+        hashCode=Utilities.hash( Arrays.hashCode(colors),hashCode);
         hashCode=Utilities.hash( super.hashCode(),hashCode);
         return hashCode;
     }
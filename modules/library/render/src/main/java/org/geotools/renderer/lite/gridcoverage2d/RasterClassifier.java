@@ -19,6 +19,7 @@ package org.geotools.renderer.lite.gridcoverage2d;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.ColorModel;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
@@ -73,6 +74,11 @@ public class RasterClassifier extends PointOpImage {
 	 */
 	private int bandIndex;
 
+	/**
+	 * The compiled form of the pieces, <code>null</code> if they cannot be compiled
+	 */
+	private final CompiledColorMap compiled;
+
 	/**
 	 * Constructs a new {@code RasterClassifier}.
 	 * 
@@ -91,6 +97,7 @@ public class RasterClassifier extends PointOpImage {
 				.get(JAI.KEY_IMAGE_LAYOUT), lic), hints, false);
 		this.pieces = lic;
 		this.bandIndex = bandIndex;
+		this.compiled = CompiledColorMap.get(lic);
 		permitInPlaceOperation();
 	}
 
@@ -149,6 +156,23 @@ public class RasterClassifier extends PointOpImage {
 	protected void computeRect(final PlanarImage[] sources,
 			final WritableRaster dest, final Rectangle destRect) {
 		final PlanarImage source = sources[0];
+
+		// ////////////////////////////////////////////////////////////////////
+		//
+		// Classify the whole area at once through the compiled pieces when
+		// available, in place of walking the pieces for each pixel
+		//
+		// ////////////////////////////////////////////////////////////////////
+		if (compiled != null && dest.getNumBands() == 1) {
+			try {
+				compiled.classify(getSourceData(source, destRect),
+						bandIndex < 0 ? 0 : bandIndex, dest, destRect);
+			} catch (Throwable cause) {
+				throw new ImagingException(cause.getLocalizedMessage(), cause);
+			}
+			return;
+		}
+
 		WritableRectIter iterator = RectIterFactory.createWritable(dest,
 				destRect);
 		if (true) {
@@ -270,6 +294,20 @@ public class RasterClassifier extends PointOpImage {
 		} while (iterator.finishedBands());
 	}
 
+	/**
+	 * Returns the source samples of an area, straight from the source tile
+	 * when the area lies within a single tile.
+	 */
+	private static Raster getSourceData(final PlanarImage source,
+			final Rectangle area) {
+		final int tileX = source.XToTileX(area.x);
+		final int tileY = source.YToTileY(area.y);
+		if (tileX == source.XToTileX(area.x + area.width - 1)
+				&& tileY == source.YToTileY(area.y + area.height - 1))
+			return source.getTile(tileX, tileY);
+		return source.getData(area);
+	}
+
 	// ///////////////////////////////////////////////////////////////////////////////
 	// ////// ////////
 	// ////// REGISTRATION OF "SampleTranscode" IMAGE OPERATION ////////
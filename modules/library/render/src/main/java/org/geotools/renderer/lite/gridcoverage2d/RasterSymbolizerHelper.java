@@ -21,11 +21,9 @@ import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 
-import org.geotools.coverage.GridSampleDimension;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.factory.Hints;
-import org.geotools.image.ImageWorker;
 import org.geotools.renderer.i18n.Vocabulary;
 import org.geotools.renderer.i18n.VocabularyKeys;
 import org.geotools.resources.coverage.CoverageUtilities;
@@ -86,17 +84,15 @@ public class RasterSymbolizerHelper extends
 		final SampleModel outputImageSampleModel= outputImage.getSampleModel();
 		final int numBands=outputImageSampleModel.getNumBands();
 		final int dataType= outputImageSampleModel.getDataType();
-		final GridSampleDimension sd[];
+		// the band selection and the rescale are planned together, so that they can be
+		// fused into a single operation working on the visible band only
+		final CoverageProcessingPlan plan = new CoverageProcessingPlan(this.getHints());
 		if(numBands>4)
 		{
 			//get the visible band
 			final int visibleBand=CoverageUtilities.getVisibleBand(outputImage);
-			outputImage=
-				new ImageWorker(outputImage).setRenderingHints(this.getHints()).retainBands(new int[]{visibleBand}).getRenderedImage();
-			sd=new GridSampleDimension[]{(GridSampleDimension) output.getSampleDimension(visibleBand)};
+			plan.selectBands(new int[]{visibleBand});
 		}
-		else
-			sd=output.getSampleDimensions();
 
 		//more general case, let's check the data type and let go only USHORT and BYTE
 		// TODO I am not sure this will work with multipacked types (using INT for an RGB as an instance)
@@ -108,12 +104,12 @@ public class RasterSymbolizerHelper extends
 			case DataBuffer.TYPE_INT:
 			case DataBuffer.TYPE_SHORT:
 			//rescale to byte
-			outputImage=
-				new ImageWorker(outputImage).setRenderingHints(this.getHints()).rescaleToBytes().getRenderedImage();
-				
+			plan.rescaleToBytes();
 		}
+		if(!plan.isEmpty())
+			return plan.execute(output);
 		//create a new grid coverage but preserve as much input as possible
-		return this.getCoverageFactory().create(output.getName(), outputImage,(GridGeometry2D)output.getGridGeometry(),sd, new GridCoverage[]{output},output.getProperties());
+		return this.getCoverageFactory().create(output.getName(), outputImage,(GridGeometry2D)output.getGridGeometry(),output.getSampleDimensions(), new GridCoverage[]{output},output.getProperties());
 	}
 
 
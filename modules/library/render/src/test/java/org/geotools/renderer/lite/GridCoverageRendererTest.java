@@ -17,6 +17,8 @@
 package org.geotools.renderer.lite;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.awt.Graphics2D;
@@ -30,11 +32,14 @@ import java.text.ParseException;
 import java.util.Collections;
 
 import javax.imageio.ImageIO;
+import javax.media.jai.InterpolationNearest;
 
 import org.geotools.coverage.GridSampleDimension;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.factory.GeoTools;
+import org.geotools.gce.geotiff.GeoTiffReader;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.map.DefaultMapContext;
@@ -43,6 +48,7 @@ import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.referencing.crs.DefaultProjectedCRS;
 import org.geotools.referencing.cs.DefaultCartesianCS;
 import org.geotools.referencing.operation.DefaultMathTransformFactory;
+import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
 import org.geotools.styling.RasterSymbolizer;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleBuilder;
@@ -246,6 +252,41 @@ public class GridCoverageRendererTest  {
 
 	}
 
+	@Test
+	public void readerNegotiation() throws Exception {
+		final GeoTiffReader reader = new GeoTiffReader(TestData.copy(this, "geotiff/world.tiff"));
+		try {
+			// render the western half of the world on a 100x100 display
+			final ReferencedEnvelope area = new ReferencedEnvelope(-180, 0, -90, 90,
+					DefaultGeographicCRS.WGS84);
+			final Rectangle screen = new Rectangle(0, 0, 100, 100);
+			final GridCoverageRenderer renderer = new GridCoverageRenderer(
+					DefaultGeographicCRS.WGS84, area, screen, null);
+
+			// the read is limited to the visible area, at the display resolution
+			final GridGeometry2D readGG = renderer.getReadGridGeometry(reader);
+			assertEquals(100, readGG.getGridRange2D().width);
+			assertEquals(100, readGG.getGridRange2D().height);
+			assertEquals(-180, readGG.getEnvelope2D().getMinX(), 1e-6);
+			assertEquals(0, readGG.getEnvelope2D().getMaxX(), 1e-6);
+
+			final RenderedImage image = renderer.renderImage(reader, null,
+					new StyleBuilder().createRasterSymbolizer(), new InterpolationNearest(),
+					null, 256, 256);
+			assertNotNull(image);
+			assertEquals(100, image.getWidth(), 1);
+			assertEquals(100, image.getHeight(), 1);
+
+			// nothing is read when the coverage is not visible
+			final GridCoverageRenderer outside = new GridCoverageRenderer(
+					DefaultGeographicCRS.WGS84, new ReferencedEnvelope(200, 210, 0, 10,
+							DefaultGeographicCRS.WGS84), screen, null);
+			assertNull(outside.getReadGridGeometry(reader));
+		} finally {
+			reader.dispose();
+		}
+	}
+
 	private static Style getStyle() {
 		StyleBuilder sb = new StyleBuilder();
 		Style rasterstyle = sb.createStyle();
@@ -0,0 +1,150 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.JAI;
+import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.RenderedOp;
+import javax.media.jai.TiledImage;
+
+import org.geotools.referencing.piecewise.PiecewiseTransform1DElement;
+import org.geotools.util.NumberRange;
+import org.junit.Test;
+
+/**
+ * Checks the {@link RasterClassifier} outputs through the {@link CompiledColorMap} against the
+ * lookup of each sample in the {@link LinearColorMap}.
+ *
+ * @source $URL$
+ */
+public class CompiledColorMapTest {
+
+	static {
+		RasterClassifier.register(JAI.getDefaultInstance());
+	}
+
+	private static LinearColorMap buildRamp() {
+		final LinearColorMapElement c0 = LinearColorMapElement.create("c0", Color.BLACK,
+				NumberRange.create(Double.NEGATIVE_INFINITY, false, 10, true), 0);
+		final LinearColorMapElement c1 = LinearColorMapElement.create("c1", Color.blue,
+				NumberRange.create(10.0f, false, 100.0f, true), 1);
+		final LinearColorMapElement c2 = LinearColorMapElement.create("c2", new Color[] {
+				Color.green, Color.red }, NumberRange.create(100.0f, false, 400.0f, true),
+				NumberRange.create(2, 1000));
+		final LinearColorMapElement c3 = LinearColorMapElement.create("c3", new Color[] {
+				Color.red, Color.white }, NumberRange.create(400.0f, false,
+				Double.POSITIVE_INFINITY, true), NumberRange.create(1001, 2000));
+		final LinearColorMapElement nodata = LinearColorMapElement.create("nodata", new Color(0,
+				0, 0, 0), NumberRange.create(Double.NaN, Double.NaN), 2001);
+		return new LinearColorMap("ramp", new LinearColorMapElement[] { c0, c1, c2, c3 },
+				new LinearColorMapElement[] { nodata });
+	}
+
+	private static LinearColorMap buildIntervals() {
+		final LinearColorMapElement c0 = LinearColorMapElement.create("c0", Color.BLACK,
+				NumberRange.create(Double.NEGATIVE_INFINITY, false, 0, true), 1);
+		final LinearColorMapElement c1 = LinearColorMapElement.create("c1", new Color[] {
+				Color.blue, Color.green }, NumberRange.create(0, false, 500, true), NumberRange
+				.create(2, 100));
+		final LinearColorMapElement c2 = LinearColorMapElement.create("c2", Color.red,
+				NumberRange.create(500, false, Double.POSITIVE_INFINITY, true), 101);
+		final LinearColorMapElement nodata = LinearColorMapElement.create("nodata", new Color(0,
+				0, 0, 0), NumberRange.create(Short.MIN_VALUE, Short.MIN_VALUE), 0);
+		return new LinearColorMap("intervals", new LinearColorMapElement[] { c0, c1, c2 },
+				new LinearColorMapElement[] { nodata });
+	}
+
+	/**
+	 * Classifies an image and checks every output against the color map
+	 */
+	private static void assertClassified(RenderedImage image, LinearColorMap colorMap)
+			throws Exception {
+		final ParameterBlockJAI pbj = new ParameterBlockJAI(RasterClassifier.OPERATION_NAME);
+		pbj.addSource(image);
+		pbj.setParameter("Domain1D", colorMap);
+		final RenderedOp classified = JAI.create(RasterClassifier.OPERATION_NAME, pbj);
+		final Raster outputs = classified.getData();
+		final Raster samples = image.getData();
+		final int mask = classified.getSampleModel().getDataType() == DataBuffer.TYPE_BYTE ? 0xFF
+				: 0xFFFF;
+		for (int y = image.getMinY(); y < image.getMinY() + image.getHeight(); y++) {
+			for (int x = image.getMinX(); x < image.getMinX() + image.getWidth(); x++) {
+				final double value = samples.getSampleDouble(x, y, 0);
+				final PiecewiseTransform1DElement element = colorMap.findDomainElement(value);
+				final int expected = element != null ? (int) element.transform(value)
+						: (int) colorMap.getDefaultValue();
+				assertEquals("Sample " + value, expected & mask, outputs.getSample(x, y, 0));
+			}
+		}
+		classified.dispose();
+	}
+
+	@Test
+	public void testFloatRamp() throws Exception {
+		// a single large tile, classified in parallel strips
+		final WritableRaster raster = RasterFactory.createBandedRaster(DataBuffer.TYPE_FLOAT,
+				700, 600, 1, null);
+		for (int y = 0; y < raster.getHeight(); y++) {
+			for (int x = 0; x < raster.getWidth(); x++) {
+				raster.setSample(x, y, 0, x % 17 == 0 ? Float.NaN : (x + y) * 0.75f - 20);
+			}
+		}
+		final TiledImage image = new TiledImage(0, 0, raster.getWidth(), raster.getHeight(), 0,
+				0, raster.getSampleModel(), PlanarImage.createColorModel(raster
+						.getSampleModel()));
+		image.setData(raster);
+		assertClassified(image, buildRamp());
+	}
+
+	@Test
+	public void testShortTable() throws Exception {
+		// several tiles of short data, classified through the lookup table
+		final WritableRaster raster = RasterFactory.createBandedRaster(DataBuffer.TYPE_SHORT,
+				300, 200, 1, null);
+		for (int y = 0; y < raster.getHeight(); y++) {
+			for (int x = 0; x < raster.getWidth(); x++) {
+				raster.setSample(x, y, 0, x == y ? Short.MIN_VALUE : x * 4 - y - 200);
+			}
+		}
+		final TiledImage image = new TiledImage(0, 0, raster.getWidth(), raster.getHeight(), 0,
+				0, raster.getSampleModel().createCompatibleSampleModel(128, 128), PlanarImage
+						.createColorModel(raster.getSampleModel()));
+		image.setData(raster);
+		assertClassified(image, buildIntervals());
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		// equal color maps, as built for each request, share the compiled tables
+		assertEquals(buildRamp(), buildRamp());
+		assertEquals(buildRamp().hashCode(), buildRamp().hashCode());
+		final CompiledColorMap compiled = CompiledColorMap.get(buildRamp());
+		assertNotNull(compiled);
+		assertSame(compiled, CompiledColorMap.get(buildRamp()));
+		assertNotSame(compiled, CompiledColorMap.get(buildIntervals()));
+	}
+}
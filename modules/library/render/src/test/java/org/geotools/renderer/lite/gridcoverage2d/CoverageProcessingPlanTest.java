@@ -0,0 +1,138 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.renderer.lite.gridcoverage2d;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.List;
+
+import javax.media.jai.InterpolationNearest;
+import javax.media.jai.RasterFactory;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.geometry.GeneralEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.gridcoverage2d.CoverageProcessingPlan.BandSelectStep;
+import org.geotools.renderer.lite.gridcoverage2d.CoverageProcessingPlan.CropStep;
+import org.geotools.renderer.lite.gridcoverage2d.CoverageProcessingPlan.ResampleStep;
+import org.geotools.renderer.lite.gridcoverage2d.CoverageProcessingPlan.SelectAndRescaleStep;
+import org.geotools.renderer.lite.gridcoverage2d.CoverageProcessingPlan.Step;
+import org.junit.Test;
+
+/**
+ * Tests for the fusion rules and execution of {@link CoverageProcessingPlan}
+ *
+ * @source $URL$
+ */
+public class CoverageProcessingPlanTest {
+
+    private static GeneralEnvelope envelope(double minx, double miny, double maxx, double maxy) {
+        GeneralEnvelope envelope = new GeneralEnvelope(new double[] { minx, miny }, new double[] {
+                maxx, maxy });
+        envelope.setCoordinateReferenceSystem(DefaultGeographicCRS.WGS84);
+        return envelope;
+    }
+
+    @Test
+    public void testCropsAreMerged() {
+        CoverageProcessingPlan plan = new CoverageProcessingPlan(null);
+        plan.crop(envelope(0, 0, 10, 10)).crop(envelope(5, -5, 20, 8));
+        List<Step> steps = plan.getOptimizedSteps();
+        assertEquals(1, steps.size());
+        GeneralEnvelope merged = ((CropStep) steps.get(0)).envelope;
+        assertEquals(5, merged.getMinimum(0), 0d);
+        assertEquals(0, merged.getMinimum(1), 0d);
+        assertEquals(10, merged.getMaximum(0), 0d);
+        assertEquals(8, merged.getMaximum(1), 0d);
+    }
+
+    @Test
+    public void testCropFusedIntoGridResample() {
+        GridGeometry2D grid = new GridGeometry2D(new GridEnvelope2D(0, 0, 10, 10), envelope(0,
+                0, 10, 10));
+        CoverageProcessingPlan plan = new CoverageProcessingPlan(null);
+        plan.crop(envelope(0, 0, 10, 10)).resample(DefaultGeographicCRS.WGS84, grid,
+                new InterpolationNearest());
+        List<Step> steps = plan.getOptimizedSteps();
+        assertEquals(1, steps.size());
+        assertTrue(steps.get(0) instanceof ResampleStep);
+
+        // without a target grid the crop is what limits the resample area
+        plan = new CoverageProcessingPlan(null);
+        plan.crop(envelope(0, 0, 10, 10)).resample(DefaultGeographicCRS.WGS84, null,
+                new InterpolationNearest());
+        assertEquals(2, plan.getOptimizedSteps().size());
+    }
+
+    @Test
+    public void testBandSelectionsComposed() {
+        CoverageProcessingPlan plan = new CoverageProcessingPlan(null);
+        plan.selectBands(new int[] { 4, 2, 0 }).selectBands(new int[] { 2, 1 });
+        List<Step> steps = plan.getOptimizedSteps();
+        assertEquals(1, steps.size());
+        assertArrayEquals(new int[] { 0, 2 }, ((BandSelectStep) steps.get(0)).bands);
+    }
+
+    @Test
+    public void testSelectAndRescaleToBytes() {
+        // a five band float coverage, band 3 holding values in [0, 1000]
+        WritableRaster raster = RasterFactory.createBandedRaster(DataBuffer.TYPE_FLOAT, 10, 10,
+                5, null);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 10; x++) {
+                for (int b = 0; b < 5; b++) {
+                    raster.setSample(x, y, b, b == 3 ? (x + 10 * y) * 1000 / 99f : -50000);
+                }
+            }
+        }
+        GridCoverage2D coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create(
+                "test", raster, envelope(0, 0, 10, 10));
+
+        CoverageProcessingPlan plan = new CoverageProcessingPlan(null);
+        plan.selectBands(new int[] { 3 }).rescaleToBytes();
+        List<Step> steps = plan.getOptimizedSteps();
+        assertEquals(1, steps.size());
+        assertTrue(steps.get(0) instanceof SelectAndRescaleStep);
+
+        GridCoverage2D result = plan.execute(coverage);
+        RenderedImage image = result.getRenderedImage();
+        assertEquals(1, image.getSampleModel().getNumBands());
+        assertEquals(DataBuffer.TYPE_BYTE, image.getSampleModel().getDataType());
+        assertEquals(1, result.getNumSampleDimensions());
+        Raster data = image.getData();
+        assertEquals(0, data.getSample(0, 0, 0));
+        assertTrue(data.getSample(9, 9, 0) >= 254);
+    }
+
+    @Test
+    public void testEmptyCrop() {
+        WritableRaster raster = RasterFactory.createBandedRaster(DataBuffer.TYPE_BYTE, 10, 10, 1,
+                null);
+        GridCoverage2D coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create(
+                "test", raster, envelope(0, 0, 10, 10));
+        CoverageProcessingPlan plan = new CoverageProcessingPlan(null);
+        plan.crop(envelope(20, 20, 30, 30));
+        assertNull(plan.execute(coverage));
+    }
+}
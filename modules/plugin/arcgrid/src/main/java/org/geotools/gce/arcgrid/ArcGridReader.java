@@ -23,7 +23,9 @@ import it.geosolutions.imageio.utilities.ImageIOUtilities;
 
 import java.awt.Color;
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.File;
@@ -50,7 +52,6 @@ import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.measure.unit.Unit;
 import javax.media.jai.JAI;
-import javax.media.jai.RenderedOp;
 
 import org.geotools.coverage.Category;
 import org.geotools.coverage.GridSampleDimension;
@@ -67,6 +68,9 @@ import org.geotools.data.PrjFileReader;
 import org.geotools.factory.Hints;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.image.io.ImageIOExt;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
+import org.geotools.resources.coverage.CoverageUtilities;
 import org.geotools.resources.i18n.Vocabulary;
 import org.geotools.resources.i18n.VocabularyKeys;
 import org.geotools.resources.image.ImageUtilities;
@@ -109,6 +113,9 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 	/** No data value for this dataset. */
 	private double inNoData = Double.NaN;
 
+	/** The grid read in place, for plain files, null otherwise. */
+	private AsciiGridFile gridFile;
+
 	/**
 	 * Creates a new instance of an ArcGridReader basing the decision on whether
 	 * the file is compressed or not. I assume nothing about file extension.
@@ -160,6 +167,18 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		        } else			
 		            getCoordinateReferenceSystem();
 
+			if (source instanceof File && !gzipped) {
+				// /////////////////////////////////////////////////////////////////////
+				//
+				// Plain files are read in place, only the header is parsed here
+				//
+				// /////////////////////////////////////////////////////////////////////
+				gridFile = new AsciiGridFile((File) source);
+				parseHeader(gridFile);
+				finalStreamPreparation();
+				return;
+			}
+
 			// /////////////////////////////////////////////////////////////////////
 			//
 			// Reader and metadata
@@ -474,41 +493,52 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		// image and metadata
 		//
 		// //
-		final ParameterBlock pbjImageRead = new ParameterBlock();
-		// prepare input to handle possible parallelism between different
-		// readers
-		if (source instanceof File) {
-			if (!gzipped){
-			    if(inStreamSPI!=null)
-			        pbjImageRead.add(inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), ImageIO.getCacheDirectory()    ));
-			    else
-			        pbjImageRead.add(ImageIO.createImageInputStream(source));
-			}
-			else
-				pbjImageRead.add(ImageIO
-						.createImageInputStream(new GZIPInputStream(
-								new FileInputStream((File) source))));
-		} else if (source instanceof ImageInputStream
-				|| source instanceof InputStream)
-			pbjImageRead.add(inStream);
-		else if (source instanceof URL) {
-			if (gzipped)
-				ImageIO.createImageInputStream(new GZIPInputStream(
-						((URL) source).openConnection().getInputStream()));
-			else
-				pbjImageRead.add(ImageIO.createImageInputStream(((URL) source)
-						.openConnection().getInputStream()));
+		final RenderedImage asciiCoverage;
+		final Rectangle sourceRegion;
+		if (gridFile != null) {
+			// only the rows of the requested area are scanned, the index
+			// allowing to seek to the first one
+			sourceRegion = getSourceRegion(requestedEnvelope);
+			asciiCoverage = AsciiGridImage.create(gridFile, sourceRegion,
+					readP.getSourceXSubsampling(), readP.getSourceYSubsampling(), hints);
+		} else {
+			sourceRegion = null;
+			final ParameterBlock pbjImageRead = new ParameterBlock();
+			// prepare input to handle possible parallelism between different
+			// readers
+			if (source instanceof File) {
+				if (!gzipped){
+				    if(inStreamSPI!=null)
+				        pbjImageRead.add(inStreamSPI.createInputStreamInstance(source, ImageIO.getUseCache(), ImageIO.getCacheDirectory()    ));
+				    else
+				        pbjImageRead.add(ImageIO.createImageInputStream(source));
+				}
+				else
+					pbjImageRead.add(ImageIO
+							.createImageInputStream(new GZIPInputStream(
+									new FileInputStream((File) source))));
+			} else if (source instanceof ImageInputStream
+					|| source instanceof InputStream)
+				pbjImageRead.add(inStream);
+			else if (source instanceof URL) {
+				if (gzipped)
+					ImageIO.createImageInputStream(new GZIPInputStream(
+							((URL) source).openConnection().getInputStream()));
+				else
+					pbjImageRead.add(ImageIO.createImageInputStream(((URL) source)
+							.openConnection().getInputStream()));
 
+			}
+			pbjImageRead.add(imageChoice);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(Boolean.FALSE);
+			pbjImageRead.add(null);
+			pbjImageRead.add(null);
+			pbjImageRead.add(readP);
+			pbjImageRead.add(readerSPI.createReaderInstance());
+			asciiCoverage = JAI.create("ImageRead", pbjImageRead,hints);
 		}
-		pbjImageRead.add(imageChoice);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(Boolean.FALSE);
-		pbjImageRead.add(null);
-		pbjImageRead.add(null);
-		pbjImageRead.add(readP);
-		pbjImageRead.add(readerSPI.createReaderInstance());
-		final RenderedOp asciiCoverage = JAI.create("ImageRead", pbjImageRead,hints);
 
 		// //
 		//
@@ -559,6 +589,24 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 			//
 			// Coverage
 			//
+			if (sourceRegion != null) {
+				final double cellSizeX = originalEnvelope.getSpan(0) / gridFile.getColumns();
+				final double cellSizeY = originalEnvelope.getSpan(1) / gridFile.getRows();
+				final AffineTransform gridToWorld = new AffineTransform(
+						cellSizeX * readP.getSourceXSubsampling(), 0, 0,
+						-cellSizeY * readP.getSourceYSubsampling(),
+						originalEnvelope.getMinimum(0) + sourceRegion.x * cellSizeX,
+						originalEnvelope.getMaximum(1) - sourceRegion.y * cellSizeY);
+				gridToWorld.concatenate(CoverageUtilities.CORNER_TO_CENTER);
+				return coverageFactory.create(
+				        coverageName,
+				        asciiCoverage,
+				        crs,
+				        ProjectiveTransform.create(gridToWorld),
+				        new GridSampleDimension[] { band },
+				        null,
+				        properties);
+			}
 			return coverageFactory.create(
 			        coverageName, 
 			        asciiCoverage,
@@ -574,6 +622,49 @@ public final class ArcGridReader extends AbstractGridCoverage2DReader implements
 		}
 	}
 
+	/**
+	 * Computes the area of the grid covering the requested envelope.
+	 * 
+	 * @param requestedEnvelope
+	 *            the requested envelope, can be null.
+	 * @return the area to read, the whole grid if the request does not
+	 *         intersect it or is expressed in another crs.
+	 */
+	private Rectangle getSourceRegion(GeneralEnvelope requestedEnvelope) {
+		final Rectangle gridBounds = new Rectangle(0, 0, gridFile.getColumns(), gridFile.getRows());
+		if (requestedEnvelope == null)
+			return gridBounds;
+		final CoordinateReferenceSystem requestedCRS = requestedEnvelope.getCoordinateReferenceSystem();
+		if (requestedCRS != null && !CRS.equalsIgnoreMetadata(requestedCRS, crs))
+			return gridBounds;
+
+		final double cellSizeX = originalEnvelope.getSpan(0) / gridFile.getColumns();
+		final double cellSizeY = originalEnvelope.getSpan(1) / gridFile.getRows();
+		final int minX = (int) Math.floor((requestedEnvelope.getMinimum(0) - originalEnvelope.getMinimum(0)) / cellSizeX);
+		final int maxX = (int) Math.ceil((requestedEnvelope.getMaximum(0) - originalEnvelope.getMinimum(0)) / cellSizeX);
+		final int minY = (int) Math.floor((originalEnvelope.getMaximum(1) - requestedEnvelope.getMaximum(1)) / cellSizeY);
+		final int maxY = (int) Math.ceil((originalEnvelope.getMaximum(1) - requestedEnvelope.getMinimum(1)) / cellSizeY);
+		final Rectangle region = new Rectangle(minX, minY, maxX - minX, maxY - minY).intersection(gridBounds);
+		return region.isEmpty() ? gridBounds : region;
+	}
+
+	/**
+	 * Sets the grid range, envelope, resolution and no data value from the
+	 * header of a grid read in place.
+	 * 
+	 * @param gridFile
+	 *            the grid whose header has been parsed.
+	 */
+	private void parseHeader(AsciiGridFile gridFile) {
+		final Rectangle actualDim = new Rectangle(0, 0, gridFile.getColumns(), gridFile.getRows());
+		originalGridRange = new GridEnvelope2D(actualDim);
+		originalEnvelope = new GeneralEnvelope(new double[] { gridFile.getMinX(), gridFile.getMinY() },
+				new double[] { gridFile.getMaxX(), gridFile.getMaxY() });
+		originalEnvelope.setCoordinateReferenceSystem(crs);
+		highestRes = getResolution(originalEnvelope, actualDim, crs);
+		inNoData = gridFile.getNoData();
+	}
+
 	/**
 	 * This method is responsible for building up an envelope according to the
 	 * definition of the crs. It assumes that X coordinate on the ascii grid
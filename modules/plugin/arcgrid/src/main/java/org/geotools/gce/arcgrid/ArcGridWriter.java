@@ -17,9 +17,7 @@
  */
 package org.geotools.gce.arcgrid;
 
-import it.geosolutions.imageio.plugins.arcgrid.AsciiGridsImageMetadata;
 import it.geosolutions.imageio.plugins.arcgrid.AsciiGridsImageWriter;
-import it.geosolutions.imageio.plugins.arcgrid.spi.AsciiGridsImageWriterSpi;
 
 import java.awt.geom.AffineTransform;
 import java.awt.image.RenderedImage;
@@ -34,8 +32,6 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
 import javax.imageio.stream.ImageOutputStream;
 import javax.media.jai.Interpolation;
 
@@ -86,10 +82,6 @@ public final class ArcGridWriter extends AbstractGridCoverageWriter implements G
 	private final static Logger LOGGER = org.geotools.util.logging.Logging
 			.getLogger("org.geotools.gce.arcgrid");
 
-	/** Imageio {@link AsciiGridsImageWriter} we will use to write out. */
-	private AsciiGridsImageWriter mWriter = new AsciiGridsImageWriter(
-			new AsciiGridsImageWriterSpi());
-
 	/** Default {@link ParameterValueGroup} for doing a bandselect. */
 	private final static ParameterValueGroup bandSelectParams;
 
@@ -316,15 +308,6 @@ public final class ArcGridWriter extends AbstractGridCoverageWriter implements G
 			//
 			// /////////////////////////////////////////////////////////////////
 			final RenderedImage source = gc.getRenderedImage();
-			final int cols = source.getWidth();
-			final int rows = source.getHeight();
-
-			// Preparing main parameters for JAI imageWrite Operation
-			// //
-			// Setting Output
-			// //
-			//mWriter.reset();
-			mWriter.setOutput(outStream);
 
 			// //
 			// no data management
@@ -332,13 +315,9 @@ public final class ArcGridWriter extends AbstractGridCoverageWriter implements G
 			double inNoData = getCandidateNoData(gc);
 
 			// //
-			// Construct a proper asciiGridRaster which supports metadata
-			// setting
+			// Streaming the values out, a row of tiles at a time
 			// //
-
-			// Setting the source for the image write operation
-			mWriter.write(null, new IIOImage(source, null,
-					new AsciiGridsImageMetadata(cols, rows, cellsizeX,cellsizeY, xl, yl,  true,grass, inNoData)), null);
+			new AsciiGridEncoder(outStream).write(source, grass, xl, yl, cellsizeX, cellsizeY, inNoData);
 
 			// writing crs info
 			writeCRSInfo(crs);
@@ -352,9 +331,6 @@ public final class ArcGridWriter extends AbstractGridCoverageWriter implements G
 			if (LOGGER.isLoggable(Level.SEVERE))
 				LOGGER.log(Level.SEVERE, e.getLocalizedMessage(), e);
 			throw new DataSourceException(e);
-		}finally{
-
-			mWriter.dispose();
 		}
 	}
 
@@ -592,15 +568,10 @@ public final class ArcGridWriter extends AbstractGridCoverageWriter implements G
 	 * @see org.opengis.coverage.grid.GridCoverageWriter#dispose()
 	 */
 	public void dispose() {
-
-		if (mWriter != null) {
-			try{
-				mWriter.dispose();
-			}catch (Exception e) {
-				// swallow
-			}
-			mWriter = null;
-		}
+		// only closing the streams opened by this writer
+		if (!(destination instanceof ImageOutputStream))
+			super.dispose();
+		outStream = null;
 	}
 
 	static double getCandidateNoData(GridCoverage2D gc) {
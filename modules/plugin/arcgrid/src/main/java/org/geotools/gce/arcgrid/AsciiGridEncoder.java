@@ -0,0 +1,249 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Writes the first band of an image as an ESRI or GRASS ascii grid. The image is pulled a row of
+ * tiles at a time and the values are formatted straight into a byte buffer.
+ * <p>
+ * A value is written as an integer, or as a decimal number with up to nine decimals, whenever that
+ * representation parses back to the very same value, falling back on
+ * {@link Double#toString(double)} otherwise.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class AsciiGridEncoder {
+
+    /** The no data value of ESRI grids whose coverage does not declare any */
+    static final double DEFAULT_NO_DATA = -9999;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Room for the longest formatted value past the flush threshold */
+    private static final int MAX_VALUE_LENGTH = 32;
+
+    private static final int MAX_DECIMALS = 9;
+
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9 };
+
+    /** Values below this magnitude are exactly represented as longs and doubles alike */
+    private static final double MAX_EXACT = 1e15;
+
+    private final ImageOutputStream out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE + MAX_VALUE_LENGTH];
+
+    private final byte[] digits = new byte[20];
+
+    private int count;
+
+    /**
+     * @param out the stream the grid is written to
+     */
+    AsciiGridEncoder(ImageOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the header and the values of a grid.
+     *
+     * @param image the image whose first band is written
+     * @param grass true to write a GRASS grid, false to write an ESRI one
+     * @param minX the minimum x of the grid envelope
+     * @param minY the minimum y of the grid envelope
+     * @param cellSizeX the width of a cell
+     * @param cellSizeY the height of a cell
+     * @param noData the no data value, NaN if none. The NaN values are written as the GRASS null
+     *        marker or as the ESRI no data value
+     */
+    void write(RenderedImage image, boolean grass, double minX, double minY, double cellSizeX,
+            double cellSizeY, double noData) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        if (grass) {
+            append("north: ").appendDouble(minY + height * cellSizeY);
+            append("\nsouth: ").appendDouble(minY);
+            append("\neast: ").appendDouble(minX + width * cellSizeX);
+            append("\nwest: ").appendDouble(minX);
+            append("\nrows: ").appendLong(height);
+            append("\ncols: ").appendLong(width);
+        } else {
+            if (Double.isNaN(noData)) {
+                noData = DEFAULT_NO_DATA;
+            }
+            append("NCOLS ").appendLong(width);
+            append("\nNROWS ").appendLong(height);
+            append("\nXLLCORNER ").appendDouble(minX);
+            append("\nYLLCORNER ").appendDouble(minY);
+            if (cellSizeX == cellSizeY) {
+                append("\nCELLSIZE ").appendDouble(cellSizeX);
+            } else {
+                append("\nDX ").appendDouble(cellSizeX);
+                append("\nDY ").appendDouble(cellSizeY);
+            }
+            append("\nNODATA_VALUE ").appendDouble(noData);
+        }
+        buffer[count++] = '\n';
+
+        final int dataType = image.getSampleModel().getDataType();
+        final boolean integral = dataType != DataBuffer.TYPE_FLOAT
+                && dataType != DataBuffer.TYPE_DOUBLE;
+        final Raster[] tiles = new Raster[image.getNumXTiles()];
+        for (int tileY = image.getMinTileY(); tileY < image.getMinTileY() + image.getNumYTiles(); tileY++) {
+            // a row of tiles at a time, so that the image is never fully loaded
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = image.getTile(image.getMinTileX() + i, tileY);
+            }
+            final int minRow = Math.max(image.getMinY(), tileY * image.getTileHeight()
+                    + image.getTileGridYOffset());
+            final int maxRow = Math.min(image.getMinY() + height, minRow + image.getTileHeight());
+            for (int y = minRow; y < maxRow; y++) {
+                int x = image.getMinX();
+                for (Raster tile : tiles) {
+                    final int maxX = Math.min(tile.getMinX() + tile.getWidth(), image.getMinX()
+                            + width);
+                    for (; x < maxX; x++) {
+                        if (count >= BUFFER_SIZE) {
+                            flush();
+                        }
+                        if (integral) {
+                            appendLong(tile.getSample(x, y, 0));
+                        } else {
+                            final double value = tile.getSampleDouble(x, y, 0);
+                            if (Double.isNaN(value)) {
+                                if (grass) {
+                                    buffer[count++] = '*';
+                                } else {
+                                    appendDouble(noData);
+                                }
+                            } else if (dataType == DataBuffer.TYPE_FLOAT) {
+                                appendFloat((float) value);
+                            } else {
+                                appendDouble(value);
+                            }
+                        }
+                        buffer[count++] = ' ';
+                    }
+                }
+                // replacing the separator following the last value
+                buffer[count - 1] = '\n';
+            }
+        }
+        flush();
+        out.flush();
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+
+    private AsciiGridEncoder append(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[count++] = (byte) text.charAt(i);
+        }
+        return this;
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (length > 0) {
+            buffer[count++] = digits[--length];
+        }
+    }
+
+    /**
+     * Appends the digits of a value scaled by a power of ten, inserting the decimal point
+     */
+    private void appendDecimal(long scaled, int decimals) {
+        if (scaled < 0) {
+            buffer[count++] = '-';
+            scaled = -scaled;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + scaled % 10);
+            scaled /= 10;
+        } while (scaled != 0 || length <= decimals);
+        while (length > 0) {
+            if (length == decimals) {
+                buffer[count++] = '.';
+            }
+            buffer[count++] = digits[--length];
+        }
+    }
+
+    private void appendDouble(double value) {
+        if (Math.abs(value) < MAX_EXACT) {
+            if (value == (long) value) {
+                appendLong((long) value);
+                return;
+            }
+            // m / 10^k is correctly rounded, so it is the value the written digits parse back to
+            for (int decimals = 1; decimals <= MAX_DECIMALS; decimals++) {
+                final double scaled = value * POWERS_OF_TEN[decimals];
+                if (Math.abs(scaled) >= MAX_EXACT) {
+                    break;
+                }
+                final long m = Math.round(scaled);
+                if (m / POWERS_OF_TEN[decimals] == value) {
+                    appendDecimal(m, decimals);
+                    return;
+                }
+            }
+        }
+        append(Double.toString(value));
+    }
+
+    private void appendFloat(float value) {
+        if (Math.abs(value) < MAX_EXACT) {
+            if (value == (long) value) {
+                appendLong((long) value);
+                return;
+            }
+            for (int decimals = 1; decimals <= MAX_DECIMALS; decimals++) {
+                final double scaled = value * POWERS_OF_TEN[decimals];
+                if (Math.abs(scaled) >= MAX_EXACT) {
+                    break;
+                }
+                final long m = Math.round(scaled);
+                if ((float) (m / POWERS_OF_TEN[decimals]) == value) {
+                    appendDecimal(m, decimals);
+                    return;
+                }
+            }
+        }
+        append(Float.toString(value));
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An ESRI or GRASS ascii grid stored in a plain file, read in place instead of being loaded as a
+ * whole.
+ * <p>
+ * The header is parsed on creation. The first time values are requested the file is scanned once,
+ * without parsing the numbers, to build a sparse index holding the position of the first value of
+ * every {@link #ROWS_PER_ENTRY}th row. Any row is then reached by seeking to the closest entry and
+ * skipping the values in between. The numbers are parsed straight from the bytes of the file.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class AsciiGridFile {
+
+    /** Number of rows between two entries of the index */
+    static final int ROWS_PER_ENTRY = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Longest accepted value, in characters */
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    /** The powers of ten that are exactly represented as doubles */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final Set<String> ESRI_KEYWORDS = new HashSet<String>(Arrays.asList("ncols",
+            "nrows", "xllcorner", "xllcenter", "yllcorner", "yllcenter", "cellsize", "dx", "dy",
+            "nodata_value"));
+
+    private static final Set<String> GRASS_KEYWORDS = new HashSet<String>(Arrays.asList("north",
+            "south", "east", "west", "rows", "cols", "null", "type", "multiplier", "proj", "zone"));
+
+    private final File file;
+
+    private final boolean grass;
+
+    private final int columns;
+
+    private final int rows;
+
+    private final double minX;
+
+    private final double minY;
+
+    private final double maxX;
+
+    private final double maxY;
+
+    private final double noData;
+
+    private final long dataOffset;
+
+    /** The position of the first value of every {@link #ROWS_PER_ENTRY}th row */
+    private long[] index;
+
+    /**
+     * Parses the header of an ascii grid file.
+     *
+     * @param file the ascii grid file, not compressed
+     * @throws IOException if the file cannot be read or its header is not valid
+     */
+    AsciiGridFile(File file) throws IOException {
+        this.file = file;
+        final Map<String, String> header = new HashMap<String, String>();
+        boolean grass = false;
+        long offset;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final Scanner scanner = new Scanner(raf.getChannel(), 0);
+            while (true) {
+                if (!scanner.skipWhitespace()) {
+                    throw new IOException("No values found in " + file);
+                }
+                final long position = scanner.position();
+                final String token = scanner.nextToken();
+                String key = token;
+                String value = null;
+                final int colon = token.indexOf(':');
+                if (colon > 0) {
+                    key = token.substring(0, colon);
+                    value = colon < token.length() - 1 ? token.substring(colon + 1) : null;
+                }
+                key = key.toLowerCase(Locale.ENGLISH);
+                if (colon > 0 ? !GRASS_KEYWORDS.contains(key) : !ESRI_KEYWORDS.contains(key)) {
+                    offset = position;
+                    break;
+                }
+                grass |= colon > 0;
+                if (value == null) {
+                    if (!scanner.skipWhitespace()) {
+                        throw new IOException("Missing value for " + key + " in " + file);
+                    }
+                    value = scanner.nextToken();
+                }
+                header.put(key, value);
+            }
+        } finally {
+            raf.close();
+        }
+
+        this.dataOffset = offset;
+        this.grass = grass;
+        if (grass) {
+            columns = (int) getHeaderValue(header, "cols");
+            rows = (int) getHeaderValue(header, "rows");
+            minX = getHeaderValue(header, "west");
+            minY = getHeaderValue(header, "south");
+            maxX = getHeaderValue(header, "east");
+            maxY = getHeaderValue(header, "north");
+            noData = header.containsKey("null") ? getHeaderValue(header, "null") : Double.NaN;
+        } else {
+            columns = (int) getHeaderValue(header, "ncols");
+            rows = (int) getHeaderValue(header, "nrows");
+            final double cellSizeX;
+            final double cellSizeY;
+            if (header.containsKey("cellsize")) {
+                cellSizeX = cellSizeY = getHeaderValue(header, "cellsize");
+            } else {
+                cellSizeX = getHeaderValue(header, "dx");
+                cellSizeY = getHeaderValue(header, "dy");
+            }
+            // the center of the lower left cell can be provided instead of its corner
+            minX = header.containsKey("xllcenter") ? getHeaderValue(header, "xllcenter")
+                    - cellSizeX / 2 : getHeaderValue(header, "xllcorner");
+            minY = header.containsKey("yllcenter") ? getHeaderValue(header, "yllcenter")
+                    - cellSizeY / 2 : getHeaderValue(header, "yllcorner");
+            maxX = minX + columns * cellSizeX;
+            maxY = minY + rows * cellSizeY;
+            noData = header.containsKey("nodata_value") ? getHeaderValue(header, "nodata_value")
+                    : Double.NaN;
+        }
+        if (columns <= 0 || rows <= 0) {
+            throw new IOException("Invalid grid size " + columns + "x" + rows + " in " + file);
+        }
+    }
+
+    private double getHeaderValue(Map<String, String> header, String key) throws IOException {
+        final String value = header.get(key);
+        if (value == null) {
+            throw new IOException("Missing " + key + " in the header of " + file);
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid value " + value + " for " + key + " in " + file);
+        }
+    }
+
+    boolean isGrass() {
+        return grass;
+    }
+
+    int getColumns() {
+        return columns;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    double getMinX() {
+        return minX;
+    }
+
+    double getMinY() {
+        return minY;
+    }
+
+    double getMaxX() {
+        return maxX;
+    }
+
+    double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return the no data value, NaN if the header does not declare any
+     */
+    double getNoData() {
+        return noData;
+    }
+
+    /**
+     * Returns the index, building it on first access by scanning the whole file
+     */
+    private synchronized long[] getIndex() throws IOException {
+        if (index == null) {
+            final long[] entries = new long[(rows + ROWS_PER_ENTRY - 1) / ROWS_PER_ENTRY];
+            final long valuesPerEntry = (long) columns * ROWS_PER_ENTRY;
+            final long total = (long) columns * rows;
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final Scanner scanner = new Scanner(raf.getChannel(), dataOffset);
+                long toNextEntry = 0;
+                int entry = 0;
+                for (long count = 0; count < total; count++) {
+                    if (!scanner.skipWhitespace()) {
+                        throw new IOException(file + " holds " + count + " values, " + total
+                                + " were expected");
+                    }
+                    if (toNextEntry == 0) {
+                        entries[entry++] = scanner.position();
+                        toNextEntry = valuesPerEntry;
+                    }
+                    toNextEntry--;
+                    scanner.skipToken();
+                }
+            } finally {
+                raf.close();
+            }
+            index = entries;
+        }
+        return index;
+    }
+
+    /**
+     * Reads a region of the grid, possibly subsampled, in the first band of a raster. The pixel
+     * (x, y) of the raster is given the value of the cell (region.x + x * stepX, region.y + y *
+     * stepY) of the grid.
+     *
+     * @param region the area of the grid the raster origin is relative to
+     * @param stepX the subsampling step along the columns
+     * @param stepY the subsampling step along the rows
+     * @param raster the raster to fill
+     * @param rect the area of the raster to fill
+     */
+    void read(Rectangle region, int stepX, int stepY, WritableRaster raster, Rectangle rect)
+            throws IOException {
+        final long[] index = getIndex();
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final Scanner scanner = new Scanner(raf.getChannel(), dataOffset);
+            long current = 0;
+            final int maxX = rect.x + rect.width;
+            final int maxY = rect.y + rect.height;
+            for (int y = rect.y; y < maxY; y++) {
+                final int row = region.y + y * stepY;
+                final int entry = row / ROWS_PER_ENTRY;
+                final long entryValue = (long) entry * ROWS_PER_ENTRY * columns;
+                final long rowStart = (long) row * columns + region.x;
+                if (rowStart + (long) rect.x * stepX < current || entryValue > current) {
+                    // going back, or the closest entry is ahead of the values to skip
+                    scanner.seek(index[entry]);
+                    current = entryValue;
+                }
+                for (int x = rect.x; x < maxX; x++) {
+                    final long target = rowStart + (long) x * stepX;
+                    for (; current < target; current++) {
+                        nextValue(scanner);
+                        scanner.skipToken();
+                    }
+                    nextValue(scanner);
+                    raster.setSample(x, y, 0, scanner.nextDouble());
+                    current++;
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void nextValue(Scanner scanner) throws IOException {
+        if (!scanner.skipWhitespace()) {
+            throw new IOException("Unexpected end of file " + file);
+        }
+    }
+
+    /**
+     * Parses a number from its ascii representation. The numbers having up to 15 significant
+     * digits and a small exponent are computed with a single, correctly rounded, floating point
+     * operation, the others are handed to {@link Double#parseDouble(String)}. The GRASS null
+     * marker {@code *} is parsed as NaN.
+     *
+     * @param bytes the characters of the number
+     * @param length the number of characters
+     * @throws NumberFormatException if the characters are not a number
+     */
+    static double parseDouble(byte[] bytes, int length) {
+        if (length == 1 && bytes[0] == '*') {
+            return Double.NaN;
+        }
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (bytes[0] == '-' || bytes[0] == '+')) {
+            negative = bytes[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean digits = false;
+        boolean exact = true;
+        for (; i < length; i++) {
+            final int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            digits = true;
+            if (significant < 18) {
+                mantissa = mantissa * 10 + digit;
+                if (mantissa != 0) {
+                    significant++;
+                }
+            } else {
+                exponent++;
+                exact &= digit == 0;
+            }
+        }
+        if (i < length && bytes[i] == '.') {
+            for (i++; i < length; i++) {
+                final int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                digits = true;
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + digit;
+                    if (mantissa != 0) {
+                        significant++;
+                    }
+                    exponent--;
+                } else {
+                    exact &= digit == 0;
+                }
+            }
+        }
+        if (digits && i < length && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < length && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int value = 0;
+            boolean exponentDigits = false;
+            for (; i < length; i++) {
+                final int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                exponentDigits = true;
+                if (value < 100000) {
+                    value = value * 10 + digit;
+                }
+            }
+            exact &= exponentDigits;
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if (digits && exact && i == length && significant <= 15 && exponent >= -22
+                && exponent <= 22) {
+            // both operands are exact, so the result is correctly rounded
+            final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa
+                    * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(bytes, 0, length));
+    }
+
+    /**
+     * Buffered, seekable scanner of the whitespace separated tokens of a file, using positional
+     * reads so that several scanners can share the same channel.
+     */
+    private static final class Scanner {
+
+        private final FileChannel channel;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+
+        private final byte[] token = new byte[MAX_TOKEN_LENGTH];
+
+        /** The file position of the first byte of the buffer */
+        private long bufferPosition;
+
+        private int limit;
+
+        private int pos;
+
+        Scanner(FileChannel channel, long position) {
+            this.channel = channel;
+            this.bufferPosition = position;
+        }
+
+        void seek(long position) {
+            if (position >= bufferPosition && position < bufferPosition + limit) {
+                pos = (int) (position - bufferPosition);
+            } else {
+                bufferPosition = position;
+                pos = limit = 0;
+            }
+        }
+
+        /**
+         * @return the file position of the next byte
+         */
+        long position() {
+            return bufferPosition + pos;
+        }
+
+        private boolean fill() throws IOException {
+            bufferPosition += limit;
+            pos = limit = 0;
+            wrapper.clear();
+            while (wrapper.hasRemaining()) {
+                if (channel.read(wrapper, bufferPosition + wrapper.position()) < 0) {
+                    break;
+                }
+            }
+            limit = wrapper.position();
+            return limit > 0;
+        }
+
+        /**
+         * Moves to the start of the next token
+         *
+         * @return false if the end of the file has been reached
+         */
+        boolean skipWhitespace() throws IOException {
+            while (true) {
+                for (; pos < limit; pos++) {
+                    if (buffer[pos] > ' ') {
+                        return true;
+                    }
+                }
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+
+        void skipToken() throws IOException {
+            while (true) {
+                for (; pos < limit; pos++) {
+                    if (buffer[pos] <= ' ') {
+                        return;
+                    }
+                }
+                if (!fill()) {
+                    return;
+                }
+            }
+        }
+
+        private int readToken() throws IOException {
+            int length = 0;
+            while (true) {
+                for (; pos < limit; pos++) {
+                    final byte b = buffer[pos];
+                    if (b <= ' ') {
+                        return length;
+                    }
+                    if (length == MAX_TOKEN_LENGTH) {
+                        throw new IOException("Invalid value at " + position());
+                    }
+                    token[length++] = b;
+                }
+                if (!fill()) {
+                    return length;
+                }
+            }
+        }
+
+        String nextToken() throws IOException {
+            return new String(token, 0, readToken(), "US-ASCII");
+        }
+
+        double nextDouble() throws IOException {
+            final long position = position();
+            final int length = readToken();
+            try {
+                return parseDouble(token, length);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid value " + new String(token, 0, length, "US-ASCII")
+                        + " at " + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.arcgrid;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.SourcelessOpImage;
+import javax.media.jai.util.ImagingException;
+
+/**
+ * An image over a region of an {@link AsciiGridFile}, possibly subsampled, whose tiles are read
+ * from the file when computed. The tiles are strips spanning the whole width of the image, since
+ * the values of a row have to be scanned in sequence anyway.
+ *
+ * @source $URL$
+ */
+final class AsciiGridImage extends SourcelessOpImage {
+
+    /** The approximate size in bytes of a strip */
+    private static final int STRIP_SIZE = 1024 * 1024;
+
+    private final AsciiGridFile file;
+
+    private final Rectangle region;
+
+    private final int stepX;
+
+    private final int stepY;
+
+    /**
+     * Creates an image reading a region of a grid.
+     *
+     * @param file the grid to read
+     * @param region the area of the grid to read
+     * @param stepX the subsampling step along the columns
+     * @param stepY the subsampling step along the rows
+     * @param config the configuration of the image, the tile cache among others, can be null
+     */
+    static AsciiGridImage create(AsciiGridFile file, Rectangle region, int stepX, int stepY,
+            Map<?, ?> config) {
+        final int width = (region.width + stepX - 1) / stepX;
+        final int height = (region.height + stepY - 1) / stepY;
+        final int stripHeight = Math.max(1, Math.min(height, STRIP_SIZE / (width * 8)));
+        final SampleModel sampleModel = RasterFactory.createBandedSampleModel(
+                DataBuffer.TYPE_DOUBLE, width, stripHeight, 1);
+        final ImageLayout layout = new ImageLayout(0, 0, width, height, 0, 0, width, stripHeight,
+                sampleModel, PlanarImage.createColorModel(sampleModel));
+        return new AsciiGridImage(file, region, stepX, stepY, layout, config);
+    }
+
+    private AsciiGridImage(AsciiGridFile file, Rectangle region, int stepX, int stepY,
+            ImageLayout layout, Map<?, ?> config) {
+        super(layout, config, layout.getSampleModel(null), 0, 0, layout.getWidth(null), layout
+                .getHeight(null));
+        this.file = file;
+        this.region = new Rectangle(region);
+        this.stepX = stepX;
+        this.stepY = stepY;
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sources, WritableRaster dest, Rectangle destRect) {
+        try {
+            file.read(region, stepX, stepY, dest, destRect);
+        } catch (IOException e) {
+            throw new ImagingException("Failed to read the ascii grid values", e);
+        }
+    }
+}
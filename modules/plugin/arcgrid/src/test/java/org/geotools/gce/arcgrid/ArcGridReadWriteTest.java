@@ -25,6 +25,8 @@ import java.util.Random;
 
 import org.geotools.TestData;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridEnvelope2D;
+import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.factory.Hints;
 import org.geotools.geometry.GeneralEnvelope;
@@ -33,6 +35,7 @@ import org.geotools.resources.coverage.CoverageUtilities;
 import org.opengis.coverage.grid.GridCoverageReader;
 import org.opengis.coverage.grid.GridCoverageWriter;
 import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
 import org.opengis.parameter.ParameterValueGroup;
 
 /**
@@ -303,6 +306,33 @@ public class ArcGridReadWriteTest extends ArcGridBaseTestCase {
 
 	}
 
+	public void testReadRegion() throws Exception {
+		final File testFile = TestData.file(this, "arcgrid/precip30min.asc");
+		final Hints hints = new Hints(Hints.DEFAULT_COORDINATE_REFERENCE_SYSTEM, DefaultGeographicCRS.WGS84);
+		final ArcGridReader reader = new ArcGridReader(testFile, hints);
+		final GridCoverage2D full = reader.read(null);
+		final Raster expected = full.getRenderedImage().getData();
+
+		// a quarter of the north eastern hemisphere, at full and half resolution
+		final GeneralEnvelope envelope = new GeneralEnvelope(new double[] { 0, 0 }, new double[] { 45, 45 });
+		envelope.setCoordinateReferenceSystem(reader.getCrs());
+		for (int step = 1; step <= 2; step++) {
+			final ParameterValue<GridGeometry2D> gg = AbstractGridFormat.READ_GRIDGEOMETRY2D.createValue();
+			gg.setValue(new GridGeometry2D(new GridEnvelope2D(0, 0, 90 / step, 90 / step), envelope));
+			final GridCoverage2D region = reader.read(new GeneralParameterValue[] { gg });
+			assertTrue(((GeneralEnvelope) region.getEnvelope()).equals(envelope, 1E-9, false));
+
+			final Raster actual = region.getRenderedImage().getData();
+			assertEquals(90 / step, actual.getWidth());
+			assertEquals(90 / step, actual.getHeight());
+			for (int y = 0; y < actual.getHeight(); y++)
+				for (int x = 0; x < actual.getWidth(); x++)
+					assertEquals(expected.getSampleDouble(360 + x * step, 90 + y * step, 0),
+							actual.getSampleDouble(x, y, 0), 0d);
+		}
+		reader.dispose();
+	}
+
 	public static final void main(String[] args) throws Exception {
 		junit.textui.TestRunner.run(ArcGridReadWriteTest.class);
 	}
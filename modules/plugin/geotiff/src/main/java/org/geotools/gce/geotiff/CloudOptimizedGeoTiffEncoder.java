@@ -0,0 +1,722 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageio.plugins.tiff.TIFFField;
+import it.geosolutions.imageio.plugins.tiff.TIFFTag;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.InterpolationNearest;
+import javax.media.jai.JAI;
+import javax.media.jai.operator.ScaleDescriptor;
+
+import org.geotools.resources.image.ImageUtilities;
+import org.opengis.util.ProgressListener;
+
+/**
+ * Writes cloud optimized GeoTIFF files: tiled, compressed, with the overviews embedded and a
+ * layout that lets a client read any area of any level with a few HTTP range requests.
+ * <p>
+ * The file starts with the directories of all the levels, the full resolution one first, so
+ * that a single read at the beginning of the file describes the whole pyramid. They are followed
+ * by the tiles of the overviews, the smallest one first, and by the full resolution tiles. Each
+ * level is written in row order.
+ * </p>
+ * <p>
+ * The file is written in a single pass: the space for the directories is reserved upfront, the
+ * tiles are compressed on a pool of threads and written as they complete, in order, and the tile
+ * offsets and sizes are filled in at the end. The overviews are computed with a nearest neighbour
+ * subsampling by two, each from the previous one, until the image fits in a single tile.
+ * </p>
+ *
+ * @source $URL$
+ */
+class CloudOptimizedGeoTiffEncoder {
+
+    /** The default tile size, in pixels */
+    static final int DEFAULT_TILE_SIZE = 512;
+
+    static final int DEFAULT_DEFLATE_LEVEL = 6;
+
+    /** The TIFF type for the 8 bytes offsets of BigTIFF */
+    static final int TIFF_LONG8 = 16;
+
+    static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "COG encoder " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * A directory entry, the values being either inline or stored right after the directory
+     */
+    private static final class Entry {
+        final int tag;
+
+        final int type;
+
+        final int count;
+
+        final Object values;
+
+        /** The position of the values in the file */
+        long valuesPosition;
+
+        Entry(int tag, int type, int count, Object values) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.values = values;
+        }
+
+        long getValuesSize() {
+            return (long) count * getTypeSize(type);
+        }
+    }
+
+    /**
+     * A level of the pyramid, along with its directory
+     */
+    private static final class Level {
+        final RenderedImage image;
+
+        final int tilesAcross;
+
+        final int tilesDown;
+
+        final Map<Integer, Entry> entries = new TreeMap<Integer, Entry>();
+
+        long directoryPosition;
+
+        long[] tileOffsets;
+
+        long[] tileByteCounts;
+
+        Level(RenderedImage image, int tileWidth, int tileHeight) {
+            this.image = image;
+            this.tilesAcross = (image.getWidth() + tileWidth - 1) / tileWidth;
+            this.tilesDown = (image.getHeight() + tileHeight - 1) / tileHeight;
+            this.tileOffsets = new long[tilesAcross * tilesDown];
+            this.tileByteCounts = new long[tilesAcross * tilesDown];
+        }
+
+        void add(int tag, int type, Object values, int count) {
+            entries.put(tag, new Entry(tag, type, count, values));
+        }
+    }
+
+    static int getTypeSize(int type) {
+        switch (type) {
+        case TIFFTag.TIFF_BYTE:
+        case TIFFTag.TIFF_ASCII:
+            return 1;
+        case TIFFTag.TIFF_SHORT:
+            return 2;
+        case TIFFTag.TIFF_LONG:
+            return 4;
+        case TIFFTag.TIFF_DOUBLE:
+        case TIFF_LONG8:
+            return 8;
+        default:
+            throw new IllegalArgumentException("Unsupported TIFF type " + type);
+        }
+    }
+
+    private final int tileWidth;
+
+    private final int tileHeight;
+
+    private final int compression;
+
+    private final int deflateLevel;
+
+    private final int overviewCount;
+
+    private final boolean forceToBigTIFF;
+
+    private final int threads;
+
+    /**
+     * @param params the write parameters, providing the tiling, the compression, the number of
+     *        overviews and the BigTIFF flag
+     */
+    CloudOptimizedGeoTiffEncoder(GeoTiffWriteParams params) {
+        final ImageWriteParam adaptee = params.getAdaptee();
+        if (adaptee.getTilingMode() == ImageWriteParam.MODE_EXPLICIT) {
+            tileWidth = adaptee.getTileWidth();
+            tileHeight = adaptee.getTileHeight();
+        } else {
+            tileWidth = DEFAULT_TILE_SIZE;
+            tileHeight = DEFAULT_TILE_SIZE;
+        }
+        if (tileWidth <= 0 || tileWidth % 16 != 0 || tileHeight <= 0 || tileHeight % 16 != 0) {
+            throw new IllegalArgumentException("The tile sizes must be multiples of 16, got "
+                    + tileWidth + "x" + tileHeight);
+        }
+
+        if (adaptee.getCompressionMode() == ImageWriteParam.MODE_DISABLED) {
+            compression = BaselineTIFFTagSet.COMPRESSION_NONE;
+            deflateLevel = 0;
+        } else if (adaptee.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT) {
+            final String type = adaptee.getCompressionType();
+            if (!"Deflate".equalsIgnoreCase(type) && !"ZLib".equalsIgnoreCase(type)) {
+                throw new IllegalArgumentException("Unsupported compression " + type
+                        + " for cloud optimized GeoTIFF files, only Deflate is available");
+            }
+            compression = BaselineTIFFTagSet.COMPRESSION_ZLIB;
+            deflateLevel = Math.max(1, Math.round(adaptee.getCompressionQuality() * 9));
+        } else {
+            compression = BaselineTIFFTagSet.COMPRESSION_ZLIB;
+            deflateLevel = DEFAULT_DEFLATE_LEVEL;
+        }
+
+        overviewCount = params.getOverviewCount();
+        forceToBigTIFF = params.isForceToBigTIFF();
+        threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Writes the image and its overviews.
+     *
+     * @param image the full resolution image
+     * @param metadata the image metadata, whose private and ascii fields (the GeoTIFF ones among
+     *        them) are copied in the full resolution directory
+     * @param out the stream to write to, must support seeking back to the start of the file
+     * @param listener the listener to notify about the progress, can be null
+     * @return false if the writing got canceled through the listener
+     */
+    boolean write(RenderedImage image, TIFFImageMetadata metadata, ImageOutputStream out,
+            ProgressListener listener) throws IOException {
+        final SampleModel sm = image.getSampleModel();
+        final int dataType = sm.getDataType();
+        for (int band = 0; band < sm.getNumBands(); band++) {
+            if (dataType == DataBuffer.TYPE_UNDEFINED
+                    || sm.getSampleSize(band) != DataBuffer.getDataTypeSize(dataType)) {
+                throw new IllegalArgumentException(
+                        "Cloud optimized GeoTIFF files can only be written for images whose"
+                                + " samples fill a whole data type element");
+            }
+        }
+
+        // the pyramid, each overview computed from the previous level
+        final List<Level> levels = new ArrayList<Level>();
+        levels.add(new Level(image, tileWidth, tileHeight));
+        RenderedImage previous = image;
+        while ((overviewCount < 0 || levels.size() <= overviewCount)
+                && (previous.getWidth() > tileWidth || previous.getHeight() > tileHeight)) {
+            previous = downsample(previous);
+            levels.add(new Level(previous, tileWidth, tileHeight));
+        }
+
+        long rawSize = 0;
+        for (Level level : levels) {
+            rawSize += (long) level.tileOffsets.length * tileWidth * tileHeight
+                    * sm.getNumBands() * getTypeSize(getSampleType(dataType));
+        }
+        // leaves room for the directories and the worst case deflate expansion
+        final boolean bigTIFF = forceToBigTIFF || rawSize + rawSize / 100 + (1 << 20) > 0xFFFFFFFFL;
+
+        for (int i = 0; i < levels.size(); i++) {
+            addEntries(levels.get(i), i > 0, bigTIFF);
+        }
+        addMetadataEntries(levels.get(0), metadata);
+
+        if (listener != null) {
+            listener.started();
+        }
+        final long start = out.getStreamPosition();
+        out.setByteOrder(ByteOrder.BIG_ENDIAN);
+        long position = layout(levels, bigTIFF);
+        writeDirectories(out, start, levels, bigTIFF, position);
+
+        // the tiles, smallest overview first
+        int totalTiles = 0;
+        for (Level level : levels) {
+            totalTiles += level.tileOffsets.length;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, THREAD_FACTORY);
+        try {
+            int written = 0;
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                final Level level = levels.get(i);
+                final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+                int next = 0;
+                for (int tile = 0; tile < level.tileOffsets.length; tile++) {
+                    for (; next < level.tileOffsets.length && next <= tile + 2 * threads; next++) {
+                        final int index = next;
+                        pending.add(executor.submit(new Callable<byte[]>() {
+                            public byte[] call() throws Exception {
+                                return encodeTile(level, index);
+                            }
+                        }));
+                    }
+
+                    final byte[] data = get(pending.removeFirst());
+                    level.tileOffsets[tile] = position;
+                    level.tileByteCounts[tile] = data.length;
+                    out.write(data);
+                    position += data.length;
+
+                    written++;
+                    if (listener != null) {
+                        if (listener.isCanceled()) {
+                            for (Future<byte[]> future : pending) {
+                                future.cancel(true);
+                            }
+                            return false;
+                        }
+                        listener.progress(100f * written / totalTiles);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // now that the tiles are out, fill in their offsets and sizes
+        final long end = out.getStreamPosition();
+        for (Level level : levels) {
+            writeValues(out, start, level.entries.get(BaselineTIFFTagSet.TAG_TILE_OFFSETS),
+                    level.tileOffsets, bigTIFF);
+            writeValues(out, start, level.entries.get(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS),
+                    level.tileByteCounts, bigTIFF);
+        }
+        out.seek(end);
+
+        if (listener != null) {
+            listener.complete();
+        }
+        return true;
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the tiles");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private RenderedImage downsample(RenderedImage image) {
+        final ImageLayout layout = new ImageLayout();
+        layout.setTileWidth(tileWidth);
+        layout.setTileHeight(tileHeight);
+        final RenderingHints hints = new RenderingHints(JAI.KEY_IMAGE_LAYOUT, layout);
+        hints.add(ImageUtilities.DONT_REPLACE_INDEX_COLOR_MODEL);
+        return ScaleDescriptor.create(image, 0.5f, 0.5f, 0f, 0f, new InterpolationNearest(),
+                hints);
+    }
+
+    /**
+     * Returns the TIFF type of the samples, as far as their size goes
+     */
+    private static int getSampleType(int dataType) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return TIFFTag.TIFF_BYTE;
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            return TIFFTag.TIFF_SHORT;
+        case DataBuffer.TYPE_INT:
+        case DataBuffer.TYPE_FLOAT:
+            return TIFFTag.TIFF_LONG;
+        default:
+            return TIFFTag.TIFF_DOUBLE;
+        }
+    }
+
+    /**
+     * Adds the entries describing the image structure
+     */
+    private void addEntries(Level level, boolean overview, boolean bigTIFF) {
+        final RenderedImage image = level.image;
+        final SampleModel sm = image.getSampleModel();
+        final ColorModel cm = image.getColorModel();
+        final int bands = sm.getNumBands();
+        final int dataType = sm.getDataType();
+
+        if (overview) {
+            level.add(BaselineTIFFTagSet.TAG_NEW_SUBFILE_TYPE, TIFFTag.TIFF_LONG,
+                    new long[] { BaselineTIFFTagSet.NEW_SUBFILE_TYPE_REDUCED_RESOLUTION }, 1);
+        }
+        level.add(BaselineTIFFTagSet.TAG_IMAGE_WIDTH, TIFFTag.TIFF_LONG,
+                new long[] { image.getWidth() }, 1);
+        level.add(BaselineTIFFTagSet.TAG_IMAGE_LENGTH, TIFFTag.TIFF_LONG,
+                new long[] { image.getHeight() }, 1);
+        final char[] bitsPerSample = new char[bands];
+        final char[] sampleFormat = new char[bands];
+        for (int band = 0; band < bands; band++) {
+            bitsPerSample[band] = (char) DataBuffer.getDataTypeSize(dataType);
+            if (dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE) {
+                sampleFormat[band] = (char) BaselineTIFFTagSet.SAMPLE_FORMAT_FLOATING_POINT;
+            } else if (dataType == DataBuffer.TYPE_SHORT || dataType == DataBuffer.TYPE_INT) {
+                sampleFormat[band] = (char) BaselineTIFFTagSet.SAMPLE_FORMAT_SIGNED_INTEGER;
+            } else {
+                sampleFormat[band] = (char) BaselineTIFFTagSet.SAMPLE_FORMAT_UNSIGNED_INTEGER;
+            }
+        }
+        level.add(BaselineTIFFTagSet.TAG_BITS_PER_SAMPLE, TIFFTag.TIFF_SHORT, bitsPerSample, bands);
+        level.add(BaselineTIFFTagSet.TAG_COMPRESSION, TIFFTag.TIFF_SHORT,
+                new char[] { (char) compression }, 1);
+
+        int photometric = BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_BLACK_IS_ZERO;
+        int colorBands = 1;
+        if (cm instanceof IndexColorModel && bands == 1 && dataType == DataBuffer.TYPE_BYTE) {
+            photometric = BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_PALETTE_COLOR;
+            final IndexColorModel icm = (IndexColorModel) cm;
+            final char[] colorMap = new char[3 * 256];
+            for (int i = 0; i < icm.getMapSize() && i < 256; i++) {
+                colorMap[i] = (char) (icm.getRed(i) * 257);
+                colorMap[256 + i] = (char) (icm.getGreen(i) * 257);
+                colorMap[512 + i] = (char) (icm.getBlue(i) * 257);
+            }
+            level.add(BaselineTIFFTagSet.TAG_COLOR_MAP, TIFFTag.TIFF_SHORT, colorMap,
+                    colorMap.length);
+        } else if (cm != null && cm.getColorSpace().getType() == ColorSpace.TYPE_RGB
+                && bands >= 3 && dataType == DataBuffer.TYPE_BYTE) {
+            photometric = BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_RGB;
+            colorBands = 3;
+        }
+        level.add(BaselineTIFFTagSet.TAG_PHOTOMETRIC_INTERPRETATION, TIFFTag.TIFF_SHORT,
+                new char[] { (char) photometric }, 1);
+        level.add(BaselineTIFFTagSet.TAG_SAMPLES_PER_PIXEL, TIFFTag.TIFF_SHORT,
+                new char[] { (char) bands }, 1);
+        level.add(BaselineTIFFTagSet.TAG_PLANAR_CONFIGURATION, TIFFTag.TIFF_SHORT,
+                new char[] { (char) BaselineTIFFTagSet.PLANAR_CONFIGURATION_CHUNKY }, 1);
+        level.add(BaselineTIFFTagSet.TAG_TILE_WIDTH, TIFFTag.TIFF_LONG,
+                new long[] { tileWidth }, 1);
+        level.add(BaselineTIFFTagSet.TAG_TILE_LENGTH, TIFFTag.TIFF_LONG,
+                new long[] { tileHeight }, 1);
+        final int offsetType = bigTIFF ? TIFF_LONG8 : TIFFTag.TIFF_LONG;
+        level.add(BaselineTIFFTagSet.TAG_TILE_OFFSETS, offsetType, level.tileOffsets,
+                level.tileOffsets.length);
+        level.add(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS, offsetType, level.tileByteCounts,
+                level.tileByteCounts.length);
+        if (bands > colorBands) {
+            final char[] extraSamples = new char[bands - colorBands];
+            if (cm != null && cm.hasAlpha()) {
+                extraSamples[0] = (char) BaselineTIFFTagSet.EXTRA_SAMPLES_UNASSOCIATED_ALPHA;
+            }
+            level.add(BaselineTIFFTagSet.TAG_EXTRA_SAMPLES, TIFFTag.TIFF_SHORT, extraSamples,
+                    extraSamples.length);
+        }
+        level.add(BaselineTIFFTagSet.TAG_SAMPLE_FORMAT, TIFFTag.TIFF_SHORT, sampleFormat, bands);
+    }
+
+    /**
+     * Copies the private fields (GeoTIFF and GDAL ones) and the ascii fields of the metadata
+     */
+    private static void addMetadataEntries(Level level, TIFFImageMetadata metadata) {
+        if (metadata == null) {
+            return;
+        }
+        for (TIFFField field : metadata.getRootIFD().getTIFFFields()) {
+            final int tag = field.getTagNumber();
+            if (level.entries.containsKey(tag)
+                    || (tag < 32768 && field.getType() != TIFFTag.TIFF_ASCII)) {
+                continue;
+            }
+            switch (field.getType()) {
+            case TIFFTag.TIFF_ASCII:
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                for (int i = 0; i < field.getCount(); i++) {
+                    final String value = field.getAsString(i);
+                    for (int j = 0; j < value.length(); j++) {
+                        bytes.write(value.charAt(j) & 0x7F);
+                    }
+                    bytes.write(0);
+                }
+                level.add(tag, TIFFTag.TIFF_ASCII, bytes.toByteArray(), bytes.size());
+                break;
+            case TIFFTag.TIFF_SHORT:
+                level.add(tag, TIFFTag.TIFF_SHORT, field.getAsChars(), field.getCount());
+                break;
+            case TIFFTag.TIFF_LONG:
+                level.add(tag, TIFFTag.TIFF_LONG, field.getAsLongs(), field.getCount());
+                break;
+            case TIFFTag.TIFF_DOUBLE:
+                level.add(tag, TIFFTag.TIFF_DOUBLE, field.getAsDoubles(), field.getCount());
+                break;
+            default:
+                // not used by GeoTIFF
+            }
+        }
+    }
+
+    /**
+     * Computes the position of the directories and of the values that do not fit inline
+     *
+     * @return the position of the first tile
+     */
+    private static long layout(List<Level> levels, boolean bigTIFF) {
+        final int countSize = bigTIFF ? 8 : 2;
+        final int entrySize = bigTIFF ? 20 : 12;
+        final int inlineSize = bigTIFF ? 8 : 4;
+        long position = bigTIFF ? 16 : 8;
+        for (Level level : levels) {
+            level.directoryPosition = position;
+            position += countSize + level.entries.size() * entrySize + inlineSize;
+            int i = 0;
+            for (Entry entry : level.entries.values()) {
+                if (entry.getValuesSize() > inlineSize) {
+                    position += position & 1;
+                    entry.valuesPosition = position;
+                    position += entry.getValuesSize();
+                } else {
+                    entry.valuesPosition = level.directoryPosition + countSize + i * entrySize
+                            + entrySize - inlineSize;
+                }
+                i++;
+            }
+            position += position & 1;
+        }
+        return position;
+    }
+
+    private static void writeDirectories(ImageOutputStream out, long start, List<Level> levels,
+            boolean bigTIFF, long dataPosition) throws IOException {
+        out.writeByte('M');
+        out.writeByte('M');
+        if (bigTIFF) {
+            out.writeShort(43);
+            out.writeShort(8);
+            out.writeShort(0);
+            out.writeLong(levels.get(0).directoryPosition);
+        } else {
+            out.writeShort(42);
+            out.writeInt((int) levels.get(0).directoryPosition);
+        }
+
+        for (int i = 0; i < levels.size(); i++) {
+            final Level level = levels.get(i);
+            final long next = i + 1 < levels.size() ? levels.get(i + 1).directoryPosition : 0;
+            pad(out, start, level.directoryPosition);
+            if (bigTIFF) {
+                out.writeLong(level.entries.size());
+            } else {
+                out.writeShort(level.entries.size());
+            }
+            for (Entry entry : level.entries.values()) {
+                out.writeShort(entry.tag);
+                out.writeShort(entry.type);
+                if (bigTIFF) {
+                    out.writeLong(entry.count);
+                } else {
+                    out.writeInt(entry.count);
+                }
+                final int inlineSize = bigTIFF ? 8 : 4;
+                if (entry.getValuesSize() > inlineSize) {
+                    if (bigTIFF) {
+                        out.writeLong(entry.valuesPosition);
+                    } else {
+                        out.writeInt((int) entry.valuesPosition);
+                    }
+                } else {
+                    writeValues(out, entry);
+                    for (long j = entry.getValuesSize(); j < inlineSize; j++) {
+                        out.writeByte(0);
+                    }
+                }
+            }
+            if (bigTIFF) {
+                out.writeLong(next);
+            } else {
+                out.writeInt((int) next);
+            }
+
+            for (Entry entry : level.entries.values()) {
+                if (entry.getValuesSize() > (bigTIFF ? 8 : 4)) {
+                    pad(out, start, entry.valuesPosition);
+                    writeValues(out, entry);
+                }
+            }
+        }
+        pad(out, start, dataPosition);
+    }
+
+    private static void pad(ImageOutputStream out, long start, long position) throws IOException {
+        while (out.getStreamPosition() - start < position) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * Writes the tile offsets or byte counts in the place reserved for them
+     */
+    private static void writeValues(ImageOutputStream out, long start, Entry entry,
+            long[] values, boolean bigTIFF) throws IOException {
+        out.seek(start + entry.valuesPosition);
+        for (long value : values) {
+            if (bigTIFF) {
+                out.writeLong(value);
+            } else {
+                out.writeInt((int) value);
+            }
+        }
+    }
+
+    private static void writeValues(ImageOutputStream out, Entry entry) throws IOException {
+        switch (entry.type) {
+        case TIFFTag.TIFF_BYTE:
+        case TIFFTag.TIFF_ASCII:
+            out.write((byte[]) entry.values);
+            break;
+        case TIFFTag.TIFF_SHORT:
+            for (char value : (char[]) entry.values) {
+                out.writeShort(value);
+            }
+            break;
+        case TIFFTag.TIFF_LONG:
+            for (long value : (long[]) entry.values) {
+                out.writeInt((int) value);
+            }
+            break;
+        case TIFF_LONG8:
+            for (long value : (long[]) entry.values) {
+                out.writeLong(value);
+            }
+            break;
+        case TIFFTag.TIFF_DOUBLE:
+            for (double value : (double[]) entry.values) {
+                out.writeDouble(value);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Packs a tile of the level, pixel interleaved and in big endian order, and compresses it.
+     * The tiles on the right and bottom borders are padded with zeros.
+     */
+    private byte[] encodeTile(Level level, int index) {
+        final RenderedImage image = level.image;
+        final int tileX = index % level.tilesAcross;
+        final int tileY = index / level.tilesAcross;
+        final Rectangle bounds = new Rectangle(image.getMinX() + tileX * tileWidth,
+                image.getMinY() + tileY * tileHeight, tileWidth, tileHeight)
+                .intersection(new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(),
+                        image.getHeight()));
+        final Raster raster = image.getData(bounds);
+        final int bands = raster.getNumBands();
+        final int dataType = raster.getSampleModel().getDataType();
+        final int sampleSize = DataBuffer.getDataTypeSize(dataType) / 8;
+        final ByteBuffer buffer = ByteBuffer.allocate(tileWidth * tileHeight * bands * sampleSize);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        int[] ints = null;
+        float[] floats = null;
+        double[] doubles = null;
+        for (int y = 0; y < bounds.height; y++) {
+            buffer.position(y * tileWidth * bands * sampleSize);
+            final int row = bounds.y + y;
+            switch (dataType) {
+            case DataBuffer.TYPE_BYTE:
+                ints = raster.getPixels(bounds.x, row, bounds.width, 1, ints);
+                for (int sample : ints) {
+                    buffer.put((byte) sample);
+                }
+                break;
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                ints = raster.getPixels(bounds.x, row, bounds.width, 1, ints);
+                for (int sample : ints) {
+                    buffer.putShort((short) sample);
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                ints = raster.getPixels(bounds.x, row, bounds.width, 1, ints);
+                for (int sample : ints) {
+                    buffer.putInt(sample);
+                }
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                floats = raster.getPixels(bounds.x, row, bounds.width, 1, floats);
+                for (float sample : floats) {
+                    buffer.putFloat(sample);
+                }
+                break;
+            default:
+                doubles = raster.getPixels(bounds.x, row, bounds.width, 1, doubles);
+                for (double sample : doubles) {
+                    buffer.putDouble(sample);
+                }
+            }
+        }
+
+        final byte[] data = buffer.array();
+        if (compression == BaselineTIFFTagSet.COMPRESSION_NONE) {
+            return data;
+        }
+        final Deflater deflater = new Deflater(deflateLevel);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            final byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+}
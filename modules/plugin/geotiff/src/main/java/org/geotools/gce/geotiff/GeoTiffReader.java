@@ -40,7 +40,10 @@ import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.File;
@@ -144,6 +147,17 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 
     private int extOvrImgChoice = -1;
 
+    /**
+     * The width and height of the full resolution image followed by the ones of the overviews,
+     * in image choice order
+     */
+    private int[][] imageSizes;
+
+    /** Decodes the tiles of the file, created on first use, null if not available */
+    private GeoTiffTileDecoder tileDecoder;
+
+    private boolean tileDecoderChecked;
+
 	/**
 	 * Creates a new instance of GeoTiffReader
 	 * 
@@ -372,6 +386,8 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
             // get information for the successive images
             //
             // //
+            imageSizes = new int[numOverviews + 1][];
+            imageSizes[0] = new int[] { hrWidth, hrHeight };
             if (numOverviews >= 1) {
                 overViewResolutions = new double[numOverviews][2];
                 // Internal overviews start at 1, so lastInternalOverview matches numOverviews if no
@@ -382,10 +398,13 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
                 for (int i = 0; i < firstExternalOverview; i++) {
                     overViewResolutions[i][0] = spanRes0 / reader.getWidth(i + 1);
                     overViewResolutions[i][1] = spanRes1 / reader.getHeight(i + 1);
+                    imageSizes[i + 1] = new int[] { reader.getWidth(i + 1), reader.getHeight(i + 1) };
                 }
                 for (int i = firstExternalOverview; i < numOverviews; i++) {
                     overViewResolutions[i][0] = spanRes0 / ovrReader.getWidth(i - firstExternalOverview);
                     overViewResolutions[i][1] = spanRes1 / ovrReader.getHeight(i - firstExternalOverview);
+                    imageSizes[i + 1] = new int[] { ovrReader.getWidth(i - firstExternalOverview),
+                            ovrReader.getHeight(i - firstExternalOverview) };
                 }
                
             } else
@@ -500,6 +519,20 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 			new DataSourceException(e);
 		}
 
+		// only decode the tiles intersecting the requested area, as opposed to the whole image
+		final Rectangle sourceRegion = getSourceRegion(requestedEnvelope, imageChoice);
+		if (sourceRegion != null) {
+		    readP.setSourceRegion(sourceRegion);
+		}
+
+		// decode the tiles straight out of the file when possible
+		if (readP.getSourceXSubsampling() == 1 && readP.getSourceYSubsampling() == 1) {
+		    final GridCoverage2D coverage = readTiles(imageChoice, sourceRegion, inputTransparentColor);
+		    if (coverage != null) {
+		        return coverage;
+		    }
+		}
+
 		//
 		// IMAGE READ OPERATION
 		//
@@ -564,6 +597,11 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
                 // image sizes.
                 //
                 // //
+                if (sourceRegion != null) {
+                    return createCoverage(coverageRaster, ProjectiveTransform.create(getRegionRaster2Model(
+                            imageChoice, sourceRegion, readP.getSourceXSubsampling(),
+                            readP.getSourceYSubsampling(), coverageRaster)));
+                }
                 final double scaleX = originalGridRange.getSpan(0) / (1.0 * ssWidth);
                 final double scaleY = originalGridRange.getSpan(1) / (1.0 * ssHeight);
                 final AffineTransform tempRaster2Model = new AffineTransform((AffineTransform) raster2Model);
@@ -573,6 +611,143 @@ public class GeoTiffReader extends AbstractGridCoverage2DReader implements GridC
 
 	}
 
+    /**
+     * Computes the raster to model transformation of an image read out of a region of the chosen
+     * level: the image starts at the region origin, and each of its pixels spans a subsampling
+     * step of that level.
+     */
+    private AffineTransform getRegionRaster2Model(int imageChoice, Rectangle region,
+            int xSubsampling, int ySubsampling, RenderedImage image) {
+        final int[] size = imageSizes[imageChoice];
+        final AffineTransform regionRaster2Model = new AffineTransform((AffineTransform) raster2Model);
+        regionRaster2Model.concatenate(CoverageUtilities.CENTER_TO_CORNER);
+        regionRaster2Model.concatenate(AffineTransform.getScaleInstance(
+                originalGridRange.getSpan(0) / (1.0 * size[0]),
+                originalGridRange.getSpan(1) / (1.0 * size[1])));
+        regionRaster2Model.translate(region.x, region.y);
+        regionRaster2Model.scale(xSubsampling, ySubsampling);
+        regionRaster2Model.translate(-image.getMinX(), -image.getMinY());
+        regionRaster2Model.concatenate(CoverageUtilities.CORNER_TO_CENTER);
+        return regionRaster2Model;
+    }
+
+    /**
+     * Reads a region of the chosen level through the {@link GeoTiffTileDecoder}, which only reads
+     * and decompresses the tiles intersecting it, in parallel, and returns an image tiled as the
+     * file is.
+     * 
+     * @param sourceRegion the region to read, <code>null</code> for the whole level
+     * @return the coverage, or <code>null</code> if the region has to be read through the image
+     *         reader
+     */
+    private GridCoverage2D readTiles(int imageChoice, Rectangle sourceRegion,
+            Color inputTransparentColor) throws IOException {
+        if (imageSizes == null || imageSizes[imageChoice] == null
+                || !(raster2Model instanceof AffineTransform)
+                || (extOvrImgChoice >= 0 && imageChoice >= extOvrImgChoice)) {
+            return null;
+        }
+        final GeoTiffTileDecoder decoder = getTileDecoder();
+        final int[] size = imageSizes[imageChoice];
+        final Rectangle region = sourceRegion != null ? sourceRegion : new Rectangle(0, 0,
+                size[0], size[1]);
+        if (decoder == null || !decoder.canDecode(imageChoice, region)) {
+            return null;
+        }
+
+        PlanarImage image;
+        try {
+            image = decoder.decode(imageChoice, region);
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Unable to decode the tiles of " + source
+                        + ", falling back on the image reader", e);
+            }
+            return null;
+        }
+        if (inputTransparentColor != null) {
+            image = new ImageWorker(image).makeColorTransparent(inputTransparentColor)
+                    .getRenderedOperation();
+        }
+        return createCoverage(image, ProjectiveTransform.create(getRegionRaster2Model(
+                imageChoice, region, 1, 1, image)));
+    }
+
+    /**
+     * Returns the tile decoder of the source, reading the layout of its images on first use
+     * 
+     * @return the decoder, or <code>null</code> if the source is not a file that can be decoded
+     */
+    private synchronized GeoTiffTileDecoder getTileDecoder() {
+        if (!tileDecoderChecked) {
+            tileDecoderChecked = true;
+            if (source instanceof File) {
+                try {
+                    tileDecoder = GeoTiffTileDecoder.create((File) source,
+                            extOvrImgChoice >= 0 ? extOvrImgChoice : numOverviews + 1);
+                } catch (Exception e) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.log(Level.FINE, "Unable to read the tiles layout of " + source, e);
+                    }
+                }
+            }
+        }
+        return tileDecoder;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (tileDecoder != null) {
+            tileDecoder.dispose();
+            tileDecoder = null;
+        }
+        super.dispose();
+    }
+
+    /**
+     * Computes the area of the chosen image intersecting the requested envelope, plus a pixel of
+     * margin, so that the tiles outside of it are neither read nor decompressed.
+     * 
+     * @return the region to read, or <code>null</code> if the whole image has to be read
+     */
+    private Rectangle getSourceRegion(GeneralEnvelope requestedEnvelope, int imageChoice) {
+        if (requestedEnvelope == null || imageSizes == null || imageSizes[imageChoice] == null
+                || !(raster2Model instanceof AffineTransform)) {
+            return null;
+        }
+        final AffineTransform transform = new AffineTransform((AffineTransform) raster2Model);
+        if (transform.getShearX() != 0 || transform.getShearY() != 0) {
+            return null;
+        }
+        final CoordinateReferenceSystem requestedCRS = requestedEnvelope.getCoordinateReferenceSystem();
+        if (requestedCRS != null && !CRS.equalsIgnoreMetadata(requestedCRS, crs)) {
+            return null;
+        }
+
+        final int[] size = imageSizes[imageChoice];
+        transform.concatenate(CoverageUtilities.CENTER_TO_CORNER);
+        transform.concatenate(AffineTransform.getScaleInstance(originalGridRange.getSpan(0)
+                / (1.0 * size[0]), originalGridRange.getSpan(1) / (1.0 * size[1])));
+        final Rectangle2D pixels;
+        try {
+            pixels = transform.createInverse().createTransformedShape(new Rectangle2D.Double(
+                    requestedEnvelope.getMinimum(0), requestedEnvelope.getMinimum(1),
+                    requestedEnvelope.getSpan(0), requestedEnvelope.getSpan(1))).getBounds2D();
+        } catch (NoninvertibleTransformException e) {
+            return null;
+        }
+        final int minX = (int) Math.floor(pixels.getMinX()) - 1;
+        final int minY = (int) Math.floor(pixels.getMinY()) - 1;
+        final int maxX = (int) Math.ceil(pixels.getMaxX()) + 1;
+        final int maxY = (int) Math.ceil(pixels.getMaxY()) + 1;
+        final Rectangle region = new Rectangle(minX, minY, maxX - minX, maxY - minY)
+                .intersection(new Rectangle(0, 0, size[0], size[1]));
+        if (region.isEmpty() || (region.width == size[0] && region.height == size[1])) {
+            return null;
+        }
+        return region;
+    }
+
     /**
      * Returns the geotiff metadata for this geotiff file.
      * 
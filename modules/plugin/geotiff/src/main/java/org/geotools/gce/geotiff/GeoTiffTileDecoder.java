@@ -0,0 +1,697 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageio.plugins.tiff.TIFFField;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+
+/**
+ * Decodes areas of the tiled images of a GeoTIFF file straight out of the file, as opposed to
+ * going through an image reader and a stream.
+ * <p>
+ * Only the tiles intersecting the requested area are read, each one with a positional read on a
+ * channel shared by all the requests, and they are decompressed in parallel. The resulting image
+ * is tiled as the file is, its tiles being backed by the decompressed data, so that assembling it
+ * takes no further copy.
+ * </p>
+ * <p>
+ * Tiled images with pixel interleaved samples of 8, 16, 32 or 64 bits, uncompressed or
+ * compressed with Deflate, LZW or PackBits, are supported. Other images are left to the image
+ * reader.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class GeoTiffTileDecoder {
+
+    /** Areas decoding to more bytes than this are left to the deferred image reader */
+    static final long MAX_DECODED_SIZE = 64L * 1024 * 1024;
+
+    private static final int COMPRESSION_NONE = 1;
+
+    private static final int COMPRESSION_LZW = 5;
+
+    private static final int COMPRESSION_ZLIB = 8;
+
+    private static final int COMPRESSION_DEFLATE = 32946;
+
+    private static final int COMPRESSION_PACKBITS = 32773;
+
+    private static final int PREDICTOR_NONE = 1;
+
+    private static final int PREDICTOR_HORIZONTAL = 2;
+
+    private static final ExecutorService DECODER_POOL = Executors.newFixedThreadPool(Runtime
+            .getRuntime().availableProcessors(), new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GeoTIFF tile decoder " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The layout of an image of the file, null if it cannot be decoded here
+     */
+    private static final class Level {
+        int width;
+
+        int height;
+
+        int tileWidth;
+
+        int tileHeight;
+
+        int compression;
+
+        int predictor;
+
+        int bands;
+
+        int bytesPerSample;
+
+        long[] offsets;
+
+        long[] byteCounts;
+
+        SampleModel sampleModel;
+
+        ColorModel colorModel;
+
+        int getTilesAcross() {
+            return (width + tileWidth - 1) / tileWidth;
+        }
+
+        int getTileSize() {
+            return tileWidth * tileHeight * bands * bytesPerSample;
+        }
+    }
+
+    private final File file;
+
+    private final ByteOrder byteOrder;
+
+    private final Level[] levels;
+
+    private FileChannel channel;
+
+    private GeoTiffTileDecoder(File file, ByteOrder byteOrder, Level[] levels) {
+        this.file = file;
+        this.byteOrder = byteOrder;
+        this.levels = levels;
+    }
+
+    /**
+     * Reads the layout of the images of a file
+     *
+     * @param file the GeoTIFF file
+     * @param numImages the number of images to consider, the full resolution one and the
+     *        internal overviews
+     */
+    static GeoTiffTileDecoder create(File file, int numImages) throws IOException {
+        final ImageInputStream stream = new FileImageInputStream(file);
+        final ImageReader reader = new TIFFImageReaderSpi().createReaderInstance();
+        try {
+            final ByteOrder byteOrder = stream.readByte() == 'M' ? ByteOrder.BIG_ENDIAN
+                    : ByteOrder.LITTLE_ENDIAN;
+            stream.seek(0);
+            reader.setInput(stream);
+            final Level[] levels = new Level[numImages];
+            for (int i = 0; i < numImages; i++) {
+                levels[i] = createLevel(reader, i);
+            }
+            return new GeoTiffTileDecoder(file, byteOrder, levels);
+        } finally {
+            reader.dispose();
+            stream.close();
+        }
+    }
+
+    private static Level createLevel(ImageReader reader, int imageIndex) throws IOException {
+        final TIFFImageMetadata metadata = (TIFFImageMetadata) reader.getImageMetadata(imageIndex);
+        final TIFFField offsets = metadata.getTIFFField(BaselineTIFFTagSet.TAG_TILE_OFFSETS);
+        final TIFFField byteCounts = metadata
+                .getTIFFField(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS);
+        if (offsets == null || byteCounts == null
+                || getInt(metadata, BaselineTIFFTagSet.TAG_PLANAR_CONFIGURATION, 1) != 1) {
+            return null;
+        }
+
+        final Level level = new Level();
+        level.width = reader.getWidth(imageIndex);
+        level.height = reader.getHeight(imageIndex);
+        level.tileWidth = getInt(metadata, BaselineTIFFTagSet.TAG_TILE_WIDTH, 0);
+        level.tileHeight = getInt(metadata, BaselineTIFFTagSet.TAG_TILE_LENGTH, 0);
+        level.compression = getInt(metadata, BaselineTIFFTagSet.TAG_COMPRESSION, COMPRESSION_NONE);
+        level.predictor = getInt(metadata, BaselineTIFFTagSet.TAG_PREDICTOR, PREDICTOR_NONE);
+        level.bands = getInt(metadata, BaselineTIFFTagSet.TAG_SAMPLES_PER_PIXEL, 1);
+        final int photometric = getInt(metadata,
+                BaselineTIFFTagSet.TAG_PHOTOMETRIC_INTERPRETATION, -1);
+        if (level.tileWidth <= 0 || level.tileHeight <= 0
+                || photometric != BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_BLACK_IS_ZERO
+                && photometric != BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_RGB
+                && photometric != BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_PALETTE_COLOR
+                || level.compression != COMPRESSION_NONE && level.compression != COMPRESSION_LZW
+                && level.compression != COMPRESSION_ZLIB
+                && level.compression != COMPRESSION_DEFLATE
+                && level.compression != COMPRESSION_PACKBITS
+                || level.predictor != PREDICTOR_NONE && level.predictor != PREDICTOR_HORIZONTAL) {
+            return null;
+        }
+
+        // the same number of bits for all the samples, and a data type matching the format
+        final TIFFField bits = metadata.getTIFFField(BaselineTIFFTagSet.TAG_BITS_PER_SAMPLE);
+        final int bitsPerSample = bits != null ? bits.getAsInt(0) : 1;
+        for (int i = 1; bits != null && i < bits.getCount(); i++) {
+            if (bits.getAsInt(i) != bitsPerSample) {
+                return null;
+            }
+        }
+        final int sampleFormat = getInt(metadata, BaselineTIFFTagSet.TAG_SAMPLE_FORMAT,
+                BaselineTIFFTagSet.SAMPLE_FORMAT_UNSIGNED_INTEGER);
+        final int dataType = getDataType(bitsPerSample, sampleFormat);
+        if (dataType == DataBuffer.TYPE_UNDEFINED
+                || level.predictor == PREDICTOR_HORIZONTAL
+                && (dataType == DataBuffer.TYPE_FLOAT || dataType == DataBuffer.TYPE_DOUBLE)) {
+            return null;
+        }
+        level.bytesPerSample = bitsPerSample / 8;
+        final long tiles = (long) level.getTilesAcross()
+                * ((level.height + level.tileHeight - 1) / level.tileHeight);
+        if (offsets.getCount() < tiles || byteCounts.getCount() < tiles
+                || (long) level.getTileSize() > Integer.MAX_VALUE) {
+            return null;
+        }
+        level.offsets = new long[(int) tiles];
+        level.byteCounts = new long[(int) tiles];
+        for (int i = 0; i < tiles; i++) {
+            level.offsets[i] = offsets.getAsLong(i);
+            level.byteCounts[i] = byteCounts.getAsLong(i);
+        }
+
+        final int[] bandOffsets = new int[level.bands];
+        for (int i = 0; i < bandOffsets.length; i++) {
+            bandOffsets[i] = i;
+        }
+        level.sampleModel = new PixelInterleavedSampleModel(dataType, level.tileWidth,
+                level.tileHeight, level.bands, level.tileWidth * level.bands, bandOffsets);
+        final Iterator<ImageTypeSpecifier> types = reader.getImageTypes(imageIndex);
+        level.colorModel = types.hasNext() ? types.next().getColorModel() : null;
+        if (level.colorModel == null || !level.colorModel.isCompatibleSampleModel(level.sampleModel)) {
+            return null;
+        }
+        return level;
+    }
+
+    private static int getInt(TIFFImageMetadata metadata, int tag, int defaultValue) {
+        final TIFFField field = metadata.getTIFFField(tag);
+        return field != null ? field.getAsInt(0) : defaultValue;
+    }
+
+    private static int getDataType(int bitsPerSample, int sampleFormat) {
+        final boolean signed = sampleFormat == BaselineTIFFTagSet.SAMPLE_FORMAT_SIGNED_INTEGER;
+        if (sampleFormat == BaselineTIFFTagSet.SAMPLE_FORMAT_FLOATING_POINT) {
+            return bitsPerSample == 32 ? DataBuffer.TYPE_FLOAT
+                    : bitsPerSample == 64 ? DataBuffer.TYPE_DOUBLE : DataBuffer.TYPE_UNDEFINED;
+        }
+        if (!signed && sampleFormat != BaselineTIFFTagSet.SAMPLE_FORMAT_UNSIGNED_INTEGER) {
+            return DataBuffer.TYPE_UNDEFINED;
+        }
+        switch (bitsPerSample) {
+        case 8:
+            return signed ? DataBuffer.TYPE_UNDEFINED : DataBuffer.TYPE_BYTE;
+        case 16:
+            return signed ? DataBuffer.TYPE_SHORT : DataBuffer.TYPE_USHORT;
+        case 32:
+            return signed ? DataBuffer.TYPE_INT : DataBuffer.TYPE_UNDEFINED;
+        default:
+            return DataBuffer.TYPE_UNDEFINED;
+        }
+    }
+
+    /**
+     * Tells whether an area of an image can be decoded here
+     */
+    boolean canDecode(int imageIndex, Rectangle region) {
+        if (imageIndex < 0 || imageIndex >= levels.length || levels[imageIndex] == null) {
+            return false;
+        }
+        final Level level = levels[imageIndex];
+        final Rectangle tiles = getTileRange(level, region);
+        return !tiles.isEmpty()
+                && (long) tiles.width * tiles.height * level.getTileSize() <= MAX_DECODED_SIZE;
+    }
+
+    private static Rectangle getTileRange(Level level, Rectangle region) {
+        final Rectangle area = region.intersection(new Rectangle(0, 0, level.width,
+                level.height));
+        if (area.isEmpty()) {
+            return new Rectangle();
+        }
+        final int minTileX = area.x / level.tileWidth;
+        final int minTileY = area.y / level.tileHeight;
+        final int maxTileX = (area.x + area.width - 1) / level.tileWidth;
+        final int maxTileY = (area.y + area.height - 1) / level.tileHeight;
+        return new Rectangle(minTileX, minTileY, maxTileX - minTileX + 1, maxTileY - minTileY + 1);
+    }
+
+    /**
+     * Decodes an area of an image. The returned image starts at 0,0, its first pixel being the
+     * first pixel of the area, and is tiled as the file is.
+     *
+     * @param imageIndex the image, 0 for the full resolution one
+     * @param region the area of the image, which must be decodable
+     */
+    PlanarImage decode(int imageIndex, Rectangle region) throws IOException {
+        final Level level = levels[imageIndex];
+        final Rectangle area = region.intersection(new Rectangle(0, 0, level.width,
+                level.height));
+        final Rectangle tiles = getTileRange(level, area);
+        final FileChannel channel = getChannel();
+
+        // the tiles of the file are the tiles of the image, shifted by the area origin
+        final List<Callable<Raster>> tasks = new ArrayList<Callable<Raster>>();
+        for (int tileY = tiles.y; tileY < tiles.y + tiles.height; tileY++) {
+            for (int tileX = tiles.x; tileX < tiles.x + tiles.width; tileX++) {
+                final int tile = tileY * level.getTilesAcross() + tileX;
+                final Point location = new Point(tileX * level.tileWidth - area.x, tileY
+                        * level.tileHeight - area.y);
+                tasks.add(new Callable<Raster>() {
+                    public Raster call() throws IOException {
+                        return decodeTile(channel, level, tile, location);
+                    }
+                });
+            }
+        }
+        final Raster[] rasters = new Raster[tasks.size()];
+        if (rasters.length == 1) {
+            try {
+                rasters[0] = tasks.get(0).call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw (IOException) new IOException(e.getLocalizedMessage()).initCause(e);
+            }
+        } else {
+            final List<Future<Raster>> futures = new ArrayList<Future<Raster>>(tasks.size());
+            for (Callable<Raster> task : tasks) {
+                futures.add(DECODER_POOL.submit(task));
+            }
+            try {
+                for (int i = 0; i < rasters.length; i++) {
+                    rasters[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new IOException("Interrupted while decoding tiles")
+                        .initCause(e);
+            } catch (ExecutionException e) {
+                for (Future<Raster> future : futures) {
+                    future.cancel(false);
+                }
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw (IOException) new IOException(cause.getLocalizedMessage()).initCause(cause);
+            }
+        }
+
+        final ImageLayout layout = new ImageLayout(0, 0, area.width, area.height, tiles.x
+                * level.tileWidth - area.x, tiles.y * level.tileHeight - area.y,
+                level.tileWidth, level.tileHeight, level.sampleModel, level.colorModel);
+        return new DecodedImage(layout, rasters, tiles.width);
+    }
+
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+        }
+        return channel;
+    }
+
+    private Raster decodeTile(FileChannel channel, Level level, int tile, Point location)
+            throws IOException {
+        final int size = level.getTileSize();
+        final long byteCount = level.byteCounts[tile];
+        if (byteCount > Integer.MAX_VALUE) {
+            throw new IOException("Tile " + tile + " is too large");
+        }
+        byte[] data;
+        if (byteCount == 0) {
+            // a sparse tile
+            data = new byte[size];
+        } else {
+            final byte[] compressed = new byte[(int) byteCount];
+            final ByteBuffer buffer = ByteBuffer.wrap(compressed);
+            final long offset = level.offsets[tile];
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Tile " + tile + " ends past the end of " + file);
+                }
+            }
+            switch (level.compression) {
+            case COMPRESSION_NONE:
+                data = compressed.length >= size ? compressed : copyOf(compressed, size);
+                break;
+            case COMPRESSION_ZLIB:
+            case COMPRESSION_DEFLATE:
+                data = inflate(compressed, size);
+                break;
+            case COMPRESSION_LZW:
+                data = new byte[size];
+                decodeLZW(compressed, data);
+                break;
+            default:
+                data = new byte[size];
+                decodePackBits(compressed, data);
+                break;
+            }
+        }
+        final DataBuffer buffer = createDataBuffer(level, data);
+        if (level.predictor == PREDICTOR_HORIZONTAL) {
+            undoPredictor(level, buffer);
+        }
+        return Raster.createWritableRaster(level.sampleModel, buffer, location);
+    }
+
+    private static byte[] copyOf(byte[] data, int size) {
+        final byte[] copy = new byte[size];
+        System.arraycopy(data, 0, copy, 0, Math.min(data.length, size));
+        return copy;
+    }
+
+    private static byte[] inflate(byte[] compressed, int size) throws IOException {
+        final byte[] data = new byte[size];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                final int inflated = inflater.inflate(data, count, size - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflated;
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw (IOException) new IOException("Invalid Deflate data").initCause(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Decodes TIFF LZW data, whose codes are written most significant bit first and grow a bit
+     * one code early
+     */
+    static void decodeLZW(byte[] in, byte[] out) throws IOException {
+        if (in.length >= 2 && in[0] == 0 && (in[1] & 0x01) != 0) {
+            throw new IOException("Old style LZW data is not supported");
+        }
+        final int clear = 256;
+        final int end = 257;
+        final int[] prefix = new int[4096];
+        final byte[] suffix = new byte[4096];
+        final byte[] first = new byte[4096];
+        final int[] length = new int[4096];
+        for (int i = 0; i < 256; i++) {
+            prefix[i] = -1;
+            suffix[i] = (byte) i;
+            first[i] = (byte) i;
+            length[i] = 1;
+        }
+        int next = 258;
+        int codeLength = 9;
+        int previous = -1;
+        int inPos = 0;
+        int outPos = 0;
+        int bitBuffer = 0;
+        int bitCount = 0;
+        while (outPos < out.length) {
+            // next code
+            while (bitCount < codeLength && inPos < in.length) {
+                bitBuffer = (bitBuffer << 8) | (in[inPos++] & 0xff);
+                bitCount += 8;
+            }
+            if (bitCount < codeLength) {
+                break;
+            }
+            final int code = (bitBuffer >>> (bitCount - codeLength)) & ((1 << codeLength) - 1);
+            bitCount -= codeLength;
+            bitBuffer &= (1 << bitCount) - 1;
+
+            if (code == end) {
+                break;
+            }
+            if (code == clear) {
+                next = 258;
+                codeLength = 9;
+                previous = -1;
+                continue;
+            }
+            if (previous == -1) {
+                if (code > 255) {
+                    throw new IOException("Invalid LZW data");
+                }
+                out[outPos++] = (byte) code;
+                previous = code;
+                continue;
+            }
+            final byte firstByte;
+            if (code < next) {
+                outPos = writeString(code, prefix, suffix, length, out, outPos);
+                firstByte = first[code];
+            } else if (code == next) {
+                firstByte = first[previous];
+                outPos = writeString(previous, prefix, suffix, length, out, outPos);
+                if (outPos < out.length) {
+                    out[outPos] = firstByte;
+                }
+                outPos++;
+            } else {
+                throw new IOException("Invalid LZW data");
+            }
+            if (next < 4096) {
+                prefix[next] = previous;
+                suffix[next] = firstByte;
+                first[next] = first[previous];
+                length[next] = length[previous] + 1;
+                next++;
+            }
+            if (next == 511) {
+                codeLength = 10;
+            } else if (next == 1023) {
+                codeLength = 11;
+            } else if (next == 2047) {
+                codeLength = 12;
+            }
+            previous = code;
+        }
+    }
+
+    private static int writeString(int code, int[] prefix, byte[] suffix, int[] length,
+            byte[] out, int outPos) {
+        final int stringLength = length[code];
+        for (int i = stringLength - 1; i >= 0; i--) {
+            if (outPos + i < out.length) {
+                out[outPos + i] = suffix[code];
+            }
+            code = prefix[code];
+        }
+        return outPos + stringLength;
+    }
+
+    static void decodePackBits(byte[] in, byte[] out) {
+        int inPos = 0;
+        int outPos = 0;
+        while (inPos < in.length && outPos < out.length) {
+            final int n = in[inPos++];
+            if (n >= 0) {
+                final int count = Math.min(Math.min(n + 1, in.length - inPos), out.length - outPos);
+                System.arraycopy(in, inPos, out, outPos, count);
+                inPos += n + 1;
+                outPos += count;
+            } else if (n != -128 && inPos < in.length) {
+                final byte value = in[inPos++];
+                for (int i = Math.min(1 - n, out.length - outPos); i > 0; i--) {
+                    out[outPos++] = value;
+                }
+            }
+        }
+    }
+
+    private DataBuffer createDataBuffer(Level level, byte[] data) {
+        final int samples = level.tileWidth * level.tileHeight * level.bands;
+        final ByteBuffer bytes = ByteBuffer.wrap(data).order(byteOrder);
+        switch (level.sampleModel.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            return new DataBufferByte(data, samples);
+        case DataBuffer.TYPE_USHORT: {
+            final short[] values = new short[samples];
+            bytes.asShortBuffer().get(values);
+            return new DataBufferUShort(values, samples);
+        }
+        case DataBuffer.TYPE_SHORT: {
+            final short[] values = new short[samples];
+            bytes.asShortBuffer().get(values);
+            return new DataBufferShort(values, samples);
+        }
+        case DataBuffer.TYPE_INT: {
+            final int[] values = new int[samples];
+            bytes.asIntBuffer().get(values);
+            return new DataBufferInt(values, samples);
+        }
+        case DataBuffer.TYPE_FLOAT: {
+            final float[] values = new float[samples];
+            bytes.asFloatBuffer().get(values);
+            return new DataBufferFloat(values, samples);
+        }
+        default: {
+            final double[] values = new double[samples];
+            bytes.asDoubleBuffer().get(values);
+            return new DataBufferDouble(values, samples);
+        }
+        }
+    }
+
+    /**
+     * Turns the differences of the horizontal predictor back into sample values
+     */
+    private static void undoPredictor(Level level, DataBuffer buffer) {
+        final int rowLength = level.tileWidth * level.bands;
+        final int bands = level.bands;
+        for (int row = 0; row < level.tileHeight; row++) {
+            final int start = row * rowLength;
+            final int end = start + rowLength;
+            switch (buffer.getDataType()) {
+            case DataBuffer.TYPE_BYTE: {
+                final byte[] values = ((DataBufferByte) buffer).getData();
+                for (int i = start + bands; i < end; i++) {
+                    values[i] += values[i - bands];
+                }
+                break;
+            }
+            case DataBuffer.TYPE_USHORT: {
+                final short[] values = ((DataBufferUShort) buffer).getData();
+                for (int i = start + bands; i < end; i++) {
+                    values[i] += values[i - bands];
+                }
+                break;
+            }
+            case DataBuffer.TYPE_SHORT: {
+                final short[] values = ((DataBufferShort) buffer).getData();
+                for (int i = start + bands; i < end; i++) {
+                    values[i] += values[i - bands];
+                }
+                break;
+            }
+            default: {
+                final int[] values = ((DataBufferInt) buffer).getData();
+                for (int i = start + bands; i < end; i++) {
+                    values[i] += values[i - bands];
+                }
+                break;
+            }
+            }
+        }
+    }
+
+    /**
+     * Closes the file, the decoder cannot be used anymore
+     */
+    synchronized void dispose() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do about it
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * An image made of already decoded tiles
+     */
+    static final class DecodedImage extends PlanarImage {
+
+        private final Raster[] rasters;
+
+        private final int tilesAcross;
+
+        DecodedImage(ImageLayout layout, Raster[] rasters, int tilesAcross) {
+            super(layout, null, null);
+            this.rasters = rasters;
+            this.tilesAcross = tilesAcross;
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            if (tileX < getMinTileX() || tileX > getMaxTileX() || tileY < getMinTileY()
+                    || tileY > getMaxTileY()) {
+                return null;
+            }
+            return rasters[(tileY - getMinTileY()) * tilesAcross + tileX - getMinTileX()];
+        }
+    }
+}
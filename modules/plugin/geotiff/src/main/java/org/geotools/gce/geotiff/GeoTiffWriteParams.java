@@ -92,6 +92,10 @@ import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
  */
 public class GeoTiffWriteParams extends GeoToolsWriteParams {
 
+    private boolean cloudOptimized;
+
+    private int overviewCount = -1;
+
     /**
      * Default constructor.
      */
@@ -99,6 +103,35 @@ public class GeoTiffWriteParams extends GeoToolsWriteParams {
         super(new TIFFImageWriteParam(Locale.getDefault()));
     }
 
+    /**
+     * Returns whether the file is written as a cloud optimized GeoTIFF: tiled, Deflate
+     * compressed, with embedded overviews and all the directories at the beginning of the file.
+     */
+    public boolean isCloudOptimized() {
+        return cloudOptimized;
+    }
+
+    /**
+     * Sets whether to write a cloud optimized GeoTIFF. The tiling (512x512 by default, the tile
+     * sizes must be multiples of 16), the compression (Deflate by default, or none if the
+     * compression is disabled) and the BigTIFF flag of these parameters still apply.
+     */
+    public void setCloudOptimized(boolean cloudOptimized) {
+        this.cloudOptimized = cloudOptimized;
+    }
+
+    /**
+     * Returns the number of overviews embedded in cloud optimized GeoTIFF files, -1 meaning
+     * as many as needed for the smallest one to fit in a single tile
+     */
+    public int getOverviewCount() {
+        return overviewCount;
+    }
+
+    public void setOverviewCount(int overviewCount) {
+        this.overviewCount = overviewCount;
+    }
+
     public void setForceToBigTIFF(final boolean forceToBigTIFF) {
         ((TIFFImageWriteParam) adaptee).setForceToBigTIFF(forceToBigTIFF);
     }
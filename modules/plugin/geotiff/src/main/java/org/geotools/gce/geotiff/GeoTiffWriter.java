@@ -40,6 +40,7 @@ import javax.imageio.ImageWriter;
 import javax.imageio.metadata.IIOInvalidTreeException;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.ImageOutputStream;
+import javax.media.jai.operator.CropDescriptor;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
@@ -417,6 +418,17 @@ public class GeoTiffWriter extends AbstractGridCoverageWriter implements
 			    writer.addIIOWriteProgressListener(progressAdapter);
 			    writer.addIIOWriteWarningListener(progressAdapter);
 			}
+			if (gtParams instanceof GeoTiffWriteParams && ((GeoTiffWriteParams) gtParams).isCloudOptimized()) {
+			    RenderedImage source = image;
+			    final Rectangle sourceRegion = params.getSourceRegion();
+			    if (sourceRegion != null) {
+			        source = CropDescriptor.create(image, Float.valueOf(sourceRegion.x),
+			                Float.valueOf(sourceRegion.y), Float.valueOf(sourceRegion.width),
+			                Float.valueOf(sourceRegion.height), null);
+			    }
+			    return new CloudOptimizedGeoTiffEncoder((GeoTiffWriteParams) gtParams).write(source,
+			            (TIFFImageMetadata) metadata, outputStream, listener);
+			}
 			writer.write(writer.getDefaultStreamMetadata(params), new IIOImage(image, null, metadata), params);
 
 
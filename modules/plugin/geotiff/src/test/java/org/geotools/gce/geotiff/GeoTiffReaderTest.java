@@ -17,6 +17,8 @@
  */
 package org.geotools.gce.geotiff;
 
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
+
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Rectangle;
@@ -27,6 +29,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.logging.Logger;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.media.jai.PlanarImage;
 
 import junit.framework.Assert;
@@ -456,6 +460,66 @@ public class GeoTiffReaderTest extends Assert {
         
     }
 
+    @Test
+    public void testTiledRegionRead() throws Exception {
+        final File file = TestData.file(GeoTiffReaderTest.class, "world.tiff");
+        final GeoTiffReader reader = new GeoTiffReader(file);
+        try {
+            // a quarter of the world, crossing the 256x256 tiles of the file
+            final GeneralEnvelope envelope = new GeneralEnvelope(new double[] { -90, -45 },
+                    new double[] { 90, 45 });
+            envelope.setCoordinateReferenceSystem(reader.getCrs());
+            final ParameterValue<GridGeometry2D> gg = AbstractGridFormat.READ_GRIDGEOMETRY2D
+                    .createValue();
+            gg.setValue(new GridGeometry2D(new GridEnvelope2D(new Rectangle(0, 0, 360, 180)),
+                    envelope));
+            final GridCoverage2D coverage = reader.read(new GeneralParameterValue[] { gg });
+            final RenderedImage image = coverage.getRenderedImage();
+            // decoded straight out of the file tiles, not through the image reader
+            assertTrue(image instanceof GeoTiffTileDecoder.DecodedImage);
+
+            // the file has a 0.5 degrees resolution, the region is padded by a pixel on each side
+            final GeneralEnvelope original = reader.getOriginalEnvelope();
+            final int minX = (int) Math.floor((-90 - original.getMinimum(0)) / 0.5) - 1;
+            final int minY = (int) Math.floor((original.getMaximum(1) - 45) / 0.5) - 1;
+            final int maxX = (int) Math.ceil((90 - original.getMinimum(0)) / 0.5) + 1;
+            final int maxY = (int) Math.ceil((original.getMaximum(1) + 45) / 0.5) + 1;
+            final Rectangle region = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+            assertEquals(region.width, image.getWidth());
+            assertEquals(region.height, image.getHeight());
+            assertEquals(original.getMinimum(0) + minX * 0.5, coverage.getEnvelope2D().getMinX(),
+                    1e-6);
+            assertEquals(original.getMaximum(1) - minY * 0.5, coverage.getEnvelope2D().getMaxY(),
+                    1e-6);
+
+            // same pixels as the image reader
+            final javax.imageio.ImageReader imageReader = new TIFFImageReaderSpi()
+                    .createReaderInstance();
+            final javax.imageio.stream.ImageInputStream stream = ImageIO
+                    .createImageInputStream(file);
+            try {
+                imageReader.setInput(stream);
+                final ImageReadParam param = new ImageReadParam();
+                param.setSourceRegion(region);
+                final java.awt.image.Raster expected = imageReader.read(0, param).getData();
+                final java.awt.image.Raster actual = image.getData();
+                for (int y = 0; y < region.height; y++) {
+                    for (int x = 0; x < region.width; x++) {
+                        for (int b = 0; b < 3; b++) {
+                            assertEquals(expected.getSample(x, y, b), actual.getSample(
+                                    image.getMinX() + x, image.getMinY() + y, b));
+                        }
+                    }
+                }
+            } finally {
+                imageReader.dispose();
+                stream.close();
+            }
+        } finally {
+            reader.dispose();
+        }
+    }
+
     class GeoTiffReaderTester extends GeoTiffReader {
         public GeoTiffReaderTester(Object input) throws DataSourceException {
             super(input);
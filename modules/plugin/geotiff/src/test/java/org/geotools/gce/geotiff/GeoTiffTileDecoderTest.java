@@ -0,0 +1,231 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.geotiff;
+
+import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageio.plugins.tiff.TIFFField;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageMetadata;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageWriterSpi;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Checks the {@link GeoTiffTileDecoder} against files written by the TIFF image writer with each
+ * of the supported compressions.
+ *
+ * @source $URL$
+ */
+public class GeoTiffTileDecoderTest extends Assert {
+
+    private static final int TILE_SIZE = 64;
+
+    /**
+     * An image mixing runs of equal bytes and noise, not a multiple of the tile size
+     */
+    private static BufferedImage createRGBImage() {
+        final BufferedImage image = new BufferedImage(200, 150, BufferedImage.TYPE_3BYTE_BGR);
+        final WritableRaster raster = image.getRaster();
+        final Random random = new Random(11);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                for (int b = 0; b < 3; b++) {
+                    raster.setSample(x, y, b, x % 50 < 25 ? (x / 8 * 37 + y * 3 + b * 50) & 0xff
+                            : random.nextInt(256));
+                }
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage createUShortImage() {
+        final WritableRaster raster = RasterFactory.createBandedRaster(DataBuffer.TYPE_USHORT,
+                150, 100, 1, null);
+        for (int y = 0; y < raster.getHeight(); y++) {
+            for (int x = 0; x < raster.getWidth(); x++) {
+                raster.setSample(x, y, 0, (x * 517 + y * 1031) & 0xffff);
+            }
+        }
+        return new BufferedImage(PlanarImage.createColorModel(raster.getSampleModel()), raster,
+                false, null);
+    }
+
+    /**
+     * Writes a tiled TIFF file
+     *
+     * @param compression the compression type, null for none
+     * @param predictor whether to use the horizontal predictor
+     */
+    private static File write(RenderedImage image, String compression, boolean predictor)
+            throws IOException {
+        final File file = File.createTempFile("decoder", ".tif");
+        final ImageWriter writer = new TIFFImageWriterSpi().createWriterInstance();
+        final ImageOutputStream stream = ImageIO.createImageOutputStream(file);
+        try {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setTiling(TILE_SIZE, TILE_SIZE, 0, 0);
+            if (compression != null) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType(compression);
+            }
+            final TIFFImageMetadata metadata = (TIFFImageMetadata) writer
+                    .getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+            if (predictor) {
+                metadata.addShortOrLongField(BaselineTIFFTagSet.TAG_PREDICTOR,
+                        BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING);
+            }
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+            stream.close();
+        }
+        return file;
+    }
+
+    /**
+     * Checks that a file is written with the expected compression and predictor, then decodes
+     * areas of it and compares them with the image
+     */
+    private static void assertDecoded(RenderedImage image, String compression,
+            boolean predictor, int compressionTag) throws IOException {
+        final File file = write(image, compression, predictor);
+        try {
+            final ImageReader reader = new TIFFImageReaderSpi().createReaderInstance();
+            final ImageInputStream stream = ImageIO.createImageInputStream(file);
+            try {
+                reader.setInput(stream);
+                final TIFFImageMetadata metadata = (TIFFImageMetadata) reader
+                        .getImageMetadata(0);
+                assertEquals(compressionTag, metadata.getTIFFField(
+                        BaselineTIFFTagSet.TAG_COMPRESSION).getAsInt(0));
+                final TIFFField predictorField = metadata
+                        .getTIFFField(BaselineTIFFTagSet.TAG_PREDICTOR);
+                assertEquals(predictor ? BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING
+                        : BaselineTIFFTagSet.PREDICTOR_NONE, predictorField != null ? predictorField
+                        .getAsInt(0) : BaselineTIFFTagSet.PREDICTOR_NONE);
+            } finally {
+                reader.dispose();
+                stream.close();
+            }
+
+            final GeoTiffTileDecoder decoder = GeoTiffTileDecoder.create(file, 1);
+            try {
+                // the whole image, partial tiles included, then an area crossing tiles
+                for (Rectangle region : new Rectangle[] {
+                        new Rectangle(0, 0, image.getWidth(), image.getHeight()),
+                        new Rectangle(30, 20, 100, 70) }) {
+                    assertTrue(decoder.canDecode(0, region));
+                    final PlanarImage decoded = decoder.decode(0, region);
+                    assertEquals(region.width, decoded.getWidth());
+                    assertEquals(region.height, decoded.getHeight());
+                    assertEquals(TILE_SIZE, decoded.getTileWidth());
+                    final Raster expected = image.getData();
+                    final Raster actual = decoded.getData();
+                    for (int y = 0; y < region.height; y++) {
+                        for (int x = 0; x < region.width; x++) {
+                            for (int b = 0; b < expected.getNumBands(); b++) {
+                                assertEquals(compression + " at " + x + "," + y, expected
+                                        .getSample(region.x + x, region.y + y, b), actual
+                                        .getSample(x, y, b));
+                            }
+                        }
+                    }
+                }
+            } finally {
+                decoder.dispose();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testUncompressed() throws Exception {
+        assertDecoded(createRGBImage(), null, false, BaselineTIFFTagSet.COMPRESSION_NONE);
+    }
+
+    @Test
+    public void testLZW() throws Exception {
+        // the noise fills the code table, exercising the clear codes
+        assertDecoded(createRGBImage(), "LZW", false, BaselineTIFFTagSet.COMPRESSION_LZW);
+        assertDecoded(createUShortImage(), "LZW", false, BaselineTIFFTagSet.COMPRESSION_LZW);
+    }
+
+    @Test
+    public void testDeflate() throws Exception {
+        assertDecoded(createRGBImage(), "Deflate", false, BaselineTIFFTagSet.COMPRESSION_DEFLATE);
+        assertDecoded(createUShortImage(), "Deflate", false,
+                BaselineTIFFTagSet.COMPRESSION_DEFLATE);
+    }
+
+    @Test
+    public void testPackBits() throws Exception {
+        assertDecoded(createRGBImage(), "PackBits", false, BaselineTIFFTagSet.COMPRESSION_PACKBITS);
+    }
+
+    @Test
+    public void testHorizontalPredictor() throws Exception {
+        assertDecoded(createRGBImage(), "LZW", true, BaselineTIFFTagSet.COMPRESSION_LZW);
+        assertDecoded(createRGBImage(), "Deflate", true, BaselineTIFFTagSet.COMPRESSION_DEFLATE);
+    }
+
+    @Test
+    public void testPackBitsRuns() throws Exception {
+        // the example of the TIFF specification
+        final byte[] packed = bytes(0xFE, 0xAA, 0x02, 0x80, 0x00, 0x2A, 0xFD, 0xAA, 0x03, 0x80,
+                0x00, 0x2A, 0x22, 0xF7, 0xAA);
+        final byte[] unpacked = new byte[24];
+        GeoTiffTileDecoder.decodePackBits(packed, unpacked);
+        assertTrue(Arrays.equals(bytes(0xAA, 0xAA, 0xAA, 0x80, 0x00, 0x2A, 0xAA, 0xAA, 0xAA,
+                0xAA, 0x80, 0x00, 0x2A, 0x22, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA,
+                0xAA, 0xAA), unpacked));
+    }
+
+    private static byte[] bytes(int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -17,6 +17,7 @@
 package org.geotools.gce.geotiff;
 
 import it.geosolutions.imageio.plugins.tiff.BaselineTIFFTagSet;
+import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
 
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
@@ -27,6 +28,10 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.logging.Logger;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
 import javax.media.jai.PlanarImage;
 
 import junit.framework.Assert;
@@ -34,6 +39,7 @@ import junit.framework.Assert;
 import org.geotools.coverage.CoverageFactoryFinder;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.coverage.grid.io.imageio.GeoToolsWriteParams;
@@ -688,4 +694,79 @@ public class GeoTiffWriterTest extends Assert {
             }
         }
     
+
+    @Test
+    public void testWriteCloudOptimized() throws Exception {
+        final File input = TestData.file(GeoTiffReaderTest.class, "geo.tiff");
+        GeoTiffReader reader = new GeoTiffReader(input);
+        GridCoverage2D coverage = reader.read(null);
+        reader.dispose();
+
+        final File output = File.createTempFile("cog", ".tif");
+        try {
+            GeoTiffWriter writer = new GeoTiffWriter(output);
+            GeoTiffWriteParams params = new GeoTiffWriteParams();
+            params.setCloudOptimized(true);
+            params.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+            params.setTiling(32, 32);
+            ParameterValue<GeoToolsWriteParams> value = GeoTiffFormat.GEOTOOLS_WRITE_PARAMS.createValue();
+            value.setValue(params);
+            writer.write(coverage, new GeneralParameterValue[] { value });
+            writer.dispose();
+
+            // the directories come first, in a classic big endian file
+            FileInputStream fis = new FileInputStream(output);
+            try {
+                byte[] bytes = new byte[8];
+                fis.read(bytes);
+                assertEquals(77, bytes[0]);
+                assertEquals(77, bytes[1]);
+                assertEquals(42, bytes[3]);
+                assertEquals(8, bytes[7]);
+            } finally {
+                fis.close();
+            }
+
+            // overviews get added until the image fits in a tile, 120 -> 60 -> 30
+            ImageInputStream iis = ImageIO.createImageInputStream(output);
+            ImageReader tiffReader = new TIFFImageReaderSpi().createReaderInstance();
+            try {
+                tiffReader.setInput(iis);
+                assertEquals(3, tiffReader.getNumImages(true));
+                assertEquals(120, tiffReader.getWidth(0));
+                assertEquals(32, tiffReader.getTileWidth(0));
+                assertEquals(60, tiffReader.getWidth(1));
+                assertEquals(30, tiffReader.getWidth(2));
+            } finally {
+                tiffReader.dispose();
+                iis.close();
+            }
+
+            reader = new GeoTiffReader(output);
+            try {
+                GridCoverage2D full = reader.read(null);
+                assertEquals(120, full.getRenderedImage().getWidth());
+                assertTrue(full.getEnvelope2D().boundsEquals(coverage.getEnvelope2D(), 0, 1, 1E-6));
+
+                // reading a quarter of the area at full resolution only reads the tiles covering it
+                GeneralEnvelope envelope = new GeneralEnvelope(coverage.getEnvelope());
+                envelope.setRange(0, envelope.getMinimum(0), envelope.getMedian(0));
+                envelope.setRange(1, envelope.getMedian(1), envelope.getMaximum(1));
+                ParameterValue<GridGeometry2D> gg = AbstractGridFormat.READ_GRIDGEOMETRY2D.createValue();
+                gg.setValue(new GridGeometry2D(new GridEnvelope2D(0, 0, 60, 60), envelope));
+                GridCoverage2D quarter = reader.read(new GeneralParameterValue[] { gg });
+                RenderedImage ri = quarter.getRenderedImage();
+                assertTrue(ri.getWidth() < 120 && ri.getWidth() >= 60);
+                assertTrue(ri.getHeight() < 120 && ri.getHeight() >= 60);
+                assertTrue(quarter.getEnvelope2D().contains(envelope.getMedian(0) - 1E-3,
+                        envelope.getMedian(1) + 1E-3));
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            output.delete();
+        }
+        coverage.dispose(true);
+    }
+    
 }
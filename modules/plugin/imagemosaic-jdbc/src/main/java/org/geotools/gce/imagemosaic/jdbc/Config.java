@@ -44,6 +44,9 @@ import org.xml.sax.InputSource;
  * @source $URL$
  */
 public class Config {
+    /** The size of the decoded tile cache when the tileCache element does not specify one */
+    static final long DEFAULT_TILE_CACHE_SIZE_MB = 64;
+
     static private Map<String, Config> ConfigMap = new Hashtable<String, Config>(); // Hashtable
 
     // is
@@ -110,6 +113,8 @@ public class Config {
 
     private Boolean verifyCardinality;
 
+    private Long tileCacheSize;
+
     private Integer interpolation;
 
     private String tileMaxXAttribute;
@@ -227,6 +232,15 @@ public class Config {
             result.verifyCardinality = new Boolean(s);
         }
 
+        // tiles are cached only on request, as changes in the database are not seen
+        result.tileCacheSize = 0L;
+        tmp = dom.getElementsByTagName("tileCache").item(0);
+        if (tmp!=null) {
+            Node maxSize = tmp.getAttributes().getNamedItem("maxSizeMB");
+            result.tileCacheSize = (maxSize != null ? new Long(maxSize.getNodeValue().trim())
+                    : DEFAULT_TILE_CACHE_SIZE_MB) * 1024L * 1024L;
+        }
+
         
     }
 
@@ -437,6 +451,18 @@ public class Config {
         return verifyCardinality;
     }
 
+    /**
+     * Decoded tiles are cached only if the configuration has a <code>tileCache</code> element.
+     * Cached tiles are not read from the database again, so they go stale if the tiles are
+     * updated in the database while the mosaic is in use.
+     * 
+     * @return the maximum size in bytes of the decoded tiles kept in memory, 0 or null if tiles
+     *         are not cached
+     */
+    public Long getTileCacheSize() {
+        return tileCacheSize;
+    }
+
     public String getDriverClassName() {
         return driverClassName;
     }
@@ -0,0 +1,128 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.jdbc;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of decoded tiles, bounded by the size in bytes of their raster data.
+ * Tiles are identified by their pyramid level and by their key in the database.
+ * <p>
+ * The cached images are shared by all the requests hitting them, so they must never be modified.
+ * </p>
+ *
+ * @source $URL$
+ */
+class DecodedTileCache {
+
+    private final long maxSize;
+
+    private long size;
+
+    private final LinkedHashMap<TileKey, BufferedImage> tiles = new LinkedHashMap<TileKey, BufferedImage>(
+            16, 0.75f, true);
+
+    /**
+     * @param maxSize the maximum size in bytes of the cached raster data
+     */
+    DecodedTileCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the size in bytes of the raster data of an image
+     */
+    static long getDataSize(BufferedImage image) {
+        final DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * @return the cached tile, or null if not cached
+     */
+    synchronized BufferedImage get(ImageLevelInfo level, String tileKey) {
+        return tiles.get(new TileKey(level, tileKey));
+    }
+
+    /**
+     * Caches a tile, evicting the least recently used ones as needed. Tiles larger than the whole
+     * cache are not cached at all.
+     */
+    synchronized void put(ImageLevelInfo level, String tileKey, BufferedImage image) {
+        final long tileSize = getDataSize(image);
+        if (tileSize > maxSize) {
+            return;
+        }
+        final BufferedImage previous = tiles.put(new TileKey(level, tileKey), image);
+        if (previous != null) {
+            size -= getDataSize(previous);
+        }
+        size += tileSize;
+
+        final Iterator<Map.Entry<TileKey, BufferedImage>> it = tiles.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= getDataSize(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * @return the size in bytes of the cached raster data
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized void clear() {
+        tiles.clear();
+        size = 0;
+    }
+
+    /**
+     * Identifies a tile, levels being compared by identity since a {@link JDBCAccess} keeps the
+     * same {@link ImageLevelInfo} objects for its whole life
+     */
+    private static final class TileKey {
+        private final ImageLevelInfo level;
+
+        private final String key;
+
+        TileKey(ImageLevelInfo level, String key) {
+            this.level = level;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(level) * 31 + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) obj;
+            return level == other.level && key.equals(other.key);
+        }
+    }
+}
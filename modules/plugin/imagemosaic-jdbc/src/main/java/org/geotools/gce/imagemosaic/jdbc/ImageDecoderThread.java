@@ -20,7 +20,11 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -59,12 +63,33 @@ public class ImageDecoderThread extends AbstractThread {
 	protected final static Logger LOGGER = Logging
 			.getLogger(ImageDecoderThread.class.getPackage().getName());
 
+	/**
+	 * The pool decoding the tiles of all the mosaics, one thread per processor
+	 */
+	private static final ExecutorService DECODER_POOL = Executors
+			.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r,
+									"ImageMosaicJDBC decoder "
+											+ count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+
 	private byte[] imageBytes;
 
 	private String location;
 
 	private GeneralEnvelope tileEnvelope;
 
+	private BufferedImage decodedImage;
+
+	private DecodedTileCache tileCache;
+
 	/**
 	 * @param bytes
 	 *            the image bytes
@@ -95,30 +120,72 @@ public class ImageDecoderThread extends AbstractThread {
 		this.tileEnvelope = tileEnvelope;
 	}
 
+	/**
+	 * Creates a thread decoding the image bytes and adding the decoded tile to
+	 * a cache
+	 * 
+	 * @param tileCache
+	 *            the cache the decoded tile is added to
+	 * @see #ImageDecoderThread(byte[], String, GeneralEnvelope, Rectangle,
+	 *      GeneralEnvelope, ImageLevelInfo, LinkedBlockingQueue, Config)
+	 */
+	ImageDecoderThread(byte[] bytes, String location,
+			GeneralEnvelope tileEnvelope, Rectangle pixelDimension,
+			GeneralEnvelope requestEnvelope, ImageLevelInfo levelInfo,
+			LinkedBlockingQueue<TileQueueElement> tileQueue, Config config,
+			DecodedTileCache tileCache) {
+		this(bytes, location, tileEnvelope, pixelDimension, requestEnvelope,
+				levelInfo, tileQueue, config);
+		this.tileCache = tileCache;
+	}
+
+	/**
+	 * Creates a thread clipping a tile decoded earlier, no decoding takes
+	 * place.
+	 * 
+	 * @param decodedImage
+	 *            the decoded tile, not modified
+	 * @see #ImageDecoderThread(byte[], String, GeneralEnvelope, Rectangle,
+	 *      GeneralEnvelope, ImageLevelInfo, LinkedBlockingQueue, Config)
+	 */
+	ImageDecoderThread(BufferedImage decodedImage, String location,
+			GeneralEnvelope tileEnvelope, Rectangle pixelDimension,
+			GeneralEnvelope requestEnvelope, ImageLevelInfo levelInfo,
+			LinkedBlockingQueue<TileQueueElement> tileQueue, Config config) {
+		this((byte[]) null, location, tileEnvelope, pixelDimension,
+				requestEnvelope, levelInfo, tileQueue, config);
+		this.decodedImage = decodedImage;
+	}
+
+	/**
+	 * Returns the pool the decoders are meant to run on. The pool is shared by
+	 * all the mosaics and never shut down, so callers wait for the futures of
+	 * their own decoders.
+	 * 
+	 * @return the shared decoder pool
+	 */
+	public static ExecutorService getDecoderPool() {
+		return DECODER_POOL;
+	}
+
 	/**
 	 * @see java.lang.Thread#run()
 	 */
 	@Override
 	public void run() {
-		if ((imageBytes == null) || (imageBytes.length == 0)) { // nothing to do
+		BufferedImage bufferedImage = decodedImage;
+		if (bufferedImage == null
+				&& ((imageBytes == null) || (imageBytes.length == 0))) { // nothing to do
 			return;
 		}
 
 		try {
 
-			BufferedImage bufferedImage = null;
-
-			boolean triedFromStream = false;
-			if (levelInfo.getCanImageIOReadFromInputStream()) {
-				bufferedImage = ImageIO.read(new ByteArrayInputStream(
-						imageBytes));
-				triedFromStream = true;
-			}
 			if (bufferedImage == null) {
-				if (triedFromStream)
-					LOGGER.warning("Could not read " + location
-							+ " from stream, switch to JAI");
-				bufferedImage = readImage2(imageBytes);
+				bufferedImage = decode();
+				if (tileCache != null) {
+					tileCache.put(levelInfo, location, bufferedImage);
+				}
 			}
 
 			if (requestEnvelope.contains(tileEnvelope, true) == false) {
@@ -165,6 +232,23 @@ public class ImageDecoderThread extends AbstractThread {
 		}
 	}
 
+	private BufferedImage decode() throws IOException {
+		BufferedImage bufferedImage = null;
+
+		boolean triedFromStream = false;
+		if (levelInfo.getCanImageIOReadFromInputStream()) {
+			bufferedImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
+			triedFromStream = true;
+		}
+		if (bufferedImage == null) {
+			if (triedFromStream)
+				LOGGER.warning("Could not read " + location
+						+ " from stream, switch to JAI");
+			bufferedImage = readImage2(imageBytes);
+		}
+		return bufferedImage;
+	}
+
 	/**
 	 * Fallback Method, in some jre implementations, ImageIO.read(InputStream
 	 * in) returns null. If this happens, this method is called, which is not so
@@ -29,13 +29,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,8 +76,16 @@ abstract class JDBCAccessBase implements JDBCAccess {
 	protected final static Logger LOGGER = Logging
 			.getLogger(JDBCAccessBase.class.getPackage().getName());
 
+	/** Maximum number of tile keys in the IN list of a tile bytes query */
+	static final int TILE_FETCH_SIZE = 64;
+
 	private List<ImageLevelInfo> levelInfos = new ArrayList<ImageLevelInfo>();
 
+	/**
+	 * The decoded tiles of this mosaic, null if not cached
+	 */
+	protected DecodedTileCache tileCache;
+
 	protected Config config;
 
 	protected DataSource dataSource = null;
@@ -92,6 +102,10 @@ abstract class JDBCAccessBase implements JDBCAccess {
 		this.config = config;
 		this.dataSource = DataSourceFinder.getDataSource(config
 				.getDataSourceParams());
+		Long tileCacheSize = config.getTileCacheSize();
+		if (tileCacheSize != null && tileCacheSize > 0) {
+			this.tileCache = new DecodedTileCache(tileCacheSize);
+		}
 	}
 
 	/**
@@ -560,46 +574,23 @@ abstract class JDBCAccessBase implements JDBCAccess {
 			GridCoverageFactory coverageFactory) throws IOException {
 		Date start = new Date();
 		Connection con = null;
-		List<ImageDecoderThread> threads = new ArrayList<ImageDecoderThread>();
-		ExecutorService pool =  getExecutorServivicePool ();
-		
+		List<Future<?>> decoders = new ArrayList<Future<?>>();
+		ExecutorService pool = getExecutorServivicePool();
 
-		String statementString = getGridSelectStatement(levelInfo);
+		String keyStatementString = tileCache == null ? null
+				: getGridKeySelectStatement(levelInfo);
 
 		try {
 			con = dataSource.getConnection();
 
-			PreparedStatement s = con.prepareStatement(statementString);
-			setGridSelectParams(s, requestEnvelope, levelInfo);
-
-			ResultSet r = s.executeQuery();
-
-			while (r.next()) {
-				byte[] tileBytes = getTileBytes(r);
-				Envelope env = getEnvelopeFromResultSet(r);
-				String location = r.getString(config
-						.getKeyAttributeNameInSpatialTable());
-
-				Rectangle2D tmp = new Rectangle2D.Double(env.getMinX(), env
-						.getMinY(), env.getWidth(), env.getHeight());
-				GeneralEnvelope tileGeneralEnvelope = new GeneralEnvelope(tmp);
-				tileGeneralEnvelope
-						.setCoordinateReferenceSystem(requestEnvelope
-								.getCoordinateReferenceSystem());
-
-				ImageDecoderThread thread = new ImageDecoderThread(tileBytes,
-						location, tileGeneralEnvelope, pixelDimension,
-						requestEnvelope, levelInfo, tileQueue, config);
-//				thread.start();
-				threads.add(thread);
-				pool.execute(thread);
-
+			if (keyStatementString == null) {
+				decodeAllTiles(con, pixelDimension, requestEnvelope, levelInfo,
+						tileQueue, pool, decoders);
+			} else {
+				decodeMissingTiles(con, keyStatementString, pixelDimension,
+						requestEnvelope, levelInfo, tileQueue, pool, decoders);
 			}
 
-			;
-			r.close();
-			s.close();
-
 			// if (con.getAutoCommit() == false) {
 			// con.commit();
 			// }
@@ -621,36 +612,195 @@ abstract class JDBCAccessBase implements JDBCAccess {
 
 		if (LOGGER.isLoggable(Level.INFO))
 			LOGGER
-					.info("Getting " + threads.size() + " Tiles needs "
+					.info("Getting " + decoders.size() + " Tiles needs "
 							+ ((new Date()).getTime() - start.getTime())
 							+ " millisecs");
 
-		// wait for all threads dto finish and write end marker
-		pool.shutdown();
-		try {
-		    pool.awaitTermination(3600, TimeUnit.SECONDS); // wait for one hour 
-                  } catch (InterruptedException e) {
-                           throw new RuntimeException(e.getLocalizedMessage());
-                }
-		
-//		for (AbstractThread thread : threads) {
-//			try {
-//				thread.join();
-//			} catch (InterruptedException e) {
-//				throw new RuntimeException(e.getLocalizedMessage());
-//			}
-//		}
+		// wait for the decoders of this request and write end marker, the
+		// pool is shared and stays alive
+		for (Future<?> decoder : decoders) {
+			try {
+				decoder.get();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e.getLocalizedMessage());
+			} catch (ExecutionException e) {
+				// already logged by the decoder, the tile is left out
+			}
+		}
 
 		tileQueue.add(TileQueueElement.ENDELEMENT);
 
 		if (LOGGER.isLoggable(Level.INFO))
 			LOGGER
-					.info("Getting and decoding  " + threads.size()
+					.info("Getting and decoding  " + decoders.size()
 							+ " Tiles needs "
 							+ ((new Date()).getTime() - start.getTime())
 							+ " millisecs");
 	}
 
+	/**
+	 * Reads the keys, the envelopes and the image bytes of the requested tiles
+	 * with a single query, decoding all of them
+	 */
+	private void decodeAllTiles(Connection con, Rectangle pixelDimension,
+			GeneralEnvelope requestEnvelope, ImageLevelInfo levelInfo,
+			LinkedBlockingQueue<TileQueueElement> tileQueue,
+			ExecutorService pool, List<Future<?>> decoders)
+			throws SQLException {
+		PreparedStatement s = con
+				.prepareStatement(getGridSelectStatement(levelInfo));
+		setGridSelectParams(s, requestEnvelope, levelInfo);
+
+		ResultSet r = s.executeQuery();
+
+		while (r.next()) {
+			byte[] tileBytes = getTileBytes(r);
+			String location = r.getString(config
+					.getKeyAttributeNameInSpatialTable());
+			GeneralEnvelope tileGeneralEnvelope = getTileEnvelope(r,
+					requestEnvelope);
+
+			decoders.add(pool.submit(new ImageDecoderThread(tileBytes,
+					location, tileGeneralEnvelope, pixelDimension,
+					requestEnvelope, levelInfo, tileQueue, config)));
+		}
+
+		r.close();
+		s.close();
+	}
+
+	/**
+	 * Reads the keys and the envelopes of the requested tiles, clipping the
+	 * cached ones right away and fetching the image bytes of the others in
+	 * batches of {@link #TILE_FETCH_SIZE} keys
+	 */
+	private void decodeMissingTiles(Connection con, String keyStatementString,
+			Rectangle pixelDimension, GeneralEnvelope requestEnvelope,
+			ImageLevelInfo levelInfo,
+			LinkedBlockingQueue<TileQueueElement> tileQueue,
+			ExecutorService pool, List<Future<?>> decoders)
+			throws SQLException {
+		Map<String, GeneralEnvelope> missingEnvelopes = new HashMap<String, GeneralEnvelope>();
+		List<Object> missingKeys = new ArrayList<Object>();
+
+		PreparedStatement s = con.prepareStatement(keyStatementString);
+		setGridSelectParams(s, requestEnvelope, levelInfo);
+
+		ResultSet r = s.executeQuery();
+
+		while (r.next()) {
+			Object key = r.getObject(config
+					.getKeyAttributeNameInSpatialTable());
+			String location = String.valueOf(key);
+			GeneralEnvelope tileGeneralEnvelope = getTileEnvelope(r,
+					requestEnvelope);
+
+			BufferedImage cached = tileCache.get(levelInfo, location);
+			if (cached != null) {
+				decoders.add(pool.submit(new ImageDecoderThread(cached,
+						location, tileGeneralEnvelope, pixelDimension,
+						requestEnvelope, levelInfo, tileQueue, config)));
+			} else {
+				missingEnvelopes.put(location, tileGeneralEnvelope);
+				missingKeys.add(key);
+			}
+		}
+
+		r.close();
+		s.close();
+
+		if (LOGGER.isLoggable(Level.FINE))
+			LOGGER.fine((decoders.size()) + " cached tiles, "
+					+ missingKeys.size() + " tiles to fetch");
+
+		for (int i = 0; i < missingKeys.size(); i += TILE_FETCH_SIZE) {
+			List<Object> batch = missingKeys.subList(i, Math.min(missingKeys
+					.size(), i + TILE_FETCH_SIZE));
+
+			s = con.prepareStatement(getTileBytesSelectStatement(levelInfo,
+					batch.size()));
+			for (int j = 0; j < batch.size(); j++) {
+				s.setObject(j + 1, batch.get(j));
+			}
+
+			r = s.executeQuery();
+
+			while (r.next()) {
+				String location = String.valueOf(r.getObject(1));
+				byte[] tileBytes = getTileBytes(r);
+
+				decoders.add(pool.submit(new ImageDecoderThread(tileBytes,
+						location, missingEnvelopes.get(location),
+						pixelDimension, requestEnvelope, levelInfo, tileQueue,
+						config, tileCache)));
+			}
+
+			r.close();
+			s.close();
+		}
+	}
+
+	private GeneralEnvelope getTileEnvelope(ResultSet r,
+			GeneralEnvelope requestEnvelope) throws SQLException {
+		Envelope env = getEnvelopeFromResultSet(r);
+
+		Rectangle2D tmp = new Rectangle2D.Double(env.getMinX(), env.getMinY(),
+				env.getWidth(), env.getHeight());
+		GeneralEnvelope tileGeneralEnvelope = new GeneralEnvelope(tmp);
+		tileGeneralEnvelope.setCoordinateReferenceSystem(requestEnvelope
+				.getCoordinateReferenceSystem());
+		return tileGeneralEnvelope;
+	}
+
+	/**
+	 * Sql statement to query the keys and the envelopes of the needed tiles
+	 * for a request, the columns are the ones of the grid select statement
+	 * without the image bytes. The statement takes the same parameters as the
+	 * grid select statement.
+	 * 
+	 * @param levelInfo
+	 *            ImageLevelInfo object
+	 * @return the statement, null if not supported, in which case the tiles
+	 *         are neither cached nor fetched in batches
+	 */
+	protected String getGridKeySelectStatement(ImageLevelInfo levelInfo) {
+		return null;
+	}
+
+	/**
+	 * Sql statement to query the keys and the image bytes of the tiles whose
+	 * keys are given as parameters
+	 * 
+	 * @param levelInfo
+	 *            ImageLevelInfo object
+	 * @param keyCount
+	 *            the number of key parameters
+	 * @return
+	 */
+	protected String getTileBytesSelectStatement(ImageLevelInfo levelInfo,
+			int keyCount) {
+		String tableName;
+		String keyAttributeName;
+		if (levelInfo.isImplementedAsTableSplit()) {
+			tableName = levelInfo.getTileTableName();
+			keyAttributeName = config.getKeyAttributeNameInTileTable();
+		} else {
+			tableName = levelInfo.getSpatialTableName();
+			keyAttributeName = config.getKeyAttributeNameInSpatialTable();
+		}
+
+		StringBuffer buff = new StringBuffer("SELECT ");
+		buff.append(keyAttributeName).append(",").append(
+				config.getBlobAttributeNameInTileTable());
+		buff.append(" FROM ").append(tableName);
+		buff.append(" WHERE ").append(keyAttributeName).append(" IN (");
+		for (int i = 0; i < keyCount; i++) {
+			buff.append(i == 0 ? "?" : ",?");
+		}
+		buff.append(")");
+		return buff.toString();
+	}
+
 	/**
 	 * @param resultSet
 	 *            Sql Result Set
@@ -670,8 +820,9 @@ abstract class JDBCAccessBase implements JDBCAccess {
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 
 		try {
-			while (in.read(buffer) > 0)
-				out.write(buffer);
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				out.write(buffer, 0, n);
 		} catch (IOException e) {
 		}
 
@@ -820,9 +971,11 @@ abstract class JDBCAccessBase implements JDBCAccess {
 		return result;
 	}
 	
-       public ExecutorService getExecutorServivicePool () {
-           int availableProcessors = Runtime.getRuntime().availableProcessors();
-           LOGGER.info("Using "+ availableProcessors + " CPU(s)");
-           return Executors.newFixedThreadPool(availableProcessors);
-       }
+	/**
+	 * @return the pool decoding the tiles, shared by all the mosaics and never
+	 *         shut down
+	 */
+	public ExecutorService getExecutorServivicePool() {
+		return ImageDecoderThread.getDecoderPool();
+	}
 }
@@ -53,6 +53,8 @@ class JDBCAccessDB2 extends JDBCAccessBase {
 
 	private String gridSelectJoined = null;
 
+	private String gridKeySelect = null;
+
 	JDBCAccessDB2(Config config) throws IOException {
 		super(config);
 		initStatementStrings(config);
@@ -91,6 +93,7 @@ class JDBCAccessDB2 extends JDBCAccessBase {
 
 		gridSelect = allSelect + " WHERE " + whereClause;
 		gridSelectJoined = allSelectJoined + " AND " + whereClause;
+		gridKeySelect = spatialSelectClause + " FROM {0} s WHERE " + whereClause;
 	}
 
 	/*
@@ -125,6 +128,17 @@ class JDBCAccessDB2 extends JDBCAccessBase {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geotools.gce.imagemosaic.jdbc.JDBCAccessBase#getGridKeySelectStatement(org.geotools.gce.imagemosaic.jdbc.ImageLevelInfo)
+	 */
+	@Override
+	protected String getGridKeySelectStatement(ImageLevelInfo li) {
+		return MessageFormat.format(gridKeySelect, new Object[] { li
+				.getSpatialTableName() });
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
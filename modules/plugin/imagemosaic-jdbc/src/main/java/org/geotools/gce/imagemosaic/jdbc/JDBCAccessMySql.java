@@ -50,6 +50,8 @@ class JDBCAccessMySql extends JDBCAccessBase {
 
 	private String gridSelectJoined = null;
 
+	private String gridKeySelect = null;
+
 	JDBCAccessMySql(Config config) throws IOException {
 		super(config);
 		initStatementStrings(config);
@@ -81,6 +83,7 @@ class JDBCAccessMySql extends JDBCAccessBase {
 
 		gridSelect = allSelect + " WHERE " + whereClause;
 		gridSelectJoined = allSelectJoined + " AND " + whereClause;
+		gridKeySelect = spatialSelectClause + " FROM {0} s WHERE " + whereClause;
 	}
 
 	/*
@@ -132,6 +135,17 @@ class JDBCAccessMySql extends JDBCAccessBase {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geotools.gce.imagemosaic.jdbc.JDBCAccessBase#getGridKeySelectStatement(org.geotools.gce.imagemosaic.jdbc.ImageLevelInfo)
+	 */
+	@Override
+	protected String getGridKeySelectStatement(ImageLevelInfo li) {
+		return MessageFormat.format(gridKeySelect, new Object[] { li
+				.getSpatialTableName() });
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -51,6 +51,8 @@ class JDBCAccessOracle extends JDBCAccessBase {
 
 	private String gridSelectJoined = null;
 
+	private String gridKeySelect = null;
+
 	JDBCAccessOracle(Config config) throws IOException {
 		super(config);
 		initStatementStrings(config);
@@ -99,6 +101,7 @@ class JDBCAccessOracle extends JDBCAccessBase {
 
 		gridSelect = allSelect + " WHERE " + whereClause;
 		gridSelectJoined = allSelectJoined + " AND " + whereClause;
+		gridKeySelect = spatialSelectClause + " FROM {0} s WHERE " + whereClause;
 	}
 
 	/*
@@ -142,6 +145,23 @@ class JDBCAccessOracle extends JDBCAccessBase {
 		return stmt;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geotools.gce.imagemosaic.jdbc.JDBCAccessBase#getGridKeySelectStatement(org.geotools.gce.imagemosaic.jdbc.ImageLevelInfo)
+	 */
+	@Override
+	protected String getGridKeySelectStatement(ImageLevelInfo li) {
+		String stmt = MessageFormat.format(gridKeySelect, new Object[] { li
+				.getSpatialTableName() });
+
+		if (stmt.indexOf("'") == -1) {
+			stmt = stmt.replace("TRUE", "'TRUE'");
+		}
+
+		return stmt;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -56,6 +56,8 @@ class JDBCAccessPostGis extends JDBCAccessBase {
 
     private String gridSelectJoined = null;
 
+    private String gridKeySelect = null;
+
     // Since PostGis 1.2.2
     private String functionPrefix = "st_";
 
@@ -122,6 +124,7 @@ class JDBCAccessPostGis extends JDBCAccessBase {
 
         gridSelect = allSelect + " WHERE " + whereClause;
         gridSelectJoined = allSelectJoined + " AND " + whereClause;
+        gridKeySelect = spatialSelectClause + " FROM {0} s WHERE " + whereClause;
     }
 
     /*
@@ -223,6 +226,17 @@ class JDBCAccessPostGis extends JDBCAccessBase {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.geotools.gce.imagemosaic.jdbc.JDBCAccessBase#getGridKeySelectStatement(org.geotools.gce.imagemosaic.jdbc.ImageLevelInfo)
+     */
+    @Override
+    protected String getGridKeySelectStatement(ImageLevelInfo li) {
+        return MessageFormat.format(gridKeySelect, new Object[] { li
+                .getSpatialTableName() });
+    }
+
     /*
      * (non-Javadoc)
      * 
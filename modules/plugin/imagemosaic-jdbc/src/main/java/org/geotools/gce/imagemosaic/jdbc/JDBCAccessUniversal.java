@@ -42,6 +42,8 @@ class JDBCAccessUniversal extends JDBCAccessBase {
 
 	private String gridSelectJoined = null;
 
+	private String gridKeySelect = null;
+
 	JDBCAccessUniversal(Config config) throws IOException {
 		super(config);
 		initStatementStrings(config);
@@ -96,6 +98,7 @@ class JDBCAccessUniversal extends JDBCAccessBase {
 
 		gridSelect = allSelect + " WHERE " + whereClause;
 		gridSelectJoined = allSelectJoined + " AND " + whereClause;
+		gridKeySelect = spatialSelectClause + " FROM {0} s WHERE " + whereClause;
 	}
 
 	/*
@@ -141,6 +144,17 @@ class JDBCAccessUniversal extends JDBCAccessBase {
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.geotools.gce.imagemosaic.jdbc.JDBCAccessBase#getGridKeySelectStatement(org.geotools.gce.imagemosaic.jdbc.ImageLevelInfo)
+	 */
+	@Override
+	protected String getGridKeySelectStatement(ImageLevelInfo li) {
+		return MessageFormat.format(gridKeySelect, new Object[] { li
+				.getSpatialTableName() });
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -32,10 +32,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -178,7 +178,7 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
             GridCoverageFactory coverageFactory) throws IOException {
         Date start = new Date();
         Connection con = null;
-        List<ImageDecoderThread> threads = new ArrayList<ImageDecoderThread>();
+        List<Future<?>> decoders = new ArrayList<Future<?>>();
         ExecutorService pool = getExecutorServivicePool();
 
         String gridStatement = statementMap.get(levelInfo);
@@ -216,9 +216,7 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
                 ImageDecoderThread thread = new ImageDecoderThread(tileBytes, "",
                         tileGeneralEnvelope, pixelDimension, requestEnvelope, levelInfo, tileQueue,
                         getConfig());
-                // thread.start();
-                threads.add(thread);
-                pool.execute(thread);
+                decoders.add(pool.submit(thread));
             }
 
             r.close();
@@ -236,21 +234,24 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
         }
 
         if (LOGGER.isLoggable(Level.INFO))
-            LOGGER.info("Getting " + threads.size() + " Tiles needs "
+            LOGGER.info("Getting " + decoders.size() + " Tiles needs "
                     + ((new Date()).getTime() - start.getTime()) + " millisecs");
 
-        // wait for all threads dto finish and write end marker
-        pool.shutdown();
-        try {
-            pool.awaitTermination(3600, TimeUnit.SECONDS); // wait for one hour
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e.getLocalizedMessage());
+        // wait for the decoders of this request and write end marker, the pool is shared
+        for (Future<?> decoder : decoders) {
+            try {
+                decoder.get();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e.getLocalizedMessage());
+            } catch (ExecutionException e) {
+                // already logged by the decoder, the tile is left out
+            }
         }
 
         tileQueue.add(TileQueueElement.ENDELEMENT);
 
         if (LOGGER.isLoggable(Level.INFO))
-            LOGGER.info("Getting and decoding  " + threads.size() + " Tiles needs "
+            LOGGER.info("Getting and decoding  " + decoders.size() + " Tiles needs "
                     + ((new Date()).getTime() - start.getTime()) + " millisecs");
     }
 
@@ -566,14 +567,10 @@ public class JDBCAccessPGRaster extends JDBCAccessCustom {
     }
 
     /**
-     * creates a thread pool
-     * 
-     * @return
+     * @return the shared tile decoder pool
      */
     public ExecutorService getExecutorServivicePool() {
-        int availableProcessors = Runtime.getRuntime().availableProcessors();
-        LOGGER.info("Using " + availableProcessors + " CPU(s)");
-        return Executors.newFixedThreadPool(availableProcessors);
+        return ImageDecoderThread.getDecoderPool();
     }
 
     /**
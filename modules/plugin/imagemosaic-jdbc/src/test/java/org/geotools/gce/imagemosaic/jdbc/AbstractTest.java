@@ -18,6 +18,8 @@ package org.geotools.gce.imagemosaic.jdbc;
 
 import java.awt.Color;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,9 +32,13 @@ import java.net.URL;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -43,6 +49,7 @@ import javax.imageio.ImageIO;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
+import org.geotools.coverage.CoverageFactoryFinder;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
@@ -745,6 +752,76 @@ public abstract class AbstractTest extends TestCase {
 		}
 	}
 
+	/**
+	 * Reads the same tiles without caching them, then with the decoded tile
+	 * cache, first fetching them in batches and then from the cache, checking
+	 * the same tiles come out each time
+	 */
+	public void testTileCache() throws Exception {
+		if (!(getJDBCAccess() instanceof JDBCAccessBase)) {
+			return;
+		}
+		JDBCAccessBase access = (JDBCAccessBase) getJDBCAccess();
+		ImageLevelInfo li = access.getLevelInfo(0);
+		if (access.getGridKeySelectStatement(li) == null) {
+			// tiles are not cached by this dialect
+			return;
+		}
+
+		GeneralEnvelope env = new GeneralEnvelope(ENV_1);
+		env.setCoordinateReferenceSystem(CRS.decode(CRSNAME));
+		Rectangle pixelDimension = new Rectangle(0, 0, 500, 250);
+
+		DecodedTileCache tileCache = access.tileCache;
+		try {
+			access.tileCache = null;
+			Map<String, BufferedImage> expected = readTiles(access,
+					pixelDimension, env, li);
+			assertFalse(expected.isEmpty());
+
+			access.tileCache = new DecodedTileCache(64L * 1024L * 1024L);
+			assertSameTiles(expected, readTiles(access, pixelDimension, env, li));
+			long size = access.tileCache.getSize();
+			assertTrue(size > 0);
+
+			assertSameTiles(expected, readTiles(access, pixelDimension, env, li));
+			assertEquals(size, access.tileCache.getSize());
+		} finally {
+			access.tileCache = tileCache;
+		}
+	}
+
+	private Map<String, BufferedImage> readTiles(JDBCAccess access,
+			Rectangle pixelDimension, GeneralEnvelope env, ImageLevelInfo li)
+			throws Exception {
+		LinkedBlockingQueue<TileQueueElement> queue = new LinkedBlockingQueue<TileQueueElement>();
+		access.startTileDecoders(pixelDimension, env, li, queue,
+				CoverageFactoryFinder.getGridCoverageFactory(null));
+		Map<String, BufferedImage> tiles = new HashMap<String, BufferedImage>();
+		for (TileQueueElement e = queue.take(); !e.isEndElement(); e = queue
+				.take()) {
+			assertNull(tiles.put(e.getName(), e.getTileImage()));
+		}
+		return tiles;
+	}
+
+	private void assertSameTiles(Map<String, BufferedImage> expected,
+			Map<String, BufferedImage> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+		for (String name : expected.keySet()) {
+			Raster e = expected.get(name).getData();
+			Raster a = actual.get(name).getData();
+			assertEquals(e.getBounds(), a.getBounds());
+			assertEquals(e.getNumBands(), a.getNumBands());
+			for (int b = 0; b < e.getNumBands(); b++) {
+				assertTrue(name, Arrays.equals(e.getSamples(e.getMinX(), e
+						.getMinY(), e.getWidth(), e.getHeight(), b,
+						(int[]) null), a.getSamples(a.getMinX(), a.getMinY(), a
+						.getWidth(), a.getHeight(), b, (int[]) null)));
+			}
+		}
+	}
+
 	public void setUp() throws Exception {
 		super.setUp();
 
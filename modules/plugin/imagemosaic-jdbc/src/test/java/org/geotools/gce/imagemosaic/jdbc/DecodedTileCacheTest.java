@@ -0,0 +1,69 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.jdbc;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ *
+ * @source $URL$
+ */
+public class DecodedTileCacheTest extends TestCase {
+
+    public void testEvictsLeastRecentlyUsed() {
+        // a 10x10 byte gray tile takes 100 bytes
+        DecodedTileCache cache = new DecodedTileCache(250);
+        ImageLevelInfo level = new ImageLevelInfo();
+        BufferedImage a = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage b = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage c = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+
+        cache.put(level, "a", a);
+        cache.put(level, "b", b);
+        assertEquals(200, cache.getSize());
+        // touching a makes b the eldest
+        assertSame(a, cache.get(level, "a"));
+        cache.put(level, "c", c);
+
+        assertEquals(200, cache.getSize());
+        assertSame(a, cache.get(level, "a"));
+        assertNull(cache.get(level, "b"));
+        assertSame(c, cache.get(level, "c"));
+    }
+
+    public void testLevelsAreDistinct() {
+        DecodedTileCache cache = new DecodedTileCache(1000);
+        ImageLevelInfo level0 = new ImageLevelInfo();
+        ImageLevelInfo level1 = new ImageLevelInfo();
+        BufferedImage a = new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY);
+
+        cache.put(level0, "1", a);
+        assertSame(a, cache.get(level0, "1"));
+        assertNull(cache.get(level1, "1"));
+    }
+
+    public void testTooLargeNotCached() {
+        DecodedTileCache cache = new DecodedTileCache(50);
+        ImageLevelInfo level = new ImageLevelInfo();
+        cache.put(level, "a", new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY));
+        assertNull(cache.get(level, "a"));
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -96,6 +96,7 @@ public class H2Test extends AbstractTest {
 		suite.addTest(new H2Test("testOutputTransparentColor"));
 		suite.addTest(new H2Test("testOutputTransparentColor2"));
 		suite.addTest(new H2Test("testReproject1"));
+		suite.addTest(new H2Test("testTileCache"));
 		suite.addTest(new H2Test("testDrop"));
 		suite.addTest(new H2Test("testCreateJoined"));
 		suite.addTest(new H2Test("testImage1Joined"));
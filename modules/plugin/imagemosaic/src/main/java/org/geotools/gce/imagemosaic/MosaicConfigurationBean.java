@@ -137,6 +137,12 @@ public class MosaicConfigurationBean {
 	/** we want to use caching for our index.*/
 	private boolean caching = Utils.DEFAULT_CONFIGURATION_CACHING;
 
+	/** we want to keep the index in a memory mapped file next to the mosaic.*/
+	private boolean persistentIndex;
+
+	/** we want to index the granules by time in memory.*/
+	private boolean temporalIndex;
+
    /** <code>true</code> if we need to manage footprint if available.  */
     private boolean footprintManagement;
 
@@ -209,6 +215,18 @@ public class MosaicConfigurationBean {
 	public void setCaching(final boolean caching) {
 		this.caching = caching;
 	}
+	public boolean isPersistentIndex() {
+		return persistentIndex;
+	}
+	public void setPersistentIndex(final boolean persistentIndex) {
+		this.persistentIndex = persistentIndex;
+	}
+	public boolean isTemporalIndex() {
+		return temporalIndex;
+	}
+	public void setTemporalIndex(final boolean temporalIndex) {
+		this.temporalIndex = temporalIndex;
+	}
 
     public void setFootprintManagement(final boolean footprintManagement) {
             this.footprintManagement = footprintManagement;
@@ -238,6 +256,8 @@ public class MosaicConfigurationBean {
 				+ ", typeName=" + typeName + ", sampleModel=" + sampleModel
 				+ ", envelope=" + envelope + ", heterogeneous="
 				+ heterogeneous + ", caching=" + caching
+				+ ", persistentIndex=" + persistentIndex
+				+ ", temporalIndex=" + temporalIndex
 				+ ", footprintManagement=" + footprintManagement + "]";
 		}
 }
@@ -46,7 +46,7 @@ import org.opengis.filter.expression.Expression;
  * @author Daniele Romagnoli, GeoSolutions SAS
  * 
  */
-class RangeVisitor implements FeatureCalc {
+public class RangeVisitor implements FeatureCalc {
 
     enum RangeType {
         NUMBER, DATE;
@@ -159,6 +159,10 @@ public class Utils {
         public static final String RESOLUTION_LEVELS = "ResolutionLevels";
         public static final String PROPERTY_COLLECTORS = "PropertyCollectors";
         public final static String CACHING= "Caching";        
+        public final static String PERSISTENT_INDEX = "PersistentIndex";
+        public final static String TEMPORAL_INDEX = "TemporalIndex";
+        public static final String HARVEST_THREADS = "HarvestThreads";
+        public static final String INCREMENTAL = "Incremental";
     }
         /**
      * Extracts a bbox from a filter in case there is at least one.
@@ -439,6 +443,20 @@ public class Utils {
 			}
 		}
 
+		//
+		// persistent index
+		//
+		if (properties.containsKey(Prop.PERSISTENT_INDEX)) {
+			retValue.setPersistentIndex(Boolean.valueOf(properties.getProperty(Prop.PERSISTENT_INDEX).trim()));
+		}
+
+		//
+		// temporal index
+		//
+		if (properties.containsKey(Prop.TEMPORAL_INDEX)) {
+			retValue.setTemporalIndex(Boolean.valueOf(properties.getProperty(Prop.TEMPORAL_INDEX).trim()));
+		}
+
 		//
 		// name is not optional
 		//
@@ -905,6 +923,11 @@ public class Utils {
 	
 	public static final boolean DEFAULT_CONFIGURATION_CACHING = false;
 
+	/**
+	 * Default number of threads inspecting the granules while building a catalog.
+	 */
+	public static final int DEFAULT_HARVEST_THREADS = 1;
+
             public static Map<String, Serializable> createDataStoreParamsFromPropertiesFile(
 			Properties properties, DataStoreFactorySpi spi) throws IOException {
 		// get the params
@@ -136,7 +136,40 @@ public abstract class GranuleCatalogFactory {
 			}
 		}		
 		// istantiate
+		final GranuleCatalog catalog=createGranuleCatalog(sourceFile, params, spi, configuration);
+		// the temporal index is a snapshot of the granules, only fit for catalogs which are
+		// not reading the store live anyway
+		if(configuration.getTimeAttribute()!=null&&configuration.isTemporalIndex()&&(configuration.isCaching()||configuration.isPersistentIndex())){
+			return new TemporalGranuleCatalog(params,catalog,configuration.getTimeAttribute());
+		}
+		return catalog;
+	}
+
+	private static GranuleCatalog createGranuleCatalog(
+			final File sourceFile,
+			final Map<String, Serializable> params,
+			final DataStoreFactorySpi spi,
+			final MosaicConfigurationBean configuration){
+		if(configuration.isPersistentIndex()){
+			final File indexFile=getPersistentIndexFile(sourceFile.getParentFile(), configuration.getName());
+			// a store file modified after the index means the index is stale
+			if(indexFile.lastModified()<sourceFile.lastModified()&&indexFile.exists()&&!indexFile.delete()){
+				if(LOGGER.isLoggable(Level.WARNING))
+					LOGGER.warning("Unable to remove the stale index "+indexFile.getAbsolutePath());
+			}
+			return new PackedRTreeGranuleCatalog(params,spi,indexFile);
+		}
 		return configuration.isCaching()?new STRTreeGranuleCatalog(params,spi):new GTDataStoreGranuleCatalog(params,false,spi);
 	}
 
+	/**
+	 * Returns the file holding the persistent index of a mosaic
+	 * 
+	 * @param directory the mosaic directory
+	 * @param name the mosaic name
+	 */
+	public static File getPersistentIndexFile(final File directory, final String name){
+		return new File(directory,name+PackedRTreeGranuleCatalog.INDEX_EXTENSION);
+	}
+
 }
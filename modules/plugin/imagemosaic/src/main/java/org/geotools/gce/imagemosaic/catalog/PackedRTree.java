@@ -0,0 +1,598 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * A static R-tree packed with the Sort-Tile-Recursive algorithm and stored in a file, whose
+ * entries are an envelope and an opaque record. The file is memory mapped read only, so that
+ * opening it costs next to nothing whatever its size and any number of threads can search it at
+ * the same time without locking.
+ * <p>
+ * The nodes are laid out level after level, the leaves first and the root last, each node
+ * pointing to its first child, the children of a node being contiguous. Entries appended after
+ * the tree has been packed are written at the end of the file and scanned linearly, until the
+ * file is packed again.
+ * </p>
+ * <p>
+ * Instances are immutable snapshots of the file: appending returns a new instance, the
+ * searches running on the old one being unaffected.
+ * </p>
+ * <pre>
+ * header      magic, version, node size, item count, node count, level count,
+ *             appended count, (reserved), packed end, bounds
+ * level ends  the position following the last node of each level
+ * nodes       minx, miny, maxx, maxy, item number for leaves or first child position
+ * offsets     the position of the record of each item
+ * records     length, bytes
+ * appended    minx, miny, maxx, maxy, length, bytes
+ * </pre>
+ *
+ * @source $URL$
+ */
+final class PackedRTree {
+
+    /**
+     * Visits the records found by a search
+     */
+    interface RecordVisitor {
+        /**
+         * @return false to stop the search
+         */
+        boolean visit(byte[] record) throws IOException;
+    }
+
+    private static final int MAGIC = 0x47525831; // GRX1
+
+    private static final int VERSION = 1;
+
+    /** The maximum number of children of a node */
+    static final int NODE_SIZE = 16;
+
+    private static final int HEADER_SIZE = 72;
+
+    private static final int APPENDED_COUNT_POSITION = 24;
+
+    private static final int NODE_RECORD_SIZE = 4 * 8 + 4;
+
+    private final File file;
+
+    private final ByteBuffer buffer;
+
+    private final int nodeSize;
+
+    private final int itemCount;
+
+    private final int nodeCount;
+
+    private final int[] levelEnds;
+
+    private final int nodesPosition;
+
+    private final int offsetsPosition;
+
+    private final Envelope[] appendedEnvelopes;
+
+    private final byte[][] appendedRecords;
+
+    private final long appendPosition;
+
+    private PackedRTree(File file, ByteBuffer buffer, Envelope[] appendedEnvelopes,
+            byte[][] appendedRecords, long appendPosition) {
+        this.file = file;
+        this.buffer = buffer;
+        this.nodeSize = buffer.getInt(8);
+        this.itemCount = buffer.getInt(12);
+        this.nodeCount = buffer.getInt(16);
+        this.levelEnds = new int[buffer.getInt(20)];
+        for (int i = 0; i < levelEnds.length; i++) {
+            levelEnds[i] = buffer.getInt(HEADER_SIZE + i * 4);
+        }
+        this.nodesPosition = HEADER_SIZE + levelEnds.length * 4;
+        this.offsetsPosition = nodesPosition + nodeCount * NODE_RECORD_SIZE;
+        this.appendedEnvelopes = appendedEnvelopes;
+        this.appendedRecords = appendedRecords;
+        this.appendPosition = appendPosition;
+    }
+
+    /**
+     * Opens a tree file, mapping its packed part.
+     *
+     * @return the tree, null if the file does not exist or is not a tree of this version
+     */
+    static PackedRTree open(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) {
+                return null;
+            }
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0)
+                ;
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return null;
+            }
+            final long packedEnd = header.getLong(32);
+            if (packedEnd > Integer.MAX_VALUE || packedEnd > raf.length()) {
+                return null;
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, packedEnd);
+
+            // the appended entries are few, they are kept in memory
+            final int appendedCount = header.getInt(APPENDED_COUNT_POSITION);
+            final Envelope[] envelopes = new Envelope[appendedCount];
+            final byte[][] records = new byte[appendedCount][];
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            long position = packedEnd;
+            try {
+                skipFully(in, packedEnd);
+                for (int i = 0; i < appendedCount; i++) {
+                    final double minX = in.readDouble();
+                    final double minY = in.readDouble();
+                    final double maxX = in.readDouble();
+                    final double maxY = in.readDouble();
+                    // a null envelope for the entries without one, NaN would intersect
+                    envelopes[i] = Double.isNaN(minX) ? new Envelope() : new Envelope(minX,
+                            maxX, minY, maxY);
+                    records[i] = new byte[in.readInt()];
+                    in.readFully(records[i]);
+                    position += 4 * 8 + 4 + records[i].length;
+                }
+            } finally {
+                in.close();
+            }
+            return new PackedRTree(file, buffer, envelopes, records, position);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            final long skipped = in.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    int size() {
+        return itemCount + appendedRecords.length;
+    }
+
+    /**
+     * @return the number of entries appended after the tree has been packed
+     */
+    int getAppendedCount() {
+        return appendedRecords.length;
+    }
+
+    /**
+     * @return the envelope of all the entries, a null envelope if there are none
+     */
+    Envelope getBounds() {
+        final Envelope bounds = new Envelope();
+        if (nodeCount > 0 && !Double.isNaN(buffer.getDouble(40))) {
+            bounds.expandToInclude(readNodeEnvelope(nodeCount - 1));
+        }
+        for (Envelope env : appendedEnvelopes) {
+            bounds.expandToInclude(env);
+        }
+        return bounds;
+    }
+
+    /**
+     * Visits the records of the entries whose envelope intersects the provided one.
+     *
+     * @param envelope the searched envelope, null to visit all the entries
+     */
+    void search(Envelope envelope, RecordVisitor visitor) throws IOException {
+        if (nodeCount > 0) {
+            int[] stack = new int[levelEnds.length * nodeSize + 1];
+            int top = 0;
+            if (intersects(nodeCount - 1, envelope)) {
+                stack[top++] = nodeCount - 1;
+            }
+            while (top > 0) {
+                final int position = stack[--top];
+                final int pointer = buffer.getInt(nodesPosition + position * NODE_RECORD_SIZE
+                        + 32);
+                if (position < itemCount) {
+                    if (!visitor.visit(readRecord(pointer))) {
+                        return;
+                    }
+                    continue;
+                }
+
+                // the children are on the level below the one of this node
+                int level = 1;
+                while (position >= levelEnds[level]) {
+                    level++;
+                }
+                final int end = Math.min(pointer + nodeSize, levelEnds[level - 1]);
+                for (int child = end - 1; child >= pointer; child--) {
+                    if (intersects(child, envelope)) {
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < appendedRecords.length; i++) {
+            if (envelope == null || envelope.intersects(appendedEnvelopes[i])) {
+                if (!visitor.visit(appendedRecords[i])) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean intersects(int position, Envelope envelope) {
+        if (envelope == null) {
+            return true;
+        }
+        final int base = nodesPosition + position * NODE_RECORD_SIZE;
+        return buffer.getDouble(base) <= envelope.getMaxX()
+                && buffer.getDouble(base + 8) <= envelope.getMaxY()
+                && buffer.getDouble(base + 16) >= envelope.getMinX()
+                && buffer.getDouble(base + 24) >= envelope.getMinY();
+    }
+
+    private Envelope readNodeEnvelope(int position) {
+        final int base = nodesPosition + position * NODE_RECORD_SIZE;
+        return new Envelope(buffer.getDouble(base), buffer.getDouble(base + 16), buffer
+                .getDouble(base + 8), buffer.getDouble(base + 24));
+    }
+
+    private byte[] readRecord(int item) {
+        final int position = (int) buffer.getLong(offsetsPosition + item * 8);
+        final byte[] record = new byte[buffer.getInt(position)];
+        // a private view, the shared buffer position is never touched
+        final ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.get(record);
+        return record;
+    }
+
+    /**
+     * Appends entries at the end of the file. The entries are written before the header is
+     * updated, so that an interrupted append leaves the file as it was.
+     *
+     * @return the tree including the appended entries
+     */
+    PackedRTree append(List<Envelope> envelopes, List<byte[]> records) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long position = appendPosition;
+        try {
+            raf.seek(appendPosition);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(raf.getFD())));
+            for (int i = 0; i < records.size(); i++) {
+                writeEnvelope(out, envelopes.get(i));
+                out.writeInt(records.get(i).length);
+                out.write(records.get(i));
+                position += 4 * 8 + 4 + records.get(i).length;
+            }
+            out.flush();
+            raf.getChannel().force(false);
+
+            final int appendedCount = appendedRecords.length + records.size();
+            raf.seek(APPENDED_COUNT_POSITION);
+            raf.writeInt(appendedCount);
+            raf.getChannel().force(false);
+        } finally {
+            raf.close();
+        }
+
+        final int count = appendedRecords.length;
+        final Envelope[] newEnvelopes = Arrays.copyOf(appendedEnvelopes, count + records.size());
+        final byte[][] newRecords = Arrays.copyOf(appendedRecords, count + records.size());
+        for (int i = 0; i < records.size(); i++) {
+            final Envelope env = envelopes.get(i);
+            newEnvelopes[count + i] = env != null ? env : new Envelope();
+            newRecords[count + i] = records.get(i);
+        }
+        return new PackedRTree(file, buffer, newEnvelopes, newRecords, position);
+    }
+
+    /**
+     * Adds all the entries of this tree to a builder, to pack them again
+     */
+    void copyTo(Builder builder) throws IOException {
+        for (int position = 0; position < itemCount; position++) {
+            final int item = buffer.getInt(nodesPosition + position * NODE_RECORD_SIZE + 32);
+            builder.add(readNodeEnvelope(position), readRecord(item));
+        }
+        for (int i = 0; i < appendedRecords.length; i++) {
+            builder.add(appendedEnvelopes[i], appendedRecords[i]);
+        }
+    }
+
+    private static void writeEnvelope(DataOutputStream out, Envelope env) throws IOException {
+        if (env == null || env.isNull()) {
+            // NaN never intersects anything
+            for (int i = 0; i < 4; i++) {
+                out.writeDouble(Double.NaN);
+            }
+        } else {
+            out.writeDouble(env.getMinX());
+            out.writeDouble(env.getMinY());
+            out.writeDouble(env.getMaxX());
+            out.writeDouble(env.getMaxY());
+        }
+    }
+
+    /**
+     * Collects entries and writes them down as a packed tree. The records are spooled to a
+     * temporary file, only the envelopes are kept in memory.
+     */
+    static final class Builder {
+
+        private final File recordsFile;
+
+        private final DataOutputStream records;
+
+        private double[] boxes = new double[4 * 1024];
+
+        private long[] offsets = new long[1024];
+
+        private int count;
+
+        private long recordsSize;
+
+        /**
+         * @param directory the directory of the temporary records file
+         */
+        Builder(File directory) throws IOException {
+            recordsFile = File.createTempFile("granules", ".tmp", directory);
+            records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    recordsFile)));
+        }
+
+        void add(Envelope env, byte[] record) throws IOException {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                boxes = Arrays.copyOf(boxes, count * 8);
+            }
+            if (env == null || env.isNull()) {
+                Arrays.fill(boxes, count * 4, count * 4 + 4, Double.NaN);
+            } else {
+                boxes[count * 4] = env.getMinX();
+                boxes[count * 4 + 1] = env.getMinY();
+                boxes[count * 4 + 2] = env.getMaxX();
+                boxes[count * 4 + 3] = env.getMaxY();
+            }
+            offsets[count++] = recordsSize;
+            records.writeInt(record.length);
+            records.write(record);
+            recordsSize += 4 + record.length;
+        }
+
+        /**
+         * Packs the collected entries, replacing the file
+         *
+         * @return the opened tree
+         */
+        PackedRTree build(File file) throws IOException {
+            records.close();
+            try {
+                // the leaves, then each level up to the root
+                double[] nodeBoxes = new double[4 * (count + count / (NODE_SIZE - 1) + 1)];
+                int[] pointers = new int[count + count / (NODE_SIZE - 1) + 1];
+                int[] levelEnds = new int[0];
+
+                double[] levelBoxes = boxes;
+                int[] levelPointers = new int[count];
+                for (int i = 0; i < count; i++) {
+                    levelPointers[i] = i;
+                }
+                int levelSize = count;
+                int start = 0;
+                while (levelSize > 0) {
+                    final Integer[] order = sortTileRecursive(levelBoxes, levelSize);
+                    if (start + levelSize > pointers.length) {
+                        pointers = Arrays.copyOf(pointers, start + levelSize);
+                        nodeBoxes = Arrays.copyOf(nodeBoxes, 4 * (start + levelSize));
+                    }
+                    for (int i = 0; i < levelSize; i++) {
+                        final int node = order[i];
+                        System.arraycopy(levelBoxes, node * 4, nodeBoxes, (start + i) * 4, 4);
+                        pointers[start + i] = levelPointers[node];
+                    }
+                    final int end = start + levelSize;
+                    levelEnds = Arrays.copyOf(levelEnds, levelEnds.length + 1);
+                    levelEnds[levelEnds.length - 1] = end;
+                    if (levelSize == 1) {
+                        break;
+                    }
+
+                    // the parents of the nodes just laid out
+                    final int parentCount = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+                    levelBoxes = new double[parentCount * 4];
+                    levelPointers = new int[parentCount];
+                    for (int p = 0; p < parentCount; p++) {
+                        final int first = start + p * NODE_SIZE;
+                        final int last = Math.min(first + NODE_SIZE, end);
+                        double minX = Double.NaN, minY = Double.NaN;
+                        double maxX = Double.NaN, maxY = Double.NaN;
+                        for (int c = first; c < last; c++) {
+                            minX = min(minX, nodeBoxes[c * 4]);
+                            minY = min(minY, nodeBoxes[c * 4 + 1]);
+                            maxX = max(maxX, nodeBoxes[c * 4 + 2]);
+                            maxY = max(maxY, nodeBoxes[c * 4 + 3]);
+                        }
+                        levelBoxes[p * 4] = minX;
+                        levelBoxes[p * 4 + 1] = minY;
+                        levelBoxes[p * 4 + 2] = maxX;
+                        levelBoxes[p * 4 + 3] = maxY;
+                        levelPointers[p] = first;
+                    }
+                    start = end;
+                    levelSize = parentCount;
+                }
+                final int nodeCount = levelEnds.length == 0 ? 0 : levelEnds[levelEnds.length - 1];
+
+                final long offsetsPosition = HEADER_SIZE + levelEnds.length * 4 + (long) nodeCount
+                        * NODE_RECORD_SIZE;
+                final long recordsPosition = offsetsPosition + count * 8L;
+                final long packedEnd = recordsPosition + recordsSize;
+                if (packedEnd > Integer.MAX_VALUE) {
+                    throw new IOException("Too many granules for a packed index: " + count);
+                }
+
+                final File temp = new File(file.getPath() + ".tmp");
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(temp)));
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(NODE_SIZE);
+                    out.writeInt(count);
+                    out.writeInt(nodeCount);
+                    out.writeInt(levelEnds.length);
+                    out.writeInt(0);
+                    out.writeInt(0);
+                    out.writeLong(packedEnd);
+                    final Envelope bounds = nodeCount > 0 ? new Envelope(
+                            nodeBoxes[(nodeCount - 1) * 4], nodeBoxes[(nodeCount - 1) * 4 + 2],
+                            nodeBoxes[(nodeCount - 1) * 4 + 1], nodeBoxes[(nodeCount - 1) * 4 + 3])
+                            : null;
+                    writeEnvelope(out, bounds);
+                    for (int end : levelEnds) {
+                        out.writeInt(end);
+                    }
+                    for (int i = 0; i < nodeCount; i++) {
+                        for (int j = 0; j < 4; j++) {
+                            out.writeDouble(nodeBoxes[i * 4 + j]);
+                        }
+                        out.writeInt(pointers[i]);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        out.writeLong(recordsPosition + offsets[i]);
+                    }
+                    copy(recordsFile, out);
+                } finally {
+                    out.close();
+                }
+                if (!temp.renameTo(file)) {
+                    // some platforms do not rename over an existing file
+                    file.delete();
+                    if (!temp.renameTo(file)) {
+                        temp.delete();
+                        throw new IOException("Unable to replace " + file);
+                    }
+                }
+            } finally {
+                recordsFile.delete();
+            }
+            return open(file);
+        }
+
+        /**
+         * Discards the collected entries
+         */
+        void dispose() {
+            try {
+                records.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            recordsFile.delete();
+        }
+
+        private static void copy(File source, OutputStream out) throws IOException {
+            final InputStream in = new FileInputStream(source);
+            try {
+                final byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        /** The minimum ignoring the NaN of the entries without envelope */
+        private static double min(double a, double b) {
+            return Double.isNaN(a) || b < a ? b : a;
+        }
+
+        private static double max(double a, double b) {
+            return Double.isNaN(a) || b > a ? b : a;
+        }
+
+        /**
+         * Orders boxes by the x of their center, then each vertical slice of boxes by the y of
+         * their center, so that consecutive runs of {@link #NODE_SIZE} boxes are compact
+         */
+        private static Integer[] sortTileRecursive(final double[] boxes, int size) {
+            final Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(boxes[a * 4] + boxes[a * 4 + 2], boxes[b * 4]
+                            + boxes[b * 4 + 2]);
+                }
+            });
+            final int nodes = (size + NODE_SIZE - 1) / NODE_SIZE;
+            final int sliceSize = (int) Math.ceil(Math.sqrt(nodes)) * NODE_SIZE;
+            final Comparator<Integer> byY = new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(boxes[a * 4 + 1] + boxes[a * 4 + 3], boxes[b * 4 + 1]
+                            + boxes[b * 4 + 3]);
+                }
+            };
+            for (int s = 0; s < size; s += sliceSize) {
+                Arrays.sort(order, s, Math.min(size, s + sliceSize), byY);
+            }
+            return order;
+        }
+    }
+}
@@ -0,0 +1,693 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.spi.ImageReaderSpi;
+
+import org.geotools.data.DataStoreFactorySpi;
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.Transaction;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.gce.imagemosaic.PathType;
+import org.geotools.gce.imagemosaic.Utils;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.Converters;
+import org.geotools.util.SoftValueHashMap;
+import org.geotools.util.Utilities;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.geometry.BoundingBox;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * A {@link GranuleCatalog} answering the granule queries out of a {@link PackedRTree} file
+ * stored next to the mosaic, instead of loading all the granules in memory as the
+ * {@link STRTreeGranuleCatalog} does.
+ * <p>
+ * Each entry of the tree holds the envelope of a granule and all the attributes of its
+ * feature, so that queries never reach the underlying store. The file is built from the store
+ * on first use and reused afterwards, the catalog opens instantly whatever the number of
+ * granules. Queries run concurrently without any locking, the granules added through this
+ * catalog are appended to the file once their transaction commits, and the file is packed
+ * again once the appended granules become too many.
+ * </p>
+ * <p>
+ * The file is not kept in sync with changes made to the store behind the back of this catalog,
+ * it has to be removed when that happens.
+ * </p>
+ *
+ * @source $URL$
+ */
+class PackedRTreeGranuleCatalog extends AbstractGranuleCatalog {
+
+    /** Logger. */
+    final static Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger(PackedRTreeGranuleCatalog.class);
+
+    /** The extension of the index files */
+    static final String INDEX_EXTENSION = ".grx";
+
+    /**
+     * The file is packed again when the appended granules exceed this many, and a fraction of
+     * the packed ones
+     */
+    private static final int MIN_REPACK_COUNT = 1024;
+
+    private static final int REPACK_RATIO = 8;
+
+    // attribute value tags of the records
+    private static final byte NULL = 0;
+
+    private static final byte STRING = 1;
+
+    private static final byte INTEGER = 2;
+
+    private static final byte LONG = 3;
+
+    private static final byte DOUBLE = 4;
+
+    private static final byte FLOAT = 5;
+
+    private static final byte SHORT = 6;
+
+    private static final byte BYTE = 7;
+
+    private static final byte BOOLEAN = 8;
+
+    private static final byte DATE = 9;
+
+    private static final byte TIMESTAMP = 10;
+
+    private static final byte SQL_DATE = 11;
+
+    private static final byte TIME = 12;
+
+    private static final byte GEOMETRY = 13;
+
+    private static final byte BIG_DECIMAL = 14;
+
+    private static final byte OTHER = 15;
+
+    private final File indexFile;
+
+    private volatile GranuleCatalog wrappedCatalogue;
+
+    private volatile PackedRTree index;
+
+    private volatile SimpleFeatureType type;
+
+    private final String locationAttribute;
+
+    private final PathType pathType;
+
+    private final ImageReaderSpi suggestedRasterSPI;
+
+    private final String parentLocation;
+
+    private final boolean heterogeneous;
+
+    private final SoftValueHashMap<String, GranuleDescriptor> granuleDescriptorsCache = new SoftValueHashMap<String, GranuleDescriptor>(
+            0);
+
+    /**
+     * @param params the parameters of the underlying store
+     * @param spi the factory of the underlying store
+     * @param indexFile the file of the index, built from the store if it does not exist
+     */
+    public PackedRTreeGranuleCatalog(final Map<String, Serializable> params,
+            DataStoreFactorySpi spi, File indexFile) {
+        Utilities.ensureNonNull("params", params);
+        Utilities.ensureNonNull("indexFile", indexFile);
+        this.indexFile = indexFile;
+        this.pathType = (PathType) params.get(Utils.Prop.PATH_TYPE);
+        this.locationAttribute = (String) params.get(Utils.Prop.LOCATION_ATTRIBUTE);
+        this.parentLocation = (String) params.get(Utils.Prop.PARENT_LOCATION);
+        final Object heterogen = params.get(Utils.Prop.HETEROGENEOUS);
+        this.heterogeneous = heterogen != null && ((Boolean) heterogen).booleanValue();
+        final String spiClass = (String) params.get(Utils.Prop.SUGGESTED_SPI);
+        try {
+            this.suggestedRasterSPI = spiClass != null ? (ImageReaderSpi) Class.forName(spiClass)
+                    .newInstance() : null;
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.wrappedCatalogue = new GTDataStoreGranuleCatalog(params, false, spi);
+    }
+
+    /**
+     * Returns the index, opening the file or building it from the store on first use
+     */
+    private PackedRTree getIndex() throws IOException {
+        PackedRTree current = index;
+        if (current == null) {
+            synchronized (this) {
+                final GranuleCatalog catalogue = checkStore();
+                if (index == null) {
+                    index = PackedRTree.open(indexFile);
+                    if (index == null) {
+                        index = createIndex(catalogue);
+                    } else if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.fine("Opened the granule index " + indexFile + " holding "
+                                + index.size() + " granules");
+                    }
+                }
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Builds the index file out of all the features of the store
+     */
+    private PackedRTree createIndex(GranuleCatalog catalogue) throws IOException {
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine("Building the granule index " + indexFile);
+
+        final SimpleFeatureType schema = getSchema();
+        final PackedRTree.Builder builder = new PackedRTree.Builder(indexFile.getParentFile());
+        try {
+            catalogue.computeAggregateFunction(new Query(schema.getTypeName()), new FeatureCalc() {
+
+                public void visit(Feature feature) {
+                    try {
+                        final SimpleFeature sf = (SimpleFeature) feature;
+                        builder.add(getEnvelope(sf), encode(sf));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+
+                public CalcResult getResult() {
+                    return null;
+                }
+            });
+            return builder.build(indexFile);
+        } catch (RuntimeException e) {
+            builder.dispose();
+            final IOException ioe = new IOException("Unable to build the granule index "
+                    + indexFile);
+            ioe.initCause(e);
+            throw ioe;
+        } catch (IOException e) {
+            builder.dispose();
+            throw e;
+        }
+    }
+
+    private SimpleFeatureType getSchema() throws IOException {
+        SimpleFeatureType schema = type;
+        if (schema == null) {
+            schema = checkStore().getType();
+            if (schema == null) {
+                throw new IOException("The granule store has no feature type");
+            }
+            type = schema;
+        }
+        return schema;
+    }
+
+    private static Envelope getEnvelope(SimpleFeature feature) {
+        final Object geometry = feature.getDefaultGeometry();
+        return geometry instanceof Geometry ? ((Geometry) geometry).getEnvelopeInternal() : null;
+    }
+
+    /**
+     * Encodes the id and the attributes of a feature
+     */
+    static byte[] encode(SimpleFeature feature) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(feature.getID());
+        final int count = feature.getAttributeCount();
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            writeValue(out, feature.getAttribute(i));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQL_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Geometry) {
+            out.writeByte(GEOMETRY);
+            final byte[] wkb = new WKBWriter().write((Geometry) value);
+            out.writeInt(wkb.length);
+            out.write(wkb);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(out, value.toString());
+        } else {
+            // converted back to the attribute binding when decoding
+            final String text = Converters.convert(value, String.class);
+            out.writeByte(OTHER);
+            writeString(out, text != null ? text : value.toString());
+        }
+    }
+
+    /**
+     * Decodes a feature encoded by {@link #encode(SimpleFeature)}
+     */
+    static SimpleFeature decode(byte[] record, SimpleFeatureType schema) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final String id = in.readUTF();
+        final int count = in.readShort();
+        if (count != schema.getAttributeCount()) {
+            throw new IOException("The granule index does not match the granule schema");
+        }
+        final Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readValue(in, schema.getDescriptor(i).getType().getBinding());
+        }
+        return SimpleFeatureBuilder.build(schema, values, id);
+    }
+
+    private static Object readValue(DataInputStream in, Class<?> binding) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return readString(in);
+        case INTEGER:
+            return in.readInt();
+        case LONG:
+            return in.readLong();
+        case DOUBLE:
+            return in.readDouble();
+        case FLOAT:
+            return in.readFloat();
+        case SHORT:
+            return in.readShort();
+        case BYTE:
+            return in.readByte();
+        case BOOLEAN:
+            return in.readBoolean();
+        case TIMESTAMP:
+            final Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            return timestamp;
+        case SQL_DATE:
+            return new java.sql.Date(in.readLong());
+        case TIME:
+            return new Time(in.readLong());
+        case DATE:
+            return new Date(in.readLong());
+        case GEOMETRY:
+            final byte[] wkb = new byte[in.readInt()];
+            in.readFully(wkb);
+            try {
+                return new WKBReader(new GeometryFactory()).read(wkb);
+            } catch (ParseException e) {
+                final IOException ioe = new IOException("Invalid granule geometry");
+                ioe.initCause(e);
+                throw ioe;
+            }
+        case BIG_DECIMAL:
+            return new BigDecimal(readString(in));
+        case OTHER:
+            return Converters.convert(readString(in), binding);
+        default:
+            throw new IOException("Unknown attribute type in the granule index: " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Returns the descriptor of a granule, caching the descriptors by location
+     */
+    private GranuleDescriptor getDescriptor(SimpleFeature feature) {
+        final String granuleLocation = (String) feature.getAttribute(locationAttribute);
+        synchronized (granuleDescriptorsCache) {
+            GranuleDescriptor granule = granuleDescriptorsCache.get(granuleLocation);
+            if (granule == null) {
+                granule = new GranuleDescriptor(feature, suggestedRasterSPI, pathType,
+                        locationAttribute, parentLocation, heterogeneous);
+                granuleDescriptorsCache.put(granuleLocation, granule);
+            }
+            return granule;
+        }
+    }
+
+    /**
+     * Visits the granules intersecting an envelope and matching a filter
+     */
+    private void visit(final Envelope envelope, final Filter filter, final int maxGranules,
+            final GranuleCatalogVisitor visitor) throws IOException {
+        final SimpleFeatureType schema = getSchema();
+        getIndex().search(envelope, new PackedRTree.RecordVisitor() {
+            int granules;
+
+            public boolean visit(byte[] record) throws IOException {
+                final SimpleFeature feature = decode(record, schema);
+                if (filter == null || filter.evaluate(feature)) {
+                    visitor.visit(getDescriptor(feature), null);
+                    granules++;
+                }
+                return maxGranules <= 0 || granules < maxGranules;
+            }
+        });
+    }
+
+    public List<GranuleDescriptor> getGranules(final BoundingBox envelope) throws IOException {
+        final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+        getGranules(envelope, new ListVisitor(granules));
+        return granules;
+    }
+
+    public void getGranules(final BoundingBox envelope, final GranuleCatalogVisitor visitor)
+            throws IOException {
+        Utilities.ensureNonNull("envelope", envelope);
+        Utilities.ensureNonNull("visitor", visitor);
+        visit(ReferencedEnvelope.reference(envelope), null, -1, visitor);
+    }
+
+    public List<GranuleDescriptor> getGranules(Query q) throws IOException {
+        final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+        getGranules(q, new ListVisitor(granules));
+        return granules;
+    }
+
+    public void getGranules(Query q, GranuleCatalogVisitor visitor) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        Utilities.ensureNonNull("visitor", visitor);
+        final Filter filter = q.getFilter() != null ? q.getFilter() : Filter.INCLUDE;
+
+        // the bbox of the filter narrows the search, the whole filter is evaluated anyway
+        final Utils.BBOXFilterExtractor bboxExtractor = new Utils.BBOXFilterExtractor();
+        filter.accept(bboxExtractor, null);
+        final ReferencedEnvelope requestedBBox = bboxExtractor.getBBox();
+
+        visit(requestedBBox, Filter.INCLUDE.equals(filter) ? null : filter, q.getMaxFeatures(),
+                visitor);
+    }
+
+    public Collection<GranuleDescriptor> getGranules() throws IOException {
+        final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+        visit(null, null, -1, new ListVisitor(granules));
+        return granules;
+    }
+
+    public void addGranule(SimpleFeature granule, Transaction transaction) throws IOException {
+        final List<SimpleFeature> granules = new ArrayList<SimpleFeature>(1);
+        granules.add(granule);
+        addGranules(granules, transaction);
+    }
+
+    public void addGranules(Collection<SimpleFeature> granules, Transaction transaction)
+            throws IOException {
+        Utilities.ensureNonNull("granules", granules);
+        synchronized (this) {
+            checkStore().addGranules(granules, transaction);
+            if (transaction == null || transaction == Transaction.AUTO_COMMIT) {
+                appendGranules(granules);
+                return;
+            }
+        }
+
+        // the index only gets the granules once the store has them for good
+        synchronized (transaction) {
+            PendingGranules pending = (PendingGranules) transaction.getState(this);
+            if (pending == null) {
+                pending = new PendingGranules();
+                transaction.putState(this, pending);
+            }
+            pending.add(granules);
+        }
+    }
+
+    /**
+     * Appends granules stored in the underlying store to the index, packing it again once the
+     * appended granules become too many
+     */
+    private synchronized void appendGranules(Collection<SimpleFeature> granules)
+            throws IOException {
+        // an index still to be built is going to include them
+        PackedRTree current = index != null ? index : PackedRTree.open(indexFile);
+        if (current == null) {
+            return;
+        }
+        final List<Envelope> envelopes = new ArrayList<Envelope>(granules.size());
+        final List<byte[]> records = new ArrayList<byte[]>(granules.size());
+        for (SimpleFeature granule : granules) {
+            envelopes.add(getEnvelope(granule));
+            records.add(encode(granule));
+        }
+        current = current.append(envelopes, records);
+
+        if (current.getAppendedCount() > Math.max(MIN_REPACK_COUNT, current.size()
+                / REPACK_RATIO)) {
+            final PackedRTree.Builder builder = new PackedRTree.Builder(indexFile
+                    .getParentFile());
+            try {
+                current.copyTo(builder);
+                current = builder.build(indexFile);
+            } catch (IOException e) {
+                builder.dispose();
+                throw e;
+            }
+        }
+        index = current;
+    }
+
+    /**
+     * Drops the index, to be built again from the store on next use
+     */
+    private synchronized void invalidateIndex() {
+        index = null;
+        indexFile.delete();
+    }
+
+    /**
+     * The granules added through a transaction, appended to the index when it commits and
+     * forgotten when it rolls back
+     */
+    private final class PendingGranules implements Transaction.State {
+
+        private final List<SimpleFeature> granules = new ArrayList<SimpleFeature>();
+
+        synchronized void add(Collection<SimpleFeature> added) {
+            granules.addAll(added);
+        }
+
+        public synchronized void setTransaction(Transaction transaction) {
+            if (transaction == null) {
+                granules.clear();
+            }
+        }
+
+        public void addAuthorization(String AuthID) throws IOException {
+            // nothing to do
+        }
+
+        public synchronized void commit() throws IOException {
+            if (granules.isEmpty()) {
+                return;
+            }
+            try {
+                appendGranules(granules);
+            } catch (IOException e) {
+                // the store has the granules already, the index cannot go without them
+                if (LOGGER.isLoggable(Level.WARNING))
+                    LOGGER.log(Level.WARNING, "Unable to append the granules to the index "
+                            + indexFile + ", it will be built again", e);
+                invalidateIndex();
+            } finally {
+                granules.clear();
+            }
+        }
+
+        public synchronized void rollback() throws IOException {
+            granules.clear();
+        }
+    }
+
+    public int removeGranules(Query query) {
+        Utilities.ensureNonNull("query", query);
+        synchronized (this) {
+            final GranuleCatalog catalogue = checkStore();
+            final int removed = catalogue.removeGranules(query);
+            if (removed != 0) {
+                synchronized (granuleDescriptorsCache) {
+                    granuleDescriptorsCache.clear();
+                }
+                try {
+                    index = createIndex(catalogue);
+                } catch (IOException e) {
+                    if (LOGGER.isLoggable(Level.SEVERE))
+                        LOGGER.log(Level.SEVERE, e.getLocalizedMessage(), e);
+                    // built again on next use
+                    invalidateIndex();
+                }
+            }
+            return removed;
+        }
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            final GranuleCatalog catalogue = wrappedCatalogue;
+            wrappedCatalogue = null;
+            index = null;
+            synchronized (granuleDescriptorsCache) {
+                granuleDescriptorsCache.clear();
+            }
+            if (catalogue != null) {
+                try {
+                    catalogue.dispose();
+                } catch (Exception e) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+        }
+    }
+
+    public BoundingBox getBounds() {
+        return checkStore().getBounds();
+    }
+
+    public SimpleFeatureType getType() throws IOException {
+        return checkStore().getType();
+    }
+
+    public void computeAggregateFunction(Query query, FeatureCalc function) throws IOException {
+        checkStore().computeAggregateFunction(query, function);
+    }
+
+    public QueryCapabilities getQueryCapabilities() {
+        return checkStore().getQueryCapabilities();
+    }
+
+    public void createType(String namespace, String typeName, String typeSpec)
+            throws IOException, SchemaException {
+        checkStore().createType(namespace, typeName, typeSpec);
+    }
+
+    public void createType(SimpleFeatureType featureType) throws IOException {
+        checkStore().createType(featureType);
+    }
+
+    public void createType(String identification, String typeSpec) throws SchemaException,
+            IOException {
+        checkStore().createType(identification, typeSpec);
+    }
+
+    /**
+     * @return the underlying catalog
+     * @throws IllegalStateException if the catalog has been disposed
+     */
+    private GranuleCatalog checkStore() throws IllegalStateException {
+        final GranuleCatalog catalogue = wrappedCatalogue;
+        if (catalogue == null)
+            throw new IllegalStateException("The underlying store has already been disposed!");
+        return catalogue;
+    }
+
+    private static final class ListVisitor implements GranuleCatalogVisitor {
+        private final List<GranuleDescriptor> granules;
+
+        ListVisitor(List<GranuleDescriptor> granules) {
+            this.granules = granules;
+        }
+
+        public void visit(GranuleDescriptor granule, Object o) {
+            granules.add(granule);
+        }
+    }
+}
@@ -0,0 +1,709 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.spi.ImageReaderSpi;
+
+import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
+import org.geotools.data.Transaction;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.gce.imagemosaic.GranuleDescriptor;
+import org.geotools.gce.imagemosaic.PathType;
+import org.geotools.gce.imagemosaic.RangeVisitor;
+import org.geotools.gce.imagemosaic.Utils;
+import org.geotools.util.Converters;
+import org.geotools.util.SoftValueHashMap;
+import org.geotools.util.Utilities;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.geometry.BoundingBox;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A {@link GranuleCatalog} wrapping another one and keeping the granules of a mosaic with a time
+ * dimension in a {@link TemporalIndex}, so that time filtered queries and the listing of the time
+ * domain do not scan the whole catalog.
+ * <p>
+ * The time constraints of the query filters (comparisons and ranges against the time
+ * attributes, combined through AND and OR) select the candidate granules out of the index, the
+ * whole filter being evaluated on the candidates. Queries without time constraints or asking for
+ * a sorting go to the wrapped catalog. Unique, minimum, maximum and range aggregations of the time
+ * attributes only visit one granule per distinct time.
+ * </p>
+ * <p>
+ * The index is built out of the wrapped catalog on first use. Granules added afterwards through
+ * this catalog are merged into it on the next query following the commit of their transaction,
+ * removing granules rebuilds it. Like the
+ * {@link STRTreeGranuleCatalog}, it holds all the granule features in memory and does not see the
+ * changes made to the store behind its back: it is only used when the mosaic asks for it through
+ * the TemporalIndex property, along with Caching or PersistentIndex.
+ * </p>
+ *
+ * @source $URL$
+ */
+class TemporalGranuleCatalog extends AbstractGranuleCatalog {
+
+    /** Logger. */
+    final static Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger(TemporalGranuleCatalog.class);
+
+    /** Time filters spanning more intervals than this are not narrowed any further */
+    private static final int MAX_INTERVALS = 1024;
+
+    private volatile GranuleCatalog wrappedCatalogue;
+
+    /** The configured time attributes, the end one being null for time instants */
+    private final String startAttribute;
+
+    private final String endAttribute;
+
+    /** The time attributes as found in the schema, null until the index is built */
+    private volatile String startProperty;
+
+    private volatile String endProperty;
+
+    private volatile TemporalIndex<SimpleFeature> index;
+
+    /** Granules added after the index has been built, guarded by this catalog */
+    private final List<SimpleFeature> pending = new ArrayList<SimpleFeature>();
+
+    private volatile boolean hasPending;
+
+    private final String locationAttribute;
+
+    private final PathType pathType;
+
+    private final ImageReaderSpi suggestedRasterSPI;
+
+    private final String parentLocation;
+
+    private final boolean heterogeneous;
+
+    private final SoftValueHashMap<String, GranuleDescriptor> granuleDescriptorsCache = new SoftValueHashMap<String, GranuleDescriptor>(
+            0);
+
+    /**
+     * Notice that this catalog takes ownership of the provided {@link GranuleCatalog}, which means
+     * it is responsible for closing it.
+     *
+     * @param params the parameters of the mosaic
+     * @param catalogue the {@link GranuleCatalog} to be wrapped
+     * @param timeAttribute the time attribute of the mosaic, or its start and end attributes
+     *        separated by {@link Utils#RANGE_SPLITTER_CHAR}
+     */
+    public TemporalGranuleCatalog(final Map<String, Serializable> params,
+            GranuleCatalog catalogue, String timeAttribute) {
+        Utilities.ensureNonNull("params", params);
+        Utilities.ensureNonNull("catalogue", catalogue);
+        Utilities.ensureNonNull("timeAttribute", timeAttribute);
+        final String[] attributes = timeAttribute.split(Utils.RANGE_SPLITTER_CHAR);
+        this.startAttribute = attributes[0].trim();
+        this.endAttribute = attributes.length > 1 ? attributes[1].trim() : null;
+        this.pathType = (PathType) params.get(Utils.Prop.PATH_TYPE);
+        this.locationAttribute = (String) params.get(Utils.Prop.LOCATION_ATTRIBUTE);
+        this.parentLocation = (String) params.get(Utils.Prop.PARENT_LOCATION);
+        final Object heterogen = params.get(Utils.Prop.HETEROGENEOUS);
+        this.heterogeneous = heterogen != null && ((Boolean) heterogen).booleanValue();
+        final String spiClass = (String) params.get(Utils.Prop.SUGGESTED_SPI);
+        try {
+            this.suggestedRasterSPI = spiClass != null ? (ImageReaderSpi) Class.forName(spiClass)
+                    .newInstance() : null;
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.wrappedCatalogue = catalogue;
+    }
+
+    /**
+     * Returns the index, building it out of the wrapped catalog on first use and merging the
+     * pending granules into it
+     */
+    private TemporalIndex<SimpleFeature> getIndex() throws IOException {
+        TemporalIndex<SimpleFeature> current = index;
+        if (current == null || hasPending) {
+            synchronized (this) {
+                final GranuleCatalog catalogue = checkStore();
+                if (index == null) {
+                    pending.clear();
+                    index = createIndex(catalogue);
+                } else if (!pending.isEmpty() && startProperty != null) {
+                    final List<TemporalIndex.Entry<SimpleFeature>> timed = new ArrayList<TemporalIndex.Entry<SimpleFeature>>();
+                    final List<SimpleFeature> untimed = new ArrayList<SimpleFeature>();
+                    for (SimpleFeature feature : pending) {
+                        addEntry(feature, timed, untimed);
+                    }
+                    index = index.merge(timed, untimed);
+                }
+                pending.clear();
+                hasPending = false;
+                current = index;
+            }
+        }
+        return current;
+    }
+
+    private TemporalIndex<SimpleFeature> createIndex(GranuleCatalog catalogue) throws IOException {
+        final SimpleFeatureType schema = catalogue.getType();
+        if (schema == null) {
+            throw new IOException("The granule store has no feature type");
+        }
+        final String start = resolve(schema, startAttribute);
+        final String end = endAttribute != null ? resolve(schema, endAttribute) : start;
+        if (start == null || end == null) {
+            // every query goes to the wrapped catalog
+            if (LOGGER.isLoggable(Level.WARNING))
+                LOGGER.warning("Unable to find the time attributes of the mosaic in the granule store");
+            return TemporalIndex.empty();
+        }
+        startProperty = start;
+        endProperty = end;
+
+        final List<TemporalIndex.Entry<SimpleFeature>> timed = new ArrayList<TemporalIndex.Entry<SimpleFeature>>();
+        final List<SimpleFeature> untimed = new ArrayList<SimpleFeature>();
+        catalogue.computeAggregateFunction(new Query(schema.getTypeName()), new FeatureCalc() {
+
+            public void visit(Feature feature) {
+                addEntry((SimpleFeature) feature, timed, untimed);
+            }
+
+            public CalcResult getResult() {
+                return null;
+            }
+        });
+        final TemporalIndex<SimpleFeature> result = TemporalIndex.build(timed, untimed);
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine("Indexed " + result.size() + " granules over "
+                    + result.getDistinctCount() + " distinct times");
+        return result;
+    }
+
+    /**
+     * Returns the name of an attribute in the schema, dealing with the shapefile truncation of
+     * the names
+     */
+    private static String resolve(SimpleFeatureType schema, String attribute) {
+        if (schema.getDescriptor(attribute) != null) {
+            return attribute;
+        }
+        if (attribute.length() > 10 && schema.getDescriptor(attribute.substring(0, 10)) != null) {
+            return attribute.substring(0, 10);
+        }
+        return null;
+    }
+
+    private void addEntry(SimpleFeature feature, List<TemporalIndex.Entry<SimpleFeature>> timed,
+            List<SimpleFeature> untimed) {
+        final Date start = toDate(feature.getAttribute(startProperty));
+        if (start == null) {
+            untimed.add(feature);
+            return;
+        }
+        final Date end = toDate(feature.getAttribute(endProperty));
+        final Object geometry = feature.getDefaultGeometry();
+        timed.add(new TemporalIndex.Entry<SimpleFeature>(start.getTime(),
+                end != null ? end.getTime() : Long.MAX_VALUE,
+                geometry instanceof Geometry ? ((Geometry) geometry).getEnvelopeInternal() : null,
+                feature));
+    }
+
+    private static Date toDate(Object value) {
+        if (value == null || value instanceof Date) {
+            return (Date) value;
+        }
+        return Converters.convert(value, Date.class);
+    }
+
+    /**
+     * Returns the descriptor of a granule, caching the descriptors by location
+     */
+    private GranuleDescriptor getDescriptor(SimpleFeature feature) {
+        final String granuleLocation = (String) feature.getAttribute(locationAttribute);
+        synchronized (granuleDescriptorsCache) {
+            GranuleDescriptor granule = granuleDescriptorsCache.get(granuleLocation);
+            if (granule == null) {
+                granule = new GranuleDescriptor(feature, suggestedRasterSPI, pathType,
+                        locationAttribute, parentLocation, heterogeneous);
+                granuleDescriptorsCache.put(granuleLocation, granule);
+            }
+            return granule;
+        }
+    }
+
+    public Collection<GranuleDescriptor> getGranules(Query q) throws IOException {
+        final List<GranuleDescriptor> granules = new ArrayList<GranuleDescriptor>();
+        getGranules(q, new GranuleCatalogVisitor() {
+            public void visit(GranuleDescriptor granule, Object o) {
+                granules.add(granule);
+            }
+        });
+        return granules;
+    }
+
+    public void getGranules(Query q, final GranuleCatalogVisitor visitor) throws IOException {
+        Utilities.ensureNonNull("q", q);
+        Utilities.ensureNonNull("visitor", visitor);
+        final GranuleCatalog catalogue = checkStore();
+        final Filter filter = q.getFilter() != null ? q.getFilter() : Filter.INCLUDE;
+        final SortBy[] sortBy = q.getSortBy();
+        final TemporalIndex<SimpleFeature> current = getIndex();
+        final List<long[]> intervals = sortBy != null && sortBy.length > 0 ? null
+                : TimeConstraints.extract(filter, startProperty, endProperty);
+        if (intervals == null) {
+            catalogue.getGranules(q, visitor);
+            return;
+        }
+
+        final Utils.BBOXFilterExtractor bboxExtractor = new Utils.BBOXFilterExtractor();
+        filter.accept(bboxExtractor, null);
+        final Envelope envelope = bboxExtractor.getBBox();
+        final int maxGranules = q.getMaxFeatures();
+        // overlapping intervals would report the same granules twice
+        final Map<SimpleFeature, Object> visited = intervals.size() > 1 ? new IdentityHashMap<SimpleFeature, Object>()
+                : null;
+        final TemporalIndex.Visitor<SimpleFeature> adapter = new TemporalIndex.Visitor<SimpleFeature>() {
+            int granules;
+
+            public boolean visit(SimpleFeature feature) {
+                if ((visited == null || visited.put(feature, Boolean.TRUE) == null)
+                        && filter.evaluate(feature)) {
+                    visitor.visit(getDescriptor(feature), null);
+                    granules++;
+                }
+                return maxGranules <= 0 || granules < maxGranules;
+            }
+        };
+        for (long[] interval : intervals) {
+            if (!current.search(interval[0], interval[1], interval[2], interval[3], envelope,
+                    adapter)) {
+                return;
+            }
+        }
+    }
+
+    public void computeAggregateFunction(Query query, FeatureCalc function) throws IOException {
+        final GranuleCatalog catalogue = checkStore();
+        final TemporalIndex<SimpleFeature> current = getIndex();
+        final Filter filter = query.getFilter();
+        if ((filter == null || Filter.INCLUDE.equals(filter)) && isTimeAggregation(query, function)) {
+            final FeatureCalc calc = function;
+            if (isOnStart(function) && function instanceof MinVisitor) {
+                visitFeature(calc, current.first());
+            } else if (isOnStart(function) && function instanceof MaxVisitor) {
+                visitFeature(calc, current.last());
+            } else {
+                // these aggregations do not care about duplicates
+                current.visitDistinct(new TemporalIndex.Visitor<SimpleFeature>() {
+                    public boolean visit(SimpleFeature feature) {
+                        calc.visit(feature);
+                        return true;
+                    }
+                });
+            }
+            return;
+        }
+        catalogue.computeAggregateFunction(query, function);
+    }
+
+    private static void visitFeature(FeatureCalc function, SimpleFeature feature) {
+        if (feature != null) {
+            function.visit(feature);
+        }
+    }
+
+    /**
+     * Tells whether an aggregation only reads the time attributes and is not affected by
+     * duplicated features
+     */
+    private boolean isTimeAggregation(Query query, FeatureCalc function) {
+        final String[] properties = query.getPropertyNames();
+        final boolean timeProperties = properties != null && properties.length > 0
+                && isTimeProperty(properties[0])
+                && (properties.length == 1 || properties.length == 2
+                        && isTimeProperty(properties[1]));
+        if (function instanceof RangeVisitor) {
+            return timeProperties;
+        }
+        final Expression expression;
+        if (function instanceof UniqueVisitor) {
+            expression = ((UniqueVisitor) function).getExpression();
+        } else if (function instanceof MinVisitor) {
+            expression = ((MinVisitor) function).getExpression();
+        } else if (function instanceof MaxVisitor) {
+            expression = ((MaxVisitor) function).getExpression();
+        } else {
+            return false;
+        }
+        return expression instanceof PropertyName
+                && isTimeProperty(((PropertyName) expression).getPropertyName());
+    }
+
+    private boolean isTimeProperty(String property) {
+        return startProperty != null
+                && (property.equals(startProperty) || property.equals(endProperty));
+    }
+
+    private boolean isOnStart(FeatureCalc function) {
+        final Expression expression = function instanceof MinVisitor ? ((MinVisitor) function)
+                .getExpression() : ((MaxVisitor) function).getExpression();
+        return ((PropertyName) expression).getPropertyName().equals(startProperty);
+    }
+
+    public void addGranule(SimpleFeature granule, Transaction transaction) throws IOException {
+        final List<SimpleFeature> granules = new ArrayList<SimpleFeature>(1);
+        granules.add(granule);
+        addGranules(granules, transaction);
+    }
+
+    public void addGranules(Collection<SimpleFeature> granules, Transaction transaction)
+            throws IOException {
+        Utilities.ensureNonNull("granules", granules);
+        synchronized (this) {
+            checkStore().addGranules(granules, transaction);
+            if (transaction == null || transaction == Transaction.AUTO_COMMIT) {
+                addPending(granules);
+                return;
+            }
+        }
+
+        // the index only gets the granules once the store has them for good
+        synchronized (transaction) {
+            PendingGranules state = (PendingGranules) transaction.getState(this);
+            if (state == null) {
+                state = new PendingGranules();
+                transaction.putState(this, state);
+            }
+            state.add(granules);
+        }
+    }
+
+    /**
+     * Queues granules stored in the wrapped catalog for merging into the index on next query
+     */
+    private synchronized void addPending(Collection<SimpleFeature> granules) {
+        // an index still to be built is going to include them
+        if (index != null) {
+            pending.addAll(granules);
+            hasPending = true;
+        }
+    }
+
+    /**
+     * The granules added through a transaction, queued for the index when it commits and
+     * forgotten when it rolls back
+     */
+    private final class PendingGranules implements Transaction.State {
+
+        private final List<SimpleFeature> granules = new ArrayList<SimpleFeature>();
+
+        synchronized void add(Collection<SimpleFeature> added) {
+            granules.addAll(added);
+        }
+
+        public synchronized void setTransaction(Transaction transaction) {
+            if (transaction == null) {
+                granules.clear();
+            }
+        }
+
+        public void addAuthorization(String AuthID) throws IOException {
+            // nothing to do
+        }
+
+        public synchronized void commit() throws IOException {
+            addPending(granules);
+            granules.clear();
+        }
+
+        public synchronized void rollback() throws IOException {
+            granules.clear();
+        }
+    }
+
+    public int removeGranules(Query query) {
+        Utilities.ensureNonNull("query", query);
+        synchronized (this) {
+            final int removed = checkStore().removeGranules(query);
+            if (removed != 0) {
+                synchronized (granuleDescriptorsCache) {
+                    granuleDescriptorsCache.clear();
+                }
+                // built again on next use
+                index = null;
+                pending.clear();
+                hasPending = false;
+            }
+            return removed;
+        }
+    }
+
+    public Collection<GranuleDescriptor> getGranules(BoundingBox envelope) throws IOException {
+        return checkStore().getGranules(envelope);
+    }
+
+    public void getGranules(BoundingBox envelope, GranuleCatalogVisitor visitor)
+            throws IOException {
+        checkStore().getGranules(envelope, visitor);
+    }
+
+    public Collection<GranuleDescriptor> getGranules() throws IOException {
+        return checkStore().getGranules();
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            final GranuleCatalog catalogue = wrappedCatalogue;
+            wrappedCatalogue = null;
+            index = null;
+            pending.clear();
+            synchronized (granuleDescriptorsCache) {
+                granuleDescriptorsCache.clear();
+            }
+            if (catalogue != null) {
+                try {
+                    catalogue.dispose();
+                } catch (Exception e) {
+                    if (LOGGER.isLoggable(Level.FINE))
+                        LOGGER.log(Level.FINE, e.getLocalizedMessage(), e);
+                }
+            }
+        }
+    }
+
+    public BoundingBox getBounds() {
+        return checkStore().getBounds();
+    }
+
+    public SimpleFeatureType getType() throws IOException {
+        return checkStore().getType();
+    }
+
+    public QueryCapabilities getQueryCapabilities() {
+        return checkStore().getQueryCapabilities();
+    }
+
+    public void createType(String namespace, String typeName, String typeSpec)
+            throws IOException, SchemaException {
+        checkStore().createType(namespace, typeName, typeSpec);
+    }
+
+    public void createType(SimpleFeatureType featureType) throws IOException {
+        checkStore().createType(featureType);
+    }
+
+    public void createType(String identification, String typeSpec) throws SchemaException,
+            IOException {
+        checkStore().createType(identification, typeSpec);
+    }
+
+    /**
+     * @return the underlying catalog
+     * @throws IllegalStateException if the catalog has been disposed
+     */
+    private GranuleCatalog checkStore() throws IllegalStateException {
+        final GranuleCatalog catalogue = wrappedCatalogue;
+        if (catalogue == null)
+            throw new IllegalStateException("The underlying store has already been disposed!");
+        return catalogue;
+    }
+
+    /**
+     * Extracts from a filter the time intervals the granules it selects must fall within. Each
+     * interval is an array holding the minimum and maximum start time, then the minimum and
+     * maximum end time, the bounds being conservative: the granules within the intervals may
+     * still not match the filter, the ones outside never do.
+     */
+    static final class TimeConstraints {
+
+        private static final long[] ANY = { Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE,
+                Long.MAX_VALUE };
+
+        private TimeConstraints() {
+        }
+
+        /**
+         * @param filter the filter
+         * @param start the start time attribute
+         * @param end the end time attribute, the same as the start one for time instants
+         * @return the intervals, null if the filter does not constrain the time
+         */
+        static List<long[]> extract(Filter filter, String start, String end) {
+            if (filter == null || start == null || Filter.INCLUDE.equals(filter)) {
+                return null;
+            }
+            if (Filter.EXCLUDE.equals(filter)) {
+                return new ArrayList<long[]>();
+            }
+            if (filter instanceof And) {
+                List<long[]> result = null;
+                for (Filter child : ((And) filter).getChildren()) {
+                    final List<long[]> intervals = extract(child, start, end);
+                    if (intervals == null) {
+                        continue;
+                    }
+                    if (result == null) {
+                        result = intervals;
+                    } else if ((long) result.size() * intervals.size() <= MAX_INTERVALS) {
+                        result = intersect(result, intervals);
+                    }
+                }
+                return result;
+            }
+            if (filter instanceof Or) {
+                final List<long[]> result = new ArrayList<long[]>();
+                for (Filter child : ((Or) filter).getChildren()) {
+                    final List<long[]> intervals = extract(child, start, end);
+                    if (intervals == null) {
+                        return null;
+                    }
+                    result.addAll(intervals);
+                    if (result.size() > MAX_INTERVALS) {
+                        return null;
+                    }
+                }
+                return result;
+            }
+            if (filter instanceof PropertyIsBetween) {
+                final PropertyIsBetween between = (PropertyIsBetween) filter;
+                final int attribute = getAttribute(between.getExpression(), start, end);
+                final Date lower = getDate(between.getLowerBoundary());
+                final Date upper = getDate(between.getUpperBoundary());
+                if (attribute < 0 || lower == null || upper == null) {
+                    return null;
+                }
+                final long[] interval = ANY.clone();
+                interval[attribute] = lower.getTime();
+                interval[attribute + 1] = upper.getTime();
+                return singleton(interval);
+            }
+            if (filter instanceof BinaryComparisonOperator) {
+                return extract((BinaryComparisonOperator) filter, start, end);
+            }
+            return null;
+        }
+
+        private static List<long[]> extract(BinaryComparisonOperator comparison, String start,
+                String end) {
+            int attribute = getAttribute(comparison.getExpression1(), start, end);
+            Date value = getDate(comparison.getExpression2());
+            boolean swapped = false;
+            if (attribute < 0 || value == null) {
+                attribute = getAttribute(comparison.getExpression2(), start, end);
+                value = getDate(comparison.getExpression1());
+                swapped = true;
+            }
+            if (attribute < 0 || value == null) {
+                return null;
+            }
+            final boolean less;
+            if (comparison instanceof PropertyIsEqualTo) {
+                final long[] interval = ANY.clone();
+                interval[attribute] = value.getTime();
+                interval[attribute + 1] = value.getTime();
+                return singleton(interval);
+            } else if (comparison instanceof PropertyIsLessThan
+                    || comparison instanceof PropertyIsLessThanOrEqualTo) {
+                less = !swapped;
+            } else if (comparison instanceof PropertyIsGreaterThan
+                    || comparison instanceof PropertyIsGreaterThanOrEqualTo) {
+                less = swapped;
+            } else {
+                return null;
+            }
+            // strict comparisons are loosened, the filter is evaluated anyway
+            final long[] interval = ANY.clone();
+            interval[less ? attribute + 1 : attribute] = value.getTime();
+            return singleton(interval);
+        }
+
+        /**
+         * @return the position of the minimum bound of the attribute in an interval, -1 if the
+         *         expression is not a time attribute
+         */
+        private static int getAttribute(Expression expression, String start, String end) {
+            if (!(expression instanceof PropertyName)) {
+                return -1;
+            }
+            final String name = ((PropertyName) expression).getPropertyName();
+            if (name.equals(start)) {
+                return 0;
+            }
+            return name.equals(end) ? 2 : -1;
+        }
+
+        private static Date getDate(Expression expression) {
+            if (!(expression instanceof Literal)) {
+                return null;
+            }
+            return toDate(((Literal) expression).getValue());
+        }
+
+        private static List<long[]> intersect(List<long[]> intervals1, List<long[]> intervals2) {
+            final List<long[]> result = new ArrayList<long[]>();
+            for (long[] i1 : intervals1) {
+                for (long[] i2 : intervals2) {
+                    final long[] interval = new long[] { Math.max(i1[0], i2[0]),
+                            Math.min(i1[1], i2[1]), Math.max(i1[2], i2[2]),
+                            Math.min(i1[3], i2[3]) };
+                    if (interval[0] <= interval[1] && interval[2] <= interval[3]) {
+                        result.add(interval);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private static List<long[]> singleton(long[] interval) {
+            final List<long[]> result = new ArrayList<long[]>(1);
+            result.add(interval);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.gce.imagemosaic.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * An immutable interval tree of items spanning a time interval, the times being expressed in
+ * milliseconds. The items are kept in an array sorted on their start and end times, and the
+ * implicit binary tree built on top of it records in each node the latest end of its subtree, so
+ * that the items overlapping an interval are found in logarithmic time plus the number of
+ * results.
+ * <p>
+ * Items without a start time never match a search, they are kept apart and only reported by
+ * {@link #visitDistinct(Visitor)}.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class TemporalIndex<T> {
+
+    /**
+     * Visits the items found in the index
+     */
+    interface Visitor<T> {
+        /**
+         * @return false to stop the visit
+         */
+        boolean visit(T item);
+    }
+
+    /**
+     * An item of the index
+     */
+    static final class Entry<T> {
+        final long start;
+
+        final long end;
+
+        final Envelope envelope;
+
+        final T item;
+
+        /**
+         * @param start the start time of the item
+         * @param end the end time of the item, {@link Long#MAX_VALUE} if open
+         * @param envelope the footprint of the item, null if unknown
+         * @param item the item
+         */
+        Entry(long start, long end, Envelope envelope, T item) {
+            this.start = start;
+            this.end = end;
+            this.envelope = envelope;
+            this.item = item;
+        }
+    }
+
+    private static final Comparator<Entry<?>> TIME_ORDER = new Comparator<Entry<?>>() {
+        public int compare(Entry<?> e1, Entry<?> e2) {
+            if (e1.start != e2.start) {
+                return e1.start < e2.start ? -1 : 1;
+            }
+            return e1.end < e2.end ? -1 : (e1.end == e2.end ? 0 : 1);
+        }
+    };
+
+    private final Entry<T>[] entries;
+
+    private final long[] starts;
+
+    /** The latest end of the subtree rooted in each node */
+    private final long[] maxEnds;
+
+    /** The position of the first entry of each distinct time interval */
+    private final int[] distinct;
+
+    private final List<T> untimed;
+
+    private TemporalIndex(Entry<T>[] entries, List<T> untimed) {
+        this.entries = entries;
+        this.untimed = untimed;
+        final int size = entries.length;
+        starts = new long[size];
+        maxEnds = new long[size];
+        int distinctCount = 0;
+        final int[] firsts = new int[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = entries[i].start;
+            if (i == 0 || entries[i].start != entries[i - 1].start
+                    || entries[i].end != entries[i - 1].end) {
+                firsts[distinctCount++] = i;
+            }
+        }
+        distinct = Arrays.copyOf(firsts, distinctCount);
+        computeMaxEnds(0, size);
+    }
+
+    /**
+     * Builds an index out of a list of timed entries and of the items lacking a time
+     */
+    @SuppressWarnings("unchecked")
+    static <T> TemporalIndex<T> build(List<Entry<T>> timed, List<T> untimed) {
+        final Entry<T>[] entries = timed.toArray(new Entry[timed.size()]);
+        Arrays.sort(entries, TIME_ORDER);
+        return new TemporalIndex<T>(entries, new ArrayList<T>(untimed));
+    }
+
+    /**
+     * Returns a new index holding the items of this one plus the provided ones. The new entries
+     * are sorted and merged with the already sorted ones.
+     */
+    @SuppressWarnings("unchecked")
+    TemporalIndex<T> merge(List<Entry<T>> timed, List<T> untimed) {
+        final Entry<T>[] added = timed.toArray(new Entry[timed.size()]);
+        Arrays.sort(added, TIME_ORDER);
+        final Entry<T>[] merged = new Entry[entries.length + added.length];
+        int i = 0, j = 0, k = 0;
+        while (i < entries.length && j < added.length) {
+            merged[k++] = TIME_ORDER.compare(entries[i], added[j]) <= 0 ? entries[i++]
+                    : added[j++];
+        }
+        while (i < entries.length) {
+            merged[k++] = entries[i++];
+        }
+        while (j < added.length) {
+            merged[k++] = added[j++];
+        }
+        final List<T> allUntimed = new ArrayList<T>(this.untimed);
+        allUntimed.addAll(untimed);
+        return new TemporalIndex<T>(merged, allUntimed);
+    }
+
+    private long computeMaxEnds(int lo, int hi) {
+        if (lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+        final int mid = (lo + hi) >>> 1;
+        final long max = Math.max(entries[mid].end,
+                Math.max(computeMaxEnds(lo, mid), computeMaxEnds(mid + 1, hi)));
+        maxEnds[mid] = max;
+        return max;
+    }
+
+    /**
+     * Visits the items whose start and end times fall within the provided bounds, all
+     * inclusive, and whose envelope intersects the provided one. Items are visited in time
+     * order.
+     *
+     * @param envelope the envelope the items must intersect, null for any
+     * @return false if the visitor stopped the search
+     */
+    boolean search(long minStart, long maxStart, long minEnd, long maxEnd, Envelope envelope,
+            Visitor<T> visitor) {
+        if (minStart > maxStart || minEnd > maxEnd) {
+            return true;
+        }
+        return search(0, entries.length, minStart, maxStart, minEnd, maxEnd, envelope, visitor);
+    }
+
+    private boolean search(int lo, int hi, long minStart, long maxStart, long minEnd,
+            long maxEnd, Envelope envelope, Visitor<T> visitor) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] < minEnd || starts[lo] > maxStart || starts[hi - 1] < minStart) {
+                return true;
+            }
+            if (!search(lo, mid, minStart, maxStart, minEnd, maxEnd, envelope, visitor)) {
+                return false;
+            }
+            final Entry<T> entry = entries[mid];
+            if (entry.start > maxStart) {
+                return true;
+            }
+            if (entry.start >= minStart && entry.end >= minEnd && entry.end <= maxEnd
+                    && (envelope == null || entry.envelope == null || envelope
+                            .intersects(entry.envelope))) {
+                if (!visitor.visit(entry.item)) {
+                    return false;
+                }
+            }
+            // the right subtree, iteratively
+            lo = mid + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Visits an item for each distinct time interval, in time order, then the items lacking a
+     * time
+     */
+    void visitDistinct(Visitor<T> visitor) {
+        for (int position : distinct) {
+            if (!visitor.visit(entries[position].item)) {
+                return;
+            }
+        }
+        for (T item : untimed) {
+            if (!visitor.visit(item)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the item with the earliest start time, null if none
+     */
+    T first() {
+        return entries.length > 0 ? entries[0].item : null;
+    }
+
+    /**
+     * @return the item with the latest start time, null if none
+     */
+    T last() {
+        return entries.length > 0 ? entries[entries.length - 1].item : null;
+    }
+
+    /**
+     * @return the number of distinct time intervals
+     */
+    int getDistinctCount() {
+        return distinct.length;
+    }
+
+    /**
+     * @return the number of items, timed or not
+     */
+    int size() {
+        return entries.length + untimed.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> TemporalIndex<T> empty() {
+        return new TemporalIndex<T>(new Entry[0], Collections.<T> emptyList());
+    }
+}
@@ -21,6 +21,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.IndexColorModel;
+import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -38,13 +39,22 @@ import java.util.Date;
 import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,7 +86,10 @@ import org.geotools.data.DataUtilities;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.Query;
 import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.FeatureCalc;
 import org.geotools.gce.image.WorldImageFormat;
 import org.geotools.gce.imagemosaic.MosaicConfigurationBean;
 import org.geotools.gce.imagemosaic.Utils;
@@ -92,9 +105,12 @@ import org.geotools.image.io.ImageIOExt;
 import org.geotools.referencing.CRS;
 import org.geotools.resources.coverage.CoverageUtilities;
 import org.geotools.util.Utilities;
+import org.opengis.feature.Feature;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+import org.opengis.filter.identity.FeatureId;
 import org.opengis.geometry.Envelope;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.datum.PixelInCell;
@@ -117,6 +133,12 @@ public class CatalogBuilder implements Runnable {
 
     final private static double RESOLUTION_TOLERANCE_FACTOR = 1E-2;
 
+    /** The number of granules added to the catalog at once */
+    final private static int BATCH_SIZE = 500;
+
+    /** The number of granules waiting for inspection per harvesting thread */
+    final private static int MAX_PENDING_PER_THREAD = 4;
+
 	/** Default Logger * */
 	final static Logger LOGGER = org.geotools.util.logging.Logging.getLogger(CatalogBuilder.class);
 	
@@ -271,6 +293,19 @@ public class CatalogBuilder implements Runnable {
 
         private DefaultTransaction transaction;
                 private volatile boolean canceled;
+
+		/** The granules waiting to be added to the catalog */
+		private final List<SimpleFeature> batch = new ArrayList<SimpleFeature>();
+
+		/** The granules being inspected in parallel, in walking order */
+		private final LinkedList<Future<GranuleInfo>> pending = new LinkedList<Future<GranuleInfo>>();
+
+		/** The threads inspecting the granules, null if harvesting serially */
+		private ExecutorService inspectors;
+
+		private ThreadLocal<InspectionContext> contexts;
+
+		private InspectionContext serialContext;
 		
 		@Override
 		protected void handleCancelled(File startDirectory, Collection results,
@@ -308,6 +343,11 @@ public class CatalogBuilder implements Runnable {
 			if(!checkFile(fileBeingProcessed))
 				return;
 
+			//
+			// When harvesting incrementally, skip the granules that did not change
+			//
+			if(!checkModified(fileBeingProcessed))
+				return;
 		
 			// replacing chars on input path
 			String validFileName;
@@ -320,6 +360,43 @@ public class CatalogBuilder implements Runnable {
 			}
 			validFileName=FilenameUtils.getName(validFileName);
 			fireEvent(Level.INFO,"Now indexing file "+validFileName, ((fileIndex * 100.0) / numFiles));
+
+			if (inspectors != null && initialized) {
+				//
+				// the first granule set up the index, the others can be inspected in
+				// parallel, their results being collected in walking order
+				//
+				pending.add(inspectors.submit(new Callable<GranuleInfo>() {
+					public GranuleInfo call() throws Exception {
+						return inspect(fileBeingProcessed, contexts.get());
+					}
+				}));
+				while (pending.size() > MAX_PENDING_PER_THREAD * runConfiguration.getHarvestThreads()) {
+					accept(pending.removeFirst());
+				}
+			} else {
+				try {
+					accept(inspect(fileBeingProcessed, serialContext));
+				} catch (IOException e) {
+					fireException(e);
+					return;
+				} catch (ArrayIndexOutOfBoundsException e) {
+					fireException(e);
+					return;
+				}
+			}
+			
+			super.handleFile(fileBeingProcessed, depth, results);
+		}
+
+		/**
+		 * Opens the granule and collects its envelope, CRS, color model, resolution levels and
+		 * properties. Safe to call from several threads once the index has been initialized, as
+		 * long as each thread uses its own {@link InspectionContext}.
+		 * 
+		 * @return the inspection results, or null if the file cannot be read as a granule
+		 */
+		private GranuleInfo inspect(final File fileBeingProcessed, final InspectionContext context) throws IOException {
 			ImageInputStream inStream=null;
 			ImageReader imageioReader = null;
 			AbstractGridCoverage2DReader coverageReader=null;
@@ -329,34 +406,34 @@ public class CatalogBuilder implements Runnable {
 				// Getting an ImageIO reader for this coverage.
 				//
 			        // try to use cache
-			        if(cachedStreamSPI!=null ){
-			            inStream=cachedStreamSPI.createInputStreamInstance(fileBeingProcessed);
+			        if(context.streamSPI!=null ){
+			            inStream=context.streamSPI.createInputStreamInstance(fileBeingProcessed);
 			        } 
 			        if(inStream==null ){
 			            // failed, look for a new SPI
-			            cachedStreamSPI= ImageIOExt.getImageInputStreamSPI(fileBeingProcessed);
-			            if(cachedStreamSPI!=null){
-			                inStream=cachedStreamSPI.createInputStreamInstance(fileBeingProcessed);
+			            context.streamSPI= ImageIOExt.getImageInputStreamSPI(fileBeingProcessed);
+			            if(context.streamSPI!=null){
+			                inStream=context.streamSPI.createInputStreamInstance(fileBeingProcessed);
 			            }
 			            
 			        } 
     				if(inStream==null) {
     				    // failed again
     					fireEvent(Level.INFO,fileBeingProcessed+" has been skipped since we could not get a stream for it", ((fileIndex * 100.0) / numFiles));
-    					return;
+    					return null;
     				}
 				inStream.mark();
 				
 				
 				cachedReaderSPITest: {
 					// there is no cached reader spi, let's look for one
-					if(cachedReaderSPI==null){
+					if(context.readerSPI==null){
 						final Iterator<ImageReader> it = ImageIO.getImageReaders(inStream);
 						if (it.hasNext()) {
 							imageioReader = it.next();
 							if(imageioReader!=null){
 								//cache the SPI
-								cachedReaderSPI=imageioReader.getOriginatingProvider();
+								context.readerSPI=imageioReader.getOriginatingProvider();
 								imageioReader.setInput(inStream);
 							}
 						} else {
@@ -364,14 +441,14 @@ public class CatalogBuilder implements Runnable {
 						}
 					} else {
 						// we have a cached SPI, let's try to use it
-						if(!cachedReaderSPI.canDecodeInput(inStream)){				
+						if(!context.readerSPI.canDecodeInput(inStream)){				
 							// the SPI is no good for this input
-							cachedReaderSPI=null;
+							context.readerSPI=null;
 							//take me to the SPI search
 							break cachedReaderSPITest;
 						}
 						// the spi is good
-						imageioReader=cachedReaderSPI.createReaderInstance();
+						imageioReader=context.readerSPI.createReaderInstance();
 						imageioReader.setInput(inStream);
 					}
 				}
@@ -379,7 +456,7 @@ public class CatalogBuilder implements Runnable {
 				if (imageioReader == null) {
 					// send a message
 					fireEvent(Level.INFO,new StringBuilder("Skipped file ").append(fileBeingProcessed).append(":No ImageIO reader	s availaible.").toString(), ((fileIndex * 99.0) / numFiles));
-					return;
+					return null;
 				}
 
 
@@ -388,61 +465,37 @@ public class CatalogBuilder implements Runnable {
 				// Getting a coverage reader for this coverage.
 				//
 				final AbstractGridFormat format;
-				if(cachedFormat == null) {
+				if(context.format == null) {
 					format= (AbstractGridFormat) GridFormatFinder.findFormat(fileBeingProcessed);
 				} else {
-					if(cachedFormat.accepts(fileBeingProcessed)) {
-						format=cachedFormat;
+					if(context.format.accepts(fileBeingProcessed)) {
+						format=context.format;
 					} else {
 						format=new UnknownFormat();
 					}
 				}
 				if ((format instanceof UnknownFormat)||format == null) {
 					fireEvent(Level.INFO,new StringBuilder("Skipped file ").append(fileBeingProcessed).append(": File format is not supported.").toString(), ((fileIndex * 99.0) / numFiles));
-					return;
+					return null;
 				}
-				cachedFormat=format;
+				context.format=format;
 				coverageReader = (AbstractGridCoverage2DReader) format.getReader(fileBeingProcessed,runConfiguration.getHints());
 				GeneralEnvelope envelope = (GeneralEnvelope) coverageReader.getOriginalEnvelope();
-				CoordinateReferenceSystem actualCRS = coverageReader.getCrs();
+
+				final GranuleInfo info = new GranuleInfo(fileBeingProcessed);
+				info.crs = coverageReader.getCrs();
+				info.readerSPI = imageioReader.getOriginatingProvider();
 
 				//
 				// STEP 3
-				// Get the type specifier for this image and the check that the
-				// image has the correct sample model and color model.
-				// If this is the first cycle of the loop we initialize everything.
+				// Get the type specifier for this image and its resolution levels. 
+				// If this is the first granule we initialize everything.
 				//
 				final ImageTypeSpecifier its = ((ImageTypeSpecifier) imageioReader.getImageTypes(0).next());
-				if (numberOfProcessedFiles==0) {
-					
-					//
-					// at the first step we initialize everything that we will
-					// reuse afterwards starting with color models, sample
-					// models, crs, etc....
-					//
-					
-					defaultCM = its.getColorModel();
-					defaultSM = its.getSampleModel();
-					if (defaultCM instanceof IndexColorModel) {
-						IndexColorModel icm = (IndexColorModel) defaultCM;
-						int numBands = defaultCM.getNumColorComponents();
-						defaultPalette = new byte[3][icm.getMapSize()];
-						icm.getReds(defaultPalette[0]);
-						icm.getGreens(defaultPalette[0]);
-						icm.getBlues(defaultPalette[0]);
-						if (numBands == 4)
-							icm.getAlphas(defaultPalette[0]);
-
-					}
-					defaultCRS = actualCRS;
-
-					
-					//
-					// getting information about resolution
-					//
-					
-
-
+				info.colorModel = its.getColorModel();
+				info.sampleModel = its.getSampleModel();
+				info.first = !initialized;
+				if (info.first) {
 					// get the dimension of the hr image and build the model
 					// as well as computing the resolution
 					// 
@@ -466,115 +519,27 @@ public class CatalogBuilder implements Runnable {
 					if(inStream==null) {
 						//skip file
 						fireEvent(Level.INFO,fileBeingProcessed+" has been skipped since we could not get a stream for it", ((fileIndex * 100.0) / numFiles));
-						return;
+						return null;
 					}
 					imageioReader.setInput(inStream);
-					int numberOfLevels = imageioReader.getNumImages(true);
-					double[][] resolutionLevels = new double[2][numberOfLevels];
-					setupResolutions(resolutionLevels, numberOfLevels, coverageReader, imageioReader, null);
-					mosaicConfiguration.setLevelsNum(numberOfLevels);
-					mosaicConfiguration.setLevels(resolutionLevels);
-
-					
-					//
-					// creating the schema
-					//
-					
-					String schema = runConfiguration.getSchema();
-					if(schema!=null){
-					        schema=schema.trim();
-						// get the schema
-						try{
-							indexSchema=DataUtilities.createType(mosaicConfiguration.getName(), schema);
-							//override the crs in case the provided one was wrong or absent
-							indexSchema=DataUtilities.createSubType(indexSchema, DataUtilities.attributeNames(indexSchema), actualCRS);
-						}
-						catch (Throwable e) {
-							if(LOGGER.isLoggable(Level.FINE))
-								LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
-							indexSchema=null;
-						}
-					}
-					if(indexSchema==null){
-						final SimpleFeatureTypeBuilder featureBuilder = new SimpleFeatureTypeBuilder();
-						featureBuilder.setName(runConfiguration.getIndexName());
-						featureBuilder.setNamespaceURI("http://www.geo-solutions.it/");
-						featureBuilder.add(runConfiguration.getLocationAttribute().trim(), String.class);
-						featureBuilder.add("the_geom", Polygon.class,actualCRS);
-						featureBuilder.setDefaultGeometry("the_geom");
-						String timeAttribute = runConfiguration.getTimeAttribute();
-						addAttributes(timeAttribute, featureBuilder, Date.class);
-						indexSchema = featureBuilder.buildFeatureType();
-					}
-					
-					// create the schema for the new shape file
-					final SimpleFeatureType type = catalog.getType();
-                                        if(type==null){
-					    catalog.createType(indexSchema);
-					} else {
-					    // remove them all, assuming the schema has not changed
-					    final Query query = new Query(type.getTypeName());
-					    query.setFilter(Filter.INCLUDE);
-					    catalog.removeGranules(query);
-					}
-					
-				} else {
-				    if (!mosaicConfiguration.isHeterogeneous()){
-				        // //
-				        //
-				        // There is no need to check resolutions if the mosaic
-				        // has been already marked as heterogeneous
-				        //
-				        // //
-				        int numberOfLevels = imageioReader.getNumImages(true);
-                                        if (numberOfLevels != mosaicConfiguration.getLevelsNum()) {
-                                            mosaicConfiguration.setHeterogeneous(true);
-                                            if (numberOfLevels > mosaicConfiguration.getLevelsNum()){
-                                                final double[][] resolutionLevels = new double[2][numberOfLevels];
-                                                setupResolutions(resolutionLevels, numberOfLevels, coverageReader, imageioReader, null);
-                                                mosaicConfiguration.setLevelsNum(numberOfLevels);
-                                                mosaicConfiguration.setLevels(resolutionLevels);
-                                            }
-                                        } else {
-                                            final double[][] mosaicLevels = mosaicConfiguration.getLevels();
-                                            final double[][] resolutionLevels = new double[2][numberOfLevels];
-                                            final boolean homogeneousLevels = setupResolutions(resolutionLevels, numberOfLevels, coverageReader, imageioReader, mosaicLevels);
-                                            if (!homogeneousLevels){
-                                                mosaicConfiguration.setHeterogeneous(true);
-                                            }
-                                        }
-				    }
-				    
-				    
-					// ////////////////////////////////////////////////////////
-					// 
-					// comparing ColorModel
-					// comparing SampeModel
-					// comparing CRSs
-					// ////////////////////////////////////////////////////////
-					ColorModel actualCM = its.getColorModel();
-					if((fileIndex > 0 ? !(CRS.equalsIgnoreMetadata(defaultCRS, actualCRS)) : false)){
-						fireEvent(
-								Level.INFO,
-								new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because CRSs do not match.").toString(),
-								(((fileIndex + 1) * 99.0) / numFiles));
-						return;
-					}
-					
-					if(checkColorModels(defaultCM, defaultPalette,actualCM)){
-						fireEvent(
-								Level.INFO,
-								new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because color models do not match.").toString(),
-								(((fileIndex + 1) * 99.0) / numFiles));
-						return;
-					}							
+				}
+				if (info.first || !mosaicConfiguration.isHeterogeneous()) {
+					// there is no need to check resolutions if the mosaic
+					// has been already marked as heterogeneous
+					info.numberOfLevels = imageioReader.getNumImages(true);
+					info.resolutionLevels = new double[2][info.numberOfLevels];
+					setupResolutions(info.resolutionLevels, info.numberOfLevels, coverageReader, imageioReader);
+				}
+				if (info.first) {
+					// only happens on the walking thread, before any parallel inspection
+					initialize(info);
 				}
 
 				// ////////////////////////////////////////////////////////
 				//
 				// STEP 4
 				//
-				// create and store features
+				// create the feature
 				//
 				// ////////////////////////////////////////////////////////
 				final SimpleFeature feature = DataUtilities.template(indexSchema);
@@ -582,27 +547,14 @@ public class CatalogBuilder implements Runnable {
 				feature.setAttribute(runConfiguration.getLocationAttribute(), prepareLocation(fileBeingProcessed));
 				
 				// collect and dump properties
-				if(propertiesCollectors!=null&&propertiesCollectors.size()>0)
-					for(PropertiesCollector pc: propertiesCollectors)
+				if(context.collectors!=null&&context.collectors.size()>0)
+					for(PropertiesCollector pc: context.collectors)
 					{
 						pc.collect(fileBeingProcessed).collect(coverageReader).collect(imageioReader).setProperties(feature);
 						pc.reset();
 					}
-
-				catalog.addGranule(feature,transaction);
-
-				// fire event
-				fireEvent(Level.FINE,"Done with file "+fileBeingProcessed, (((fileIndex + 1) * 99.0) / numFiles));
-			
-
-				// advance files
-				numberOfProcessedFiles++;
-			} catch (IOException e) {
-				fireException(e);
-				return;
-			} catch (ArrayIndexOutOfBoundsException e) {
-				fireException(e);
-				return;
+				info.feature = feature;
+				return info;
 			} 
 			finally{
 				// ////////////////////////////////////////////////////////
@@ -640,9 +592,200 @@ public class CatalogBuilder implements Runnable {
 						LOGGER.log(Level.FINEST,e.getLocalizedMessage(),e);					
 				}
 			}
-		
+		}
+
+		/**
+		 * Sets up the color model, sample model, CRS, resolution levels and index schema of the
+		 * mosaic from its first granule.
+		 */
+		private void initialize(final GranuleInfo info) throws IOException {
+			//
+			// at the first step we initialize everything that we will
+			// reuse afterwards starting with color models, sample
+			// models, crs, etc....
+			//
 			
-			super.handleFile(fileBeingProcessed, depth, results);
+			setDefaultModels(info.colorModel, info.sampleModel);
+			defaultCRS = info.crs;
+			mosaicConfiguration.setLevelsNum(info.numberOfLevels);
+			mosaicConfiguration.setLevels(info.resolutionLevels);
+
+			
+			//
+			// creating the schema
+			//
+			
+			String schema = runConfiguration.getSchema();
+			if(schema!=null){
+			        schema=schema.trim();
+				// get the schema
+				try{
+					indexSchema=DataUtilities.createType(mosaicConfiguration.getName(), schema);
+					//override the crs in case the provided one was wrong or absent
+					indexSchema=DataUtilities.createSubType(indexSchema, DataUtilities.attributeNames(indexSchema), info.crs);
+				}
+				catch (Throwable e) {
+					if(LOGGER.isLoggable(Level.FINE))
+						LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
+					indexSchema=null;
+				}
+			}
+			if(indexSchema==null){
+				final SimpleFeatureTypeBuilder featureBuilder = new SimpleFeatureTypeBuilder();
+				featureBuilder.setName(runConfiguration.getIndexName());
+				featureBuilder.setNamespaceURI("http://www.geo-solutions.it/");
+				featureBuilder.add(runConfiguration.getLocationAttribute().trim(), String.class);
+				featureBuilder.add("the_geom", Polygon.class,info.crs);
+				featureBuilder.setDefaultGeometry("the_geom");
+				String timeAttribute = runConfiguration.getTimeAttribute();
+				addAttributes(timeAttribute, featureBuilder, Date.class);
+				indexSchema = featureBuilder.buildFeatureType();
+			}
+			
+			// create the schema for the new shape file
+			final SimpleFeatureType type = catalog.getType();
+			if(type==null){
+			    catalog.createType(indexSchema);
+			} else if (existingGranules != null) {
+			    // harvesting incrementally, keep the existing granules
+			    indexSchema = type;
+			} else {
+			    // remove them all, assuming the schema has not changed
+			    final Query query = new Query(type.getTypeName());
+			    query.setFilter(Filter.INCLUDE);
+			    catalog.removeGranules(query);
+			}
+			initialized = true;
+		}
+
+		/**
+		 * Waits for the inspection of a granule and adds it to the catalog
+		 */
+		private void accept(final Future<GranuleInfo> future) throws IOException {
+			try {
+				accept(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the granules inspection");
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException || cause instanceof ArrayIndexOutOfBoundsException) {
+					fireException((Exception) cause);
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				} else {
+					throw new IOException(cause);
+				}
+			}
+		}
+
+		/**
+		 * Checks the inspected granule is compatible with the mosaic and queues it for addition
+		 * to the catalog
+		 */
+		private void accept(final GranuleInfo info) throws IOException {
+			if (info == null) {
+				return;
+			}
+			final File fileBeingProcessed = info.file;
+			if (!info.first) {
+				if (!mosaicConfiguration.isHeterogeneous() && info.resolutionLevels != null) {
+					final int numberOfLevels = info.numberOfLevels;
+					if (numberOfLevels != mosaicConfiguration.getLevelsNum()) {
+						mosaicConfiguration.setHeterogeneous(true);
+						if (numberOfLevels > mosaicConfiguration.getLevelsNum()){
+							mosaicConfiguration.setLevelsNum(numberOfLevels);
+							mosaicConfiguration.setLevels(info.resolutionLevels);
+						}
+					} else if (!compareResolutions(info.resolutionLevels, mosaicConfiguration.getLevels(), numberOfLevels)) {
+						mosaicConfiguration.setHeterogeneous(true);
+					}
+				}
+
+				// ////////////////////////////////////////////////////////
+				// 
+				// comparing ColorModel
+				// comparing SampeModel
+				// comparing CRSs
+				// ////////////////////////////////////////////////////////
+				if(!CRS.equalsIgnoreMetadata(defaultCRS, info.crs)){
+					fireEvent(
+							Level.INFO,
+							new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because CRSs do not match.").toString(),
+							(((fileIndex + 1) * 99.0) / numFiles));
+					return;
+				}
+				
+				if(checkColorModels(defaultCM, defaultPalette,info.colorModel)){
+					fireEvent(
+							Level.INFO,
+							new StringBuilder("Skipping image ").append(fileBeingProcessed).append(" because color models do not match.").toString(),
+							(((fileIndex + 1) * 99.0) / numFiles));
+					return;
+				}
+			}
+
+			// store the features in batches
+			batch.add(info.feature);
+			if (modifiedGranules != null) {
+				// the granule made it again, its outdated entry can go
+				final List<FeatureId> outdated = modifiedGranules.remove(fileBeingProcessed);
+				if (outdated != null) {
+					outdatedGranules.addAll(outdated);
+				}
+			}
+			if (batch.size() >= BATCH_SIZE) {
+				flush();
+			}
+			cachedReaderSPI = info.readerSPI;
+
+			// fire event
+			fireEvent(Level.FINE,"Done with file "+fileBeingProcessed, (((fileIndex + 1) * 99.0) / numFiles));
+
+			// advance files
+			numberOfProcessedFiles++;
+		}
+
+		private void flush() throws IOException {
+			if (!batch.isEmpty()) {
+				catalog.addGranules(batch, transaction);
+				batch.clear();
+			}
+		}
+
+		/**
+		 * When harvesting incrementally, tells whether the granule is new or modified since the
+		 * last run. The outdated entry of a modified granule is removed from the catalog only
+		 * once the harvest commits, and only if the granule is accepted again.
+		 */
+		private boolean checkModified(final File fileBeingProcessed) throws IOException {
+			if (existingGranules == null) {
+				return true;
+			}
+			final String location = prepareLocation(fileBeingProcessed);
+			final List<FeatureId> ids = existingGranules.remove(location);
+			if (ids == null) {
+				// a new granule
+				return true;
+			}
+			if (fileBeingProcessed.lastModified() <= lastHarvestTime) {
+				fireEvent(Level.FINE, "Skipped unchanged file " + fileBeingProcessed, ((fileIndex * 99.0) / numFiles));
+				return false;
+			}
+			modifiedGranules.put(fileBeingProcessed, ids);
+			return true;
+		}
+
+		/**
+		 * Removes the granules with the specified identifiers from the catalog. They go in a
+		 * single removal, since some stores renumber their features when removing some.
+		 */
+		private void removeGranules(final Set<FeatureId> ids) throws IOException {
+			final String typeName = catalog.getType().getTypeName();
+			final FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+			catalog.removeGranules(new Query(typeName, ff.id(ids)));
 		}
 
         private void addAttributes(String attribute, SimpleFeatureTypeBuilder featureBuilder, Class classType) {
@@ -700,6 +843,25 @@ public class CatalogBuilder implements Runnable {
 			
 			this.transaction= new DefaultTransaction("MosaicCreationTransaction"+System.nanoTime());
                         indexingPreamble();
+                        serialContext = new InspectionContext(propertiesCollectors);
+                        if (runConfiguration.getHarvestThreads() > 1) {
+                            inspectors = Executors.newFixedThreadPool(runConfiguration.getHarvestThreads(), new ThreadFactory() {
+                                final AtomicInteger count = new AtomicInteger();
+
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r, "CatalogBuilder-" + count.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+                            contexts = new ThreadLocal<InspectionContext>() {
+                                @Override
+                                protected InspectionContext initialValue() {
+                                    // property collectors are stateful, each thread gets its own
+                                    return new InspectionContext(createPropertyCollectors());
+                                }
+                            };
+                        }
 
                         try {
                             // start walking directories
@@ -711,14 +873,38 @@ public class CatalogBuilder implements Runnable {
                                     break;
                             }
                          // did we cancel?
-                            if(canceled)
+                            if(canceled) {
+                                for (Future<GranuleInfo> future : pending) {
+                                    future.cancel(true);
+                                }
                                 transaction.rollback();
-                            else
+                            } else {
+                                while (!pending.isEmpty()) {
+                                    accept(pending.removeFirst());
+                                }
+                                flush();
                                 transaction.commit();
+
+                                // the catalog removals are not transactional, the outdated
+                                // entries go only once the harvested ones are in
+                                if (existingGranules != null) {
+                                    // the granules left were not found anymore
+                                    for (List<FeatureId> ids : existingGranules.values()) {
+                                        outdatedGranules.addAll(ids);
+                                    }
+                                    if (!outdatedGranules.isEmpty()) {
+                                        fireEvent(Level.INFO, "Removing " + outdatedGranules.size() + " outdated granules", 99);
+                                        removeGranules(outdatedGranules);
+                                    }
+                                }
+                            }
                         } catch (Exception e) {
                             LOGGER.log(Level.WARNING, "Failure occurred while collecting the granules", e);
                             transaction.rollback();
                         } finally {
+                            if (inspectors != null) {
+                                inspectors.shutdownNow();
+                            }
                             try {
                                 transaction.close();
                             } catch (Exception e) {
@@ -934,8 +1120,6 @@ public class CatalogBuilder implements Runnable {
 
 	private ImageReaderSpi cachedReaderSPI;
 
-	private ImageInputStreamSpi cachedStreamSPI;
-	
 	private List<PropertiesCollector> propertiesCollectors;
 
 	private SampleModel defaultSM;
@@ -944,7 +1128,79 @@ public class CatalogBuilder implements Runnable {
 
     private SimpleFeatureType indexSchema;
 
-    private AbstractGridFormat cachedFormat;
+    /**
+     * Whether the color model, CRS, levels and schema of the mosaic have been set up, from its
+     * first granule or, when harvesting incrementally, from the existing mosaic
+     */
+    private volatile boolean initialized;
+
+    /**
+     * When harvesting incrementally, the identifiers of the granules already in the catalog and not
+     * walked yet, by location, null otherwise
+     */
+    private Map<String, List<FeatureId>> existingGranules;
+
+    /**
+     * When harvesting incrementally, the identifiers of the catalog entries of the modified
+     * granules waiting to be accepted again, by granule file, null otherwise
+     */
+    private Map<File, List<FeatureId>> modifiedGranules;
+
+    /**
+     * When harvesting incrementally, the identifiers of the catalog entries to remove once the
+     * harvest commits, null otherwise
+     */
+    private Set<FeatureId> outdatedGranules;
+
+    /**
+     * When harvesting incrementally, the time the catalog was last built at
+     */
+    private long lastHarvestTime;
+
+    /**
+     * The readers and collectors used to inspect the granules. Each inspecting thread has its
+     * own, since they are not thread safe.
+     */
+    private static class InspectionContext {
+        ImageInputStreamSpi streamSPI;
+
+        ImageReaderSpi readerSPI;
+
+        AbstractGridFormat format;
+
+        final List<PropertiesCollector> collectors;
+
+        InspectionContext(List<PropertiesCollector> collectors) {
+            this.collectors = collectors;
+        }
+    }
+
+    /**
+     * What the inspection of a granule found out
+     */
+    private static class GranuleInfo {
+        final File file;
+
+        boolean first;
+
+        SimpleFeature feature;
+
+        CoordinateReferenceSystem crs;
+
+        ColorModel colorModel;
+
+        SampleModel sampleModel;
+
+        int numberOfLevels;
+
+        double[][] resolutionLevels;
+
+        ImageReaderSpi readerSPI;
+
+        GranuleInfo(File file) {
+            this.file = file;
+        }
+    }
 	
 	/* (non-Javadoc)
 	 * @see org.geotools.gce.imagemosaic.JMXIndexBuilderMBean#run()
@@ -1131,6 +1387,16 @@ public class CatalogBuilder implements Runnable {
                         
                         if (props.containsKey(Prop.CACHING))
                                 configuration.setCaching(Boolean.valueOf(props.getProperty(Prop.CACHING)));
+                        if (props.containsKey(Prop.PERSISTENT_INDEX))
+                                configuration.setPersistentIndex(Boolean.valueOf(props.getProperty(Prop.PERSISTENT_INDEX)));
+                        if (props.containsKey(Prop.TEMPORAL_INDEX))
+                                configuration.setTemporalIndex(Boolean.valueOf(props.getProperty(Prop.TEMPORAL_INDEX)));
+
+                        // harvesting
+                        if (props.containsKey(Prop.HARVEST_THREADS))
+                                configuration.setHarvestThreads(Integer.parseInt(props.getProperty(Prop.HARVEST_THREADS).trim()));
+                        if (props.containsKey(Prop.INCREMENTAL))
+                                configuration.setIncremental(Boolean.valueOf(props.getProperty(Prop.INCREMENTAL)));
                 }
 
 		
@@ -1173,6 +1439,10 @@ public class CatalogBuilder implements Runnable {
 		defaultPalette=null;
 		fileIndex=0;
 		numberOfProcessedFiles=0;
+		initialized=false;
+		existingGranules=null;
+		modifiedGranules=null;
+		outdatedGranules=null;
 		
 		// clear directories
 		runConfiguration=null;
@@ -1372,14 +1642,146 @@ public class CatalogBuilder implements Runnable {
 				LOGGER.log(Level.WARNING,"Unable to parse imposed bbox",e);
 		}
 		mosaicConfiguration.setCaching(runConfiguration.isCaching());
+		mosaicConfiguration.setPersistentIndex(runConfiguration.isPersistentIndex());
+		mosaicConfiguration.setTemporalIndex(runConfiguration.isTemporalIndex());
+
+		// the granules are about to change, a persistent index would be stale
+		final File persistentIndex = GranuleCatalogFactory.getPersistentIndexFile(parent, runConfiguration.getIndexName());
+		if (persistentIndex.exists() && !persistentIndex.delete()) {
+			throw new IOException("Unable to remove the stale index " + persistentIndex.getAbsolutePath());
+		}
 		//
 		// load property collectors
 		//
-		loadPropertyCollectors();
-			
+		propertiesCollectors = createPropertyCollectors();
+
+		//
+		// INCREMENTAL HARVESTING
+		//
+		existingGranules = null;
+		modifiedGranules = null;
+		outdatedGranules = null;
+		final File mosaicProperties = new File(parent, runConfiguration.getIndexName() + ".properties");
+		final SimpleFeatureType type = catalog.getType();
+		if (runConfiguration.isIncremental() && type != null && mosaicProperties.exists()) {
+			lastHarvestTime = mosaicProperties.lastModified();
+			final String locationAttribute = runConfiguration.getLocationAttribute();
+			final Map<String, List<FeatureId>> granules = new HashMap<String, List<FeatureId>>();
+			catalog.computeAggregateFunction(new Query(type.getTypeName()), new FeatureCalc() {
+
+				public void visit(Feature feature) {
+					final Object location = ((SimpleFeature) feature).getAttribute(locationAttribute);
+					if (location != null) {
+						List<FeatureId> ids = granules.get(location.toString());
+						if (ids == null) {
+							ids = new ArrayList<FeatureId>(1);
+							granules.put(location.toString(), ids);
+						}
+						ids.add(feature.getIdentifier());
+					}
+				}
+
+				public CalcResult getResult() {
+					return null;
+				}
+			});
+			existingGranules = granules;
+			modifiedGranules = new HashMap<File, List<FeatureId>>();
+			outdatedGranules = new HashSet<FeatureId>();
+
+			// keep what the previous run found out about the granules that are not harvested again
+			final Properties previous = Utils.loadPropertiesFromURL(DataUtilities.fileToURL(mosaicProperties));
+			if (previous != null) {
+				mosaicConfiguration.setHeterogeneous(Boolean.valueOf(previous.getProperty(Prop.HETEROGENEOUS)));
+				mustConvertToRGB = Boolean.valueOf(previous.getProperty(Prop.EXP_RGB));
+				initializeFromMosaic(parent, type, previous);
+			}
+		}
 	}
 
-	private void loadPropertyCollectors() {
+	/**
+	 * When harvesting incrementally, sets up the color model, sample model, CRS, resolution
+	 * levels and index schema from the existing mosaic, so that the new and modified granules
+	 * are checked against it rather than against the first of them. The mosaic is left to be
+	 * initialized from its first granule if its sample image or levels cannot be read.
+	 */
+	private void initializeFromMosaic(final File parent, final SimpleFeatureType type, final Properties previous) {
+		final double[][] levels = parseLevels(previous);
+		final CoordinateReferenceSystem crs = type.getCoordinateReferenceSystem();
+		if (levels == null || crs == null) {
+			return;
+		}
+		final RenderedImage sampleImage = Utils.loadSampleImage(new File(parent, "sample_image"));
+		if (sampleImage == null) {
+			return;
+		}
+		setDefaultModels(sampleImage.getColorModel(), sampleImage.getSampleModel());
+		defaultCRS = crs;
+		mosaicConfiguration.setLevelsNum(levels[0].length);
+		mosaicConfiguration.setLevels(levels);
+		indexSchema = type;
+		initialized = true;
+	}
+
+	/**
+	 * Parses the resolution levels written in the mosaic properties, as the resolutions along
+	 * x and y of each level
+	 * 
+	 * @return the levels, or null if missing or invalid
+	 */
+	private static double[][] parseLevels(final Properties properties) {
+		final String levelsNum = properties.getProperty(Prop.LEVELS_NUM);
+		final String levels = properties.getProperty(Prop.LEVELS);
+		if (levelsNum == null || levels == null) {
+			return null;
+		}
+		try {
+			final int numberOfLevels = Integer.parseInt(levelsNum.trim());
+			final String[] pairs = levels.trim().split(" ");
+			if (numberOfLevels < 1 || pairs.length != numberOfLevels) {
+				return null;
+			}
+			final double[][] resolutionLevels = new double[2][numberOfLevels];
+			for (int k = 0; k < numberOfLevels; k++) {
+				final String[] pair = pairs[k].split(",");
+				if (pair.length != 2) {
+					return null;
+				}
+				resolutionLevels[0][k] = Double.parseDouble(pair[0]);
+				resolutionLevels[1][k] = Double.parseDouble(pair[1]);
+			}
+			return resolutionLevels;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the color model and sample model all the granules are checked against
+	 */
+	private void setDefaultModels(final ColorModel colorModel, final SampleModel sampleModel) {
+		defaultCM = colorModel;
+		defaultSM = sampleModel;
+		if (defaultCM instanceof IndexColorModel) {
+			IndexColorModel icm = (IndexColorModel) defaultCM;
+			int numBands = defaultCM.getNumColorComponents();
+			defaultPalette = new byte[3][icm.getMapSize()];
+			icm.getReds(defaultPalette[0]);
+			icm.getGreens(defaultPalette[0]);
+			icm.getBlues(defaultPalette[0]);
+			if (numBands == 4)
+				icm.getAlphas(defaultPalette[0]);
+
+		}
+	}
+
+	/**
+	 * Creates the configured property collectors, a new set being needed for each thread
+	 * harvesting the granules
+	 * 
+	 * @return the collectors, or null if none is configured
+	 */
+	private List<PropertiesCollector> createPropertyCollectors() {
 		// load property collectors
 		String pcConfig = runConfiguration.getPropertyCollectors();
 		if (pcConfig != null && pcConfig.length()>0){
@@ -1489,8 +1891,9 @@ public class CatalogBuilder implements Runnable {
 				}
 				
 			}
-			this.propertiesCollectors=pcs;
+			return pcs;
 		}
+		return null;
 	}
 
 	private void indexingPostamble(final boolean success) throws IOException {
@@ -1508,6 +1911,8 @@ public class CatalogBuilder implements Runnable {
         			mosaicConfiguration.setAbsolutePath(runConfiguration.isAbsolute());
         			mosaicConfiguration.setLocationAttribute(runConfiguration.getLocationAttribute());
         			mosaicConfiguration.setCaching(runConfiguration.isCaching());
+        			mosaicConfiguration.setPersistentIndex(runConfiguration.isPersistentIndex());
+        			mosaicConfiguration.setTemporalIndex(runConfiguration.isTemporalIndex());
         			final String timeAttribute= runConfiguration.getTimeAttribute();
         			if (timeAttribute != null) {
         				mosaicConfiguration.setTimeAttribute(runConfiguration.getTimeAttribute());
@@ -1623,6 +2028,8 @@ public class CatalogBuilder implements Runnable {
 			properties.setProperty(Utils.Prop.ENVELOPE2D, imposedBBox.getMinX()+","+imposedBBox.getMinY()+" "+imposedBBox.getMaxX()+","+imposedBBox.getMaxY());
 		}
 		properties.setProperty(Utils.Prop.CACHING, Boolean.toString(mosaicConfiguration.isCaching()));
+		properties.setProperty(Utils.Prop.PERSISTENT_INDEX, Boolean.toString(mosaicConfiguration.isPersistentIndex()));
+		properties.setProperty(Utils.Prop.TEMPORAL_INDEX, Boolean.toString(mosaicConfiguration.isTemporalIndex()));
 		OutputStream outStream=null;
 		try {
 			outStream = new BufferedOutputStream(new FileOutputStream(runConfiguration.getRootMosaicDirectory() + "/" + runConfiguration.getIndexName() + ".properties"));
@@ -1649,34 +2056,39 @@ public class CatalogBuilder implements Runnable {
 	 * @param numberOfLevels
 	 * @param coverageReader
 	 * @param imageioReader
-	 * @param compareLevels optional resolutionLevels to be compared.
-	 * @return 
 	 * @throws IndexOutOfBoundsException
 	 * @throws IOException
 	 */
-	private static boolean setupResolutions(
+	private static void setupResolutions(
                 final double[][] resolutionLevels, 
                 final int numberOfLevels, 
                 final AbstractGridCoverage2DReader coverageReader, 
-                final ImageReader imageioReader,
-                final double[][] compareLevels
+                final ImageReader imageioReader
                 ) throws IndexOutOfBoundsException, IOException {
             double[] res = CoverageUtilities.getResolution((AffineTransform) coverageReader.getOriginalGridToWorld(PixelInCell.CELL_CORNER));
             resolutionLevels[0][0] = res[0];
             resolutionLevels[1][0] = res[1];
-            final boolean checkLevels = compareLevels != null;
 
             // resolutions levels are computed using the raster space scale factors
             if (numberOfLevels >= 1) {
                 for (int k = 0; k < numberOfLevels; k++) {
                     resolutionLevels[0][k] = resolutionLevels[0][0]*coverageReader.getOriginalGridRange().getSpan(0)/(1.0*imageioReader.getWidth(k));
                     resolutionLevels[1][k] = resolutionLevels[1][0]*coverageReader.getOriginalGridRange().getSpan(1)/(1.0*imageioReader.getHeight(k));
-                    if (checkLevels)  {
-                        if (Math.abs(resolutionLevels[0][k] - compareLevels[0][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[0][k] ||
-                            Math.abs(resolutionLevels[1][k] - compareLevels[1][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[1][k]){
-                            return false;
-                        }
-                    }
+                }
+            }
+        }
+
+	/**
+	 * @return true if the resolution levels match the ones to compare within the tolerance
+	 */
+	private static boolean compareResolutions(
+                final double[][] resolutionLevels, 
+                final double[][] compareLevels,
+                final int numberOfLevels) {
+            for (int k = 0; k < numberOfLevels; k++) {
+                if (Math.abs(resolutionLevels[0][k] - compareLevels[0][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[0][k] ||
+                    Math.abs(resolutionLevels[1][k] - compareLevels[1][k]) > RESOLUTION_TOLERANCE_FACTOR * compareLevels[1][k]){
+                    return false;
                 }
             }
             return true;
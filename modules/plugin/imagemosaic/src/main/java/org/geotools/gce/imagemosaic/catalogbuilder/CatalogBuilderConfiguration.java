@@ -52,6 +52,27 @@ public class CatalogBuilderConfiguration {
 	
 	private boolean caching = Utils.DEFAULT_CONFIGURATION_CACHING;
 
+	/**
+	 * Whether the mosaic keeps its index in a memory mapped file.
+	 */
+	private boolean persistentIndex;
+
+	/**
+	 * Whether the mosaic indexes its granules by time in memory.
+	 */
+	private boolean temporalIndex;
+
+	/**
+	 * Number of threads inspecting the granules.
+	 */
+	private int harvestThreads = Utils.DEFAULT_HARVEST_THREADS;
+
+	/**
+	 * Whether to only harvest the granules added, modified or removed since the
+	 * catalog was last built.
+	 */
+	private boolean incremental;
+
 	/**
 	 * Index file name. Default is index.
 	 */
@@ -158,6 +179,38 @@ public class CatalogBuilderConfiguration {
 		this.caching = caching;
 	}
 
+	public boolean isPersistentIndex() {
+		return persistentIndex;
+	}
+
+	public void setPersistentIndex(boolean persistentIndex) {
+		this.persistentIndex = persistentIndex;
+	}
+
+	public boolean isTemporalIndex() {
+		return temporalIndex;
+	}
+
+	public void setTemporalIndex(boolean temporalIndex) {
+		this.temporalIndex = temporalIndex;
+	}
+
+	public int getHarvestThreads() {
+		return harvestThreads;
+	}
+
+	public void setHarvestThreads(int harvestThreads) {
+		this.harvestThreads = harvestThreads;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
 	public String getPropertyCollectors() {
 		return propertyCollectors;
 	}
@@ -280,8 +333,16 @@ public class CatalogBuilderConfiguration {
 			return false;
 		if (this.caching != that.caching)
 			return false;
+		if (this.persistentIndex != that.persistentIndex)
+			return false;
+		if (this.temporalIndex != that.temporalIndex)
+			return false;
 		if (this.recursive != that.recursive)
 			return false;
+		if (this.incremental != that.incremental)
+			return false;
+		if (this.harvestThreads != that.harvestThreads)
+			return false;
 		if (this.footprintManagement != that.footprintManagement)
 			return false;
 		if (!(this.indexName == null && that.indexName == null)
@@ -306,6 +367,10 @@ public class CatalogBuilderConfiguration {
 		seed = Utilities.hash(absolute, seed);
 		seed = Utilities.hash(recursive, seed);
 		seed = Utilities.hash(caching, seed);
+		seed = Utilities.hash(persistentIndex, seed);
+		seed = Utilities.hash(temporalIndex, seed);
+		seed = Utilities.hash(incremental, seed);
+		seed = Utilities.hash(harvestThreads, seed);
 		seed = Utilities.hash(footprintManagement, seed);
 		seed = Utilities.hash(locationAttribute, seed);
 		seed = Utilities.hash(indexName, seed);
@@ -323,7 +388,11 @@ public class CatalogBuilderConfiguration {
 		builder.append("indexName:\t\t\t").append(indexName).append("\n");
 		builder.append("absolute:\t\t\t").append(absolute).append("\n");
 		builder.append("caching:\t\t\t").append(caching).append("\n");
+		builder.append("persistentIndex:\t\t\t").append(persistentIndex).append("\n");
+		builder.append("temporalIndex:\t\t\t").append(temporalIndex).append("\n");
 		builder.append("recursive:\t\t\t").append(recursive).append("\n");
+		builder.append("incremental:\t\t\t").append(incremental).append("\n");
+		builder.append("harvestThreads:\t\t\t").append(harvestThreads).append("\n");
 		builder.append("footprintManagement:\t\t\t")
 				.append(footprintManagement).append("\n");
 		builder.append("locationAttribute:\t\t\t").append(locationAttribute)
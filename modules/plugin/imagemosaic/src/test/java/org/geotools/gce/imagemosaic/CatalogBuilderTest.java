@@ -18,6 +18,7 @@ package org.geotools.gce.imagemosaic;
 
 import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -27,13 +28,19 @@ import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.Properties;
 
+import javax.imageio.ImageIO;
 import javax.media.jai.PlanarImage;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.gce.imagemosaic.catalog.GranuleCatalog;
 import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder;
 import org.geotools.gce.imagemosaic.catalogbuilder.CatalogBuilder.ExceptionEvent;
@@ -108,6 +115,11 @@ public class CatalogBuilderTest extends Assert {
 		assertTrue(c1.equals(c2));
 		assertEquals(c1.hashCode(), c2.hashCode());
 		
+		c1.setHarvestThreads(4);
+		assertFalse(c1.equals(c2));
+		c2.setHarvestThreads(4);
+		assertTrue(c1.equals(c2));
+		
 		CatalogBuilderConfiguration c3 = c2.clone();
 		assertTrue(c3.equals(c2));
 		assertEquals(c3.hashCode(), c2.hashCode());
@@ -345,4 +357,100 @@ public class CatalogBuilderTest extends Assert {
 		}
 	    }
 	}
+
+	@Test
+	public void buildParallelIncrementalIndex() throws Exception {
+	    if (hostnameDefined){
+		// work on a copy of the granules, some get deleted
+		final File source = TestData.file(this, "/rgb");
+		final File directory = new File(source.getParentFile(), "rgb_harvest");
+		FileUtils.deleteDirectory(directory);
+		directory.mkdir();
+		for (File file : source.listFiles()) {
+			if (file.getName().startsWith("global_mosaic")) {
+				FileUtils.copyFileToDirectory(file, directory);
+			}
+		}
+		
+		CatalogBuilderConfiguration c1 = new CatalogBuilderConfiguration();
+		c1.setIndexName("harvest");
+		c1.setLocationAttribute("location");
+		c1.setAbsolute(false);
+		c1.setRootMosaicDirectory(directory.toString());
+		c1.setIndexingDirectories(Arrays.asList(directory.toString()));
+		c1.setHarvestThreads(3);
+		
+		CatalogBuilder builder = new CatalogBuilder(c1);
+		builder.addProcessingEventListener(new CatalogBuilderListener());
+		builder.run();
+		final File index = new File(directory, "harvest.shp");
+		assertEquals(24, countGranules(index));
+		
+		// make sure the granule changes come after the previous harvest
+		Thread.sleep(1000);
+		assertTrue(new File(directory, "global_mosaic_0.png").delete());
+		new File(directory, "global_mosaic_0.pgw").delete();
+		
+		c1.setIncremental(true);
+		builder = new CatalogBuilder(c1);
+		builder.addProcessingEventListener(new CatalogBuilderListener());
+		builder.run();
+		assertEquals(23, countGranules(index));
+		
+		// granules added back are indexed even if older than the last harvest, modified ones
+		// are indexed again, and the ones not matching the existing mosaic are rejected
+		FileUtils.copyFileToDirectory(new File(source, "global_mosaic_0.png"), directory);
+		FileUtils.copyFileToDirectory(new File(source, "global_mosaic_0.pgw"), directory);
+		assertTrue(new File(directory, "global_mosaic_1.png").setLastModified(System.currentTimeMillis() + 1000));
+		final BufferedImage gray = new BufferedImage(50, 50, BufferedImage.TYPE_BYTE_GRAY);
+		assertTrue(ImageIO.write(gray, "png", new File(directory, "global_mosaic_gray.png")));
+		FileUtils.copyFile(new File(source, "global_mosaic_1.pgw"), new File(directory, "global_mosaic_gray.pgw"));
+		
+		builder = new CatalogBuilder(c1);
+		builder.addProcessingEventListener(new CatalogBuilderListener());
+		builder.run();
+		assertEquals(24, countGranules(index));
+		assertEquals(1, countGranules(index, "location = 'global_mosaic_0.png'"));
+		assertEquals(1, countGranules(index, "location = 'global_mosaic_1.png'"));
+		assertEquals(0, countGranules(index, "location = 'global_mosaic_gray.png'"));
+		
+		ImageMosaicReader reader = new ImageMosaicReader(index);
+		try {
+			GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
+			assertNotNull(coverage);
+			coverage.dispose(true);
+		} finally {
+			reader.dispose();
+		}
+
+		// a modified granule rejected by the mosaic keeps its previous entry
+		Thread.sleep(1000);
+		assertTrue(ImageIO.write(gray, "png", new File(directory, "global_mosaic_2.png")));
+		assertTrue(new File(directory, "global_mosaic_2.png").setLastModified(System.currentTimeMillis() + 1000));
+
+		builder = new CatalogBuilder(c1);
+		builder.addProcessingEventListener(new CatalogBuilderListener());
+		builder.run();
+		assertEquals(24, countGranules(index));
+		assertEquals(1, countGranules(index, "location = 'global_mosaic_2.png'"));
+	    }
+	}
+
+	private int countGranules(File index) throws IOException {
+		ShapefileDataStore store = new ShapefileDataStore(DataUtilities.fileToURL(index));
+		try {
+			return store.getFeatureSource().getCount(Query.ALL);
+		} finally {
+			store.dispose();
+		}
+	}
+	
+	private int countGranules(File index, String filter) throws Exception {
+		ShapefileDataStore store = new ShapefileDataStore(DataUtilities.fileToURL(index));
+		try {
+			return store.getFeatureSource().getCount(new Query(store.getTypeNames()[0], ECQL.toFilter(filter)));
+		} finally {
+			store.dispose();
+		}
+	}
 }
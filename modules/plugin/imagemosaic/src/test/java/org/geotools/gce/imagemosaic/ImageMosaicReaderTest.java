@@ -519,6 +519,63 @@ public class ImageMosaicReaderTest extends Assert{
                  	FileUtils.deleteDirectory( TestData.file(this, "watertemp1"));
                 }
         }
+
+        @Test
+        public void persistentIndex() throws IOException, ParseException {
+                final File workDir = new File(TestData.file(this, "."), "watertemp5");
+                if (!workDir.mkdir()) {
+                    FileUtils.deleteDirectory(workDir);
+                    assertTrue("Unable to create workdir:" + workDir, workDir.mkdir());
+                }
+                FileUtils.copyFile(TestData.file(this, "watertemp.zip"), new File(workDir, "watertemp.zip"));
+                TestData.unzipFile(this, "watertemp5/watertemp.zip");
+                final URL timeElevURL = TestData.url(this, "watertemp5");
+                FileWriter out = null;
+                try {
+                    out = new FileWriter(new File(workDir, "indexer.properties"));
+                    out.write("TimeAttribute=ingestion\n");
+                    out.write("ElevationAttribute=elevation\n");
+                    out.write("Schema=*the_geom:Polygon,location:String,ingestion:java.util.Date,elevation:Integer\n");
+                    out.write("PropertyCollectors=TimestampFileNameExtractorSPI[timeregex](ingestion),IntegerFileNameExtractorSPI[elevationregex](elevation)\n");
+                    out.write("PersistentIndex=true\n");
+                    out.flush();
+                } finally {
+                    IOUtils.closeQuietly(out);
+                }
+
+                final AbstractGridFormat format = TestUtils.getFormat(timeElevURL);
+                assertNotNull(format);
+                final ParameterValue<List> time = ImageMosaicFormat.TIME.createValue();
+                final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.sss'Z'");
+                sdf.setTimeZone(TimeZone.getTimeZone("GMT+0"));
+                time.setValue(Arrays.asList(sdf.parse("2008-11-01T00:00:00.000Z")));
+                final ParameterValue<List> elevation = ImageMosaicFormat.ELEVATION.createValue();
+                elevation.setValue(Arrays.asList(100.0));
+                final ParameterValue<Boolean> direct = ImageMosaicFormat.USE_JAI_IMAGEREAD.createValue();
+                direct.setValue(false);
+
+                // the first open harvests the granules and builds the index
+                ImageMosaicReader reader = TestUtils.getReader(timeElevURL, format);
+                assertEquals("true", reader.getMetadataValue("HAS_TIME_DOMAIN"));
+                assertEquals("0,100", reader.getMetadataValue("ELEVATION_DOMAIN"));
+                TestUtils.checkCoverage(reader, new GeneralParameterValue[] { time, elevation, direct }, "Persistent Index Test");
+                reader.dispose();
+                final File[] indexes = workDir.listFiles((FilenameFilter) FileFilterUtils.suffixFileFilter(".grx"));
+                assertEquals(1, indexes.length);
+
+                // the second one queries the existing index
+                final long lastModified = indexes[0].lastModified();
+                reader = TestUtils.getReader(timeElevURL, format);
+                assertEquals("0,100", reader.getMetadataValue("ELEVATION_DOMAIN"));
+                TestUtils.checkCoverage(reader, new GeneralParameterValue[] { time, elevation, direct }, "Persistent Index Test");
+                reader.dispose();
+                assertEquals(lastModified, indexes[0].lastModified());
+
+                // clean up
+                if (!INTERACTIVE){
+                 	FileUtils.deleteDirectory(workDir);
+                }
+        }
 	
 	@Test
 //    @Ignore	
@@ -0,0 +1,140 @@
+package org.geotools.gce.imagemosaic.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.gce.imagemosaic.PathType;
+import org.geotools.gce.imagemosaic.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class PackedRTreeGranuleCatalogTest {
+
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    private static final GeometryFactory GF = new GeometryFactory();
+
+    private File directory;
+
+    private File indexFile;
+
+    private SimpleFeatureType type;
+
+    private PackedRTreeGranuleCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("packed", "catalog");
+        directory.delete();
+        assertTrue(directory.mkdir());
+        indexFile = new File(directory, "granules" + PackedRTreeGranuleCatalog.INDEX_EXTENSION);
+
+        final File shapefile = new File(directory, "granules.shp");
+        type = DataUtilities.createType("granules", "the_geom:Polygon,location:String");
+        final ShapefileDataStore store = new ShapefileDataStore(DataUtilities
+                .fileToURL(shapefile));
+        store.createSchema(type);
+        store.dispose();
+
+        final Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(Utils.Prop.PATH_TYPE, PathType.ABSOLUTE);
+        params.put(Utils.Prop.LOCATION_ATTRIBUTE, "location");
+        params.put(Utils.Prop.PARENT_LOCATION, DataUtilities.fileToURL(directory).toString());
+        params.put(ShapefileDataStoreFactory.URLP.key, DataUtilities.fileToURL(shapefile));
+        catalog = new PackedRTreeGranuleCatalog(params, Utils.SHAPE_SPI, indexFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        catalog.dispose();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private List<SimpleFeature> granules(int first, int count) {
+        final List<SimpleFeature> granules = new ArrayList<SimpleFeature>();
+        for (int i = first; i < first + count; i++) {
+            final double x = i % 100;
+            final double y = i / 100;
+            granules.add(SimpleFeatureBuilder.build(type, new Object[] {
+                    GF.createPolygon(GF.createLinearRing(new Coordinate[] {
+                            new Coordinate(x, y), new Coordinate(x + 1, y),
+                            new Coordinate(x + 1, y + 1), new Coordinate(x, y + 1),
+                            new Coordinate(x, y) }), null), "granule" + i }, null));
+        }
+        return granules;
+    }
+
+    private PackedRTree openIndex() throws IOException {
+        final PackedRTree index = PackedRTree.open(indexFile);
+        assertTrue("Missing index " + indexFile, index != null);
+        return index;
+    }
+
+    @Test
+    public void testUpdates() throws IOException {
+        catalog.addGranules(granules(0, 10), Transaction.AUTO_COMMIT);
+        assertTrue(!indexFile.exists());
+        // the first query builds the index, matching no granule so that none is opened
+        assertEquals(0, catalog.getGranules(new Query("granules", Filter.EXCLUDE)).size());
+        assertEquals(10, openIndex().size());
+
+        // the index gets the granules of a transaction only when it commits
+        final Transaction transaction = new DefaultTransaction();
+        try {
+            catalog.addGranules(granules(10, 2), transaction);
+            assertEquals(10, openIndex().size());
+            transaction.rollback();
+            assertEquals(10, openIndex().size());
+
+            catalog.addGranules(granules(12, 3), transaction);
+            assertEquals(10, openIndex().size());
+            transaction.commit();
+            assertEquals(13, openIndex().size());
+            assertEquals(3, openIndex().getAppendedCount());
+        } finally {
+            transaction.close();
+        }
+
+        // the index is packed again once the appended granules exceed an eighth of it
+        catalog.addGranules(granules(100, 1100), Transaction.AUTO_COMMIT);
+        PackedRTree index = openIndex();
+        assertEquals(1113, index.size());
+        assertEquals(0, index.getAppendedCount());
+
+        // removals build it again out of the store
+        catalog.addGranules(granules(2000, 4), Transaction.AUTO_COMMIT);
+        assertEquals(4, openIndex().getAppendedCount());
+        final Filter filter = FF.or(FF.equals(FF.property("location"), FF.literal("granule12")),
+                FF.equals(FF.property("location"), FF.literal("granule2001")));
+        assertEquals(2, catalog.removeGranules(new Query("granules", filter)));
+        index = openIndex();
+        assertEquals(1115, index.size());
+        assertEquals(0, index.getAppendedCount());
+        assertEquals(0, catalog.getGranules(new Query("granules", filter)).size());
+    }
+}
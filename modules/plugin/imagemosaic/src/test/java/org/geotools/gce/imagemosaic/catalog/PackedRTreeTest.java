@@ -0,0 +1,199 @@
+package org.geotools.gce.imagemosaic.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class PackedRTreeTest {
+
+    private File directory;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("packed", "tree");
+        directory.delete();
+        assertTrue(directory.mkdir());
+        file = new File(directory, "tree.grx");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static byte[] record(int item) {
+        return ByteBuffer.allocate(4).putInt(item).array();
+    }
+
+    private static Set<Integer> search(PackedRTree tree, Envelope envelope) throws IOException {
+        final Set<Integer> items = new TreeSet<Integer>();
+        tree.search(envelope, new PackedRTree.RecordVisitor() {
+            public boolean visit(byte[] record) {
+                assertTrue("Visited twice", items.add(ByteBuffer.wrap(record).getInt()));
+                return true;
+            }
+        });
+        return items;
+    }
+
+    private static Set<Integer> scan(List<Envelope> envelopes, Envelope envelope) {
+        final Set<Integer> items = new TreeSet<Integer>();
+        for (int i = 0; i < envelopes.size(); i++) {
+            final Envelope env = envelopes.get(i);
+            if (envelope == null || env != null && envelope.intersects(env)) {
+                items.add(i);
+            }
+        }
+        return items;
+    }
+
+    private static Envelope randomEnvelope(Random random) {
+        final double x = random.nextDouble() * 1000;
+        final double y = random.nextDouble() * 500;
+        return new Envelope(x, x + random.nextDouble() * 20, y, y + random.nextDouble() * 20);
+    }
+
+    private PackedRTree build(List<Envelope> envelopes) throws IOException {
+        final PackedRTree.Builder builder = new PackedRTree.Builder(directory);
+        for (int i = 0; i < envelopes.size(); i++) {
+            builder.add(envelopes.get(i), record(i));
+        }
+        return builder.build(file);
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        // several levels of nodes, and a partial last node on each
+        final Random random = new Random(42);
+        final List<Envelope> envelopes = new ArrayList<Envelope>();
+        for (int i = 0; i < 5000; i++) {
+            envelopes.add(randomEnvelope(random));
+        }
+        final PackedRTree tree = build(envelopes);
+        assertEquals(5000, tree.size());
+        assertEquals(0, tree.getAppendedCount());
+        assertEquals(scan(envelopes, null), search(tree, null));
+        for (int i = 0; i < 100; i++) {
+            final Envelope envelope = randomEnvelope(random);
+            envelope.expandBy(random.nextDouble() * 50);
+            assertEquals(scan(envelopes, envelope), search(tree, envelope));
+        }
+
+        final Envelope bounds = new Envelope();
+        for (Envelope env : envelopes) {
+            bounds.expandToInclude(env);
+        }
+        assertEquals(bounds, tree.getBounds());
+        assertEquals(bounds, PackedRTree.open(file).getBounds());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        final PackedRTree tree = build(new ArrayList<Envelope>());
+        assertEquals(0, tree.size());
+        assertTrue(tree.getBounds().isNull());
+        assertTrue(search(tree, null).isEmpty());
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        final Random random = new Random(7);
+        final List<Envelope> envelopes = new ArrayList<Envelope>();
+        for (int i = 0; i < 300; i++) {
+            envelopes.add(randomEnvelope(random));
+        }
+        final PackedRTree tree = build(envelopes);
+
+        final List<Envelope> appended = new ArrayList<Envelope>();
+        final List<byte[]> records = new ArrayList<byte[]>();
+        for (int i = 300; i < 340; i++) {
+            final Envelope env = randomEnvelope(random);
+            envelopes.add(env);
+            appended.add(env);
+            records.add(record(i));
+        }
+        final PackedRTree updated = tree.append(appended, records);
+        assertEquals(340, updated.size());
+        assertEquals(40, updated.getAppendedCount());
+        // the previous snapshot is unaffected
+        assertEquals(300, tree.size());
+        assertEquals(scan(envelopes.subList(0, 300), null), search(tree, null));
+
+        // the appended entries survive a reopening
+        final PackedRTree reopened = PackedRTree.open(file);
+        assertEquals(340, reopened.size());
+        assertEquals(40, reopened.getAppendedCount());
+        for (int i = 0; i < 50; i++) {
+            final Envelope envelope = randomEnvelope(random);
+            envelope.expandBy(30);
+            assertEquals(scan(envelopes, envelope), search(updated, envelope));
+            assertEquals(scan(envelopes, envelope), search(reopened, envelope));
+        }
+
+        // and a repacking turns them into packed ones
+        final PackedRTree.Builder builder = new PackedRTree.Builder(directory);
+        reopened.copyTo(builder);
+        final PackedRTree repacked = builder.build(file);
+        assertEquals(340, repacked.size());
+        assertEquals(0, repacked.getAppendedCount());
+        assertEquals(scan(envelopes, null), search(repacked, null));
+        assertEquals(scan(envelopes, new Envelope(100, 400, 0, 250)), search(repacked,
+                new Envelope(100, 400, 0, 250)));
+    }
+
+    @Test
+    public void testNullEnvelopes() throws IOException {
+        final List<Envelope> envelopes = new ArrayList<Envelope>();
+        for (int i = 0; i < 40; i++) {
+            envelopes.add(i % 3 == 0 ? null : new Envelope(i, i + 1, 0, 1));
+        }
+        final PackedRTree tree = build(envelopes);
+        assertEquals(new Envelope(1, 39, 0, 1), tree.getBounds());
+
+        final List<Envelope> appended = new ArrayList<Envelope>();
+        final List<byte[]> records = new ArrayList<byte[]>();
+        appended.add(null);
+        appended.add(new Envelope());
+        for (int i = 40; i < 42; i++) {
+            envelopes.add(null);
+            records.add(record(i));
+        }
+        final PackedRTree updated = PackedRTree.open(file).append(appended, records);
+        final PackedRTree reopened = PackedRTree.open(file);
+
+        // the entries without envelope are only found when searching everything
+        for (PackedRTree t : new PackedRTree[] { updated, reopened }) {
+            assertEquals(42, t.size());
+            assertEquals(scan(envelopes, null), search(t, null));
+            assertEquals(scan(envelopes, new Envelope(-100, 100, -100, 100)), search(t,
+                    new Envelope(-100, 100, -100, 100)));
+            assertEquals(new Envelope(1, 39, 0, 1), t.getBounds());
+        }
+
+        // a tree of entries without envelope
+        final List<Envelope> nulls = new ArrayList<Envelope>();
+        nulls.add(null);
+        nulls.add(null);
+        final PackedRTree empty = build(nulls);
+        assertTrue(empty.getBounds().isNull());
+        assertEquals(2, search(empty, null).size());
+        assertTrue(search(empty, new Envelope(-1e9, 1e9, -1e9, 1e9)).isEmpty());
+    }
+}
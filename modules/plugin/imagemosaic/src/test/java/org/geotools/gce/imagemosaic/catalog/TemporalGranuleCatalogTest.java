@@ -0,0 +1,127 @@
+package org.geotools.gce.imagemosaic.catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.DefaultTransaction;
+import org.geotools.data.Query;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.gce.imagemosaic.PathType;
+import org.geotools.gce.imagemosaic.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class TemporalGranuleCatalogTest {
+
+    private static final GeometryFactory GF = new GeometryFactory();
+
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private File directory;
+
+    private SimpleFeatureType type;
+
+    private TemporalGranuleCatalog catalog;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("temporal", "catalog");
+        directory.delete();
+        assertTrue(directory.mkdir());
+
+        final File shapefile = new File(directory, "granules.shp");
+        type = DataUtilities.createType("granules",
+                "the_geom:Polygon,location:String,time:java.util.Date");
+        final ShapefileDataStore store = new ShapefileDataStore(DataUtilities
+                .fileToURL(shapefile));
+        store.createSchema(type);
+        store.dispose();
+
+        final Map<String, Serializable> params = new HashMap<String, Serializable>();
+        params.put(Utils.Prop.PATH_TYPE, PathType.ABSOLUTE);
+        params.put(Utils.Prop.LOCATION_ATTRIBUTE, "location");
+        params.put(Utils.Prop.PARENT_LOCATION, DataUtilities.fileToURL(directory).toString());
+        params.put(ShapefileDataStoreFactory.URLP.key, DataUtilities.fileToURL(shapefile));
+        params.put(ShapefileDataStoreFactory.DBFTIMEZONE.key, TimeZone.getTimeZone("UTC"));
+        catalog = new TemporalGranuleCatalog(params, new GTDataStoreGranuleCatalog(params, false,
+                Utils.SHAPE_SPI), "time");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        catalog.dispose();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * Granules a day apart
+     */
+    private List<SimpleFeature> granules(int first, int count) {
+        final List<SimpleFeature> granules = new ArrayList<SimpleFeature>();
+        for (int i = first; i < first + count; i++) {
+            granules.add(SimpleFeatureBuilder.build(type, new Object[] {
+                    GF.createPolygon(GF.createLinearRing(new Coordinate[] {
+                            new Coordinate(i, 0), new Coordinate(i + 1, 0),
+                            new Coordinate(i + 1, 1), new Coordinate(i, 1),
+                            new Coordinate(i, 0) }), null), "granule" + i,
+                    new Date(i * DAY) }, null));
+        }
+        return granules;
+    }
+
+    /**
+     * @return the number of distinct times, as listed out of the index
+     */
+    private int countTimes() throws IOException {
+        final UniqueVisitor visitor = new UniqueVisitor("time");
+        catalog.computeAggregateFunction(new Query("granules"), visitor);
+        return visitor.getResult().toSet().size();
+    }
+
+    @Test
+    public void testTransactions() throws IOException {
+        catalog.addGranules(granules(0, 3), Transaction.AUTO_COMMIT);
+        assertEquals(3, countTimes());
+
+        // the index gets the granules of a transaction only when it commits
+        final Transaction transaction = new DefaultTransaction();
+        try {
+            catalog.addGranules(granules(3, 2), transaction);
+            assertEquals(3, countTimes());
+            transaction.rollback();
+            assertEquals(3, countTimes());
+
+            catalog.addGranules(granules(5, 2), transaction);
+            assertEquals(3, countTimes());
+            transaction.commit();
+            assertEquals(5, countTimes());
+        } finally {
+            transaction.close();
+        }
+
+        catalog.addGranules(granules(7, 1), Transaction.AUTO_COMMIT);
+        assertEquals(6, countTimes());
+    }
+}
@@ -0,0 +1,103 @@
+package org.geotools.gce.imagemosaic.catalog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+public class TemporalIndexTest {
+
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    private static List<Integer> search(TemporalIndex<Integer> index, long minStart,
+            long maxStart, long minEnd, long maxEnd, Envelope envelope) {
+        final List<Integer> result = new ArrayList<Integer>();
+        index.search(minStart, maxStart, minEnd, maxEnd, envelope,
+                new TemporalIndex.Visitor<Integer>() {
+                    public boolean visit(Integer item) {
+                        result.add(item);
+                        return true;
+                    }
+                });
+        return result;
+    }
+
+    @Test
+    public void testSearch() {
+        final List<TemporalIndex.Entry<Integer>> entries = new ArrayList<TemporalIndex.Entry<Integer>>();
+        // one granule per hour, spanning two hours, the odd ones on the east
+        for (int i = 99; i >= 0; i--) {
+            final Envelope envelope = i % 2 == 0 ? new Envelope(0, 10, 0, 10) : new Envelope(20,
+                    30, 0, 10);
+            entries.add(new TemporalIndex.Entry<Integer>(i * 3600000L, (i + 2) * 3600000L,
+                    envelope, i));
+        }
+        final TemporalIndex<Integer> index = TemporalIndex.build(entries.subList(0, 50),
+                Collections.<Integer> emptyList()).merge(entries.subList(50, 100),
+                Collections.singletonList(-1));
+        assertEquals(101, index.size());
+        assertEquals(100, index.getDistinctCount());
+        assertEquals(Integer.valueOf(0), index.first());
+        assertEquals(Integer.valueOf(99), index.last());
+
+        // granules overlapping 10:30
+        final long time = 10 * 3600000L + 1800000L;
+        assertEquals(Arrays.asList(9, 10), search(index, Long.MIN_VALUE, time, time,
+                Long.MAX_VALUE, null));
+        assertEquals(Arrays.asList(10), search(index, Long.MIN_VALUE, time, time,
+                Long.MAX_VALUE, new Envelope(0, 5, 0, 5)));
+        // starting at 50:00
+        assertEquals(Arrays.asList(50), search(index, 50 * 3600000L, 50 * 3600000L,
+                Long.MIN_VALUE, Long.MAX_VALUE, null));
+        assertEquals(Collections.emptyList(), search(index, 200 * 3600000L, Long.MAX_VALUE,
+                Long.MIN_VALUE, Long.MAX_VALUE, null));
+    }
+
+    @Test
+    public void testTimeConstraints() {
+        final Date date = new Date(1000);
+        final Filter instant = FF.equal(FF.property("time"), FF.literal(date), true);
+        List<long[]> intervals = TemporalGranuleCatalog.TimeConstraints.extract(instant, "time",
+                "time");
+        assertEquals(1, intervals.size());
+        assertArrayEquals(new long[] { 1000, 1000, Long.MIN_VALUE, Long.MAX_VALUE },
+                intervals.get(0));
+
+        // the filter built for time ranges
+        final Filter range = FF.and(FF.lessOrEqual(FF.property("start"), FF.literal(date)),
+                FF.greaterOrEqual(FF.property("end"), FF.literal(date)));
+        intervals = TemporalGranuleCatalog.TimeConstraints.extract(FF.and(FF.bbox("the_geom", 0,
+                0, 1, 1, null), range), "start", "end");
+        assertEquals(1, intervals.size());
+        assertArrayEquals(new long[] { Long.MIN_VALUE, 1000, 1000, Long.MAX_VALUE },
+                intervals.get(0));
+
+        // reversed operands and ORed values
+        final Filter reversed = FF.or(FF.greaterOrEqual(FF.literal(date), FF.property("time")),
+                FF.between(FF.property("time"), FF.literal(new Date(2000)), FF.literal(new Date(
+                        3000))));
+        intervals = TemporalGranuleCatalog.TimeConstraints.extract(reversed, "time", "time");
+        assertEquals(2, intervals.size());
+        assertArrayEquals(new long[] { Long.MIN_VALUE, 1000, Long.MIN_VALUE, Long.MAX_VALUE },
+                intervals.get(0));
+        assertArrayEquals(new long[] { 2000, 3000, Long.MIN_VALUE, Long.MAX_VALUE },
+                intervals.get(1));
+
+        // an OR branch without time constraints lets everything through
+        assertNull(TemporalGranuleCatalog.TimeConstraints.extract(FF.or(instant, FF.equal(FF
+                .property("elevation"), FF.literal(10), true)), "time", "time"));
+        assertNull(TemporalGranuleCatalog.TimeConstraints.extract(Filter.INCLUDE, "time", "time"));
+    }
+}
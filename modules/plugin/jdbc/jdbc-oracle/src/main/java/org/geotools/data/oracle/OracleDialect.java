@@ -53,6 +53,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
 import org.opengis.referencing.cs.CoordinateSystem;
 import org.opengis.referencing.cs.CoordinateSystemAxis;
 
@@ -704,6 +705,21 @@ public class OracleDialect extends PreparedStatementSQLDialect {
         return null;
     }
     
+    @Override
+    public void encodeGeometryColumnSnapped(GeometryDescriptor gatt, String prefix, int srid,
+            Hints hints, StringBuffer sql, double cellSize) {
+        // on geodetic data the tolerance is expressed in meters, not in the native units
+        if (gatt.getCoordinateReferenceSystem() instanceof GeographicCRS) {
+            super.encodeGeometryColumnSnapped(gatt, prefix, srid, hints, sql, cellSize);
+            return;
+        }
+        
+        // consecutive vertices closer than the tolerance are merged
+        sql.append("SDO_UTIL.REMOVE_DUPLICATE_VERTICES(");
+        encodeColumnName(prefix, gatt.getLocalName(), sql);
+        sql.append(", ").append(cellSize).append(")");
+    }
+    
     @Override
     public void encodeGeometryEnvelope(String tableName, String geometryColumn, StringBuffer sql) {
         sql.append( "SDO_AGGR_MBR(");
@@ -779,6 +795,41 @@ public class OracleDialect extends PreparedStatementSQLDialect {
         }
         return result;
     }
+    
+    @Override
+    public Long getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException {
+        // the row count gathered by DBMS_STATS, null if the table has never been analyzed
+        String sql;
+        if(schema != null && !"".equals(schema)) {
+            sql = "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = ? AND TABLE_NAME = ?";
+        } else {
+            sql = "SELECT NUM_ROWS FROM USER_TABLES WHERE TABLE_NAME = ?";
+        }
+        LOGGER.log(Level.FINE, "Reading the estimated row count: {0}", sql);
+        
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = cx.prepareStatement(sql);
+            int i = 1;
+            if(schema != null && !"".equals(schema)) {
+                ps.setString(i++, schema);
+            }
+            ps.setString(i, featureType.getTypeName());
+            rs = ps.executeQuery();
+            if(rs.next()) {
+                Object count = rs.getObject(1);
+                if(count != null) {
+                    return ((Number) count).longValue();
+                }
+            }
+            return null;
+        } finally {
+            dataStore.closeSafe(rs);
+            dataStore.closeSafe(ps);
+        }
+    }
 
     @Override
     public void postCreateTable(String schemaName,
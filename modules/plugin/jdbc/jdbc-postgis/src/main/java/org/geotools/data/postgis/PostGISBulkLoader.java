@@ -0,0 +1,579 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.postgis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
+import org.geotools.data.jdbc.datasource.UnWrapper;
+import org.geotools.jdbc.BulkLoader;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PrimaryKey;
+import org.geotools.jdbc.PrimaryKeyColumn;
+import org.geotools.jdbc.SQLDialect;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Loads features in a PostGIS table with <code>COPY ... FROM STDIN WITH BINARY</code>, which
+ * is much faster than running INSERT statements, even in batches.
+ * <p>
+ * The rows are streamed in the binary COPY format: geometries as EWKB, all the other values in
+ * the native binary encoding of their column type. Tables having columns of types that cannot
+ * be encoded are not supported, see {@link #isSupported()}, and geography columns are among
+ * them.
+ * </p>
+ * <p>
+ * This class is created by {@link PostGISDialect} once for all the chunks of features added to a
+ * feature store under a transaction having the {@link JDBCDataStore#BULK_LOAD} property set, so
+ * that the column encoders are set up a single time, but can also be used directly:
+ * <pre>
+ * PostGISBulkLoader loader = new PostGISBulkLoader(dataStore, featureType, key, cx);
+ * if (loader.isSupported()) {
+ *     loader.load(features, keyValues);
+ * }
+ * </pre>
+ * </p>
+ *
+ * @source $URL$
+ */
+public class PostGISBulkLoader implements BulkLoader {
+
+    /**
+     * The binary COPY signature, followed by the flags and the header extension length
+     */
+    static final byte[] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF,
+            '\r', '\n', 0 };
+
+    /**
+     * Size of the buffer sent to the server at once
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Microseconds between the Java and the PostgreSQL epochs (1970-01-01 and 2000-01-01)
+     */
+    static final long EPOCH_OFFSET_MICROS = 946684800000000L;
+
+    static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+    static final Set<String> TEMPORAL_TYPES = new HashSet<String>() {
+        {
+            add("date");
+            add("time");
+            add("timestamp");
+            add("timestamptz");
+        }
+    };
+
+    /**
+     * Writes the binary representation of the values of a column
+     */
+    static abstract class ColumnEncoder {
+        /**
+         * Writes the length and the bytes of a non null value
+         */
+        abstract void write(Object value, DataOutputStream out) throws IOException;
+    }
+
+    JDBCDataStore dataStore;
+
+    SimpleFeatureType featureType;
+
+    PrimaryKey key;
+
+    Connection cx;
+
+    /** the columns loaded, primary key ones first */
+    List<String> columns = new ArrayList<String>();
+
+    /** the attributes loaded, null for the primary key columns */
+    List<AttributeDescriptor> attributes = new ArrayList<AttributeDescriptor>();
+
+    List<ColumnEncoder> encoders = new ArrayList<ColumnEncoder>();
+
+    boolean supported = true;
+
+    public PostGISBulkLoader(JDBCDataStore dataStore, SimpleFeatureType featureType,
+            PrimaryKey key, Connection cx) throws SQLException {
+        this.dataStore = dataStore;
+        this.featureType = featureType;
+        this.key = key;
+        this.cx = cx;
+
+        boolean integerDateTimes = false;
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            if (TEMPORAL_TYPES.contains(att.getUserData().get(JDBCDataStore.JDBC_NATIVE_TYPENAME))) {
+                integerDateTimes = isIntegerDateTimes();
+                break;
+            }
+        }
+
+        Set<String> keyColumns = new HashSet<String>();
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            keyColumns.add(col.getName());
+            columns.add(col.getName());
+            attributes.add(null);
+            encoders.add(getEncoder(col.getType()));
+        }
+        for (AttributeDescriptor att : featureType.getAttributeDescriptors()) {
+            if (keyColumns.contains(att.getLocalName())) {
+                // exposed primary key column, already loaded
+                continue;
+            }
+            columns.add(att.getLocalName());
+            attributes.add(att);
+            encoders.add(getEncoder(att, integerDateTimes));
+        }
+        for (ColumnEncoder encoder : encoders) {
+            if (encoder == null) {
+                supported = false;
+            }
+        }
+    }
+
+    /**
+     * Returns true if all the columns of the table can be loaded
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Loads the features in a single COPY statement, using the primary key values provided
+     *
+     * @param features the features, whose attribute values are read by name
+     * @param keyValues the primary key values of each feature
+     * @return the number of rows loaded
+     */
+    public long load(List<SimpleFeature> features, List<List<Object>> keyValues)
+            throws SQLException, IOException {
+        if (!supported) {
+            throw new IllegalStateException("The table " + featureType.getTypeName()
+                    + " has columns that cannot be bulk loaded");
+        }
+
+        String sql = getCopySQL();
+        dataStore.getLogger().fine(sql);
+        CopyIn copy = unwrapConnection(cx).getCopyAPI().copyIn(sql);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE + 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+
+            int keyCount = key.getColumns().size();
+            for (int i = 0; i < features.size(); i++) {
+                SimpleFeature feature = features.get(i);
+                List<Object> keys = keyValues.get(i);
+                out.writeShort(columns.size());
+                for (int c = 0; c < columns.size(); c++) {
+                    Object value = c < keyCount ? keys.get(c) : feature.getAttribute(columns
+                            .get(c));
+                    if (value == null) {
+                        out.writeInt(-1);
+                    } else {
+                        encoders.get(c).write(value, out);
+                    }
+                }
+                if (bytes.size() >= BUFFER_SIZE) {
+                    out.flush();
+                    copy.writeToCopy(bytes.toByteArray(), 0, bytes.size());
+                    bytes.reset();
+                }
+            }
+            out.writeShort(-1);
+            out.flush();
+            copy.writeToCopy(bytes.toByteArray(), 0, bytes.size());
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                try {
+                    copy.cancelCopy();
+                } catch (SQLException e) {
+                    dataStore.getLogger().fine("Failed to cancel the COPY: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    String getCopySQL() {
+        SQLDialect dialect = dataStore.getSQLDialect();
+        StringBuffer sql = new StringBuffer("COPY ");
+        if (dataStore.getDatabaseSchema() != null) {
+            dialect.encodeSchemaName(dataStore.getDatabaseSchema(), sql);
+            sql.append(".");
+        }
+        dialect.encodeTableName(featureType.getTypeName(), sql);
+        sql.append(" (");
+        for (String column : columns) {
+            dialect.encodeColumnName(null, column, sql);
+            sql.append(",");
+        }
+        sql.setLength(sql.length() - 1);
+        sql.append(") FROM STDIN WITH BINARY");
+        return sql.toString();
+    }
+
+    boolean isIntegerDateTimes() throws SQLException {
+        Statement st = cx.createStatement();
+        try {
+            ResultSet rs = st.executeQuery("SHOW integer_datetimes");
+            try {
+                return rs.next() && "on".equalsIgnoreCase(rs.getString(1));
+            } finally {
+                dataStore.closeSafe(rs);
+            }
+        } finally {
+            dataStore.closeSafe(st);
+        }
+    }
+
+    PGConnection unwrapConnection(Connection cx) throws SQLException {
+        if (cx instanceof PGConnection) {
+            return (PGConnection) cx;
+        }
+        try {
+            UnWrapper uw = DataSourceFinder.getUnWrapper(cx);
+            if (uw != null) {
+                Connection uwcx = uw.unwrap(cx);
+                if (uwcx instanceof PGConnection) {
+                    return (PGConnection) uwcx;
+                }
+            }
+        } catch (IOException e) {
+            throw (SQLException) new SQLException(
+                    "Could not obtain the native PostgreSQL connection").initCause(e);
+        }
+        throw new SQLException("Could not obtain the native PostgreSQL connection for "
+                + cx.getClass());
+    }
+
+    /**
+     * Returns the encoder for an attribute, based on its native type, or null if not supported
+     */
+    ColumnEncoder getEncoder(AttributeDescriptor att, boolean integerDateTimes) {
+        String type = (String) att.getUserData().get(JDBCDataStore.JDBC_NATIVE_TYPENAME);
+        if (att instanceof GeometryDescriptor) {
+            if (!"geometry".equalsIgnoreCase(type)) {
+                // geography and the like
+                return null;
+            }
+            Integer srid = (Integer) att.getUserData().get(JDBCDataStore.JDBC_NATIVE_SRID);
+            return new GeometryEncoder(srid != null ? srid : 0);
+        }
+        if (type == null) {
+            return getEncoder(att.getType().getBinding());
+        }
+        type = type.toLowerCase();
+        if (TEMPORAL_TYPES.contains(type) && !integerDateTimes) {
+            return null;
+        }
+        if ("bool".equals(type)) {
+            return BOOLEAN;
+        } else if ("int2".equals(type)) {
+            return SHORT;
+        } else if ("int4".equals(type) || "serial".equals(type)) {
+            return INTEGER;
+        } else if ("int8".equals(type) || "bigserial".equals(type)) {
+            return LONG;
+        } else if ("float4".equals(type)) {
+            return FLOAT;
+        } else if ("float8".equals(type)) {
+            return DOUBLE;
+        } else if ("numeric".equals(type)) {
+            return NUMERIC;
+        } else if ("text".equals(type) || "varchar".equals(type) || "bpchar".equals(type)) {
+            return TEXT;
+        } else if ("uuid".equals(type)) {
+            return UUID_ENCODER;
+        } else if ("bytea".equals(type)) {
+            return BYTES;
+        } else if ("date".equals(type)) {
+            return DATE;
+        } else if ("time".equals(type)) {
+            return TIME;
+        } else if ("timestamp".equals(type)) {
+            return TIMESTAMP;
+        } else if ("timestamptz".equals(type)) {
+            return TIMESTAMPTZ;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the encoder for a primary key column, based on its Java type
+     */
+    ColumnEncoder getEncoder(Class binding) {
+        if (Short.class.equals(binding)) {
+            return SHORT;
+        } else if (Integer.class.equals(binding)) {
+            return INTEGER;
+        } else if (Long.class.equals(binding)) {
+            return LONG;
+        } else if (String.class.equals(binding)) {
+            return TEXT;
+        } else if (UUID.class.equals(binding)) {
+            return UUID_ENCODER;
+        }
+        return null;
+    }
+
+    static <T> T convert(Object value, Class<T> target) throws IOException {
+        T converted = Converters.convert(value, target);
+        if (converted == null) {
+            throw new IOException("Cannot convert " + value + " to " + target.getSimpleName());
+        }
+        return converted;
+    }
+
+    /**
+     * Returns the local time of a date in microseconds since the PostgreSQL epoch, as the
+     * driver sends dates and timestamps without time zone in the local time zone
+     */
+    static long localMicros(Date date) {
+        long millis = date.getTime();
+        return (millis + TimeZone.getDefault().getOffset(millis)) * 1000 - EPOCH_OFFSET_MICROS;
+    }
+
+    static int subMillisMicros(Date date) {
+        return date instanceof java.sql.Timestamp ?
+                (((java.sql.Timestamp) date).getNanos() % 1000000) / 1000 : 0;
+    }
+
+    static final ColumnEncoder BOOLEAN = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            out.writeInt(1);
+            out.writeByte(convert(value, Boolean.class) ? 1 : 0);
+        }
+    };
+
+    static final ColumnEncoder SHORT = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            out.writeInt(2);
+            out.writeShort(convert(value, Short.class));
+        }
+    };
+
+    static final ColumnEncoder INTEGER = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            out.writeInt(4);
+            out.writeInt(convert(value, Integer.class));
+        }
+    };
+
+    static final ColumnEncoder LONG = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            out.writeInt(8);
+            out.writeLong(convert(value, Long.class));
+        }
+    };
+
+    static final ColumnEncoder FLOAT = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            out.writeInt(4);
+            out.writeFloat(convert(value, Float.class));
+        }
+    };
+
+    static final ColumnEncoder DOUBLE = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            out.writeInt(8);
+            out.writeDouble(convert(value, Double.class));
+        }
+    };
+
+    static final ColumnEncoder TEXT = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            byte[] bytes = convert(value, String.class).getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    };
+
+    static final ColumnEncoder BYTES = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            byte[] bytes = convert(value, byte[].class);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    };
+
+    static final ColumnEncoder UUID_ENCODER = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            UUID uuid = convert(value, UUID.class);
+            out.writeInt(16);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    };
+
+    static final ColumnEncoder DATE = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            long micros = localMicros(convert(value, java.sql.Date.class));
+            long millis = micros / 1000;
+            out.writeInt(4);
+            out.writeInt((int) Math.floor((double) millis / MILLIS_PER_DAY));
+        }
+    };
+
+    static final ColumnEncoder TIME = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            long micros = localMicros(convert(value, java.sql.Time.class));
+            long microsPerDay = MILLIS_PER_DAY * 1000;
+            out.writeInt(8);
+            out.writeLong(((micros % microsPerDay) + microsPerDay) % microsPerDay);
+        }
+    };
+
+    static final ColumnEncoder TIMESTAMP = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            java.sql.Timestamp ts = convert(value, java.sql.Timestamp.class);
+            out.writeInt(8);
+            out.writeLong(localMicros(ts) + subMillisMicros(ts));
+        }
+    };
+
+    static final ColumnEncoder TIMESTAMPTZ = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            java.sql.Timestamp ts = convert(value, java.sql.Timestamp.class);
+            out.writeInt(8);
+            out.writeLong(ts.getTime() * 1000 - EPOCH_OFFSET_MICROS + subMillisMicros(ts));
+        }
+    };
+
+    /**
+     * Encodes numbers in the PostgreSQL numeric format: a sequence of base 10000 digits,
+     * preceded by their count, the weight of the first digit, the sign and the display scale
+     */
+    static final ColumnEncoder NUMERIC = new ColumnEncoder() {
+        void write(Object value, DataOutputStream out) throws IOException {
+            BigDecimal number = convert(value, BigDecimal.class);
+            int sign = number.signum() < 0 ? 0x4000 : 0;
+            number = number.abs();
+            int scale = Math.max(number.scale(), 0);
+            String unscaled = number.setScale(scale).unscaledValue().toString();
+            if (unscaled.length() < scale) {
+                unscaled = pad(scale - unscaled.length()) + unscaled;
+            }
+
+            // align both the integer and the fractional parts to groups of four digits
+            String integer = unscaled.substring(0, unscaled.length() - scale);
+            String fraction = unscaled.substring(unscaled.length() - scale);
+            integer = pad((4 - integer.length() % 4) % 4) + integer;
+            fraction = fraction + pad((4 - fraction.length() % 4) % 4);
+            String all = integer + fraction;
+
+            List<Short> digits = new ArrayList<Short>();
+            for (int i = 0; i < all.length(); i += 4) {
+                digits.add(Short.valueOf(all.substring(i, i + 4)));
+            }
+            int weight = integer.length() / 4 - 1;
+            while (!digits.isEmpty() && digits.get(0) == 0) {
+                digits.remove(0);
+                weight--;
+            }
+            while (!digits.isEmpty() && digits.get(digits.size() - 1) == 0) {
+                digits.remove(digits.size() - 1);
+            }
+            if (digits.isEmpty()) {
+                weight = 0;
+                sign = 0;
+            }
+
+            out.writeInt(8 + digits.size() * 2);
+            out.writeShort(digits.size());
+            out.writeShort(weight);
+            out.writeShort(sign);
+            out.writeShort(scale);
+            for (Short digit : digits) {
+                out.writeShort(digit);
+            }
+        }
+
+        String pad(int zeros) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < zeros; i++) {
+                sb.append('0');
+            }
+            return sb.toString();
+        }
+    };
+
+    /**
+     * Encodes geometries as EWKB, with the SRID of the column
+     */
+    static class GeometryEncoder extends ColumnEncoder {
+
+        int srid;
+
+        WKBWriter writer2D = new WKBWriter(2, true);
+
+        WKBWriter writer3D = new WKBWriter(3, true);
+
+        GeometryEncoder(int srid) {
+            this.srid = srid;
+        }
+
+        void write(Object value, DataOutputStream out) throws IOException {
+            Geometry g = (Geometry) value;
+            if (g.isEmpty()) {
+                // same as the regular inserts, empty geometries are stored as nulls
+                out.writeInt(-1);
+                return;
+            }
+            if (g instanceof LinearRing) {
+                // postgis does not handle linear rings, convert to just a line string
+                g = g.getFactory().createLineString(((LinearRing) g).getCoordinateSequence());
+            } else if (g.getSRID() != srid) {
+                g = (Geometry) g.clone();
+            }
+            g.setSRID(srid);
+
+            Coordinate first = g.getCoordinate();
+            WKBWriter writer = first != null && !Double.isNaN(first.z) ? writer3D : writer2D;
+            byte[] bytes = writer.write(g);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
@@ -37,8 +37,11 @@ import org.geotools.data.jdbc.FilterToSQL;
 import org.geotools.factory.Hints;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.jdbc.BasicSQLDialect;
+import org.geotools.jdbc.BulkLoader;
 import org.geotools.jdbc.ColumnMetadata;
 import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.PrimaryKey;
+import org.geotools.jdbc.PrimaryKeyColumn;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Version;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -197,6 +200,19 @@ public class PostGISDialect extends BasicSQLDialect {
         return (Geometry) reader.read(rs, column);
     }
 
+    @Override
+    public Object readGeometryValue(GeometryDescriptor descriptor, ResultSet rs, int column,
+            GeometryFactory factory, Connection cx) throws IOException, SQLException {
+        // just grab the encoded bytes, decoding can happen on another thread
+        return rs.getBytes(column);
+    }
+
+    @Override
+    public Geometry decodeGeometryValue(GeometryDescriptor descriptor, Object value,
+            GeometryFactory factory) throws IOException {
+        return (Geometry) getWKBReader(factory).read((byte[]) value);
+    }
+
     private WKBAttributeIO getWKBReader(GeometryFactory factory) {
         WKBAttributeIO reader = wkbReader.get();
         if(reader == null) {
@@ -217,6 +233,17 @@ public class PostGISDialect extends BasicSQLDialect {
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, String prefix, int srid, Hints hints, 
         StringBuffer sql) {
+        encodeGeometryColumn(gatt, prefix, hints, sql, 0);
+    }
+
+    @Override
+    public void encodeGeometryColumnSnapped(GeometryDescriptor gatt, String prefix, int srid,
+            Hints hints, StringBuffer sql, double cellSize) {
+        encodeGeometryColumn(gatt, prefix, hints, sql, cellSize);
+    }
+
+    void encodeGeometryColumn(GeometryDescriptor gatt, String prefix, Hints hints,
+            StringBuffer sql, double snapSize) {
     
         boolean geography = "geography".equals(gatt.getUserData().get(
                 JDBCDataStore.JDBC_NATIVE_TYPENAME));
@@ -232,15 +259,83 @@ public class PostGISDialect extends BasicSQLDialect {
 
             if (force2D) {
                 sql.append("encode(ST_AsBinary(ST_Force_2D(");
-                encodeColumnName(prefix, gatt.getLocalName(), sql);
+                encodeSnappedGeometry(prefix, gatt.getLocalName(), snapSize, sql);
                 sql.append(")),'base64')");
             } else {
                 sql.append("encode(ST_AsEWKB(");
-                encodeColumnName(prefix, gatt.getLocalName(), sql);
+                encodeSnappedGeometry(prefix, gatt.getLocalName(), snapSize, sql);
                 sql.append("),'base64')");
             }
         }
     }
+    
+    /**
+     * Snaps the geometry to a grid of the specified size (ST_SnapToGrid also drops the
+     * consecutive vertices falling in the same cell). Geometries thinner than a cell are left
+     * alone, they would collapse
+     */
+    void encodeSnappedGeometry(String prefix, String column, double snapSize, StringBuffer sql) {
+        if (snapSize <= 0) {
+            encodeColumnName(prefix, column, sql);
+            return;
+        }
+        
+        sql.append("CASE WHEN ");
+        encodeSpan("X", prefix, column, sql);
+        sql.append(" < ").append(snapSize).append(" OR ");
+        encodeSpan("Y", prefix, column, sql);
+        sql.append(" < ").append(snapSize).append(" THEN ");
+        encodeColumnName(prefix, column, sql);
+        sql.append(" ELSE ST_SnapToGrid(");
+        encodeColumnName(prefix, column, sql);
+        sql.append(", ").append(snapSize).append(") END");
+    }
+    
+    void encodeSpan(String axis, String prefix, String column, StringBuffer sql) {
+        sql.append("(ST_").append(axis).append("Max(");
+        encodeColumnName(prefix, column, sql);
+        sql.append(") - ST_").append(axis).append("Min(");
+        encodeColumnName(prefix, column, sql);
+        sql.append("))");
+    }
+    
+    @Override
+    public void encodeScreenMapDistinct(GeometryDescriptor gatt, PrimaryKey key, double spanX,
+            double spanY, StringBuffer sql) {
+        // we need a key to tell apart the features larger than a pixel, and bounding box
+        // functions, which are not available on geography
+        if (key == null || key.getColumns().isEmpty() || "geography".equals(
+                gatt.getUserData().get(JDBCDataStore.JDBC_NATIVE_TYPENAME))) {
+            return;
+        }
+        String column = gatt.getLocalName();
+        
+        // sub pixel features are keyed by the pixel holding their bbox center, the others
+        // by their primary key
+        sql.append("DISTINCT ON (CASE WHEN ");
+        encodeSpan("X", null, column, sql);
+        sql.append(" < ").append(spanX).append(" AND ");
+        encodeSpan("Y", null, column, sql);
+        sql.append(" < ").append(spanY).append(" THEN ");
+        encodePixelOrdinate("X", column, spanX, sql);
+        sql.append(" || ':' || ");
+        encodePixelOrdinate("Y", column, spanY, sql);
+        sql.append(" ELSE '#'");
+        for (PrimaryKeyColumn col : key.getColumns()) {
+            sql.append(" || ':' || ");
+            encodeColumnName(null, col.getName(), sql);
+            sql.append("::text");
+        }
+        sql.append(" END) ");
+    }
+    
+    void encodePixelOrdinate(String axis, String column, double span, StringBuffer sql) {
+        sql.append("floor((ST_").append(axis).append("Min(");
+        encodeColumnName(null, column, sql);
+        sql.append(") + ST_").append(axis).append("Max(");
+        encodeColumnName(null, column, sql);
+        sql.append(")) / ").append(2 * span).append(")::text");
+    }
 
     @Override
     public void encodeGeometryEnvelope(String tableName, String geometryColumn,
@@ -312,6 +407,39 @@ public class PostGISDialect extends BasicSQLDialect {
         } 
         return result;
     }
+    
+    @Override
+    public Long getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException {
+        // the row estimate the planner keeps up to date on VACUUM and ANALYZE
+        StringBuffer table = new StringBuffer();
+        if (schema != null && !"".equals(schema)) {
+            encodeSchemaName(schema, table);
+            table.append(".");
+        }
+        encodeTableName(featureType.getTypeName(), table);
+        String sql = "SELECT reltuples::bigint FROM pg_class WHERE oid = '"
+                + table.toString().replace("'", "''") + "'::regclass";
+        LOGGER.log(Level.FINE, "Reading the estimated row count: {0}", sql);
+
+        Statement st = null;
+        ResultSet rs = null;
+        try {
+            st = cx.createStatement();
+            rs = st.executeQuery(sql);
+            if (rs.next()) {
+                long count = rs.getLong(1);
+                // tables never analyzed report 0 (or -1 on recent releases)
+                if (count > 0) {
+                    return count;
+                }
+            }
+            return null;
+        } finally {
+            dataStore.closeSafe(rs);
+            dataStore.closeSafe(st);
+        }
+    }
 
     @Override
     public Envelope decodeGeometryEnvelope(ResultSet rs, int column,
@@ -559,11 +687,54 @@ public class PostGISDialect extends BasicSQLDialect {
         return null;
     }
 
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        Statement st = cx.createStatement();
+        try {
+            String sql = "SELECT nextval('" + sequenceName + "') FROM generate_series(1, " 
+                + count + ")";
+
+            dataStore.getLogger().fine(sql);
+            ResultSet rs = st.executeQuery(sql);
+            try {
+                List<Object> values = new ArrayList<Object>(count);
+                while (rs.next()) {
+                    values.add(rs.getLong(1));
+                }
+                return values;
+            } finally {
+                dataStore.closeSafe(rs);
+            }
+        } finally {
+            dataStore.closeSafe(st);
+        }
+    }
+
     @Override
     public boolean lookupGeneratedValuesPostInsert() {
         return true;
     }
     
+    @Override
+    public BulkLoader createBulkLoader(SimpleFeatureType featureType, PrimaryKey key,
+            Connection cx) throws SQLException {
+        if (dataStore.getVirtualTables().containsKey(featureType.getTypeName())) {
+            return null;
+        }
+        PostGISBulkLoader loader = new PostGISBulkLoader(dataStore, featureType, key, cx);
+        if (!loader.isSupported()) {
+            return null;
+        }
+        try {
+            loader.unwrapConnection(cx);
+            return loader;
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Cannot load features in bulk", e);
+            return null;
+        }
+    }
+    
     @Override
     public Object getLastAutoGeneratedValue(String schemaName, String tableName, String columnName,
             Connection cx) throws SQLException {
@@ -22,13 +22,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.List;
 import java.util.Map;
 
 import org.geotools.factory.Hints;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.jdbc.BulkLoader;
 import org.geotools.jdbc.ColumnMetadata;
 import org.geotools.jdbc.JDBCDataStore;
 import org.geotools.jdbc.PreparedFilterToSQL;
 import org.geotools.jdbc.PreparedStatementSQLDialect;
+import org.geotools.jdbc.PrimaryKey;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 
@@ -79,6 +83,18 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
                 .decodeGeometryValue(descriptor, rs, column, factory, cx);
     }
 
+    @Override
+    public Object readGeometryValue(GeometryDescriptor descriptor, ResultSet rs, int column,
+            GeometryFactory factory, Connection cx) throws IOException, SQLException {
+        return delegate.readGeometryValue(descriptor, rs, column, factory, cx);
+    }
+
+    @Override
+    public Geometry decodeGeometryValue(GeometryDescriptor descriptor, Object value,
+            GeometryFactory factory) throws IOException {
+        return delegate.decodeGeometryValue(descriptor, value, factory);
+    }
+
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, String prefix, int srid,
             StringBuffer sql) {
@@ -91,6 +107,18 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
         delegate.encodeGeometryColumn(gatt, prefix, srid, hints, sql);
     }
 
+    @Override
+    public void encodeGeometryColumnSnapped(GeometryDescriptor gatt, String prefix, int srid,
+            Hints hints, StringBuffer sql, double cellSize) {
+        delegate.encodeGeometryColumnSnapped(gatt, prefix, srid, hints, sql, cellSize);
+    }
+
+    @Override
+    public void encodeScreenMapDistinct(GeometryDescriptor gatt, PrimaryKey key, double spanX,
+            double spanY, StringBuffer sql) {
+        delegate.encodeScreenMapDistinct(gatt, key, spanX, spanY, sql);
+    }
+
     public void encodeGeometryEnvelope(String tableName, String geometryColumn,
             StringBuffer sql) {
         delegate.encodeGeometryEnvelope(tableName, geometryColumn, sql);
@@ -140,6 +168,30 @@ public class PostGISPSDialect extends PreparedStatementSQLDialect {
             Connection cx) throws SQLException {
         return delegate.getNextSequenceValue(schemaName, sequenceName, cx);
     }
+    
+    @Override
+    public List<Object> getNextSequenceValues(String schemaName, String sequenceName, int count,
+            Connection cx) throws SQLException {
+        return delegate.getNextSequenceValues(schemaName, sequenceName, count, cx);
+    }
+    
+    @Override
+    public BulkLoader createBulkLoader(SimpleFeatureType featureType, PrimaryKey key,
+            Connection cx) throws SQLException {
+        return delegate.createBulkLoader(featureType, key, cx);
+    }
+    
+    @Override
+    public List<ReferencedEnvelope> getOptimizedBounds(String schema,
+            SimpleFeatureType featureType, Connection cx) throws SQLException, IOException {
+        return delegate.getOptimizedBounds(schema, featureType, cx);
+    }
+    
+    @Override
+    public Long getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException {
+        return delegate.getEstimatedCount(schema, featureType, cx);
+    }
 
 
     public String getSequenceForColumn(String schemaName, String tableName,
@@ -146,6 +146,7 @@ public class PostgisNGDataStoreFactory extends JDBCDataStoreFactory {
         parameters.put(PORT.key, PORT);
         parameters.put(PREPARED_STATEMENTS.key, PREPARED_STATEMENTS);
         parameters.put(MAX_OPEN_PREPARED_STATEMENTS.key, MAX_OPEN_PREPARED_STATEMENTS);
+        parameters.put(SQL_TEMPLATE_CACHE_SIZE.key, SQL_TEMPLATE_CACHE_SIZE);
         parameters.put(ENCODE_FUNCTIONS.key, ENCODE_FUNCTIONS);
     }
     
@@ -115,6 +115,18 @@ public class WKBAttributeIO {
         }
     }
 
+    /**
+     * Decodes the bytes read from a geometry column, as returned by
+     * {@link ResultSet#getBytes(int)}
+     * 
+     * @param bytes the encoded geometry, may be null
+     */
+    public Object read(byte[] bytes) throws IOException {
+        if (bytes == null) // ie. its a null column -> return a null geometry!
+            return null;
+        return wkb2Geometry(Base64.decode(bytes));
+    }
+
     /**
      * @see org.geotools.data.jdbc.attributeio.AttributeIO#write(java.sql.PreparedStatement, int, java.lang.Object)
      */
@@ -407,6 +407,35 @@ public class SQLServerDialect extends BasicSQLDialect {
         }
     }
 
+    @Override
+    public Long getEstimatedCount(String schema, SimpleFeatureType featureType, Connection cx)
+            throws SQLException {
+        // the row count of the heap or clustered index, as maintained by the storage engine
+        StringBuffer table = new StringBuffer();
+        encodeTableName(schema, featureType.getTypeName(), table, true);
+        String sql = "SELECT SUM(rows) FROM sys.partitions WHERE object_id = OBJECT_ID('"
+                + table.toString().replace("'", "''") + "') AND index_id IN (0, 1)";
+        dataStore.getLogger().fine( sql );
+        
+        Statement st = cx.createStatement();
+        try {
+            ResultSet rs = st.executeQuery( sql );
+            try {
+                if ( rs.next() ) {
+                    long count = rs.getLong( 1 );
+                    return rs.wasNull() ? null : count;
+                }
+                return null;
+            }
+            finally {
+                dataStore.closeSafe( rs );
+            }
+        }
+        finally {
+            dataStore.closeSafe( st );
+        }
+    }
+
     @Override
     public void encodeGeometryColumn(GeometryDescriptor gatt, String prefix,
             int srid, Hints hints, StringBuffer sql) {
@@ -195,6 +195,7 @@ public class TeradataDataStoreFactory extends JDBCDataStoreFactory {
         parameters.put(TESSELLATION_TABLE.key, TESSELLATION_TABLE);
         parameters.put(ESTIMATED_BOUNDS.key, ESTIMATED_BOUNDS);
         parameters.put(MAX_OPEN_PREPARED_STATEMENTS.key, MAX_OPEN_PREPARED_STATEMENTS);
+        parameters.put(SQL_TEMPLATE_CACHE_SIZE.key, SQL_TEMPLATE_CACHE_SIZE);
         parameters.put(APPLICATION.key, APPLICATION);
     }
 
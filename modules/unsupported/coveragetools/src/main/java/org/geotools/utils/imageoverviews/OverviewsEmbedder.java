@@ -28,6 +28,10 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +50,7 @@ import javax.media.jai.InterpolationBicubic;
 import javax.media.jai.InterpolationBilinear;
 import javax.media.jai.InterpolationNearest;
 import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
 import javax.media.jai.RenderedOp;
 import javax.media.jai.TileCache;
 
@@ -211,6 +216,9 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 
 	private Option compressionTypeOpt;
 
+	/** Commons-cli option for the number of threads computing the overviews. */
+	private Option threadsOpt;
+
 	/** Tile width. */
 	private int tileW = -1;
 
@@ -249,6 +257,9 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 
 	private int numSteps;
 
+	/** Number of threads computing the overview tiles. */
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
 	private String wildcardString = "*.*";
 
 	private int fileBeingProcessed;
@@ -450,6 +461,15 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 										}).create()).withRequired(false)
 				.create();
 
+		threadsOpt = optionBuilder
+				.withShortName("th")
+				.withLongName("threads")
+				.withArgument(
+						argumentBuilder.withName("th").withMinimum(0)
+								.withMaximum(1).create()).withDescription(
+						"number of threads computing the overviews, defaults to the number of processors")
+				.withRequired(false).create();
+
 		addOption(locationOpt);
 		addOption(tileDimOpt);
 		addOption(scaleFactorOpt);
@@ -459,6 +479,7 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 		addOption(compressionTypeOpt);
 		addOption(compressionRatioOpt);
 		addOption(externalOpt);
+		addOption(threadsOpt);
 
 		// /////////////////////////////////////////////////////////////////////
 		//
@@ -603,8 +624,11 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 			ImageInputStream stream=null;
 			ImageWriter writer =null;
 			ImageOutputStream streamOut=null;	
-			RenderedOp currentImage = null;
+			PlanarImage currentImage = null;
 			RenderedOp newImage=null;				
+			ParallelTiledImage overview = null;
+			ImageInputStream overviewStream = null;
+			ExecutorService executor = null;
 			try{
 
 			        File localFile=files[fileBeingProcessed];
@@ -708,14 +732,17 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 				//
 				// setting tiling on the first image using writing parameters
 				//
+				final int outputTileW;
+				final int outputTileH;
 				if (tileH != -1 & tileW != -1) {
-					param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
-					param.setTiling(tileW, tileH, 0, 0);
-
+					outputTileW = tileW;
+					outputTileH = tileH;
 				} else {
-					param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
-					param.setTiling(actualTileW, actualTileH, 0, 0);
+					outputTileW = actualTileW;
+					outputTileH = actualTileH;
 				}
+				param.setTilingMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setTiling(outputTileW, outputTileH, 0, 0);
 				if (this.compressionScheme != null && !Double.isNaN(compressionRatio)) {
 					param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
 					param.setCompressionType(compressionScheme);
@@ -729,28 +756,38 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 				newHints.add(new RenderingHints(JAI.KEY_TILE_CACHE,baseTC));
 				
 				// read base image
-				ParameterBlock pbjRead = new ParameterBlock();
-				pbjRead.add(stream);
-				pbjRead.add(Integer.valueOf(0));
-				pbjRead.add(Boolean.FALSE);
-				pbjRead.add(Boolean.FALSE);
-				pbjRead.add(Boolean.FALSE);
-				pbjRead.add(null);
-				pbjRead.add(null);
-				pbjRead.add(null);
-				pbjRead.add(null);
-				currentImage = JAI.create("ImageRead", pbjRead,newHints);
+				currentImage = readImage(stream, 0, newHints);
 				message = new StringBuilder("Read original image  ").append(fileBeingProcessed);
 				if (LOGGER.isLoggable(Level.FINE)) {
 					LOGGER.fine(message.toString());
 				}
 				fireEvent(message.toString(),overallProgress);
+
+				// the threads computing the tiles of the overviews
+				executor = Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory() {
+					final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, NAME + "-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
 				int i=0;
 				//
 				// OVERVIEWS CYLE
 				//
 				for (overviewInProcess = 0; overviewInProcess < numSteps; overviewInProcess++) {
 
+					if (getStopThread()) {
+						message = new StringBuilder("Stopping requested at overview ").append(overviewInProcess+1).append(" of image  ").append(fileBeingProcessed);
+						if (LOGGER.isLoggable(Level.FINE)) {
+							LOGGER.fine(message.toString());
+						}
+						fireEvent(message.toString(),overallProgress);
+						return;
+					}
+
 					message = new StringBuilder("Subsampling step ").append(overviewInProcess+1).append(" of image  ").append(fileBeingProcessed);
 					if (LOGGER.isLoggable(Level.FINE)) {
 						LOGGER.fine(message.toString());
@@ -787,18 +824,25 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 					}
 						
 					
+					// compute the tiles in parallel while the writer encodes them, keeping the
+					// overview in memory as the source of the next one when small enough
+					final boolean lastStep = overviewInProcess == numSteps - 1;
+					overview = new ParallelTiledImage(newImage, outputTileW, outputTileH,
+							executor, 2 * Math.max(1, numThreads), !lastStep
+									&& ParallelTiledImage.getDataSize(newImage) <= getTileCacheSize() / 2);
+						
 					//set relevant metadata
 					IIOMetadata imageMetadata = null;                                        
                                         if (writer instanceof TIFFImageWriter){
-                                           imageMetadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(newImage), param);
+                                           imageMetadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(overview), param);
                                            if (imageMetadata != null)
                                                 ((TIFFImageMetadata)imageMetadata).addShortOrLongField(BaselineTIFFTagSet.TAG_NEW_SUBFILE_TYPE, BaselineTIFFTagSet.NEW_SUBFILE_TYPE_REDUCED_RESOLUTION);
                                         }
                                         // write out
                                         if(!externalOverviews || i>0)
-                                            writer.writeInsert(-1, new IIOImage(newImage, null, imageMetadata), param);
+                                            writer.writeInsert(-1, new IIOImage(overview, null, imageMetadata), param);
                                         else
-                                            writer.write(null,new IIOImage(newImage, null, imageMetadata), param);
+                                            writer.write(null,new IIOImage(overview, null, imageMetadata), param);
 					message = new StringBuilder("Step ").append(
 							overviewInProcess+1).append(" of image  ").append(
 							fileBeingProcessed).append(" done!");
@@ -807,9 +851,26 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 					}
 					fireEvent(message.toString(),overallProgress);
 			
-					// switching images
+					// switching images, the next overview is computed from this one, either
+					// kept in memory or read back from the file it has just been written to
+					PlanarImage nextImage = overview;
+					ImageInputStream nextStream = null;
+					if (!lastStep && !overview.isRetained()) {
+						streamOut.flush();
+						nextStream = ImageIO.createImageInputStream(localFile);
+						nextImage = readImage(nextStream, externalOverviews ? i : i + 1,
+								new RenderingHints(JAI.KEY_TILE_CACHE, baseTC));
+						overview.dispose();
+					}
+					overview = null;
+					newImage.dispose();
+					newImage = null;
 					currentImage.dispose(); //dispose old image
-					currentImage = newImage;
+					currentImage = nextImage;
+					if (overviewStream != null) {
+						overviewStream.close();
+					}
+					overviewStream = nextStream;
 
 					i++;
 
@@ -828,6 +889,8 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 				fireException(e);
 			}finally{
 				// clean up
+				if (executor != null)
+				    executor.shutdownNow();
 				
 				// clean caches if they are local
 				if(localTileCache&&baseTC!=null)
@@ -870,6 +933,22 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
                                                 LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
                                 }
 
+                                try {
+                                    if(overview!=null)
+                                        overview.dispose();
+                                } catch (Throwable e) {
+                                    if (LOGGER.isLoggable(Level.FINE))
+                                                LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
+                                }
+
+                                try {
+                                    if(overviewStream!=null)
+                                        overviewStream.close();
+                                } catch (Throwable e) {
+                                    if (LOGGER.isLoggable(Level.FINE))
+                                                LOGGER.log(Level.FINE,e.getLocalizedMessage(),e);
+                                }
+
 
 				try {
 				    if(stream!=null)
@@ -890,6 +969,30 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 	}
 
 
+	/**
+	 * Creates the operation reading an image of a TIFF file.
+	 * 
+	 * @param stream
+	 *            the stream to read from
+	 * @param imageIndex
+	 *            the index of the image in the file
+	 * @param hints
+	 *            the hints for the read operation
+	 */
+	private static RenderedOp readImage(ImageInputStream stream, int imageIndex, RenderingHints hints) {
+		ParameterBlock pbjRead = new ParameterBlock();
+		pbjRead.add(stream);
+		pbjRead.add(Integer.valueOf(imageIndex));
+		pbjRead.add(Boolean.FALSE);
+		pbjRead.add(Boolean.FALSE);
+		pbjRead.add(Boolean.FALSE);
+		pbjRead.add(null);
+		pbjRead.add(null);
+		pbjRead.add(null);
+		pbjRead.add(null);
+		return JAI.create("ImageRead", pbjRead, hints);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -970,6 +1073,14 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 		// //
 		numSteps = Integer.parseInt((String) getOptionValue(numStepsOpt));
 
+		// //
+		//
+		// number of threads
+		//
+		// //
+		if (hasOption(threadsOpt))
+			numThreads = Integer.parseInt((String) getOptionValue(threadsOpt));
+
 		// //
 		//
 		// Compression params
@@ -1073,6 +1184,20 @@ public class OverviewsEmbedder extends BaseArgumentsManager implements Runnable,
 		this.numSteps = numSteps;
 	}
 
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Sets the number of threads computing the tiles of the overviews.
+	 * 
+	 * @param numThreads
+	 *            the number of threads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
 	public OverviewsEmbedderWriteProgressListener getWriteProgressListener() {
 		return writeProgressListener;
 	}
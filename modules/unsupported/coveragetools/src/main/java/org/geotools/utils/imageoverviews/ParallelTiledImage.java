@@ -0,0 +1,200 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.utils.imageoverviews;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.util.ImagingException;
+
+/**
+ * An image whose tiles are computed from a source image on a pool of threads, a bounded number
+ * of tiles being computed ahead of the one requested. Meant to be handed to a writer that pulls
+ * the tiles in row order, so that the computation of the following tiles overlaps with the
+ * encoding of the current one.
+ * <p>
+ * The computed tiles can optionally be retained, in which case once written out the image can
+ * serve as the in memory source of the next overview, instead of reading it back from disk.
+ * </p>
+ *
+ * @source $URL$
+ */
+class ParallelTiledImage extends PlanarImage {
+
+    /**
+     * Returns the size in bytes of the raster data of an image
+     */
+    static long getDataSize(RenderedImage image) {
+        final SampleModel sm = image.getSampleModel();
+        return (long) image.getWidth() * image.getHeight() * sm.getNumBands()
+                * DataBuffer.getDataTypeSize(sm.getDataType()) / 8;
+    }
+
+    private final RenderedImage source;
+
+    private final ExecutorService executor;
+
+    private final int prefetch;
+
+    private final int numTiles;
+
+    private Raster[] retained;
+
+    private final Map<Integer, Future<Raster>> pending = new HashMap<Integer, Future<Raster>>();
+
+    /**
+     * The last tiles handed out, kept in case the writer asks for them again
+     */
+    private final Map<Integer, Raster> recent;
+
+    private int nextTile;
+
+    /**
+     * @param source the image computing the actual pixels
+     * @param tileWidth the tile width, the one the image is going to be written with
+     * @param tileHeight the tile height, the one the image is going to be written with
+     * @param executor the executor the tiles are computed on
+     * @param prefetch the number of tiles computed ahead of the requested one
+     * @param retain whether to keep all the computed tiles in memory
+     */
+    ParallelTiledImage(RenderedImage source, int tileWidth, int tileHeight,
+            ExecutorService executor, int prefetch, boolean retain) {
+        super(new ImageLayout(source.getMinX(), source.getMinY(), source.getWidth(),
+                source.getHeight(), source.getMinX(), source.getMinY(), tileWidth, tileHeight,
+                source.getSampleModel().createCompatibleSampleModel(tileWidth, tileHeight),
+                source.getColorModel()), null, null);
+        this.source = source;
+        this.executor = executor;
+        this.prefetch = Math.max(1, prefetch);
+        this.numTiles = getNumXTiles() * getNumYTiles();
+        this.retained = retain ? new Raster[numTiles] : null;
+        final int maxRecent = getNumXTiles() + this.prefetch;
+        this.recent = new LinkedHashMap<Integer, Raster>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Raster> eldest) {
+                return size() > maxRecent;
+            }
+        };
+    }
+
+    /**
+     * @return true if the computed tiles are kept in memory
+     */
+    boolean isRetained() {
+        return retained != null;
+    }
+
+    @Override
+    public Raster getTile(int tileX, int tileY) {
+        if (tileX < getMinTileX() || tileX > getMaxTileX() || tileY < getMinTileY()
+                || tileY > getMaxTileY()) {
+            return null;
+        }
+
+        final int index = (tileY - getMinTileY()) * getNumXTiles() + tileX - getMinTileX();
+        Future<Raster> future;
+        synchronized (this) {
+            Raster raster = retained != null ? retained[index] : null;
+            if (raster == null) {
+                raster = recent.get(index);
+            }
+            if (raster != null) {
+                return raster;
+            }
+            future = pending.remove(index);
+            schedule(index + 1);
+        }
+
+        Raster raster;
+        if (future == null) {
+            // not prefetched, or requested again after being evicted
+            raster = computeTile(index);
+        } else {
+            try {
+                raster = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImagingException("Interrupted while computing tile " + index, e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new ImagingException("Failed to compute tile " + index, cause);
+            }
+        }
+
+        synchronized (this) {
+            if (retained != null) {
+                retained[index] = raster;
+            } else {
+                recent.put(index, raster);
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Submits the computation of the tiles following the requested one, up to the prefetch limit
+     */
+    private void schedule(int from) {
+        nextTile = Math.max(nextTile, from);
+        for (; nextTile < numTiles && nextTile < from + prefetch; nextTile++) {
+            final int index = nextTile;
+            pending.put(index, executor.submit(new Callable<Raster>() {
+                public Raster call() throws Exception {
+                    return computeTile(index);
+                }
+            }));
+        }
+    }
+
+    private Raster computeTile(int index) {
+        final int tileX = getMinTileX() + index % getNumXTiles();
+        final int tileY = getMinTileY() + index / getNumXTiles();
+        final WritableRaster raster = createWritableRaster(sampleModel, new Point(
+                tileXToX(tileX), tileYToY(tileY)));
+        source.copyData(raster);
+        return raster;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        for (Future<Raster> future : pending.values()) {
+            future.cancel(true);
+        }
+        pending.clear();
+        recent.clear();
+        retained = null;
+        super.dispose();
+    }
+}
@@ -174,7 +174,7 @@ class Utils {
     	 * 
     	 * @return The subsampled RenderedOp.
     	 */
-    	static RenderedOp subsample(RenderedOp src, TileCache scaleTC, final Interpolation interpolation, int downsampleStep,BorderExtender borderExtender) {
+    	static RenderedOp subsample(RenderedImage src, TileCache scaleTC, final Interpolation interpolation, int downsampleStep,BorderExtender borderExtender) {
     		final RenderingHints newHints = new RenderingHints(JAI.KEY_TILE_CACHE,scaleTC);
     		newHints.add(ImageUtilities.DONT_REPLACE_INDEX_COLOR_MODEL);
     		newHints.add(new RenderingHints(JAI.KEY_BORDER_EXTENDER, borderExtender));
@@ -161,6 +161,51 @@ public class OverviewEmbedderTest extends Assert{
         reader.dispose();
     }
     
+    @Test
+    public void nearestReadBack() throws Exception{
+        
+        final OverviewsEmbedder oe= new OverviewsEmbedder();
+        oe.setDownsampleStep(2);
+        oe.setNumSteps(5);
+        oe.setScaleAlgorithm(OverviewsEmbedder.SubsampleAlgorithm.Nearest.toString());
+        // use default 
+        oe.setTileCache(JAI.getDefaultInstance().getTileCache());
+        // too small to keep any overview in memory, each one is read back from the file
+        oe.setTileCacheSize(1);
+        oe.setNumThreads(3);
+        oe.setTileWidth(256);
+        oe.setTileHeight(256);
+        oe.setSourcePath(TestData.file(this, "DEM_.tiff").getAbsolutePath());
+        final List<Throwable> exceptions = new ArrayList<Throwable>();
+        oe.addProcessingEventListener(new ProcessingEventListener() {
+            
+            @Override
+            public void getNotification(ProcessingEvent event) {
+                LOGGER.info(event.toString());
+                
+            }
+            
+            @Override
+            public void exceptionOccurred(ExceptionEvent event) {
+                LOGGER.warning(event.toString());
+                exceptions.add(event.getException());
+            }
+            
+        });
+        oe.run();
+        assertTrue(exceptions.isEmpty());
+        
+        // now red it back and check that things are coherent
+        final ImageReader reader= new TIFFImageReaderSpi().createReaderInstance();
+        reader.setInput(ImageIO.createImageInputStream(org.geotools.test.TestData.file(this, "DEM_.tiff")));
+        assertEquals(6, reader.getNumImages(true));
+        for (int i = 1; i < 6; i++) {
+            assertTrue(reader.getWidth(i) < reader.getWidth(i - 1));
+            assertTrue(reader.getHeight(i) < reader.getHeight(i - 1));
+        }
+        reader.dispose();
+    }
+    
     @Test
 //    @Ignore
     public void nearestMultiple() throws Exception{
@@ -290,21 +290,29 @@ public class BarnesSurfaceInterpolator {
      * @param grid the grid matrix buffer to use
      * @param trans the transform mapping from data space to the grid
      */
-    private void estimateGrid(float[][] grid, GridTransform trans) {
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                double x = trans.x(i);
-                double y = trans.y(j);
-
-                grid[i][j] = (float) noDataValue;
-                if (useObservationMask && !isSupportedGridPt(x, y))
-                    continue;
-
-                float est = (float) estimatedValue(x, y);
-                if (!Float.isNaN(est))
-                    grid[i][j] = est;
-            }
-        }
+    private void estimateGrid(final float[][] grid, final GridTransform trans) {
+        final KernelTable kernel = KernelTable.create(inputObs, trans, grid.length,
+                grid[0].length, lengthScale, 1.0);
+        ParallelGrid.run(grid.length, grid[0].length * inputObs.length,
+                new ParallelGrid.RangeTask() {
+                    public void compute(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            double x = trans.x(i);
+                            for (int j = 0; j < grid[0].length; j++) {
+                                double y = trans.y(j);
+
+                                grid[i][j] = (float) noDataValue;
+                                if (useObservationMask && !isSupportedGridPt(x, y))
+                                    continue;
+
+                                float est = (float) (kernel != null ? estimatedValue(kernel, i, j)
+                                        : estimatedValue(x, y));
+                                if (!Float.isNaN(est))
+                                    grid[i][j] = est;
+                            }
+                        }
+                    }
+                });
     }
 
     /**
@@ -313,34 +321,38 @@ public class BarnesSurfaceInterpolator {
      * @param grid the grid matrix buffer to use
      * @param trans the transform mapping from data space to the grid
      */
-    private void refineGrid(float[][] grid, GridTransform trans) {
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                double x = trans.x(i);
-                double y = trans.y(j);
-
-                // skip NO_DATA values
-                if (grid[i][j] == noDataValue)
-                    continue;
-
-                float del = (float) refinedDelta(x, y, convergenceFactor);
-                /*
-                 // DEBUGGING
-                if (del < 0) {
-                    float d = (float) refinedDelta(x, y, convergenceFactor);
-                }
-                */
-                if (! Float.isNaN(del))
-                    grid[i][j] = grid[i][j] + del;
-            }
-        }
+    private void refineGrid(final float[][] grid, final GridTransform trans) {
+        final KernelTable kernel = KernelTable.create(inputObs, trans, grid.length,
+                grid[0].length, lengthScale, convergenceFactor);
+        ParallelGrid.run(grid.length, grid[0].length * inputObs.length,
+                new ParallelGrid.RangeTask() {
+                    public void compute(int start, int end) {
+                        for (int i = start; i < end; i++) {
+                            double x = trans.x(i);
+                            for (int j = 0; j < grid[0].length; j++) {
+                                double y = trans.y(j);
+
+                                // skip NO_DATA values
+                                if (grid[i][j] == noDataValue)
+                                    continue;
+
+                                float del = (float) (kernel != null ? refinedDelta(kernel, i, j)
+                                        : refinedDelta(x, y, convergenceFactor));
+                                if (!Float.isNaN(del))
+                                    grid[i][j] = grid[i][j] + del;
+                            }
+                        }
+                    }
+                });
     }
 
     private boolean isSupportedGridPt(double x, double y) {
+        double maxDistSq = maxObservationDistance * maxObservationDistance;
         int count = 0;
         for (int i = 0; i < inputObs.length; i++) {
-            double dist = distance(x, y, inputObs[i]);
-            if (dist <= maxObservationDistance)
+            double dx = x - inputObs[i].x;
+            double dy = y - inputObs[i].y;
+            if (dx * dx + dy * dy <= maxDistSq)
                 count++;
         }
         return count >= minObservationCount;
@@ -385,6 +397,61 @@ public class BarnesSurfaceInterpolator {
         return sumWgtVal / sumWgt;
     }
 
+    /**
+     * Computes the initial estimate for a grid point using precomputed kernel weights.
+     * 
+     * @param kernel the kernel weights for the grid
+     * @param i the grid column
+     * @param j the grid row
+     * @return the estimated value, or INTERNAL_NO_DATA if the grid cell is not supported
+     */
+    private double estimatedValue(KernelTable kernel, int i, int j) {
+        double[] wx = kernel.xWeights;
+        double[] wy = kernel.yWeights;
+        int n = inputObs.length;
+        int xBase = i * n;
+        int yBase = j * n;
+
+        double sumWgtVal = 0;
+        double sumWgt = 0;
+        for (int k = 0; k < n; k++) {
+            double wgt = wx[xBase + k] * wy[yBase + k];
+            sumWgtVal += wgt * inputObs[k].z;
+            sumWgt += wgt;
+        }
+        // all observations are usable when weights are finite
+        if (n < minObservationCount)
+            return INTERNAL_NO_DATA;
+        return sumWgtVal / sumWgt;
+    }
+
+    /**
+     * Computes a refinement delta for a grid point using precomputed kernel weights.
+     * 
+     * @param kernel the kernel weights for the grid, computed with the convergence factor
+     * @param i the grid column
+     * @param j the grid row
+     * @return the refinement delta value, or INTERNAL_NO_DATA if the grid cell is not supported
+     */
+    private double refinedDelta(KernelTable kernel, int i, int j) {
+        double[] wx = kernel.xWeights;
+        double[] wy = kernel.yWeights;
+        int n = inputObs.length;
+        int xBase = i * n;
+        int yBase = j * n;
+
+        double sumWgtVal = 0;
+        double sumWgt = 0;
+        for (int k = 0; k < n; k++) {
+            double wgt = wx[xBase + k] * wy[yBase + k];
+            sumWgtVal += wgt * (inputObs[k].z - estimatedObs[k]);
+            sumWgt += wgt;
+        }
+        if (n < minObservationCount)
+            return INTERNAL_NO_DATA;
+        return sumWgtVal / sumWgt;
+    }
+
     /**
      * Computes a refinement delta, which is added to a grid point estimated value
      * to refine the estimate.
@@ -468,5 +535,62 @@ public class BarnesSurfaceInterpolator {
         System.out.println(cutoffWeight + "   " + w);
         return effRadius;
     }
-    
+
+    /**
+     * Precomputed weights for a grid, exploiting the separability of the Gaussian decay function:
+     * 
+     * <pre>
+     * exp(-(dx<sup>2</sup> + dy<sup>2</sup>) / L<sup>2</sup>c) = exp(-dx<sup>2</sup> / L<sup>2</sup>c) * exp(-dy<sup>2</sup> / L<sup>2</sup>c)
+     * </pre>
+     * 
+     * This replaces an exponential per grid cell and observation with a single multiplication.
+     * The weights are stored column-major by observation so the inner summation loop is
+     * sequential in memory.
+     */
+    private static class KernelTable {
+        /**
+         * Maximum number of weights to precompute, to bound memory use (about 32 MB)
+         */
+        private static final long MAX_TABLE_SIZE = 4 * 1024 * 1024;
+
+        final double[] xWeights;
+
+        final double[] yWeights;
+
+        private KernelTable(double[] xWeights, double[] yWeights) {
+            this.xWeights = xWeights;
+            this.yWeights = yWeights;
+        }
+
+        /**
+         * Creates a kernel table for the given grid, or returns null if the table would be too
+         * large or the weights would not be finite.
+         */
+        static KernelTable create(Coordinate[] obs, GridTransform trans, int xSize, int ySize,
+                double lengthScale, double convergenceFactor) {
+            int n = obs.length;
+            if (n == 0 || !(lengthScale > 0) || !(convergenceFactor > 0)
+                    || (long) n * (xSize + ySize) > MAX_TABLE_SIZE)
+                return null;
+
+            double scale = 1.0 / (lengthScale * lengthScale * convergenceFactor);
+            double[] wx = new double[xSize * n];
+            for (int i = 0; i < xSize; i++) {
+                double x = trans.x(i);
+                for (int k = 0; k < n; k++) {
+                    double dx = x - obs[k].x;
+                    wx[i * n + k] = Math.exp(-dx * dx * scale);
+                }
+            }
+            double[] wy = new double[ySize * n];
+            for (int j = 0; j < ySize; j++) {
+                double y = trans.y(j);
+                for (int k = 0; k < n; k++) {
+                    double dy = y - obs[k].y;
+                    wy[j * n + k] = Math.exp(-dy * dy * scale);
+                }
+            }
+            return new KernelTable(wx, wy);
+        }
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.vector;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, time-limited LRU cache of computed density grids.
+ * <p>
+ * Rendering transformations are commonly invoked many times for the same layer, resolution and
+ * extent (tile re-requests, meta-tiling, repeated map views). Caching the computed grid avoids
+ * computing the surface again for these requests. A process only receives the features, not the
+ * query filter or the source they come from, so the grids are keyed by a checksum of the gridded
+ * input points rather than by the layer: requests reading different data do not share a grid.
+ * <p>
+ * The cache is disabled by default. It is enabled by setting the
+ * <code>org.geotools.process.vector.densityCacheSize</code> system property to the maximum number
+ * of grids to hold. Entries expire after
+ * <code>org.geotools.process.vector.densityCacheTimeout</code> milliseconds (default 60000).
+ */
+class DensityGridCache {
+
+    static final DensityGridCache DEFAULT = new DensityGridCache(Integer.getInteger(
+            "org.geotools.process.vector.densityCacheSize", 0), Long.getLong(
+            "org.geotools.process.vector.densityCacheTimeout", 60000));
+
+    private final int maxEntries;
+
+    private final long timeout;
+
+    private final Map<Key, Entry> entries;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries the maximum number of grids held (0 disables caching)
+     * @param timeout the time in milliseconds after which an entry expires
+     */
+    DensityGridCache(final int maxEntries, long timeout) {
+        this.maxEntries = maxEntries;
+        this.timeout = timeout;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the grid cached for a key, or null if there is none or it has expired.
+     */
+    synchronized float[][] get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.created > timeout) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.grid;
+    }
+
+    /**
+     * Caches a computed grid. The grid must not be modified after being cached.
+     */
+    synchronized void put(Key key, float[][] grid) {
+        if (isEnabled()) {
+            entries.put(key, new Entry(grid));
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        final float[][] grid;
+
+        final long created = System.currentTimeMillis();
+
+        Entry(float[][] grid) {
+            this.grid = grid;
+        }
+    }
+
+    /**
+     * Identifies a density grid by a checksum of the gridded input points and the kernel used to
+     * compute it.
+     */
+    static class Key {
+        private final Object[] components;
+
+        /**
+         * Creates a key. Components must have value-based <code>equals</code> and
+         * <code>hashCode</code> (numbers, envelopes) or be arrays, compared by content.
+         */
+        Key(Object... components) {
+            this.components = components;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.deepEquals(components, ((Key) obj).components);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.deepHashCode(components);
+        }
+    }
+}
@@ -119,6 +119,8 @@ import com.vividsolutions.jts.geom.Geometry;
 @DescribeProcess(title = "Heatmap", description = "Computes a heatmap surface over a set of data points and outputs as a single-band raster.")
 public class HeatmapProcess implements VectorProcess {
 
+    DensityGridCache cache = DensityGridCache.DEFAULT;
+
     @DescribeResult(name = "result", description = "Output raster")
     public GridCoverage2D execute(
 
@@ -191,11 +193,30 @@ public class HeatmapProcess implements VectorProcess {
         }
 
         /**
-         * --------------- Do the processing ------------------------------
+         * -------------- Check for a previously computed surface -----------
          */
-        // Stopwatch sw = new Stopwatch();
-        // compute the heatmap at the specified resolution
-        float[][] heatMapGrid = heatMap.computeSurface();
+        // the process cannot see the query filter or the source of the features, so the key
+        // holds a checksum of the gridded points, computed while gridding them
+        DensityGridCache.Key cacheKey = null;
+        float[][] heatMapGrid = null;
+        if (cache.isEnabled()) {
+            cacheKey = new DensityGridCache.Key(radiusCells, gridWidth, gridHeight,
+                    heatMap.getPointCount(), heatMap.getPointValueSum(),
+                    heatMap.getPointChecksum());
+            heatMapGrid = cache.get(cacheKey);
+        }
+
+        if (heatMapGrid == null) {
+            /**
+             * --------------- Do the processing ------------------------------
+             */
+            // Stopwatch sw = new Stopwatch();
+            // compute the heatmap at the specified resolution
+            heatMapGrid = heatMap.computeSurface();
+            if (cacheKey != null) {
+                cache.put(cacheKey, heatMapGrid);
+            }
+        }
 
         // flip now, since grid size may be smaller
         heatMapGrid = flipXY(heatMapGrid);
@@ -51,6 +51,12 @@ public class HeatmapSurface {
 
     private int kernelRadiusGrid;
 
+    private int pointCount;
+
+    private double pointValueSum;
+
+    private long pointChecksum;
+
     /**
      * Creates a new heatmap surface.
      * 
@@ -102,11 +108,48 @@ public class HeatmapSurface {
         int gj = gridTrans.j(y) + kernelRadiusGrid;
 
         // check if point falls outside grid - skip it if so
-        if (gi < 0 || gi > grid.length || gj < 0 || gj > grid[0].length)
+        if (gi < 0 || gi >= grid.length || gj < 0 || gj >= grid[0].length)
             return;
         
         grid[gi][gj] += value;
         // System.out.println("data[" + gi + ", " + gj + "] <- " + value);
+
+        // the point hashes are summed, so that the checksum does not depend on the point order
+        long hash = (((long) gi) << 32 | (gj & 0xffffffffL)) * 0x9E3779B97F4A7C15L
+                + Double.doubleToLongBits(value);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        pointChecksum += hash;
+        pointValueSum += value;
+        pointCount++;
+    }
+
+    /**
+     * @return the number of data points added to the grid so far
+     */
+    int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return the sum of the values of the data points added to the grid so far
+     */
+    double getPointValueSum() {
+        return pointValueSum;
+    }
+
+    /**
+     * Returns a checksum of the grid cells and values of the data points added so far, which
+     * along with the kernel radius identify the computed surface. It does not depend on the order
+     * the points are added in.
+     * 
+     * @return the data point checksum
+     */
+    long getPointChecksum() {
+        return pointChecksum;
     }
 
     /**
@@ -231,43 +274,53 @@ public class HeatmapSurface {
         return val;
     }
 
-    private void boxBlur(int kernelRadius, float[][] input, float[][] output) {
-        int width = input.length;
+    /**
+     * Computes a 1-D box blur along the first index of the input grid, writing the result into
+     * the (flipped) output grid. Each line is independent, so lines are blurred concurrently.
+     */
+    private void boxBlur(final int kernelRadius, final float[][] input, final float[][] output) {
+        final int width = input.length;
         int height = input[0].length;
 
         // init moving average total
-        float kernelVal = kernelVal(kernelRadius);
+        final float kernelVal = kernelVal(kernelRadius);
         // System.out.println("boxblur: radius = " + kernelRadius + " kernel val = " + kernelVal);
 
-        for (int j = 0; j < height; j++) {
-
-            double tot = 0.0;
-
-            for (int i = -kernelRadius; i <= kernelRadius; i++) {
-                if (i < 0 || i >= width)
-                    continue;
-                tot += kernelVal * input[i][j];
+        ParallelGrid.run(height, width, new ParallelGrid.RangeTask() {
+            public void compute(int start, int end) {
+                for (int j = start; j < end; j++) {
+                    boxBlurLine(kernelRadius, kernelVal, width, j, input, output[j]);
+                }
             }
+        });
+    }
 
-            // System.out.println(tot);
+    private static void boxBlurLine(int kernelRadius, float kernelVal, int width, int j,
+            float[][] input, float[] outputLine) {
+        double tot = 0.0;
 
-            output[j][0] = (float) tot;
+        for (int i = -kernelRadius; i <= kernelRadius; i++) {
+            if (i < 0 || i >= width)
+                continue;
+            tot += kernelVal * input[i][j];
+        }
 
-            for (int i = 1; i < width; i++) {
+        // System.out.println(tot);
 
-                // update box running total
-                int iprev = i - 1 - kernelRadius;
-                if (iprev >= 0)
-                    tot -= kernelVal * input[iprev][j];
+        outputLine[0] = (float) tot;
 
-                int inext = i + kernelRadius;
-                if (inext < width)
-                    tot += kernelVal * input[inext][j];
+        for (int i = 1; i < width; i++) {
 
-                output[j][i] = (float) tot;
-                // if (i==49 && j==147) System.out.println("val[ " + i + ", " + j + "] = " + tot);
+            // update box running total
+            int iprev = i - 1 - kernelRadius;
+            if (iprev >= 0)
+                tot -= kernelVal * input[iprev][j];
 
-            }
+            int inext = i + kernelRadius;
+            if (inext < width)
+                tot += kernelVal * input[inext][j];
+
+            outputLine[i] = (float) tot;
         }
     }
 }
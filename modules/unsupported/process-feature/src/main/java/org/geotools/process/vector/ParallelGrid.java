@@ -0,0 +1,121 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the rows (or columns) of a grid computation into contiguous ranges and computes them
+ * concurrently on a shared pool of daemon threads.
+ * <p>
+ * Small grids are computed on the calling thread, since the cost of dispatching would exceed the
+ * work itself. The number of worker threads can be set with the
+ * <code>org.geotools.process.vector.gridThreads</code> system property (default is the number of
+ * available processors).
+ */
+class ParallelGrid {
+
+    /**
+     * A computation over a half-open range of grid lines.
+     */
+    interface RangeTask {
+        /**
+         * Computes the grid lines in the range [start, end).
+         */
+        void compute(int start, int end);
+    }
+
+    /**
+     * Minimum number of cells a range must contain to be worth handing to another thread
+     */
+    private static final int MIN_CELLS_PER_TASK = 16 * 1024;
+
+    private static final int THREAD_COUNT = Integer.getInteger(
+            "org.geotools.process.vector.gridThreads", Runtime.getRuntime()
+                    .availableProcessors());
+
+    private static ExecutorService executor;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadNumber = new AtomicInteger(1);
+            executor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "gt-grid-compute-" + threadNumber.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs a task over the lines [0, lineCount) of a grid, splitting the lines into ranges which
+     * are computed concurrently. Returns when all lines have been computed.
+     *
+     * @param lineCount the number of grid lines
+     * @param cellsPerLine the number of cells in each line (used to estimate the work involved)
+     * @param task the computation to perform
+     */
+    static void run(int lineCount, int cellsPerLine, final RangeTask task) {
+        long cells = (long) lineCount * Math.max(cellsPerLine, 1);
+        int taskCount = (int) Math.min(THREAD_COUNT, cells / MIN_CELLS_PER_TASK);
+        taskCount = Math.min(taskCount, lineCount);
+        if (taskCount <= 1) {
+            task.compute(0, lineCount);
+            return;
+        }
+
+        int linesPerTask = (lineCount + taskCount - 1) / taskCount;
+        List<Future<?>> futures = new ArrayList<Future<?>>(taskCount);
+        ExecutorService exec = getExecutor();
+        // dispatch all but the first range, which is computed on the calling thread
+        for (int start = linesPerTask; start < lineCount; start += linesPerTask) {
+            final int s = start;
+            final int e = Math.min(start + linesPerTask, lineCount);
+            futures.add(exec.submit(new Runnable() {
+                public void run() {
+                    task.compute(s, e);
+                }
+            }));
+        }
+        task.compute(0, Math.min(linesPerTask, lineCount));
+
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while computing grid", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.geotools.process.vector;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.geom.Point2D;
@@ -25,6 +26,7 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
@@ -32,6 +34,7 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.util.ProgressListener;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.MultiPoint;
@@ -97,6 +100,77 @@ public class HeatmapProcessTest {
 
     }
 
+    /**
+     * Tests a surface large enough to be computed concurrently, checking that the result is
+     * symmetric about the single input point.
+     */
+    @Test
+    public void testLargeSurface() {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 100, 0, 100, DefaultGeographicCRS.WGS84);
+        Coordinate[] data = new Coordinate[] { new Coordinate(50, 50) };
+        SimpleFeatureCollection fc = createPoints(data, bounds);
+
+        HeatmapProcess process = new HeatmapProcess();
+        GridCoverage2D cov = process.execute(fc, 100, null, 1, bounds, 1000, 1000, null);
+
+        float center = coverageValue(cov, 50, 50);
+        float left = coverageValue(cov, 45, 50);
+        float right = coverageValue(cov, 55, 50);
+        float below = coverageValue(cov, 50, 45);
+        float above = coverageValue(cov, 50, 55);
+
+        assertTrue(center > left);
+        assertTrue(Math.abs(left - right) < center / 10);
+        assertTrue(Math.abs(below - above) < center / 10);
+        assertTrue(Math.abs(left - below) < center / 10);
+    }
+
+    /**
+     * Checks that the cached grids are not shared by requests on the same layer reading different
+     * features, such as differently filtered queries.
+     */
+    @Test
+    public void testCacheFilteredRequests() throws Exception {
+        ReferencedEnvelope bounds = new ReferencedEnvelope(0, 10, 0, 10, DefaultGeographicCRS.WGS84);
+        Coordinate[] data = new Coordinate[] { new Coordinate(4, 4, 1), new Coordinate(6, 6, 2) };
+        SimpleFeatureCollection fc = createPoints(data, bounds);
+        SimpleFeatureCollection filtered = fc.subCollection(ECQL.toFilter("value = 2"));
+
+        HeatmapProcess process = new HeatmapProcess();
+        process.cache = new DensityGridCache(10, 60000);
+        GridCoverage2D all = process.execute(fc, 10, null, 1, bounds, 100, 100, null);
+        GridCoverage2D some = process.execute(filtered, 10, null, 1, bounds, 100, 100, null);
+        GridCoverage2D again = process.execute(fc, 10, null, 1, bounds, 100, 100, null);
+
+        // the filtered out point only shows in the surface of the full collection
+        assertTrue(coverageValue(all, 4, 4) > coverageValue(all, 9, 9) * 1000);
+        assertTrue(coverageValue(some, 4, 4) < coverageValue(some, 6, 6) / 1000);
+        assertEquals(coverageValue(all, 4, 4), coverageValue(again, 4, 4), 0);
+        assertEquals(coverageValue(all, 6, 6), coverageValue(again, 6, 6), 0);
+    }
+
+    /**
+     * Checks that the point checksum keying the cache does not depend on the order of the points,
+     * but on where they fall and on their values.
+     */
+    @Test
+    public void testPointChecksum() {
+        Envelope env = new Envelope(0, 10, 0, 10);
+        HeatmapSurface surface = new HeatmapSurface(2, env, 10, 10);
+        surface.addPoint(1.5, 2.5, 1);
+        surface.addPoint(7.5, 3.5, 2);
+        HeatmapSurface reversed = new HeatmapSurface(2, env, 10, 10);
+        reversed.addPoint(7.5, 3.5, 2);
+        reversed.addPoint(1.5, 2.5, 1);
+        HeatmapSurface swapped = new HeatmapSurface(2, env, 10, 10);
+        swapped.addPoint(1.5, 2.5, 2);
+        swapped.addPoint(7.5, 3.5, 1);
+
+        assertEquals(2, surface.getPointCount());
+        assertEquals(surface.getPointChecksum(), reversed.getPointChecksum());
+        assertTrue(surface.getPointChecksum() != swapped.getPointChecksum());
+    }
+
     private float coverageValue(GridCoverage2D cov, double x, double y)
     {
         float[] covVal = new float[1];
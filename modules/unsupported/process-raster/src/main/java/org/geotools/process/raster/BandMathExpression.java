@@ -0,0 +1,464 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.text.ecql.ECQL;
+import org.opengis.filter.expression.Add;
+import org.opengis.filter.expression.BinaryExpression;
+import org.opengis.filter.expression.Divide;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Function;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.Multiply;
+import org.opengis.filter.expression.PropertyName;
+import org.opengis.filter.expression.Subtract;
+
+/**
+ * A band math expression compiled out of its ECQL form, such as
+ * <code>(b3 - b2) / (b3 + b2)</code>. Bands are referenced as <code>b0</code>, <code>b1</code>,
+ * ... and the expression may use the four arithmetic operators, numeric literals and the
+ * <code>abs, exp, log, sqrt, floor, ceil, sin, cos, tan, pow, min, max</code> functions.
+ * <p>
+ * The expression is evaluated a block of pixels at a time: each operation runs a single loop
+ * over the primitive arrays holding the samples of its operands, literals are folded and
+ * intermediate arrays are reused, so that a whole expression costs a handful of passes over a
+ * tile instead of a chain of intermediate images.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class BandMathExpression {
+
+    private static final Pattern BAND = Pattern.compile("b(\\d+)");
+
+    private static final int ADD = 0;
+
+    private static final int SUBTRACT = 1;
+
+    private static final int MULTIPLY = 2;
+
+    private static final int DIVIDE = 3;
+
+    private static final int POW = 4;
+
+    private static final int MIN = 5;
+
+    private static final int MAX = 6;
+
+    private static final String[] BINARY_FUNCTIONS = { null, null, null, null, "pow", "min",
+            "max" };
+
+    private static final String[] UNARY_FUNCTIONS = { "abs", "exp", "log", "sqrt", "floor",
+            "ceil", "sin", "cos", "tan" };
+
+    private final Node root;
+
+    private final int[] bands;
+
+    private BandMathExpression(Node root, SortedSet<Integer> bands) {
+        this.root = root;
+        this.bands = new int[bands.size()];
+        int i = 0;
+        for (Integer band : bands) {
+            this.bands[i++] = band;
+        }
+    }
+
+    /**
+     * Parses and compiles an expression
+     *
+     * @param numBands the number of bands the expression can refer to
+     * @throws CQLException if the expression cannot be parsed
+     * @throws IllegalArgumentException if the expression uses unsupported constructs or bands
+     */
+    static BandMathExpression compile(String expression, int numBands) throws CQLException {
+        final SortedSet<Integer> bands = new TreeSet<Integer>();
+        final Node root = compile(ECQL.toExpression(expression), numBands, bands);
+        return new BandMathExpression(root, bands);
+    }
+
+    private static Node compile(Expression expression, int numBands, SortedSet<Integer> bands) {
+        if (expression instanceof Literal) {
+            final Double value = ((Literal) expression).evaluate(null, Double.class);
+            if (value == null) {
+                throw new IllegalArgumentException("Not a number: " + expression);
+            }
+            return new Constant(value);
+        } else if (expression instanceof PropertyName) {
+            final String name = ((PropertyName) expression).getPropertyName();
+            final Matcher matcher = BAND.matcher(name);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("Unknown band " + name
+                        + ", bands are referenced as b0, b1, ...");
+            }
+            final int band = Integer.parseInt(matcher.group(1));
+            if (band >= numBands) {
+                throw new IllegalArgumentException("Band " + name + " does not exist, only "
+                        + numBands + " bands are available");
+            }
+            bands.add(band);
+            return new Band(band);
+        } else if (expression instanceof BinaryExpression) {
+            final BinaryExpression binary = (BinaryExpression) expression;
+            final int op;
+            if (expression instanceof Add) {
+                op = ADD;
+            } else if (expression instanceof Subtract) {
+                op = SUBTRACT;
+            } else if (expression instanceof Multiply) {
+                op = MULTIPLY;
+            } else if (expression instanceof Divide) {
+                op = DIVIDE;
+            } else {
+                throw new IllegalArgumentException("Unsupported operator in " + expression);
+            }
+            return binary(op, compile(binary.getExpression1(), numBands, bands), compile(
+                    binary.getExpression2(), numBands, bands));
+        } else if (expression instanceof Function) {
+            final Function function = (Function) expression;
+            final String name = function.getName();
+            final List<Expression> parameters = function.getParameters();
+            for (int fn = 0; fn < UNARY_FUNCTIONS.length; fn++) {
+                if (matches(name, UNARY_FUNCTIONS[fn])) {
+                    checkArguments(name, parameters, 1);
+                    return unary(fn, compile(parameters.get(0), numBands, bands));
+                }
+            }
+            for (int op = 0; op < BINARY_FUNCTIONS.length; op++) {
+                if (BINARY_FUNCTIONS[op] != null && matches(name, BINARY_FUNCTIONS[op])) {
+                    checkArguments(name, parameters, 2);
+                    return binary(op, compile(parameters.get(0), numBands, bands), compile(
+                            parameters.get(1), numBands, bands));
+                }
+            }
+            throw new IllegalArgumentException("Unsupported function " + name);
+        }
+        throw new IllegalArgumentException("Unsupported expression " + expression);
+    }
+
+    /**
+     * Matches a function name, ignoring the suffix of the typed variants (e.g. abs_2)
+     */
+    private static boolean matches(String name, String function) {
+        return name.equalsIgnoreCase(function)
+                || name.toLowerCase().matches(function + "_\\d");
+    }
+
+    private static void checkArguments(String name, List<Expression> parameters, int count) {
+        if (parameters == null || parameters.size() != count) {
+            throw new IllegalArgumentException("Function " + name + " takes " + count
+                    + " arguments");
+        }
+    }
+
+    private static Node binary(int op, Node left, Node right) {
+        if (left instanceof Constant && right instanceof Constant) {
+            return new Constant(apply(op, ((Constant) left).value, ((Constant) right).value));
+        }
+        return new Binary(op, left, right);
+    }
+
+    private static Node unary(int fn, Node argument) {
+        if (argument instanceof Constant) {
+            final double[] value = { ((Constant) argument).value };
+            apply(fn, value, value, 1);
+            return new Constant(value[0]);
+        }
+        return new Unary(fn, argument);
+    }
+
+    /**
+     * @return the bands the expression refers to, sorted
+     */
+    int[] getBands() {
+        return bands.clone();
+    }
+
+    /**
+     * Evaluates the expression over a block of pixels
+     *
+     * @param samples the samples of each band, only the ones returned by {@link #getBands()} are
+     *        needed
+     * @param length the number of pixels
+     * @return the values, in an array owned by the caller
+     */
+    double[] evaluate(double[][] samples, int length) {
+        final double[] result = root.evaluate(samples, length);
+        return root.isTemporary() ? result : result.clone();
+    }
+
+    /**
+     * A node of the compiled expression
+     */
+    private static abstract class Node {
+        /**
+         * @return the values of the node, in a new array unless {@link #isTemporary()} is false
+         */
+        abstract double[] evaluate(double[][] samples, int length);
+
+        /**
+         * @return whether the arrays returned by {@link #evaluate} can be overwritten
+         */
+        boolean isTemporary() {
+            return true;
+        }
+    }
+
+    private static final class Constant extends Node {
+        final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        @Override
+        double[] evaluate(double[][] samples, int length) {
+            final double[] result = new double[length];
+            Arrays.fill(result, value);
+            return result;
+        }
+    }
+
+    private static final class Band extends Node {
+        final int band;
+
+        Band(int band) {
+            this.band = band;
+        }
+
+        @Override
+        double[] evaluate(double[][] samples, int length) {
+            return samples[band];
+        }
+
+        @Override
+        boolean isTemporary() {
+            return false;
+        }
+    }
+
+    private static final class Unary extends Node {
+        final int fn;
+
+        final Node argument;
+
+        Unary(int fn, Node argument) {
+            this.fn = fn;
+            this.argument = argument;
+        }
+
+        @Override
+        double[] evaluate(double[][] samples, int length) {
+            final double[] values = argument.evaluate(samples, length);
+            final double[] result = argument.isTemporary() ? values : new double[length];
+            apply(fn, values, result, length);
+            return result;
+        }
+    }
+
+    private static final class Binary extends Node {
+        final int op;
+
+        final Node left;
+
+        final Node right;
+
+        Binary(int op, Node left, Node right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double[] evaluate(double[][] samples, int length) {
+            if (right instanceof Constant) {
+                final double[] values = left.evaluate(samples, length);
+                final double[] result = left.isTemporary() ? values : new double[length];
+                apply(op, values, ((Constant) right).value, false, result, length);
+                return result;
+            } else if (left instanceof Constant) {
+                final double[] values = right.evaluate(samples, length);
+                final double[] result = right.isTemporary() ? values : new double[length];
+                apply(op, values, ((Constant) left).value, true, result, length);
+                return result;
+            }
+            final double[] a = left.evaluate(samples, length);
+            final double[] b = right.evaluate(samples, length);
+            final double[] result = left.isTemporary() ? a : (right.isTemporary() ? b
+                    : new double[length]);
+            apply(op, a, b, result, length);
+            return result;
+        }
+    }
+
+    private static double apply(int op, double a, double b) {
+        switch (op) {
+        case ADD:
+            return a + b;
+        case SUBTRACT:
+            return a - b;
+        case MULTIPLY:
+            return a * b;
+        case DIVIDE:
+            return a / b;
+        case POW:
+            return Math.pow(a, b);
+        case MIN:
+            return Math.min(a, b);
+        case MAX:
+            return Math.max(a, b);
+        default:
+            throw new IllegalStateException("Unknown operator " + op);
+        }
+    }
+
+    private static void apply(int op, double[] a, double[] b, double[] result, int length) {
+        switch (op) {
+        case ADD:
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] + b[i];
+            }
+            break;
+        case SUBTRACT:
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] - b[i];
+            }
+            break;
+        case MULTIPLY:
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] * b[i];
+            }
+            break;
+        case DIVIDE:
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] / b[i];
+            }
+            break;
+        default:
+            for (int i = 0; i < length; i++) {
+                result[i] = apply(op, a[i], b[i]);
+            }
+        }
+    }
+
+    /**
+     * Applies an operator between an array and a constant
+     *
+     * @param reversed whether the constant is the left operand
+     */
+    private static void apply(int op, double[] a, double c, boolean reversed, double[] result,
+            int length) {
+        switch (op) {
+        case ADD:
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] + c;
+            }
+            break;
+        case MULTIPLY:
+            for (int i = 0; i < length; i++) {
+                result[i] = a[i] * c;
+            }
+            break;
+        case SUBTRACT:
+            if (reversed) {
+                for (int i = 0; i < length; i++) {
+                    result[i] = c - a[i];
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    result[i] = a[i] - c;
+                }
+            }
+            break;
+        case DIVIDE:
+            if (reversed) {
+                for (int i = 0; i < length; i++) {
+                    result[i] = c / a[i];
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    result[i] = a[i] / c;
+                }
+            }
+            break;
+        default:
+            for (int i = 0; i < length; i++) {
+                result[i] = reversed ? apply(op, c, a[i]) : apply(op, a[i], c);
+            }
+        }
+    }
+
+    private static void apply(int fn, double[] a, double[] result, int length) {
+        switch (fn) {
+        case 0:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.abs(a[i]);
+            }
+            break;
+        case 1:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.exp(a[i]);
+            }
+            break;
+        case 2:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.log(a[i]);
+            }
+            break;
+        case 3:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.sqrt(a[i]);
+            }
+            break;
+        case 4:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.floor(a[i]);
+            }
+            break;
+        case 5:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.ceil(a[i]);
+            }
+            break;
+        case 6:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.sin(a[i]);
+            }
+            break;
+        case 7:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.cos(a[i]);
+            }
+            break;
+        case 8:
+            for (int i = 0; i < length; i++) {
+                result[i] = Math.tan(a[i]);
+            }
+            break;
+        default:
+            throw new IllegalStateException("Unknown function " + fn);
+        }
+    }
+}
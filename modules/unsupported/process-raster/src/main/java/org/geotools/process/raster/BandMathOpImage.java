@@ -0,0 +1,323 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+
+/**
+ * Computes a {@link BandMathExpression} over the bands of a set of aligned images, producing a
+ * single band image of doubles. Each tile is computed in one go: the samples of the referenced
+ * bands are pulled out of the sources, the expression is evaluated over them and the pixels
+ * where a source is nodata, or the result is not a finite number, are set to the output nodata.
+ * <p>
+ * Requests for several tiles, {@link #getTiles(Point[])} and {@link #getData(Rectangle)}, compute
+ * the missing tiles in parallel.
+ * </p>
+ *
+ * @source $URL$
+ */
+final class BandMathOpImage extends OpImage {
+
+    /** The tile size used when the tiling of the sources is too small or too large */
+    static final int DEFAULT_TILE_SIZE = 512;
+
+    private static final ExecutorService TILE_POOL = Executors.newFixedThreadPool(Runtime
+            .getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            final Thread thread = new TileThread(r, "Band math " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * The threads of the pool, which compute the tiles of chained band math images inline rather
+     * than waiting on the pool they belong to
+     */
+    private static final class TileThread extends Thread {
+        TileThread(Runnable target, String name) {
+            super(target, name);
+        }
+    }
+
+    private final RenderedImage[] sources;
+
+    /** For each source, the offset of its grid from the one of this image */
+    private final Point[] offsets;
+
+    /** For each source, the bands referenced by the expression, in the numbering of the expression */
+    private final int[][] sourceBands;
+
+    /** For each band of the expression, its index in its source */
+    private final int[] bandIndices;
+
+    /** For each band of the expression, its nodata values, null if none */
+    private final double[][] noData;
+
+    private final BandMathExpression expression;
+
+    private final int numBands;
+
+    private final double outputNoData;
+
+    /**
+     * @param sources the images, all of the same size
+     * @param noData for each band of each image in turn, the nodata values, null if none
+     * @param expression the expression, referring to the bands of each image in turn
+     * @param outputNoData the value of the pixels where a source is nodata
+     */
+    BandMathOpImage(List<RenderedImage> sources, double[][] noData, BandMathExpression expression,
+            double outputNoData) {
+        super(vectorize(sources), layout(sources.get(0)), null, false);
+        this.sources = sources.toArray(new RenderedImage[sources.size()]);
+        this.noData = noData;
+        this.expression = expression;
+        this.outputNoData = outputNoData;
+        this.numBands = noData.length;
+
+        final int[] referenced = expression.getBands();
+        offsets = new Point[this.sources.length];
+        sourceBands = new int[this.sources.length][];
+        bandIndices = new int[numBands];
+        int first = 0;
+        for (int s = 0; s < this.sources.length; s++) {
+            final RenderedImage source = this.sources[s];
+            offsets[s] = new Point(source.getMinX() - getMinX(), source.getMinY() - getMinY());
+            final int count = source.getSampleModel().getNumBands();
+            final List<Integer> bands = new ArrayList<Integer>();
+            for (int band : referenced) {
+                if (band >= first && band < first + count) {
+                    bands.add(band);
+                    bandIndices[band] = band - first;
+                }
+            }
+            sourceBands[s] = new int[bands.size()];
+            for (int i = 0; i < sourceBands[s].length; i++) {
+                sourceBands[s][i] = bands.get(i);
+            }
+            first += count;
+        }
+    }
+
+    private static Vector<Object> vectorize(List<RenderedImage> sources) {
+        final Vector<Object> vector = new Vector<Object>(sources.size());
+        for (RenderedImage source : sources) {
+            vector.add(PlanarImage.wrapRenderedImage(source));
+        }
+        return vector;
+    }
+
+    /**
+     * Lays the image out on the tile grid of the reference source, unless its tiles are
+     * degenerate (e.g. single line strips, or the whole image)
+     */
+    private static ImageLayout layout(RenderedImage reference) {
+        int tileWidth = reference.getTileWidth();
+        int tileHeight = reference.getTileHeight();
+        int tileGridXOffset = reference.getTileGridXOffset();
+        int tileGridYOffset = reference.getTileGridYOffset();
+        if (tileWidth < 64 || tileHeight < 64
+                || (long) tileWidth * tileHeight > DEFAULT_TILE_SIZE * DEFAULT_TILE_SIZE) {
+            tileWidth = Math.min(DEFAULT_TILE_SIZE, reference.getWidth());
+            tileHeight = Math.min(DEFAULT_TILE_SIZE, reference.getHeight());
+            tileGridXOffset = reference.getMinX();
+            tileGridYOffset = reference.getMinY();
+        }
+        final SampleModel sampleModel = RasterFactory.createPixelInterleavedSampleModel(
+                DataBuffer.TYPE_DOUBLE, tileWidth, tileHeight, 1);
+        return new ImageLayout(reference.getMinX(), reference.getMinY(), reference.getWidth(),
+                reference.getHeight(), tileGridXOffset, tileGridYOffset, tileWidth, tileHeight,
+                sampleModel, PlanarImage.createColorModel(sampleModel));
+    }
+
+    @Override
+    public Raster computeTile(int tileX, int tileY) {
+        final Point location = new Point(tileXToX(tileX), tileYToY(tileY));
+        final Rectangle area = getTileRect(tileX, tileY);
+        final double[] values = compute(area);
+        if (area.width == tileWidth && area.height == tileHeight) {
+            return Raster.createWritableRaster(sampleModel, new DataBufferDouble(values,
+                    values.length), location);
+        }
+        final WritableRaster tile = createWritableRaster(sampleModel, location);
+        tile.setSamples(area.x, area.y, area.width, area.height, 0, values);
+        return tile;
+    }
+
+    /**
+     * Computes the values of an area of the image
+     */
+    private double[] compute(Rectangle area) {
+        final int length = area.width * area.height;
+        final double[][] samples = new double[numBands][];
+        final boolean[] masked = new boolean[length];
+        for (int s = 0; s < sources.length; s++) {
+            if (sourceBands[s].length == 0) {
+                continue;
+            }
+            final Raster data = sources[s].getData(new Rectangle(area.x + offsets[s].x, area.y
+                    + offsets[s].y, area.width, area.height));
+            for (int band : sourceBands[s]) {
+                final double[] values = data.getSamples(data.getMinX(), data.getMinY(),
+                        area.width, area.height, bandIndices[band], new double[length]);
+                mask(values, noData[band], masked, length);
+                samples[band] = values;
+            }
+        }
+
+        final double[] result = expression.evaluate(samples, length);
+        final double nodata = outputNoData;
+        for (int i = 0; i < length; i++) {
+            final double value = result[i];
+            if (masked[i] || Double.isNaN(value) || Double.isInfinite(value)) {
+                result[i] = nodata;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Flags the pixels whose value is NaN or one of the nodata values
+     */
+    private static void mask(double[] values, double[] noData, boolean[] masked, int length) {
+        for (int i = 0; i < length; i++) {
+            final double value = values[i];
+            if (value != value) {
+                masked[i] = true;
+            }
+        }
+        if (noData != null) {
+            for (double nd : noData) {
+                for (int i = 0; i < length; i++) {
+                    if (values[i] == nd) {
+                        masked[i] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Raster[] getTiles(Point[] tileIndices) {
+        if (tileIndices == null) {
+            throw new IllegalArgumentException("tileIndices");
+        }
+        final Raster[] tiles = new Raster[tileIndices.length];
+        final List<Integer> missing = new ArrayList<Integer>();
+        for (int i = 0; i < tileIndices.length; i++) {
+            tiles[i] = getTileFromCache(tileIndices[i].x, tileIndices[i].y);
+            if (tiles[i] == null) {
+                missing.add(i);
+            }
+        }
+        if (missing.size() == 1 || Thread.currentThread() instanceof TileThread) {
+            for (Integer i : missing) {
+                tiles[i] = getTile(tileIndices[i].x, tileIndices[i].y);
+            }
+        } else if (missing.size() > 1) {
+            final List<Future<Raster>> futures = new ArrayList<Future<Raster>>(missing.size());
+            for (Integer i : missing) {
+                final Point index = tileIndices[i];
+                futures.add(TILE_POOL.submit(new Callable<Raster>() {
+                    public Raster call() throws Exception {
+                        return getTile(index.x, index.y);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                tiles[missing.get(i)] = waitFor(futures.get(i));
+            }
+        }
+        return tiles;
+    }
+
+    private static Raster waitFor(Future<Raster> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing the band math tiles", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    @Override
+    public Raster getData(Rectangle region) {
+        final Rectangle bounds = getBounds();
+        if (region == null) {
+            region = bounds;
+        }
+        final Point[] indices = region.intersects(bounds) ? getTileIndices(region) : null;
+        if (indices == null || indices.length < 2) {
+            return super.getData(region);
+        }
+
+        // compute the tiles in parallel, then copy them out
+        final Raster[] tiles = getTiles(indices);
+        final WritableRaster data = createWritableRaster(sampleModel.createCompatibleSampleModel(
+                region.width, region.height), region.getLocation());
+        for (Raster tile : tiles) {
+            final Rectangle overlap = tile.getBounds().intersection(region);
+            data.setRect(tile.createChild(overlap.x, overlap.y, overlap.width, overlap.height,
+                    overlap.x, overlap.y, null));
+        }
+        return data;
+    }
+
+    @Override
+    public Rectangle mapSourceRect(Rectangle sourceRect, int sourceIndex) {
+        final Point offset = offsets[sourceIndex];
+        return new Rectangle(sourceRect.x - offset.x, sourceRect.y - offset.y, sourceRect.width,
+                sourceRect.height);
+    }
+
+    @Override
+    public Rectangle mapDestRect(Rectangle destRect, int sourceIndex) {
+        final Point offset = offsets[sourceIndex];
+        return new Rectangle(destRect.x + offset.x, destRect.y + offset.y, destRect.width,
+                destRect.height);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.process.ProcessException;
+import org.geotools.process.factory.DescribeParameter;
+import org.geotools.process.factory.DescribeProcess;
+import org.geotools.process.factory.DescribeResult;
+import org.geotools.resources.i18n.ErrorKeys;
+import org.geotools.resources.i18n.Errors;
+import org.opengis.coverage.grid.GridCoverage;
+import org.opengis.util.ProgressListener;
+
+/**
+ * Computes a raster out of a band math expression over the bands of a set of rasters, such as
+ * the NDVI <code>(b3 - b2) / (b3 + b2)</code>. The bands are numbered across the rasters in
+ * turn, so that with two single band rasters <code>b0</code> is the first one and
+ * <code>b1</code> the second one.
+ * <p>
+ * Unlike chaining {@link AddCoveragesProcess}, {@link MultiplyCoveragesProcess} and the coverage
+ * operations, the whole expression is compiled into a single image whose tiles are computed with
+ * one pass per operation over primitive arrays, see {@link BandMathExpression}. The pixels where
+ * any of the referenced source bands is nodata, or where the result is not a finite number, are
+ * set to the output nodata.
+ * </p>
+ * The rasters need to have the same envelope and same resolution (same gridGeometry).
+ *
+ * @source $URL$
+ */
+@DescribeProcess(title = "Band Math", description = "Returns a raster computed out of an expression over the bands of the source rasters, such as (b3 - b2) / (b3 + b2). Bands are named b0, b1, ... across the source rasters in turn. Source rasters must have the same bounding box and resolution.")
+public class BandMathProcess implements RasterProcess {
+
+    @DescribeResult(name = "result", description = "The computed raster")
+    public GridCoverage2D execute(
+            @DescribeParameter(name = "coverages", description = "Input rasters", collectionType = GridCoverage2D.class) List<GridCoverage2D> coverages,
+            @DescribeParameter(name = "expression", description = "Expression over the bands, using the four arithmetic operators and the abs, exp, log, sqrt, floor, ceil, sin, cos, tan, pow, min, max functions") String expression,
+            @DescribeParameter(name = "noData", description = "Value of the output pixels where a source is nodata or the result is not a number (defaults to NaN)", min = 0) Double noData,
+            ProgressListener listener) throws ProcessException {
+
+        //
+        // initial checks
+        //
+        if (coverages == null || coverages.isEmpty()) {
+            throw new ProcessException(Errors.format(ErrorKeys.NULL_ARGUMENT_$1, "coverages"));
+        }
+        if (expression == null) {
+            throw new ProcessException(Errors.format(ErrorKeys.NULL_ARGUMENT_$1, "expression"));
+        }
+        final GridCoverage2D reference = coverages.get(0);
+        for (GridCoverage2D coverage : coverages) {
+            BaseCoverageAlgebraProcess.checkCompatibleCoverages(reference, coverage);
+        }
+
+        // collect the bands and their nodata
+        final List<RenderedImage> images = new ArrayList<RenderedImage>(coverages.size());
+        final List<double[]> bandNoData = new ArrayList<double[]>();
+        for (GridCoverage2D coverage : coverages) {
+            images.add(coverage.getRenderedImage());
+            for (int band = 0; band < coverage.getNumSampleDimensions(); band++) {
+                bandNoData.add(getNoDataValues(coverage.getSampleDimension(band)));
+            }
+        }
+
+        //
+        // compile and compute
+        //
+        final BandMathExpression compiled;
+        try {
+            compiled = BandMathExpression.compile(expression, bandNoData.size());
+        } catch (CQLException e) {
+            throw new ProcessException("Invalid band math expression " + expression, e);
+        } catch (IllegalArgumentException e) {
+            throw new ProcessException(e.getMessage(), e);
+        }
+        final double nd = noData != null ? noData.doubleValue() : Double.NaN;
+        final BandMathOpImage image = new BandMathOpImage(images, bandNoData
+                .toArray(new double[bandNoData.size()][]), compiled, nd);
+
+        //
+        // build the output coverage
+        //
+        final Map<String, Double> properties = new HashMap<String, Double>();
+        properties.put("GC_NODATA", nd);
+        final GridCoverageFactory factory = CoverageFactoryFinder.getGridCoverageFactory(null);
+        return factory.create("result", image, reference.getGridGeometry(),
+                new GridSampleDimension[] { new GridSampleDimension("result") },
+                coverages.toArray(new GridCoverage[coverages.size()]), properties);
+    }
+
+    private static double[] getNoDataValues(GridSampleDimension sampleDimension) {
+        try {
+            return sampleDimension.getNoDataValues();
+        } catch (IllegalStateException e) {
+            // nodata expressed as ranges, only NaN is considered
+            return null;
+        }
+    }
+}
@@ -21,15 +21,19 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.ROI;
 import javax.media.jai.RenderedOp;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.util.AffineTransformation;
+import com.vividsolutions.jts.operation.linemerge.LineMerger;
 
 import org.jaitools.media.jai.contour.ContourDescriptor;
 import org.jaitools.media.jai.contour.ContourRIF;
@@ -112,6 +116,10 @@ public class ContourProcess implements RasterProcess {
      * @param roi an optional polygonal {@code Geometry} to define the region of interest
      *     within which contours will be generated
      * 
+     * @param tileSize if provided, the coverage is contoured in square tiles of this size
+     *     (in pixels), processed in parallel; contours crossing tile seams are merged, and
+     *     the results are streamed rather than held in memory
+     * 
      * @return the contours a feature collection where each feature contains a contour
      *     as a {@linkplain  LineString} and the contour value as a {@code Double}
      * 
@@ -119,21 +127,44 @@ public class ContourProcess implements RasterProcess {
      */
     public static SimpleFeatureCollection process(GridCoverage2D gc2d, Integer band,
             double[] levels, Double interval, Boolean simplify, Boolean smooth, Geometry roi,
-            ProgressListener progressListener) throws ProcessException {
+            Integer tileSize, ProgressListener progressListener) throws ProcessException {
         ContourProcess process = new ContourProcess();
-        return process.execute(gc2d, band, levels, interval, simplify, smooth, roi,
+        return process.execute(gc2d, band, levels, interval, simplify, smooth, roi, tileSize,
+                progressListener);
+    }
+
+    /**
+     * Performs the contouring in a single pass, see
+     * {@link #process(GridCoverage2D, Integer, double[], Double, Boolean, Boolean, Geometry, Integer, ProgressListener)}
+     */
+    public static SimpleFeatureCollection process(GridCoverage2D gc2d, Integer band,
+            double[] levels, Double interval, Boolean simplify, Boolean smooth, Geometry roi,
+            ProgressListener progressListener) throws ProcessException {
+        return process(gc2d, band, levels, interval, simplify, smooth, roi, null,
+                progressListener);
+    }
+
+    /**
+     * Performs the contouring in a single pass, see
+     * {@link #execute(GridCoverage2D, Integer, double[], Double, Boolean, Boolean, Geometry, Integer, ProgressListener)}
+     */
+    public SimpleFeatureCollection execute(GridCoverage2D gc2d, Integer band, double[] levels,
+            Double interval, Boolean simplify, Boolean smooth, Geometry roi,
+            ProgressListener progressListener) throws ProcessException {
+        return execute(gc2d, band, levels, interval, simplify, smooth, roi, null,
                 progressListener);
     }
 
     @DescribeResult(name = "result", description = "Contour line features.  Contour level is in value attribute.")
     public SimpleFeatureCollection execute(
             @DescribeParameter(name = "data", description = "Input raster") GridCoverage2D gc2d,
-            @DescribeParameter(name = "band", description = "Name of band to use for values to be contoured", min = 0, max = 1) Integer band,
-            @DescribeParameter(name = "levels", description = "Values of levels at which to generate contours") double[] levels,
-            @DescribeParameter(name = "interval", description = "Interval between contour values (ignored if levels parameter is supplied)", min = 0, minValue = 0) Double interval,
-            @DescribeParameter(name = "simplify", description = "Indicates whether contour lines are simplified", min = 0) Boolean simplify,
-            @DescribeParameter(name = "smooth", description = "Indicates whether contour lines are smoothed using Bezier smoothing", min = 0) Boolean smooth,
+            @DescribeParameter(name = "band", description = "Name of band to use for values to be contoured", min = 0, max = 1) final Integer band,
+            @DescribeParameter(name = "levels", description = "Values of levels at which to generate contours") final double[] levels,
+            @DescribeParameter(name = "interval", description = "Interval between contour values (ignored if levels parameter is supplied)", min = 0, minValue = 0) final Double interval,
+            @DescribeParameter(name = "simplify", description = "Indicates whether contour lines are simplified", min = 0) final Boolean simplify,
+            @DescribeParameter(name = "smooth", description = "Indicates whether contour lines are smoothed using Bezier smoothing", min = 0) final Boolean smooth,
             @DescribeParameter(name = "roi", description = "Geometry delineating the region of interest (in raster coordinate system)", min = 0) Geometry roi,
+            @DescribeParameter(name = "tileSize", description = "Size in pixels of the tiles processed in parallel (default = process the raster in a single pass)", min = 0, minValue = 1) Integer tileSize,
             ProgressListener progressListener) throws ProcessException {
 
         //
@@ -161,7 +192,7 @@ public class ContourProcess implements RasterProcess {
                 PixelOrientation.CENTER);
 
         // get the list of nodata, if any
-        List<Object> noDataList = new ArrayList<Object>();
+        final List<Object> noDataList = new ArrayList<Object>();
         for (GridSampleDimension sd : gc2d.getSampleDimensions()) {
             // grab all the explicit nodata
             final double[] sdNoData = sd.getNoDataValues();
@@ -193,13 +224,74 @@ public class ContourProcess implements RasterProcess {
 
         // get the rendered image
         final RenderedImage raster = gc2d.getRenderedImage();
+        final ROI rasterROI = roi != null ? CoverageUtilities.prepareROI(roi, mt2D) : null;
+        final SimpleFeatureType schema = CoverageUtilities
+                .createFeatureType(gc2d, LineString.class);
 
+        if (tileSize != null && tileSize > 0
+                && (tileSize < raster.getWidth() || tileSize < raster.getHeight())) {
+            // contour tiles share their last column and row with their neighbours, so that
+            // contour lines crossing a seam end on identical coordinates in both tiles
+            return new TiledVectorizingCollection(schema, raster, tileSize, 1, rasterROI, mt2D) {
+
+                @Override
+                protected Collection<LineString> vectorize(RenderedImage tile, ROI tileRoi) {
+                    return contour(tile, tileRoi, band, levels, interval, simplify, smooth,
+                            noDataList);
+                }
+
+                @Override
+                protected Collection<LineString> stitch(List<Geometry> seamGeometries) {
+                    return mergeContours(seamGeometries);
+                }
+            };
+        }
+
+        final Collection<LineString> prop = contour(raster, rasterROI, band, levels, interval,
+                simplify, smooth, noDataList);
+
+        // wrap as a feature collection and return
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        int i = 0;
+        final ListFeatureCollection featureCollection = new ListFeatureCollection(schema);
+        final AffineTransformation jtsTransformation = new AffineTransformation(mt2D.getScaleX(),
+                mt2D.getShearX(), mt2D.getTranslateX(), mt2D.getShearY(), mt2D.getScaleY(),
+                mt2D.getTranslateY());
+        for (LineString line : prop) {
+
+            // get value
+            Double value = (Double) line.getUserData();
+            line.setUserData(null);
+            // filter coordinates in place
+            line.apply(jtsTransformation);
+
+            // create feature and add to list
+            builder.set("the_geom", line);
+            builder.set("value", value);
+
+            featureCollection.add(builder.buildFeature(String.valueOf(i++)));
+
+        }
+
+        // return value
+
+        return featureCollection;
+
+    }
+
+    /**
+     * Runs the JAITools "Contour" operation on an image, returning the contours in raster space
+     * with their value as user data.
+     */
+    private static Collection<LineString> contour(RenderedImage raster, ROI roi, Integer band,
+            double[] levels, Double interval, Boolean simplify, Boolean smooth,
+            List<Object> noDataList) {
         // perform jai operation
         ParameterBlockJAI pb = new ParameterBlockJAI("Contour");
         pb.setSource("source0", raster);
 
         if (roi != null) {
-            pb.setParameter("roi", CoverageUtilities.prepareROI(roi, mt2D));
+            pb.setParameter("roi", roi);
         }
         
         if (band != null) {
@@ -231,36 +323,34 @@ public class ContourProcess implements RasterProcess {
         @SuppressWarnings("unchecked")
         final Collection<LineString> prop = (Collection<LineString>) dest
                 .getProperty(ContourDescriptor.CONTOUR_PROPERTY_NAME);
+        return prop;
+    }
 
-        // wrap as a feature collection and return
-        final SimpleFeatureType schema = CoverageUtilities
-                .createFeatureType(gc2d, LineString.class);
-        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
-        int i = 0;
-        final ListFeatureCollection featureCollection = new ListFeatureCollection(schema);
-        final AffineTransformation jtsTransformation = new AffineTransformation(mt2D.getScaleX(),
-                mt2D.getShearX(), mt2D.getTranslateX(), mt2D.getShearY(), mt2D.getScaleY(),
-                mt2D.getTranslateY());
-        for (LineString line : prop) {
-
-            // get value
-            Double value = (Double) line.getUserData();
-            line.setUserData(null);
-            // filter coordinates in place
-            line.apply(jtsTransformation);
-
-            // create feature and add to list
-            builder.set("the_geom", line);
-            builder.set("value", value);
-
-            featureCollection.add(builder.buildFeature(String.valueOf(i++)));
-
+    /**
+     * Merges contour lines of the same value which were split across tile seams.
+     */
+    private static Collection<LineString> mergeContours(List<Geometry> lines) {
+        Map<Object, LineMerger> mergers = new LinkedHashMap<Object, LineMerger>();
+        for (Geometry line : lines) {
+            Object value = line.getUserData();
+            LineMerger merger = mergers.get(value);
+            if (merger == null) {
+                merger = new LineMerger();
+                mergers.put(value, merger);
+            }
+            merger.add(line);
         }
 
-        // return value
-
-        return featureCollection;
-
+        List<LineString> result = new ArrayList<LineString>();
+        for (Map.Entry<Object, LineMerger> entry : mergers.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Collection<LineString> merged = entry.getValue().getMergedLineStrings();
+            for (LineString line : merged) {
+                line.setUserData(entry.getKey());
+                result.add(line);
+            }
+        }
+        return result;
     }
 
 }
@@ -21,10 +21,13 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
+import javax.media.jai.ROI;
 import javax.media.jai.RenderedOp;
 
 import org.jaitools.media.jai.vectorize.VectorizeDescriptor;
@@ -34,6 +37,7 @@ import org.jaitools.numeric.Range;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Polygon;
 import com.vividsolutions.jts.geom.util.AffineTransformation;
+import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
 
 import org.geotools.process.factory.DescribeParameter;
 import org.geotools.process.factory.DescribeProcess;
@@ -98,6 +102,10 @@ public class PolygonExtractionProcess implements RasterProcess {
      *     treated as NODATA; values in the first {@code Range} are classified to 1, those
      *     in the second {@code Range} to 2 etc.
      * 
+     * @param tileSize if provided, the coverage is vectorized in square tiles of this size
+     *     (in pixels), processed in parallel; polygons crossing tile seams are merged, and
+     *     the results are streamed rather than held in memory
+     * 
      * @param progressListener an optional listener
      * 
      * @return a feature collection where each feature has a {@code Polygon} ("the_geom")
@@ -111,12 +119,13 @@ public class PolygonExtractionProcess implements RasterProcess {
     public SimpleFeatureCollection execute(
             @DescribeParameter(name = "data", description = "Source raster") GridCoverage2D coverage,
             @DescribeParameter(name = "band", description = "Source band to use (default = 0)", min = 0, defaultValue = "0") Integer band,
-            @DescribeParameter(name = "insideEdges", description = "Indicates whether to vectorize boundaries between adjacent regions with non-outside values", min = 0) Boolean insideEdges,
+            @DescribeParameter(name = "insideEdges", description = "Indicates whether to vectorize boundaries between adjacent regions with non-outside values", min = 0) final Boolean insideEdges,
             @DescribeParameter(name = "roi", description = "Geometry delineating the region of interest (in raster coordinate system)", min = 0) Geometry roi,
             @DescribeParameter(name = "nodata", description = "Value to treat as NODATA (default is 0)",
             collectionType = Number.class, min = 0, defaultValue = "0") Collection<Number> noDataValues,
             @DescribeParameter(name = "ranges", description = "Specifier for a value range in the format ( START ; END ).  START and END values are optional. [ and ] can also be used as brackets, to indicate inclusion of the relevant range endpoint.", 
             collectionType = Range.class, min = 0) List<Range> classificationRanges,
+            @DescribeParameter(name = "tileSize", description = "Size in pixels of the tiles processed in parallel (default = process the raster in a single pass)", min = 0, minValue = 1) Integer tileSize,
             ProgressListener progressListener)
             throws ProcessException {
 
@@ -152,7 +161,7 @@ public class PolygonExtractionProcess implements RasterProcess {
         // Use noDataValues to set the "outsideValues" parameter of the Vectorize
         // operation unless classificationRanges are in use, in which case the
         // noDataValues arg is ignored.
-        List<Number> outsideValues = new ArrayList<Number>();
+        final List<Number> outsideValues = new ArrayList<Number>();
         if (noDataValues != null && !hasClassificationRanges) {
             outsideValues.addAll(noDataValues);
         } else {
@@ -166,27 +175,33 @@ public class PolygonExtractionProcess implements RasterProcess {
 
         // get the rendered image
         final RenderedImage raster = coverage.getRenderedImage();
+        final ROI rasterROI = roi != null ? CoverageUtilities.prepareROI(roi, mt2D) : null;
+        final SimpleFeatureType featureType = CoverageUtilities.createFeatureType(coverage, Polygon.class);
+        final int vectorizedBand = band;
 
-        // perform jai operation
-        ParameterBlockJAI pb = new ParameterBlockJAI("Vectorize");
-        pb.setSource("source0", raster);
+        if (tileSize != null && tileSize > 0
+                && (tileSize < raster.getWidth() || tileSize < raster.getHeight())) {
+            // polygon boundaries follow cell edges, so tiles do not need to overlap
+            return new TiledVectorizingCollection(featureType, raster, tileSize, 0, rasterROI, mt2D) {
 
-        if (roi != null) {
-            pb.setParameter("roi", CoverageUtilities.prepareROI(roi, mt2D));
-        }
-        pb.setParameter("band", band);
-        pb.setParameter("outsideValues", outsideValues);
-        if (insideEdges != null) {
-            pb.setParameter("insideEdges", insideEdges);
+                @Override
+                protected Collection<Polygon> vectorize(RenderedImage tile, ROI tileRoi) {
+                    return PolygonExtractionProcess.vectorize(tile, tileRoi, vectorizedBand,
+                            outsideValues, insideEdges);
+                }
+
+                @Override
+                protected Collection<Polygon> stitch(List<Geometry> seamGeometries) {
+                    // without inside edges adjacent regions are dissolved regardless of value
+                    return unionPolygons(seamGeometries, insideEdges == null || insideEdges);
+                }
+            };
         }
-        // pb.setParameter("removeCollinear", false);  
 
-        final RenderedOp dest = JAI.create("Vectorize", pb);
-        @SuppressWarnings("unchecked")
-        final Collection<Polygon> prop = (Collection<Polygon>) dest.getProperty(VectorizeDescriptor.VECTOR_PROPERTY_NAME);
+        final Collection<Polygon> prop = vectorize(raster, rasterROI, band, outsideValues,
+                insideEdges);
 
         // wrap as a feature collection and return
-        final SimpleFeatureType featureType = CoverageUtilities.createFeatureType(coverage, Polygon.class);
         final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
         int i = 0;
         final ListFeatureCollection featureCollection = new ListFeatureCollection(featureType);
@@ -215,4 +230,85 @@ public class PolygonExtractionProcess implements RasterProcess {
         //return value
         return featureCollection;
     }
+
+    /**
+     * Executes the raster to vector process in a single pass, see
+     * {@link #execute(GridCoverage2D, Integer, Boolean, Geometry, Collection, List, Integer, ProgressListener)}
+     */
+    public SimpleFeatureCollection execute(GridCoverage2D coverage, Integer band,
+            Boolean insideEdges, Geometry roi, Collection<Number> noDataValues,
+            List<Range> classificationRanges, ProgressListener progressListener)
+            throws ProcessException {
+        return execute(coverage, band, insideEdges, roi, noDataValues, classificationRanges,
+                null, progressListener);
+    }
+
+    /**
+     * Runs the JAITools "Vectorize" operation on an image, returning the polygons in raster
+     * space with their value as user data.
+     */
+    private static Collection<Polygon> vectorize(RenderedImage raster, ROI roi, int band,
+            List<Number> outsideValues, Boolean insideEdges) {
+        // perform jai operation
+        ParameterBlockJAI pb = new ParameterBlockJAI("Vectorize");
+        pb.setSource("source0", raster);
+
+        if (roi != null) {
+            pb.setParameter("roi", roi);
+        }
+        pb.setParameter("band", band);
+        pb.setParameter("outsideValues", outsideValues);
+        if (insideEdges != null) {
+            pb.setParameter("insideEdges", insideEdges);
+        }
+        // pb.setParameter("removeCollinear", false);  
+
+        final RenderedOp dest = JAI.create("Vectorize", pb);
+        @SuppressWarnings("unchecked")
+        final Collection<Polygon> prop = (Collection<Polygon>) dest.getProperty(VectorizeDescriptor.VECTOR_PROPERTY_NAME);
+        return prop;
+    }
+
+    /**
+     * Unions polygons which were split across tile seams. Polygons are grouped by value, or all
+     * together if {@code byValue} is false, and each resulting polygon takes the lowest value
+     * of its group, so that the result does not depend on the order the tiles completed in.
+     */
+    private static Collection<Polygon> unionPolygons(List<Geometry> polygons, boolean byValue) {
+        Map<Object, List<Geometry>> groups = new LinkedHashMap<Object, List<Geometry>>();
+        for (Geometry polygon : polygons) {
+            Object key = byValue ? polygon.getUserData() : null;
+            List<Geometry> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<Geometry>();
+                groups.put(key, group);
+            }
+            group.add(polygon);
+        }
+
+        List<Polygon> result = new ArrayList<Polygon>();
+        for (List<Geometry> group : groups.values()) {
+            Object value = lowestValue(group);
+            Geometry union = CascadedPolygonUnion.union(group);
+            for (int i = 0; i < union.getNumGeometries(); i++) {
+                Polygon polygon = (Polygon) union.getGeometryN(i);
+                polygon.setUserData(value);
+                result.add(polygon);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object lowestValue(List<Geometry> group) {
+        Object lowest = null;
+        for (Geometry polygon : group) {
+            Object value = polygon.getUserData();
+            if (lowest == null
+                    || (value instanceof Comparable && ((Comparable) value).compareTo(lowest) < 0)) {
+                lowest = value;
+            }
+        }
+        return lowest;
+    }
 }
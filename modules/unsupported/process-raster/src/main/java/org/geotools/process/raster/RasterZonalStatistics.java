@@ -64,6 +64,7 @@ import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.metadata.spatial.PixelOrientation;
 import org.opengis.parameter.ParameterValueGroup;
+import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
@@ -155,6 +156,10 @@ public class RasterZonalStatistics implements RasterProcess {
 
         @Override
         public SimpleFeatureIterator features() {
+            if (classification == null) {
+                return new SinglePassZonalStatisticsIterator(delegate.features(), coverage,
+                        band, targetSchema);
+            }
             return new RasterZonalStatisticsIterator(delegate.features(), coverage, band,
                     targetSchema, classification);
         }
@@ -215,13 +220,9 @@ public class RasterZonalStatistics implements RasterProcess {
                 try {
                     // grab the geometry and eventually reproject it to the
                     Geometry zoneGeom = (Geometry) zone.getDefaultGeometry();
-                    CoordinateReferenceSystem dataCrs = dataCoverage.getCoordinateReferenceSystem();
                     CoordinateReferenceSystem zonesCrs = builder.getFeatureType()
                             .getGeometryDescriptor().getCoordinateReferenceSystem();
-                    if (!CRS.equalsIgnoreMetadata(zonesCrs, dataCrs)) {
-                        zoneGeom = JTS.transform(zoneGeom, CRS.findMathTransform(zonesCrs, dataCrs,
-                                true));
-                    }
+                    zoneGeom = toCoverageCrs(zoneGeom, zonesCrs, dataCoverage);
     
                     // gather the statistics
                     ZonalStats stats = processStatistics(zoneGeom);
@@ -300,27 +301,7 @@ public class RasterZonalStatistics implements RasterProcess {
                             dataCoverage.getCoordinateReferenceSystem());
                 }
 
-                // check if the novalue is != from NaN
-                GridSampleDimension sampleDimension = dataCoverage.getSampleDimension(0);
-                List<Category> categories = sampleDimension.getCategories();
-                List<Range<Double>> novalueRangeList = null;
-                if (categories != null) {
-                    for (Category category : categories) {
-                        String catName = category.getName().toString();
-                        if (catName.equalsIgnoreCase("no data")) {
-                            NumberRange range = category.getRange();
-                            double min = range.getMinimum();
-                            double max = category.getRange().getMaximum();
-                            if (!Double.isNaN(min) && !Double.isNaN(max)) {
-                                // we have to filter those out
-                                Range<Double> novalueRange = new Range<Double>(min, true, max, true);
-                                novalueRangeList = new ArrayList<Range<Double>>();
-                                novalueRangeList.add(novalueRange);
-                            }
-                            break;
-                        }
-                    }
-                }
+                List<Range<Double>> novalueRangeList = getNoDataRanges(dataCoverage);
 
                 /*
                  * crop on region of interest
@@ -378,4 +359,135 @@ public class RasterZonalStatistics implements RasterProcess {
 
         }
     }
+
+    /**
+     * Returns the ranges of values marked as "no data" in the first sample dimension of the
+     * coverage, or null if there is none
+     */
+    static List<Range<Double>> getNoDataRanges(GridCoverage2D coverage) {
+        // check if the novalue is != from NaN
+        GridSampleDimension sampleDimension = coverage.getSampleDimension(0);
+        List<Category> categories = sampleDimension.getCategories();
+        List<Range<Double>> novalueRangeList = null;
+        if (categories != null) {
+            for (Category category : categories) {
+                String catName = category.getName().toString();
+                if (catName.equalsIgnoreCase("no data")) {
+                    NumberRange range = category.getRange();
+                    double min = range.getMinimum();
+                    double max = category.getRange().getMaximum();
+                    if (!Double.isNaN(min) && !Double.isNaN(max)) {
+                        // we have to filter those out
+                        Range<Double> novalueRange = new Range<Double>(min, true, max, true);
+                        novalueRangeList = new ArrayList<Range<Double>>();
+                        novalueRangeList.add(novalueRange);
+                    }
+                    break;
+                }
+            }
+        }
+        return novalueRangeList;
+    }
+
+    /**
+     * Returns the zone geometry in the coverage CRS
+     */
+    static Geometry toCoverageCrs(Geometry zoneGeom, CoordinateReferenceSystem zonesCrs,
+            GridCoverage2D coverage) throws FactoryException, TransformException {
+        CoordinateReferenceSystem dataCrs = coverage.getCoordinateReferenceSystem();
+        if (!CRS.equalsIgnoreMetadata(zonesCrs, dataCrs)) {
+            zoneGeom = JTS.transform(zoneGeom, CRS.findMathTransform(zonesCrs, dataCrs, true));
+        }
+        return zoneGeom;
+    }
+
+    /**
+     * An iterator computing the statistics for all zones with a single pass over the raster,
+     * using {@link SinglePassZonalStatistics}. The zones are read on the first access, the
+     * statistics computed, and the resulting features returned one by one.
+     */
+    static class SinglePassZonalStatisticsIterator implements SimpleFeatureIterator {
+        SimpleFeatureIterator zones;
+
+        SimpleFeatureBuilder builder;
+
+        GridCoverage2D dataCoverage;
+
+        int band;
+
+        List<SimpleFeature> zoneFeatures;
+
+        SinglePassZonalStatistics.Result result;
+
+        int current = 0;
+
+        public SinglePassZonalStatisticsIterator(SimpleFeatureIterator zones,
+                GridCoverage2D coverage, int band, SimpleFeatureType targetSchema) {
+            this.zones = zones;
+            this.builder = new SimpleFeatureBuilder(targetSchema);
+            this.dataCoverage = coverage;
+            this.band = band;
+        }
+
+        public void close() {
+            zones.close();
+            zoneFeatures = null;
+            result = null;
+        }
+
+        public boolean hasNext() {
+            if (zoneFeatures == null) {
+                computeStatistics();
+            }
+            return current < zoneFeatures.size();
+        }
+
+        private void computeStatistics() {
+            final AffineTransform worldToGrid;
+            try {
+                worldToGrid = ((AffineTransform) ((GridGeometry2D) dataCoverage.getGridGeometry())
+                        .getGridToCRS2D(PixelOrientation.UPPER_LEFT)).createInverse();
+            } catch (NoninvertibleTransformException e) {
+                throw new IllegalArgumentException(e.getLocalizedMessage());
+            }
+            SinglePassZonalStatistics engine = new SinglePassZonalStatistics(
+                    dataCoverage.getRenderedImage(), band, worldToGrid);
+            engine.setNoDataRanges(getNoDataRanges(dataCoverage));
+
+            CoordinateReferenceSystem zonesCrs = builder.getFeatureType()
+                    .getGeometryDescriptor().getCoordinateReferenceSystem();
+            zoneFeatures = new ArrayList<SimpleFeature>();
+            while (zones.hasNext()) {
+                SimpleFeature zone = zones.next();
+                try {
+                    Geometry zoneGeom = (Geometry) zone.getDefaultGeometry();
+                    engine.addZone(toCoverageCrs(zoneGeom, zonesCrs, dataCoverage));
+                } catch (Exception e) {
+                    throw new ProcessException("Failed to compute statistics on feature " + zone, e);
+                }
+                zoneFeatures.add(zone);
+            }
+            result = engine.compute();
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int i = current++;
+            SimpleFeature zone = zoneFeatures.get(i);
+            // release the zone as soon as it has been returned
+            zoneFeatures.set(i, null);
+            builder.addAll(zone.getAttributes());
+            if (result.getCount(i) > 0) {
+                builder.add(result.getCount(i));
+                builder.add(result.getMin(i));
+                builder.add(result.getMax(i));
+                builder.add(result.getSum(i));
+                builder.add(result.getMean(i));
+                builder.add(result.getStandardDeviation(i));
+            }
+            return builder.buildFeature(zone.getID());
+        }
+    }
 }
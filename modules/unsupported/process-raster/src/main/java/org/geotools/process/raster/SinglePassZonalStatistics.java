@@ -0,0 +1,535 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.process.ProcessException;
+import org.jaitools.numeric.Range;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Computes statistics of a raster band for many polygonal zones in a single pass over the raster.
+ * <p>
+ * Zones are converted to raster space once. The raster is then read window by window (aligned
+ * with the image tiles when the image is tiled); for each window the zones intersecting it are
+ * located through a spatial index and rasterized into row spans with a scanline fill, and the
+ * pixels under each span are accumulated into per-zone primitive accumulators. A pixel belongs to
+ * a zone if its center lies inside the zone polygon, and overlapping zones each receive the
+ * pixels they cover.
+ * <p>
+ * Windows can be processed concurrently; each worker thread owns a private set of accumulators,
+ * which are merged at the end. Count, sum, min, max, mean, (sample) standard deviation and,
+ * optionally, a fixed-bin histogram are computed for each zone.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * SinglePassZonalStatistics engine = new SinglePassZonalStatistics(image, band, worldToGrid);
+ * for (Geometry zone : zones) {
+ *     engine.addZone(zone);
+ * }
+ * SinglePassZonalStatistics.Result result = engine.compute();
+ * double mean = result.getMean(0);
+ * </pre>
+ *
+ * @source $URL$
+ */
+public class SinglePassZonalStatistics {
+
+    /**
+     * Default size of the read windows used for untiled images
+     */
+    static final int DEFAULT_WINDOW_SIZE = 512;
+
+    private final RenderedImage image;
+
+    private final int band;
+
+    private final AffineTransform worldToGrid;
+
+    private final List<Zone> zones = new ArrayList<Zone>();
+
+    private final STRtree index = new STRtree();
+
+    private List<Range<Double>> noDataRanges;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private double histogramMin;
+
+    private double histogramMax;
+
+    private int histogramBins;
+
+    /**
+     * Creates a new engine.
+     *
+     * @param image the raster to compute statistics on
+     * @param band the band to use
+     * @param worldToGrid the transform from zone coordinates to raster space, where pixel (x, y)
+     *        covers the square [x, x + 1) x [y, y + 1)
+     */
+    public SinglePassZonalStatistics(RenderedImage image, int band, AffineTransform worldToGrid) {
+        this.image = image;
+        this.band = band;
+        this.worldToGrid = worldToGrid;
+    }
+
+    /**
+     * Sets ranges of values to be ignored. NaN values are always ignored.
+     */
+    public void setNoDataRanges(List<Range<Double>> noDataRanges) {
+        this.noDataRanges = noDataRanges;
+    }
+
+    /**
+     * Sets the number of threads used to read the raster (default is the number of available
+     * processors). A value of 1 computes everything on the calling thread.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Enables the computation of a histogram for each zone, with the given number of equal bins
+     * covering [min, max). Values outside the range are not counted in the histogram.
+     */
+    public void setHistogram(double min, double max, int bins) {
+        if (bins <= 0 || !(max > min)) {
+            throw new IllegalArgumentException("Invalid histogram range or bin count");
+        }
+        this.histogramMin = min;
+        this.histogramMax = max;
+        this.histogramBins = bins;
+    }
+
+    /**
+     * Adds a zone. Only the polygonal components of the geometry are used.
+     *
+     * @param geometry the zone geometry, in the coordinates expected by the world to grid
+     *        transform
+     * @return the index of the zone in the {@link Result}
+     */
+    public int addZone(Geometry geometry) {
+        int id = zones.size();
+        Zone zone = new Zone(id, geometry, worldToGrid);
+        zones.add(zone);
+        if (!zone.isEmpty()) {
+            index.insert(zone.bounds, zone);
+        }
+        return id;
+    }
+
+    /**
+     * Computes the statistics for all the zones added so far. Zones cannot be added after the
+     * statistics have been computed.
+     */
+    public Result compute() {
+        final List<Rectangle> windows = windows();
+        final AtomicInteger next = new AtomicInteger();
+        index.build();
+
+        int workers = Math.min(threads, windows.size());
+        if (workers <= 1) {
+            Accumulator acc = new Accumulator(zones.size(), histogramBins);
+            processWindows(windows, next, acc);
+            return new Result(acc);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Accumulator>> futures = new ArrayList<Future<Accumulator>>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(new Callable<Accumulator>() {
+                    public Accumulator call() throws Exception {
+                        Accumulator acc = new Accumulator(zones.size(), histogramBins);
+                        processWindows(windows, next, acc);
+                        return acc;
+                    }
+                }));
+            }
+            Accumulator result = null;
+            for (Future<Accumulator> future : futures) {
+                Accumulator acc = future.get();
+                if (result == null) {
+                    result = acc;
+                } else {
+                    result.merge(acc);
+                }
+            }
+            return new Result(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessException("Interrupted while computing zonal statistics", e);
+        } catch (ExecutionException e) {
+            throw new ProcessException("Failed to compute zonal statistics", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits the image into read windows, aligned with the image tiles if they are reasonably
+     * sized.
+     */
+    List<Rectangle> windows() {
+        int ww = image.getTileWidth();
+        int wh = image.getTileHeight();
+        int x0 = image.getTileGridXOffset();
+        int y0 = image.getTileGridYOffset();
+        if (ww * (long) wh > 4 * DEFAULT_WINDOW_SIZE * DEFAULT_WINDOW_SIZE) {
+            ww = wh = DEFAULT_WINDOW_SIZE;
+            x0 = image.getMinX();
+            y0 = image.getMinY();
+        }
+        Rectangle bounds = new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(),
+                image.getHeight());
+        List<Rectangle> windows = new ArrayList<Rectangle>();
+        int startX = x0 + (int) Math.floor((bounds.x - x0) / (double) ww) * ww;
+        int startY = y0 + (int) Math.floor((bounds.y - y0) / (double) wh) * wh;
+        for (int y = startY; y < bounds.y + bounds.height; y += wh) {
+            for (int x = startX; x < bounds.x + bounds.width; x += ww) {
+                Rectangle window = new Rectangle(x, y, ww, wh).intersection(bounds);
+                if (!window.isEmpty()) {
+                    windows.add(window);
+                }
+            }
+        }
+        return windows;
+    }
+
+    private void processWindows(List<Rectangle> windows, AtomicInteger next, Accumulator acc) {
+        double[] samples = null;
+        double[] crossings = new double[16];
+        int i;
+        while ((i = next.getAndIncrement()) < windows.size()) {
+            Rectangle window = windows.get(i);
+            @SuppressWarnings("unchecked")
+            List<Zone> candidates = index.query(new Envelope(window.x, window.x + window.width,
+                    window.y, window.y + window.height));
+            if (candidates.isEmpty()) {
+                continue;
+            }
+
+            Raster data = image.getData(window);
+            int size = window.width * window.height;
+            if (samples == null || samples.length < size) {
+                samples = new double[size];
+            }
+            data.getSamples(window.x, window.y, window.width, window.height, band, samples);
+
+            for (Zone zone : candidates) {
+                crossings = accumulateZone(zone, window, samples, crossings, acc);
+            }
+        }
+    }
+
+    /**
+     * Scanline fills a zone within a window, accumulating the covered pixels. Returns the
+     * crossings buffer, which may have been grown.
+     */
+    private double[] accumulateZone(Zone zone, Rectangle window, double[] samples,
+            double[] crossings, Accumulator acc) {
+        int rowStart = Math.max(window.y, (int) Math.floor(zone.bounds.getMinY() - 0.5));
+        int rowEnd = Math.min(window.y + window.height - 1,
+                (int) Math.ceil(zone.bounds.getMaxY() - 0.5));
+        double[] xs = zone.xs;
+        double[] ys = zone.ys;
+        int[] ringEnds = zone.ringEnds;
+        int id = zone.id;
+
+        for (int row = rowStart; row <= rowEnd; row++) {
+            double yc = row + 0.5;
+            int n = 0;
+            int ringStart = 0;
+            for (int r = 0; r < ringEnds.length; r++) {
+                for (int k = ringStart; k < ringEnds[r] - 1; k++) {
+                    double y1 = ys[k];
+                    double y2 = ys[k + 1];
+                    if ((y1 <= yc && yc < y2) || (y2 <= yc && yc < y1)) {
+                        if (n == crossings.length) {
+                            crossings = Arrays.copyOf(crossings, n * 2);
+                        }
+                        crossings[n++] = xs[k] + (yc - y1) * (xs[k + 1] - xs[k]) / (y2 - y1);
+                    }
+                }
+                ringStart = ringEnds[r];
+            }
+            if (n < 2) {
+                continue;
+            }
+            Arrays.sort(crossings, 0, n);
+
+            int offset = (row - window.y) * window.width - window.x;
+            for (int c = 0; c + 1 < n; c += 2) {
+                // pixels whose center lies in [crossings[c], crossings[c + 1])
+                int colStart = Math.max(window.x, (int) Math.ceil(crossings[c] - 0.5));
+                int colEnd = Math.min(window.x + window.width,
+                        (int) Math.ceil(crossings[c + 1] - 0.5));
+                for (int col = colStart; col < colEnd; col++) {
+                    double value = samples[offset + col];
+                    if (Double.isNaN(value) || isNoData(value)) {
+                        continue;
+                    }
+                    acc.add(id, value, histogramBin(value));
+                }
+            }
+        }
+        return crossings;
+    }
+
+    private boolean isNoData(double value) {
+        if (noDataRanges != null) {
+            for (Range<Double> range : noDataRanges) {
+                if (range.contains(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int histogramBin(double value) {
+        if (histogramBins == 0 || value < histogramMin || value >= histogramMax) {
+            return -1;
+        }
+        int bin = (int) ((value - histogramMin) / (histogramMax - histogramMin) * histogramBins);
+        return Math.min(bin, histogramBins - 1);
+    }
+
+    /**
+     * A zone converted to raster space, stored as flat arrays of ring vertices
+     */
+    private static class Zone {
+        final int id;
+
+        double[] xs;
+
+        double[] ys;
+
+        /** exclusive end index of each ring in the vertex arrays */
+        int[] ringEnds;
+
+        final Envelope bounds = new Envelope();
+
+        Zone(int id, Geometry geometry, AffineTransform worldToGrid) {
+            this.id = id;
+            List<LinearRing> rings = new ArrayList<LinearRing>();
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                Geometry g = geometry.getGeometryN(i);
+                if (g instanceof Polygon) {
+                    Polygon p = (Polygon) g;
+                    rings.add((LinearRing) p.getExteriorRing());
+                    for (int j = 0; j < p.getNumInteriorRing(); j++) {
+                        rings.add((LinearRing) p.getInteriorRingN(j));
+                    }
+                }
+            }
+            int total = 0;
+            for (LinearRing ring : rings) {
+                total += ring.getNumPoints();
+            }
+            xs = new double[total];
+            ys = new double[total];
+            ringEnds = new int[rings.size()];
+            double[] pt = new double[2];
+            int k = 0;
+            for (int r = 0; r < rings.size(); r++) {
+                for (Coordinate c : rings.get(r).getCoordinates()) {
+                    pt[0] = c.x;
+                    pt[1] = c.y;
+                    worldToGrid.transform(pt, 0, pt, 0, 1);
+                    xs[k] = pt[0];
+                    ys[k] = pt[1];
+                    bounds.expandToInclude(pt[0], pt[1]);
+                    k++;
+                }
+                ringEnds[r] = k;
+            }
+        }
+
+        boolean isEmpty() {
+            return xs.length == 0;
+        }
+    }
+
+    /**
+     * Primitive per-zone accumulators. Mean and variance are accumulated with Welford's method,
+     * and merged with Chan's parallel formula.
+     */
+    private static class Accumulator {
+        final long[] count;
+
+        final double[] sum;
+
+        final double[] min;
+
+        final double[] max;
+
+        final double[] mean;
+
+        final double[] m2;
+
+        final long[][] histograms;
+
+        final int bins;
+
+        Accumulator(int zones, int bins) {
+            count = new long[zones];
+            sum = new double[zones];
+            min = new double[zones];
+            max = new double[zones];
+            mean = new double[zones];
+            m2 = new double[zones];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            this.bins = bins;
+            histograms = bins > 0 ? new long[zones][] : null;
+        }
+
+        void add(int zone, double value, int bin) {
+            long n = ++count[zone];
+            sum[zone] += value;
+            if (value < min[zone]) {
+                min[zone] = value;
+            }
+            if (value > max[zone]) {
+                max[zone] = value;
+            }
+            double delta = value - mean[zone];
+            mean[zone] += delta / n;
+            m2[zone] += delta * (value - mean[zone]);
+            if (bin >= 0) {
+                long[] histogram = histograms[zone];
+                if (histogram == null) {
+                    histogram = histograms[zone] = new long[bins];
+                }
+                histogram[bin]++;
+            }
+        }
+
+        void merge(Accumulator other) {
+            for (int z = 0; z < count.length; z++) {
+                long nb = other.count[z];
+                if (nb == 0) {
+                    continue;
+                }
+                long na = count[z];
+                long n = na + nb;
+                double delta = other.mean[z] - mean[z];
+                mean[z] += delta * nb / n;
+                m2[z] += other.m2[z] + delta * delta * na * nb / n;
+                count[z] = n;
+                sum[z] += other.sum[z];
+                min[z] = Math.min(min[z], other.min[z]);
+                max[z] = Math.max(max[z], other.max[z]);
+                if (histograms != null && other.histograms[z] != null) {
+                    if (histograms[z] == null) {
+                        histograms[z] = other.histograms[z];
+                    } else {
+                        for (int b = 0; b < bins; b++) {
+                            histograms[z][b] += other.histograms[z][b];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The statistics computed for each zone, indexed by the values returned by
+     * {@link SinglePassZonalStatistics#addZone(Geometry)}
+     */
+    public static class Result {
+        private final Accumulator acc;
+
+        Result(Accumulator acc) {
+            this.acc = acc;
+        }
+
+        /**
+         * The number of valid pixels in the zone
+         */
+        public long getCount(int zone) {
+            return acc.count[zone];
+        }
+
+        public double getSum(int zone) {
+            return acc.sum[zone];
+        }
+
+        /**
+         * The minimum value, or NaN if the zone has no valid pixels
+         */
+        public double getMin(int zone) {
+            return acc.count[zone] > 0 ? acc.min[zone] : Double.NaN;
+        }
+
+        /**
+         * The maximum value, or NaN if the zone has no valid pixels
+         */
+        public double getMax(int zone) {
+            return acc.count[zone] > 0 ? acc.max[zone] : Double.NaN;
+        }
+
+        /**
+         * The mean value, or NaN if the zone has no valid pixels
+         */
+        public double getMean(int zone) {
+            return acc.count[zone] > 0 ? acc.mean[zone] : Double.NaN;
+        }
+
+        /**
+         * The sample standard deviation, or NaN if the zone has less than two valid pixels
+         */
+        public double getStandardDeviation(int zone) {
+            long n = acc.count[zone];
+            return n > 1 ? Math.sqrt(acc.m2[zone] / (n - 1)) : Double.NaN;
+        }
+
+        /**
+         * The histogram of the zone values, or null if histograms were not requested. The array
+         * is shared and must not be modified.
+         */
+        public long[] getHistogram(int zone) {
+            if (acc.histograms == null) {
+                return null;
+            }
+            long[] histogram = acc.histograms[zone];
+            return histogram != null ? histogram : new long[acc.bins];
+        }
+    }
+}
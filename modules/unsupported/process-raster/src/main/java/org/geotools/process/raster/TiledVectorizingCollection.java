@@ -0,0 +1,450 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.ROI;
+import javax.media.jai.operator.CropDescriptor;
+import javax.media.jai.operator.TranslateDescriptor;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.BaseSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.ProcessException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+
+/**
+ * A feature collection which vectorizes a raster tile by tile, processing tiles in parallel and
+ * streaming the results.
+ * <p>
+ * Each tile is cropped from the source image and vectorized independently on a shared pool of
+ * threads, with a bounded number of tiles in progress for each iterator. Geometries lying
+ * entirely inside a tile are emitted as soon as the tile has been processed. Geometries touching
+ * an internal tile seam are set aside and periodically {@linkplain #stitch(List) stitched}
+ * together; a stitched geometry is emitted as soon as all the tiles around it have been
+ * processed, so that only the geometries along the edge of the processed area are held in
+ * memory.
+ * <p>
+ * The collection is computed again on each call to {@link #features()}, closing the iterator
+ * cancels the tiles still in progress. The size is computed once, by the first complete
+ * iteration, and the bounds are the ones of the raster, which contain all the features.
+ *
+ * @source $URL$
+ */
+abstract class TiledVectorizingCollection extends BaseSimpleFeatureCollection {
+
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of tiles each iterator keeps in progress
+     */
+    private static final int TILES_IN_PROGRESS = 2 * THREAD_COUNT;
+
+    /**
+     * The seam geometries are stitched when their number doubles, and at least reaches this
+     */
+    private static final int MIN_STITCH_COUNT = 256;
+
+    private static final ExecutorService VECTORIZING_POOL = Executors.newFixedThreadPool(
+            THREAD_COUNT, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "gt-vectorize-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * The outcome of the vectorization of a tile
+     */
+    private static class TileResult {
+        final int index;
+
+        final List<Geometry> inside;
+
+        final List<Geometry> seam;
+
+        final Throwable failure;
+
+        TileResult(int index, List<Geometry> inside, List<Geometry> seam, Throwable failure) {
+            this.index = index;
+            this.inside = inside;
+            this.seam = seam;
+            this.failure = failure;
+        }
+    }
+
+    private final RenderedImage image;
+
+    private final int tileSize;
+
+    private final int overlap;
+
+    private final ROI roi;
+
+    private final AffineTransform gridToWorld;
+
+    private final AffineTransform worldToGrid;
+
+    private final int tileColumns;
+
+    private final int tileRows;
+
+    /**
+     * The number of features, computed by the first complete iteration
+     */
+    private volatile int size = -1;
+
+    /**
+     * Creates a new collection.
+     *
+     * @param schema the feature type, with a "the_geom" geometry and a "value" attribute
+     * @param image the image to vectorize
+     * @param tileSize the width and height of the tiles, in pixels
+     * @param overlap the number of pixels by which tiles overlap on their right and bottom
+     *        edges
+     * @param roi optional region of interest, in raster space
+     * @param gridToWorld the transform from raster space to world coordinates
+     */
+    protected TiledVectorizingCollection(SimpleFeatureType schema, RenderedImage image,
+            int tileSize, int overlap, ROI roi, AffineTransform gridToWorld) {
+        super(schema);
+        this.image = image;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        this.roi = roi;
+        this.gridToWorld = gridToWorld;
+        try {
+            this.worldToGrid = gridToWorld.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.tileColumns = (image.getWidth() + tileSize - 1) / tileSize;
+        this.tileRows = (image.getHeight() + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Vectorizes a single tile. The tile image has its origin at (0, 0). The returned geometries
+     * must be in the raster space of the tile, and carry their value as user data.
+     *
+     * @param tile the tile image
+     * @param tileRoi the region of interest translated to the tile, or null
+     */
+    protected abstract Collection<? extends Geometry> vectorize(RenderedImage tile, ROI tileRoi);
+
+    /**
+     * Joins geometries from adjacent tiles which were split by tile seams. Geometries are in
+     * world coordinates and carry their value as user data; the returned geometries must do the
+     * same. The geometries may include the results of a previous call.
+     */
+    protected abstract Collection<? extends Geometry> stitch(List<Geometry> seamGeometries);
+
+    @Override
+    public SimpleFeatureIterator features() {
+        return new TiledIterator();
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            SimpleFeatureIterator it = features();
+            try {
+                while (it.hasNext()) {
+                    it.next();
+                }
+            } finally {
+                it.close();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public ReferencedEnvelope getBounds() {
+        Rectangle2D bounds = gridToWorld.createTransformedShape(
+                new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image
+                        .getHeight())).getBounds2D();
+        return new ReferencedEnvelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(),
+                bounds.getMaxY(), schema.getCoordinateReferenceSystem());
+    }
+
+    /**
+     * Computes the tile layout over the image bounds, in rows. The slivers entirely covered by
+     * the overlap of the previous tile are <code>null</code>.
+     */
+    Rectangle[] tiles() {
+        Rectangle[] tiles = new Rectangle[tileColumns * tileRows];
+        int maxX = image.getMinX() + image.getWidth();
+        int maxY = image.getMinY() + image.getHeight();
+        for (int row = 0; row < tileRows; row++) {
+            for (int col = 0; col < tileColumns; col++) {
+                int x = image.getMinX() + col * tileSize;
+                int y = image.getMinY() + row * tileSize;
+                int w = Math.min(tileSize + overlap, maxX - x);
+                int h = Math.min(tileSize + overlap, maxY - y);
+                if (w > overlap && h > overlap || (row == 0 && col == 0)) {
+                    tiles[row * tileColumns + col] = new Rectangle(x, y, w, h);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Checks whether a geometry (in raster space) touches a seam between two tiles.
+     */
+    private boolean touchesSeam(Envelope env, Rectangle tile) {
+        int maxX = image.getMinX() + image.getWidth();
+        int maxY = image.getMinY() + image.getHeight();
+        return (tile.x > image.getMinX() && env.getMinX() <= tile.x)
+                || (tile.y > image.getMinY() && env.getMinY() <= tile.y)
+                || (tile.x + tile.width < maxX && env.getMaxX() >= tile.x + tile.width - overlap)
+                || (tile.y + tile.height < maxY && env.getMaxY() >= tile.y + tile.height - overlap);
+    }
+
+    /**
+     * Checks whether all the tiles a stitched geometry (in world coordinates) could continue
+     * into have been processed.
+     */
+    private boolean isComplete(Geometry geometry, boolean[] done) {
+        Envelope env = geometry.getEnvelopeInternal();
+        Rectangle2D bounds = worldToGrid.createTransformedShape(
+                new Rectangle2D.Double(env.getMinX(), env.getMinY(), env.getWidth(), env
+                        .getHeight())).getBounds2D();
+        int minCol = tileIndex(bounds.getMinX() - 1 - image.getMinX(), tileColumns);
+        int maxCol = tileIndex(bounds.getMaxX() + 1 - image.getMinX(), tileColumns);
+        int minRow = tileIndex(bounds.getMinY() - 1 - image.getMinY(), tileRows);
+        int maxRow = tileIndex(bounds.getMaxY() + 1 - image.getMinY(), tileRows);
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                if (!done[row * tileColumns + col]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int tileIndex(double offset, int count) {
+        return Math.max(0, Math.min(count - 1, (int) Math.floor(offset / tileSize)));
+    }
+
+    /**
+     * Vectorizes a tile, splitting the geometries (in world coordinates) between the ones
+     * inside it and the ones touching a seam.
+     */
+    private TileResult processTile(int index, Rectangle tile) {
+        RenderedImage cropped = CropDescriptor.create(image, (float) tile.x, (float) tile.y,
+                (float) tile.width, (float) tile.height, null);
+        RenderedImage translated = TranslateDescriptor.create(cropped, (float) -tile.x,
+                (float) -tile.y, null, null);
+        ROI tileRoi = null;
+        if (roi != null) {
+            tileRoi = roi.transform(AffineTransform.getTranslateInstance(-tile.x, -tile.y));
+        }
+
+        AffineTransform at = new AffineTransform(gridToWorld);
+        at.translate(tile.x, tile.y);
+        AffineTransformation toWorld = new AffineTransformation(at.getScaleX(), at.getShearX(),
+                at.getTranslateX(), at.getShearY(), at.getScaleY(), at.getTranslateY());
+
+        Collection<? extends Geometry> geometries = vectorize(translated, tileRoi);
+        List<Geometry> inside = new ArrayList<Geometry>(geometries.size());
+        List<Geometry> seam = new ArrayList<Geometry>();
+        for (Geometry g : geometries) {
+            Envelope env = new Envelope(g.getEnvelopeInternal());
+            env.translate(tile.x, tile.y);
+            g.apply(toWorld);
+            if (touchesSeam(env, tile)) {
+                seam.add(g);
+            } else {
+                inside.add(g);
+            }
+        }
+        return new TileResult(index, inside, seam, null);
+    }
+
+    /**
+     * Iterates over the features, submitting tiles to the shared pool as their results are
+     * consumed.
+     */
+    private class TiledIterator implements SimpleFeatureIterator {
+
+        final Rectangle[] tiles = tiles();
+
+        final boolean[] done = new boolean[tiles.length];
+
+        final Future<?>[] futures = new Future<?>[tiles.length];
+
+        final BlockingQueue<TileResult> results = new LinkedBlockingQueue<TileResult>();
+
+        final Deque<Geometry> ready = new ArrayDeque<Geometry>();
+
+        List<Geometry> seamGeometries = new ArrayList<Geometry>();
+
+        int stitchCount = MIN_STITCH_COUNT;
+
+        final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+
+        int nextTile = 0;
+
+        int tilesInProgress = 0;
+
+        boolean stitched = false;
+
+        boolean closed = false;
+
+        int featureId = 0;
+
+        TiledIterator() {
+            for (int i = 0; i < tiles.length; i++) {
+                done[i] = tiles[i] == null;
+            }
+            submitTiles();
+        }
+
+        private void submitTiles() {
+            while (tilesInProgress < TILES_IN_PROGRESS && nextTile < tiles.length) {
+                final int index = nextTile++;
+                final Rectangle tile = tiles[index];
+                if (tile == null) {
+                    continue;
+                }
+                futures[index] = VECTORIZING_POOL.submit(new Runnable() {
+                    public void run() {
+                        TileResult result;
+                        try {
+                            result = processTile(index, tile);
+                        } catch (Throwable t) {
+                            result = new TileResult(index, null, null, t);
+                        }
+                        results.add(result);
+                    }
+                });
+                tilesInProgress++;
+            }
+        }
+
+        public boolean hasNext() {
+            while (ready.isEmpty()) {
+                if (closed) {
+                    return false;
+                } else if (tilesInProgress > 0) {
+                    TileResult result;
+                    try {
+                        result = results.take();
+                    } catch (InterruptedException e) {
+                        close();
+                        throw new ProcessException("Interrupted while vectorizing tiles", e);
+                    }
+                    futures[result.index] = null;
+                    tilesInProgress--;
+                    if (result.failure != null) {
+                        close();
+                        throw new ProcessException("Failed to vectorize tile", result.failure);
+                    }
+                    done[result.index] = true;
+                    submitTiles();
+                    ready.addAll(result.inside);
+                    seamGeometries.addAll(result.seam);
+                    if (seamGeometries.size() >= stitchCount) {
+                        stitchSeams(false);
+                    }
+                } else if (!stitched) {
+                    stitched = true;
+                    stitchSeams(true);
+                } else {
+                    // every feature has been returned
+                    size = featureId;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Stitches the seam geometries, moving the complete ones to the features ready to be
+         * returned
+         */
+        private void stitchSeams(boolean all) {
+            List<Geometry> pending = new ArrayList<Geometry>();
+            for (Geometry g : stitch(seamGeometries)) {
+                if (all || isComplete(g, done)) {
+                    ready.add(g);
+                } else {
+                    pending.add(g);
+                }
+            }
+            seamGeometries = pending;
+            stitchCount = Math.max(MIN_STITCH_COUNT, 2 * pending.size());
+        }
+
+        public SimpleFeature next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Geometry g = ready.poll();
+            Object value = g.getUserData();
+            g.setUserData(null);
+            builder.set("the_geom", g);
+            builder.set("value", value);
+            return builder.buildFeature(String.valueOf(featureId++));
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < futures.length; i++) {
+                if (futures[i] != null) {
+                    futures[i].cancel(true);
+                    futures[i] = null;
+                }
+            }
+            results.clear();
+            ready.clear();
+            seamGeometries = new ArrayList<Geometry>();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.geotools.process.raster;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.Arrays;
+
+import javax.media.jai.JAI;
+import javax.media.jai.RenderedOp;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+
+/**
+ * Compares the time taken to compute a NDVI out of two 4096x4096 rasters with the
+ * {@link BandMathProcess} against the equivalent chain of JAI operations.
+ *
+ * @source $URL$
+ */
+public class BandMathBenchmark {
+
+    private static final int SIZE = 4096;
+
+    private static final int RUNS = 10;
+
+    public static void main(String[] args) throws Exception {
+        final GridCoverage2D red = coverage("red", 100);
+        final GridCoverage2D nir = coverage("nir", 250);
+
+        // warm up, then measure
+        for (int i = 0; i < 3; i++) {
+            chained(red, nir).getData();
+            bandMath(red, nir).getData();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            chained(red, nir).getData();
+        }
+        System.out.println("Chained JAI operations: " + (System.nanoTime() - start) / RUNS
+                / 1000000 + "ms");
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            bandMath(red, nir).getData();
+        }
+        System.out.println("Band math: " + (System.nanoTime() - start) / RUNS / 1000000 + "ms");
+    }
+
+    private static GridCoverage2D coverage(String name, int modulo) {
+        final float[][] matrix = new float[SIZE][SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                matrix[y][x] = (x * 3 + y) % modulo;
+            }
+        }
+        return CoverageFactoryFinder.getGridCoverageFactory(null).create(name, matrix,
+                new ReferencedEnvelope(0, 1, 0, 1, DefaultGeographicCRS.WGS84));
+    }
+
+    /**
+     * (nir - red) / (nir + red) as a chain of JAI operations, on doubles like the band math
+     */
+    private static RenderedImage chained(GridCoverage2D red, GridCoverage2D nir) {
+        final RenderedOp r = format(red.getRenderedImage());
+        final RenderedOp n = format(nir.getRenderedImage());
+        final RenderedOp difference = JAI.create("Subtract", new ParameterBlock().addSource(n)
+                .addSource(r));
+        final RenderedOp sum = JAI.create("Add", new ParameterBlock().addSource(n).addSource(r));
+        return JAI.create("Divide", new ParameterBlock().addSource(difference).addSource(sum));
+    }
+
+    private static RenderedOp format(RenderedImage image) {
+        return JAI.create("Format", new ParameterBlock().addSource(image).add(
+                DataBuffer.TYPE_DOUBLE));
+    }
+
+    private static RenderedImage bandMath(GridCoverage2D red, GridCoverage2D nir) {
+        return new BandMathProcess().execute(Arrays.asList(red, nir), "(b1 - b0) / (b1 + b0)",
+                null, null).getRenderedImage();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.process.ProcessException;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+
+/**
+ * The tests for the BandMathProcess
+ *
+ * @source $URL$
+ */
+public class BandMathProcessTest {
+
+    // larger than a tile, so that the result spans several full and partial tiles
+    private static final int WIDTH = 1100;
+
+    private static final int HEIGHT = 700;
+
+    private static final ReferencedEnvelope ENVELOPE = new ReferencedEnvelope(0, 11, 0, 7,
+            DefaultGeographicCRS.WGS84);
+
+    private static GridCoverage2D coverage(String name, float[][] matrix) {
+        return CoverageFactoryFinder.getGridCoverageFactory(null).create(name, matrix, ENVELOPE);
+    }
+
+    private static float[][] red() {
+        final float[][] matrix = new float[HEIGHT][WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                matrix[y][x] = (x + y) % 100;
+            }
+        }
+        return matrix;
+    }
+
+    private static float[][] nir() {
+        final float[][] matrix = new float[HEIGHT][WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                matrix[y][x] = (x * 3 + y) % 250;
+            }
+        }
+        return matrix;
+    }
+
+    private static GridCoverage2D execute(String expression, Double noData,
+            GridCoverage2D... coverages) {
+        return new BandMathProcess().execute(Arrays.asList(coverages), expression, noData, null);
+    }
+
+    @Test
+    public void testNDVI() throws Exception {
+        final float[][] red = red();
+        final float[][] nir = nir();
+        final GridCoverage2D result = execute("(b1 - b0) / (b1 + b0)", -9999d,
+                coverage("red", red), coverage("nir", nir));
+        assertEquals(ENVELOPE.getMinX(), result.getEnvelope2D().getMinX(), 1e-9);
+        assertEquals(ENVELOPE.getMaxY(), result.getEnvelope2D().getMaxY(), 1e-9);
+
+        final RenderedImage image = result.getRenderedImage();
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(HEIGHT, image.getHeight());
+        assertTrue(image.getNumXTiles() > 1);
+        final Raster data = image.getData();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final double r = red[y][x];
+                final double n = nir[y][x];
+                // 0 / 0 is not a number
+                final double expected = r + n == 0 ? -9999 : (n - r) / (n + r);
+                assertEquals(expected, data.getSampleDouble(image.getMinX() + x, image.getMinY()
+                        + y, 0), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsChainedOperations() throws Exception {
+        final GridCoverage2D red = coverage("red", red());
+        final GridCoverage2D nir = coverage("nir", nir());
+        final GridCoverage2D sum = new AddCoveragesProcess().execute(red, nir, null);
+        final GridCoverage2D product = new MultiplyCoveragesProcess().execute(red, nir, null);
+
+        final Raster expectedSum = sum.getRenderedImage().getData();
+        final Raster expectedProduct = product.getRenderedImage().getData();
+        final RenderedImage sumImage = execute("b0 + b1", null, red, nir).getRenderedImage();
+        final Raster actualSum = sumImage.getData();
+        final Raster actualProduct = execute("b1 * b0", null, red, nir).getRenderedImage()
+                .getData();
+        for (int y = 0; y < HEIGHT; y += 7) {
+            for (int x = 0; x < WIDTH; x += 3) {
+                assertEquals(expectedSum.getSampleDouble(expectedSum.getMinX() + x, expectedSum
+                        .getMinY() + y, 0), actualSum.getSampleDouble(actualSum.getMinX() + x,
+                        actualSum.getMinY() + y, 0), 1e-6);
+                assertEquals(expectedProduct.getSampleDouble(expectedProduct.getMinX() + x,
+                        expectedProduct.getMinY() + y, 0), actualProduct.getSampleDouble(
+                        actualProduct.getMinX() + x, actualProduct.getMinY() + y, 0), 1e-6);
+            }
+        }
+
+        // single tiles out of the image match the whole data
+        final Raster tile = sumImage.getTile(1, 1);
+        assertEquals(actualSum.getSampleDouble(tile.getMinX(), tile.getMinY(), 0), tile
+                .getSampleDouble(tile.getMinX(), tile.getMinY(), 0), 0);
+    }
+
+    @Test
+    public void testFunctionsAndNoData() throws Exception {
+        final float[][] matrix = red();
+        matrix[3][5] = Float.NaN;
+        final GridCoverage2D result = execute("sqrt(abs(b0 - 50)) * 2 + max(b0, 10) - 4 / 2",
+                -1d, coverage("red", matrix));
+        final Raster data = result.getRenderedImage().getData();
+        final int minX = data.getMinX();
+        final int minY = data.getMinY();
+        assertEquals(-1, data.getSampleDouble(minX + 5, minY + 3, 0), 0);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < WIDTH; x += 13) {
+                if (x == 5 && y == 3) {
+                    continue;
+                }
+                final double v = matrix[y][x];
+                assertEquals(Math.sqrt(Math.abs(v - 50)) * 2 + Math.max(v, 10) - 2, data
+                        .getSampleDouble(minX + x, minY + y, 0), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidExpressions() throws Exception {
+        final GridCoverage2D coverage = coverage("red", red());
+        for (String expression : new String[] { "b0 +", "b1 * 2", "band0 * 2", "strLength(b0)" }) {
+            try {
+                execute(expression, null, coverage);
+                fail("Expected a failure for " + expression);
+            } catch (ProcessException e) {
+                // fine
+            }
+        }
+    }
+}
@@ -17,6 +17,9 @@
 package org.geotools.process.raster;
 
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
 
@@ -134,6 +137,68 @@ public class ContourProcessTest {
     }
     
     
+    /**
+     * Contours a coverage in tiles, checking that the lines split across the tile seams are
+     * merged back into the same lines as contouring the coverage at once
+     */
+    @Test
+    public void tiledContoursMatchUntiled() {
+        final int COLS = 300;
+        final int ROWS = 200;
+        float[][] DATA = new float[ROWS][COLS];
+        for (int iy = 0; iy < ROWS; iy++) {
+            for (int ix = 0; ix < COLS; ix++) {
+                DATA[iy][ix] = (float) (100 * Math.sin(ix / 23.0) * Math.cos(iy / 17.0));
+            }
+        }
+        GridCoverage2D cov = covFactory.create("coverage", DATA, new ReferencedEnvelope(0,
+                COLS, 0, ROWS, null));
+        final double[] levels = { -50.5, 0.3, 25.3, 60.7 };
+
+        Map<Double, double[]> untiled = summarize(process.execute(cov, 0, levels, null, null,
+                null, null, null));
+        SimpleFeatureCollection tiledCollection = process.execute(cov, 0, levels, null, null,
+                null, null, 64, null);
+        Map<Double, double[]> tiled = summarize(tiledCollection);
+
+        assertEquals(untiled.keySet(), tiled.keySet());
+        for (Double level : untiled.keySet()) {
+            // same number of lines, same total length
+            assertEquals("Lines at " + level, untiled.get(level)[0], tiled.get(level)[0], 0);
+            assertEquals("Length at " + level, untiled.get(level)[1], tiled.get(level)[1],
+                    untiled.get(level)[1] * 1e-6);
+        }
+        int count = 0;
+        for (double[] summary : untiled.values()) {
+            count += summary[0];
+        }
+        assertEquals(count, tiledCollection.size());
+    }
+
+    /**
+     * Returns the number of lines and their total length for each contour level
+     */
+    private Map<Double, double[]> summarize(SimpleFeatureCollection fc) {
+        Map<Double, double[]> summaries = new HashMap<Double, double[]>();
+        SimpleFeatureIterator iter = fc.features();
+        try {
+            while (iter.hasNext()) {
+                SimpleFeature feature = iter.next();
+                Double value = (Double) feature.getAttribute("value");
+                double[] summary = summaries.get(value);
+                if (summary == null) {
+                    summary = new double[2];
+                    summaries.put(value, summary);
+                }
+                summary[0]++;
+                summary[1] += ((LineString) feature.getDefaultGeometry()).getLength();
+            }
+        } finally {
+            iter.close();
+        }
+        return summaries;
+    }
+
     private GridCoverage2D createVerticalGradient(
             final int dataRows, final int dataCols, 
             ReferencedEnvelope worldEnv,
@@ -113,6 +113,42 @@ public class PolygonExtractionProcessTest {
         }
     }
 
+    @Test
+    public void tiledSmallCoverage() throws Exception {
+        // same raster as simpleSmallCoverage, with the value 2 region spanning all four tiles
+        final float[][] DATA = {
+            {2, 2, 0, 3},
+            {0, 2, 0, 0},
+            {0, 2, 2, 2},
+            {1, 0, 0, 2}
+        };
+        
+        final int perimeters[] = { 4, 16, 4 };
+        final int areas[] = {1, 7, 1};
+
+        GridCoverage2D cov = covFactory.create(
+                "coverage",
+                DATA,
+                new ReferencedEnvelope(0, DATA[0].length, 0, DATA.length, null));
+
+        SimpleFeatureCollection fc = process.execute(cov, 0, Boolean.TRUE, null, null, null, 2, null);
+        assertEquals(3, fc.size());
+        
+        SimpleFeatureIterator iter = fc.features();
+        try {
+            while (iter.hasNext()) {
+                SimpleFeature feature = iter.next();
+                Polygon poly = (Polygon) feature.getDefaultGeometry();
+                assertTrue(poly.isValid());
+                int value = ((Number) feature.getAttribute("value")).intValue();
+                assertEquals(perimeters[value - 1], (int) (poly.getBoundary().getLength() + 0.5));
+                assertEquals(areas[value - 1], (int) (poly.getArea() + 0.5));
+            }
+        } finally {
+            iter.close();
+        }
+    }
+
     @Test
     public void checkThatHolesArePresentInPolygons() throws Exception {
         final float[][] DATA = {
@@ -0,0 +1,144 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.process.raster;
+
+import static org.junit.Assert.*;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.Collections;
+
+import org.jaitools.numeric.Range;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class SinglePassZonalStatisticsTest {
+
+    private static final double EPS = 1e-9;
+
+    private BufferedImage image;
+
+    @Before
+    public void setup() {
+        // 20x20 image where each pixel value is x + 20 * y
+        image = new BufferedImage(20, 20, BufferedImage.TYPE_USHORT_GRAY);
+        WritableRaster raster = image.getRaster();
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 20; x++) {
+                raster.setSample(x, y, 0, x + 20 * y);
+            }
+        }
+    }
+
+    private Geometry box(double minx, double maxx, double miny, double maxy) {
+        return new GeometryFactory().toGeometry(new Envelope(minx, maxx, miny, maxy));
+    }
+
+    @Test
+    public void testOverlappingZones() throws Exception {
+        SinglePassZonalStatistics engine = new SinglePassZonalStatistics(image, 0,
+                new AffineTransform());
+        // pixels 2..4 on both axes
+        int z1 = engine.addZone(box(2, 5, 2, 5));
+        // pixels 4..5 on both axes, overlapping z1 on pixel (4, 4)
+        int z2 = engine.addZone(box(4, 6, 4, 6));
+        // outside of the image
+        int z3 = engine.addZone(box(100, 110, 100, 110));
+        SinglePassZonalStatistics.Result result = engine.compute();
+
+        assertEquals(9, result.getCount(z1));
+        assertEquals(42, result.getMin(z1), EPS);
+        assertEquals(84, result.getMax(z1), EPS);
+        assertEquals(567, result.getSum(z1), EPS);
+        assertEquals(63, result.getMean(z1), EPS);
+        // values 42,43,44,62,63,64,82,83,84: squared deviations from the mean sum up to 2406
+        assertEquals(Math.sqrt(2406 / 8.0), result.getStandardDeviation(z1), 1e-6);
+
+        assertEquals(4, result.getCount(z2));
+        assertEquals(84, result.getMin(z2), EPS);
+        assertEquals(105, result.getMax(z2), EPS);
+
+        assertEquals(0, result.getCount(z3));
+        assertTrue(Double.isNaN(result.getMean(z3)));
+    }
+
+    @Test
+    public void testHoleNoDataAndHistogram() throws Exception {
+        SinglePassZonalStatistics engine = new SinglePassZonalStatistics(image, 0,
+                new AffineTransform());
+        engine.setNoDataRanges(Collections.singletonList(new Range<Double>(0d, true, 0d, true)));
+        engine.setHistogram(0, 100, 10);
+        // 4x4 block of pixels 0..3, with a hole over pixels 1..2, and pixel (0, 0) being nodata
+        int z = engine.addZone(new WKTReader()
+                .read("POLYGON((0 0, 4 0, 4 4, 0 4, 0 0), (1 1, 3 1, 3 3, 1 3, 1 1))"));
+        SinglePassZonalStatistics.Result result = engine.compute();
+
+        assertEquals(11, result.getCount(z));
+        assertEquals(1, result.getMin(z), EPS);
+        assertEquals(63, result.getMax(z), EPS);
+        long[] histogram = result.getHistogram(z);
+        assertEquals(10, histogram.length);
+        // 1, 2, 3 in the first bin, 20 and 23 in the third, 40 and 43 in the fifth,
+        // 60, 61, 62, 63 in the seventh
+        assertEquals(3, histogram[0]);
+        assertEquals(2, histogram[2]);
+        assertEquals(2, histogram[4]);
+        assertEquals(4, histogram[6]);
+    }
+
+    @Test
+    public void testThreadsMerge() throws Exception {
+        // a raster read in many windows, by a single thread and by several ones
+        BufferedImage large = new BufferedImage(1100, 1000, BufferedImage.TYPE_USHORT_GRAY);
+        WritableRaster raster = large.getRaster();
+        for (int y = 0; y < 1000; y++) {
+            for (int x = 0; x < 1100; x++) {
+                raster.setSample(x, y, 0, (x * 31 + y * 17) % 4000);
+            }
+        }
+        Geometry[] zones = { box(0, 1100, 0, 1000), box(100, 650, 50, 580), box(3, 17, 5, 9) };
+        SinglePassZonalStatistics.Result[] results = new SinglePassZonalStatistics.Result[2];
+        for (int i = 0; i < 2; i++) {
+            SinglePassZonalStatistics engine = new SinglePassZonalStatistics(large, 0,
+                    new AffineTransform());
+            engine.setThreads(i == 0 ? 1 : 4);
+            engine.setHistogram(0, 4000, 16);
+            for (Geometry zone : zones) {
+                engine.addZone(zone);
+            }
+            assertTrue(engine.windows().size() > 1);
+            results[i] = engine.compute();
+        }
+        for (int z = 0; z < zones.length; z++) {
+            assertEquals(results[0].getCount(z), results[1].getCount(z));
+            assertEquals(results[0].getMin(z), results[1].getMin(z), EPS);
+            assertEquals(results[0].getMax(z), results[1].getMax(z), EPS);
+            assertEquals(results[0].getSum(z), results[1].getSum(z), EPS);
+            assertEquals(results[0].getMean(z), results[1].getMean(z), 1e-9);
+            assertEquals(results[0].getStandardDeviation(z), results[1]
+                    .getStandardDeviation(z), 1e-9);
+            assertArrayEquals(results[0].getHistogram(z), results[1].getHistogram(z));
+        }
+        assertEquals(1100 * 1000, results[0].getCount(0));
+    }
+}
@@ -20,6 +20,7 @@ import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReader;
 import it.geosolutions.imageioimpl.plugins.tiff.TIFFImageReaderSpi;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.util.HashMap;
@@ -27,6 +28,8 @@ import java.util.Map;
 
 import javax.imageio.ImageIO;
 import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
 
 import junit.framework.Assert;
 
@@ -39,10 +42,14 @@ import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FileDataStoreFinder;
 import org.geotools.data.WorldFileReader;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.property.PropertyDataStore;
 import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.geotools.test.TestData;
 import org.junit.After;
@@ -52,6 +59,9 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.operation.MathTransform;
 
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.io.WKTReader;
+
 /**
  * @author DamianoG
  * 
@@ -203,4 +213,72 @@ public class ZonalStatsProcessTest extends Assert {
 
         }
     }
+
+    /**
+     * Compares the statistics computed in a single pass over a raster large enough to be read in
+     * many windows, merged across threads, with the ones computed zone by zone through the
+     * JAITools operation, on zones following the pixel edges
+     */
+    @Test
+    public void singlePassMatchesZoneByZone() throws Exception {
+        final int width = 1000;
+        final int height = 800;
+        TiledImage image = new TiledImage(0, 0, width, height, 0, 0, RasterFactory
+                .createBandedSampleModel(DataBuffer.TYPE_FLOAT, 128, 128, 1), null);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setSample(x, y, 0, ((x * 7 + y * 13) % 1000) / 3f);
+            }
+        }
+        GridCoverage2D coverage = CoverageFactoryFinder.getGridCoverageFactory(null).create(
+                "coverage", image, new ReferencedEnvelope(0, width, 0, height,
+                        DefaultGeographicCRS.WGS84));
+
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("zones");
+        tb.add("the_geom", Polygon.class, DefaultGeographicCRS.WGS84);
+        SimpleFeatureType zoneType = tb.buildFeatureType();
+        ListFeatureCollection zones = new ListFeatureCollection(zoneType);
+        WKTReader wkt = new WKTReader();
+        String[] polygons = {
+                // within a single window, spanning several, covering most of the raster
+                "POLYGON((10 10, 50 10, 50 60, 10 60, 10 10))",
+                "POLYGON((100 100, 700 100, 700 500, 100 500, 100 100))",
+                "POLYGON((1 1, 999 1, 999 799, 1 799, 1 1))",
+                // L shaped, with a hole, partly outside of the raster
+                "POLYGON((200 600, 900 600, 900 650, 250 650, 250 790, 200 790, 200 600))",
+                "POLYGON((300 200, 600 200, 600 450, 300 450, 300 200), (400 250, 500 250, 500 400, 400 400, 400 250))",
+                "POLYGON((900 -50, 1100 -50, 1100 300, 900 300, 900 -50))" };
+        for (int i = 0; i < polygons.length; i++) {
+            zones.add(SimpleFeatureBuilder.build(zoneType, new Object[] { wkt.read(polygons[i]) },
+                    "zones." + i));
+        }
+
+        SimpleFeatureCollection singlePass = process.execute(coverage, null, zones, null);
+        SimpleFeatureIterator expected = new RasterZonalStatistics.RasterZonalStatisticsIterator(
+                zones.features(), coverage, 0, singlePass.getSchema(), null);
+        SimpleFeatureIterator actual = singlePass.features();
+        try {
+            int count = 0;
+            while (expected.hasNext()) {
+                assertTrue(actual.hasNext());
+                SimpleFeature e = expected.next();
+                SimpleFeature a = actual.next();
+                assertEquals(e.getID(), a.getID());
+                assertEquals(((Number) e.getAttribute("count")).longValue(), ((Number) a
+                        .getAttribute("count")).longValue());
+                for (String statistic : new String[] { "min", "max", "sum", "avg", "stddev" }) {
+                    double value = ((Number) e.getAttribute(statistic)).doubleValue();
+                    assertEquals(e.getID() + " " + statistic, value, ((Number) a
+                            .getAttribute(statistic)).doubleValue(), Math.abs(value) * 1e-7);
+                }
+                count++;
+            }
+            assertFalse(actual.hasNext());
+            assertEquals(polygons.length, count);
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
 }
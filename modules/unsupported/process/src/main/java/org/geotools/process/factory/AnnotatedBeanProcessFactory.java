@@ -113,20 +113,29 @@ public class AnnotatedBeanProcessFactory extends AnnotationDrivenProcessFactory
     }
 
     /**
-     * Resolves to the <b>execute</b> method for the provided java bean.
+     * Resolves to the <b>execute</b> method for the provided java bean. When the method is
+     * overloaded, for instance to keep a previous signature, the one describing its result is
+     * used.
      * @return the "execute" method of the indicated java bean.
      */
     @Override
     protected Method method(String className) {
         Class<?> c = classMap.get(className);
+        Method execute = null;
         if (c != null) {
             for (Method m : c.getMethods()) {
                 if ("execute".equals(m.getName())) {
-                    return m;
+                    if (m.getAnnotation(DescribeResult.class) != null
+                            || m.getAnnotation(DescribeResults.class) != null) {
+                        return m;
+                    }
+                    if (execute == null) {
+                        execute = m;
+                    }
                 }
             }
         }
-        return null;
+        return execute;
     }
     /**
      * List of processes published; generated from the classMap created in the constructuor.
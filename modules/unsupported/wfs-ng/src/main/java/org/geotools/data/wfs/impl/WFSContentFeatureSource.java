@@ -1,6 +1,8 @@
 package org.geotools.data.wfs.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
@@ -17,11 +19,13 @@ import org.geotools.data.Transaction;
 import org.geotools.data.Transaction.State;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.wfs.impl.WFSPagedFeatureReader.PageLoader;
 import org.geotools.data.wfs.internal.GetFeatureParser;
 import org.geotools.data.wfs.internal.GetFeatureRequest;
 import org.geotools.data.wfs.internal.GetFeatureRequest.ResultType;
 import org.geotools.data.wfs.internal.GetFeatureResponse;
 import org.geotools.data.wfs.internal.WFSClient;
+import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.factory.Hints;
 import org.geotools.feature.SchemaException;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
@@ -33,9 +37,12 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 
@@ -43,6 +50,8 @@ class WFSContentFeatureSource extends ContentFeatureSource {
 
     private static final Logger LOGGER = Logging.getLogger(WFSContentFeatureSource.class);
 
+    private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
     private final WFSClient client;
 
     public WFSContentFeatureSource(final ContentEntry entry, final WFSClient client) {
@@ -202,27 +211,30 @@ class WFSContentFeatureSource extends ContentFeatureSource {
             return new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(getSchema());
         }
 
-        GetFeatureRequest request = createGetFeature(localQuery, ResultType.RESULTS);
-
         final SimpleFeatureType contentType = getQueryType(localQuery);
-        request.setQueryType(contentType);
 
-        GetFeatureResponse response = client.issueRequest(request);
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
+        reader = getPagedReader(localQuery, contentType);
+        if (reader == null) {
+            GetFeatureRequest request = createGetFeature(localQuery, ResultType.RESULTS);
+            request.setQueryType(contentType);
 
-        GeometryFactory geometryFactory = findGeometryFactory(localQuery.getHints());
-        GetFeatureParser features = response.getSimpleFeatures(geometryFactory);
+            GetFeatureResponse response = client.issueRequest(request);
 
-        FeatureReader<SimpleFeatureType, SimpleFeature> reader;
-        reader = new WFSFeatureReader(features);
+            GeometryFactory geometryFactory = findGeometryFactory(localQuery.getHints());
+            GetFeatureParser features = response.getSimpleFeatures(geometryFactory);
 
-        if (!reader.hasNext()) {
-            return new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(contentType);
-        }
+            reader = new WFSFeatureReader(features);
 
-        final SimpleFeatureType readerType = reader.getFeatureType();
-        if (!contentType.equals(readerType)) {
-            final boolean cloneContents = false;
-            reader = new ReTypeFeatureReader(reader, contentType, cloneContents);
+            if (!reader.hasNext()) {
+                return new EmptyFeatureReader<SimpleFeatureType, SimpleFeature>(contentType);
+            }
+
+            final SimpleFeatureType readerType = reader.getFeatureType();
+            if (!contentType.equals(readerType)) {
+                final boolean cloneContents = false;
+                reader = new ReTypeFeatureReader(reader, contentType, cloneContents);
+            }
         }
 
         Transaction transaction = getTransaction();
@@ -238,6 +250,139 @@ class WFSContentFeatureSource extends ContentFeatureSource {
         return reader;
     }
 
+    /**
+     * Returns a reader fetching the results in pages of the configured size, several pages being
+     * fetched in parallel, or {@code null} if paging is disabled or the results are not expected
+     * to span several pages.
+     * <p>
+     * Servers supporting paging are asked for the successive pages with the start index until a
+     * page comes back incomplete. For the other servers the advertised bounds of the feature type
+     * are split in tiles expected to hold about a page each, every feature being returned by the
+     * tile holding the lower corner of its envelope only. Note the tiling can only return the
+     * features intersecting the advertised bounds.
+     * </p>
+     */
+    private FeatureReader<SimpleFeatureType, SimpleFeature> getPagedReader(final Query query,
+            final SimpleFeatureType contentType) throws IOException {
+        final int pageSize = client.getConfig().getPageSize();
+        final int maxFeatures = query.getMaxFeatures();
+        if (pageSize <= 0 || maxFeatures <= pageSize) {
+            return null;
+        }
+        final int prefetch = client.getConfig().getPrefetchPages();
+        final GeometryFactory geometryFactory = findGeometryFactory(query.getHints());
+
+        if (client.canPage()) {
+            final int pageCount = (int) ((maxFeatures + (long) pageSize - 1) / pageSize);
+            PageLoader loader = new PageLoader() {
+                public List<SimpleFeature> load(int page) throws IOException {
+                    long startIndex = (long) page * pageSize;
+                    GetFeatureRequest request = createGetFeature(query, ResultType.RESULTS);
+                    request.setQueryType(contentType);
+                    request.setStartIndex((int) startIndex);
+                    request.setMaxFeatures((int) Math.min(pageSize, maxFeatures - startIndex));
+                    return readPage(request, contentType, geometryFactory, null);
+                }
+            };
+            return new WFSPagedFeatureReader(contentType, loader, pageCount, pageSize, prefetch);
+        }
+
+        // tiling would break the sort order and the limit
+        GeometryDescriptor geometry = contentType.getGeometryDescriptor();
+        if (geometry == null || maxFeatures < Integer.MAX_VALUE
+                || (query.getSortBy() != null && query.getSortBy().length > 0)
+                || !client.canCount()) {
+            return null;
+        }
+        int count = getCountInternal(query);
+        if (count <= pageSize) {
+            return null;
+        }
+        final QName remoteTypeName = getRemoteTypeName();
+        final ReferencedEnvelope bounds = client.getBounds(remoteTypeName,
+                client.getDefaultCRS(remoteTypeName));
+        if (bounds == null || bounds.isEmpty()) {
+            return null;
+        }
+
+        final int side = (int) Math.ceil(Math.sqrt(Math.ceil(count / (double) pageSize)));
+        final String geometryName = geometry.getLocalName();
+        PageLoader loader = new PageLoader() {
+            public List<SimpleFeature> load(int page) throws IOException {
+                int col = page % side;
+                int row = page / side;
+                double minx = bounds.getMinX() + col * bounds.getWidth() / side;
+                double maxx = col == side - 1 ? bounds.getMaxX() : bounds.getMinX() + (col + 1)
+                        * bounds.getWidth() / side;
+                double miny = bounds.getMinY() + row * bounds.getHeight() / side;
+                double maxy = row == side - 1 ? bounds.getMaxY() : bounds.getMinY() + (row + 1)
+                        * bounds.getHeight() / side;
+                ReferencedEnvelope tile = new ReferencedEnvelope(minx, maxx, miny, maxy,
+                        bounds.getCoordinateReferenceSystem());
+                // the area the lower corners of the features returned by this tile lie in
+                Envelope anchors = new Envelope(col == 0 ? Double.NEGATIVE_INFINITY : minx,
+                        col == side - 1 ? Double.POSITIVE_INFINITY : maxx,
+                        row == 0 ? Double.NEGATIVE_INFINITY : miny,
+                        row == side - 1 ? Double.POSITIVE_INFINITY : maxy);
+
+                Filter filter = FF.bbox(FF.property(geometryName), tile);
+                if (!Filter.INCLUDE.equals(query.getFilter())) {
+                    filter = FF.and(query.getFilter(), filter);
+                }
+                Query tileQuery = new Query(query);
+                tileQuery.setFilter(filter);
+                GetFeatureRequest request = createGetFeature(tileQuery, ResultType.RESULTS);
+                request.setQueryType(contentType);
+                return readPage(request, contentType, geometryFactory, anchors);
+            }
+        };
+        return new WFSPagedFeatureReader(contentType, loader, side * side, 0, prefetch);
+    }
+
+    /**
+     * Issues the request and parses the whole response
+     * 
+     * @param anchors if not null, only the features whose envelope lower corner lies in it, the
+     *        right and top edges excluded, are returned
+     */
+    private List<SimpleFeature> readPage(GetFeatureRequest request,
+            SimpleFeatureType contentType, GeometryFactory geometryFactory, Envelope anchors)
+            throws IOException {
+        GetFeatureResponse response = client.issueRequest(request);
+        GetFeatureParser features = response.getSimpleFeatures(geometryFactory);
+
+        FeatureReader<SimpleFeatureType, SimpleFeature> reader = new WFSFeatureReader(features);
+        try {
+            List<SimpleFeature> page = new ArrayList<SimpleFeature>();
+            if (!reader.hasNext()) {
+                return page;
+            }
+            if (!contentType.equals(reader.getFeatureType())) {
+                reader = new ReTypeFeatureReader(reader, contentType, false);
+            }
+            while (reader.hasNext()) {
+                SimpleFeature feature = reader.next();
+                if (anchors != null) {
+                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                    if (geometry == null || geometry.isEmpty()) {
+                        continue;
+                    }
+                    Envelope envelope = geometry.getEnvelopeInternal();
+                    if (envelope.getMinX() < anchors.getMinX()
+                            || envelope.getMinX() >= anchors.getMaxX()
+                            || envelope.getMinY() < anchors.getMinY()
+                            || envelope.getMinY() >= anchors.getMaxY()) {
+                        continue;
+                    }
+                }
+                page.add(feature);
+            }
+            return page;
+        } finally {
+            reader.close();
+        }
+    }
+
     private GeometryFactory findGeometryFactory(Hints hints) {
         GeometryFactory geomFactory = (GeometryFactory) hints.get(Hints.JTS_GEOMETRY_FACTORY);
         if (geomFactory == null) {
@@ -115,7 +115,7 @@ public class WFSDataStoreFactory extends AbstractDataStoreFactory {
     }
 
     /** Access with {@link WFSDataStoreFactory#getParametersInfo()  */
-    private static final WFSFactoryParam<?>[] parametersInfo = new WFSFactoryParam[13];
+    private static final WFSFactoryParam<?>[] parametersInfo = new WFSFactoryParam[15];
 
     /**
      * Mandatory DataStore parameter indicating the URL for the WFS GetCapabilities document.
@@ -315,6 +315,35 @@ public class WFSDataStoreFactory extends AbstractDataStoreFactory {
                 description, null);
     }
 
+    /**
+     * Optional {@code Integer} DataStore parameter indicating the number of features requested at
+     * once when reading large result sets. Zero or not providing this parameter means all the
+     * features are requested at once.
+     */
+    public static final WFSFactoryParam<Integer> PAGE_SIZE;
+    static {
+        String name = "WFSDataStoreFactory:PAGE_SIZE";
+        String description = "Number of features requested at once when reading large result sets,"
+                + " the pages being fetched in parallel. Servers without paging support get "
+                + "their results split in bounding box tiles instead. A value of zero or not "
+                + "providing this parameter means all the features are requested at once.";
+        parametersInfo[13] = PAGE_SIZE = new WFSFactoryParam<Integer>(name, Integer.class,
+                description, 0);
+    }
+
+    /**
+     * Optional {@code Integer} DataStore parameter indicating how many pages are fetched ahead of
+     * the one being read, when {@link #PAGE_SIZE paging} is enabled
+     */
+    public static final WFSFactoryParam<Integer> PREFETCH_PAGES;
+    static {
+        String name = "WFSDataStoreFactory:PREFETCH_PAGES";
+        String description = "Number of pages fetched and parsed in parallel ahead of the one "
+                + "being read when paging is enabled. Default is 2";
+        parametersInfo[14] = PREFETCH_PAGES = new WFSFactoryParam<Integer>(name, Integer.class,
+                description, 2);
+    }
+
     /**
      * Requests the WFS Capabilities document from the {@link WFSDataStoreFactory#URL url} parameter
      * in {@code params} and returns a {@link WFSDataStore} according to the version of the
@@ -0,0 +1,172 @@
+/*
+ *    GeoTools - The Open Source Java GIS Toolkit
+ *    http://geotools.org
+ *
+ *    (C) 2013, Open Source Geospatial Foundation (OSGeo)
+ *
+ *    This library is free software; you can redistribute it and/or
+ *    modify it under the terms of the GNU Lesser General Public
+ *    License as published by the Free Software Foundation;
+ *    version 2.1 of the License.
+ *
+ *    This library is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ *    Lesser General Public License for more details.
+ */
+package org.geotools.data.wfs.impl;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.FeatureReader;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * A {@link FeatureReader} over a result set fetched as a sequence of pages, each one requested
+ * and parsed on a background thread. A bounded number of pages is fetched ahead of the one being
+ * read, so that the network round trips and the parsing overlap with the consumption of the
+ * features, while the memory used stays proportional to the page size.
+ * <p>
+ * The features are returned in page order, regardless of the order the pages complete in.
+ * </p>
+ */
+class WFSPagedFeatureReader implements FeatureReader<SimpleFeatureType, SimpleFeature> {
+
+    /**
+     * Fetches and fully parses a page of the results
+     */
+    interface PageLoader {
+        List<SimpleFeature> load(int page) throws IOException;
+    }
+
+    static final ExecutorService LOADERS = Executors.newCachedThreadPool(new ThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "WFS page loader " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final SimpleFeatureType featureType;
+
+    private final PageLoader loader;
+
+    private final int pageCount;
+
+    private final int pageSize;
+
+    private final int prefetch;
+
+    private LinkedList<Future<List<SimpleFeature>>> pending = new LinkedList<Future<List<SimpleFeature>>>();
+
+    private int nextPage;
+
+    private boolean lastPageFound;
+
+    private Iterator<SimpleFeature> current;
+
+    /**
+     * @param featureType the type of the features returned by the loader
+     * @param loader the loader of the pages
+     * @param pageCount the number of pages, or {@link Integer#MAX_VALUE} if not known
+     * @param pageSize the number of features of a full page, the results ending with the first
+     *        page that holds less; zero if the pages have no fixed size
+     * @param prefetch the number of pages fetched ahead of the one being read
+     */
+    public WFSPagedFeatureReader(SimpleFeatureType featureType, PageLoader loader,
+            int pageCount, int pageSize, int prefetch) {
+        this.featureType = featureType;
+        this.loader = loader;
+        this.pageCount = pageCount;
+        this.pageSize = pageSize;
+        this.prefetch = Math.max(1, prefetch);
+        schedule();
+    }
+
+    /**
+     * Submits the following pages until the prefetch limit is reached
+     */
+    private void schedule() {
+        while (!lastPageFound && nextPage < pageCount && pending.size() < prefetch) {
+            final int page = nextPage++;
+            pending.add(LOADERS.submit(new Callable<List<SimpleFeature>>() {
+                public List<SimpleFeature> call() throws Exception {
+                    return loader.load(page);
+                }
+            }));
+        }
+    }
+
+    private List<SimpleFeature> nextPage() throws IOException {
+        Future<List<SimpleFeature>> future = pending.removeFirst();
+        schedule();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the next page of features");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    public boolean hasNext() throws IOException {
+        while (current == null || !current.hasNext()) {
+            if (pending == null || pending.isEmpty()) {
+                return false;
+            }
+            List<SimpleFeature> page = nextPage();
+            if (pageSize > 0 && page.size() < pageSize) {
+                // the following pages, if any got requested, are empty
+                lastPageFound = true;
+                cancelPending();
+            }
+            current = page.iterator();
+        }
+        return true;
+    }
+
+    public SimpleFeature next() throws IOException, NoSuchElementException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void cancelPending() {
+        for (Future<List<SimpleFeature>> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    public void close() throws IOException {
+        if (pending != null) {
+            cancelPending();
+            pending = null;
+        }
+        current = null;
+    }
+}
@@ -214,7 +214,12 @@ public abstract class AbstractWFSStrategy extends WFSStrategy {
         map.put("OUTPUTFORMAT", outputFormat);
 
         if (request.getMaxFeatures() != null) {
-            map.put("MAXFEATURES", String.valueOf(request.getMaxFeatures()));
+            // WFS 2.0 renamed MAXFEATURES to COUNT
+            String limit = Versions.v2_0_0.equals(serviceVersion) ? "COUNT" : "MAXFEATURES";
+            map.put(limit, String.valueOf(request.getMaxFeatures()));
+        }
+        if (request.getStartIndex() != null) {
+            map.put("STARTINDEX", String.valueOf(request.getStartIndex()));
         }
 
         QName typeName = request.getTypeName();
@@ -330,6 +335,15 @@ public abstract class AbstractWFSStrategy extends WFSStrategy {
         return simpleName;
     }
 
+    /**
+     * @return {@code false}, paging is not part of the WFS 1.x specifications
+     * @see WFSStrategy#supportsPaging()
+     */
+    @Override
+    public boolean supportsPaging() {
+        return false;
+    }
+
     /**
      * @see WFSStrategy#supportsOperation
      */
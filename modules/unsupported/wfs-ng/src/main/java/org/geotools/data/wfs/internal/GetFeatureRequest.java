@@ -38,6 +38,8 @@ public class GetFeatureRequest extends WFSRequest {
 
     private Integer maxFeatures;
 
+    private Integer startIndex;
+
     private ResultType resultType;
 
     private SortBy[] sortBy;
@@ -80,6 +82,14 @@ public class GetFeatureRequest extends WFSRequest {
         return maxFeatures;
     }
 
+    /**
+     * @return the zero based index of the first feature to return, or null to start from the
+     *         first one
+     */
+    public Integer getStartIndex() {
+        return startIndex;
+    }
+
     public ResultType getResultType() {
         return resultType;
     }
@@ -120,6 +130,16 @@ public class GetFeatureRequest extends WFSRequest {
         this.maxFeatures = maxFeatures;
     }
 
+    /**
+     * Sets the index of the first feature to return, only honored by the servers that support
+     * paging
+     * 
+     * @see WFSStrategy#supportsPaging()
+     */
+    public void setStartIndex(Integer startIndex) {
+        this.startIndex = startIndex;
+    }
+
     /**
      * @param resultType
      *            the resultType to set
@@ -242,6 +242,18 @@ public class WFSClient extends AbstractOpenWebService<WFSGetCapabilities, QName>
         return bounds;
     }
 
+    /**
+     * @return whether the server can return a given page of the results
+     * @see GetFeatureRequest#setStartIndex(Integer)
+     */
+    public boolean canPage() {
+        return getStrategy().supportsPaging();
+    }
+
+    public WFSConfig getConfig() {
+        return config;
+    }
+
     public boolean canCount() {
         return getStrategy().supports(ResultType.HITS);
     }
@@ -6,7 +6,9 @@ import static org.geotools.data.wfs.impl.WFSDataStoreFactory.FILTER_COMPLIANCE;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.LENIENT;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.MAXFEATURES;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.NAMESPACE;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PAGE_SIZE;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PASSWORD;
+import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PREFETCH_PAGES;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.PROTOCOL;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.TIMEOUT;
 import static org.geotools.data.wfs.impl.WFSDataStoreFactory.TRY_GZIP;
@@ -46,6 +48,10 @@ public class WFSConfig {
 
     private String namespaceOverride;
 
+    private int pageSize;
+
+    private int prefetchPages;
+
     public static enum PreferredHttpMethod {
         AUTO, HTTP_GET, HTTP_POST
     }
@@ -62,6 +68,8 @@ public class WFSConfig {
         wfsStrategy = (String) WFS_STRATEGY.getDefaultValue();
         filterCompliance = (Integer) FILTER_COMPLIANCE.getDefaultValue();
         namespaceOverride = (String) NAMESPACE.getDefaultValue();
+        pageSize = (Integer) PAGE_SIZE.getDefaultValue();
+        prefetchPages = (Integer) PREFETCH_PAGES.getDefaultValue();
     }
 
     public static WFSConfig fromParams(Map<?, ?> params) throws IOException {
@@ -93,6 +101,8 @@ public class WFSConfig {
         config.wfsStrategy = (String) WFS_STRATEGY.lookUp(params);
         config.filterCompliance = (Integer) FILTER_COMPLIANCE.lookUp(params);
         config.namespaceOverride = (String) NAMESPACE.lookUp(params);
+        config.pageSize = (Integer) PAGE_SIZE.lookUp(params);
+        config.prefetchPages = (Integer) PREFETCH_PAGES.lookUp(params);
 
         return config;
     }
@@ -180,4 +190,26 @@ public class WFSConfig {
     public String getNamespaceOverride() {
         return namespaceOverride;
     }
+
+    /**
+     * @return the number of features requested at once, zero if paging is disabled
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the number of pages fetched ahead of the one being read
+     */
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
 }
@@ -156,6 +156,12 @@ public abstract class WFSStrategy extends Specification {
 
     public abstract boolean supports(ResultType resultType);
 
+    /**
+     * @return {@code true} if the server returns a given page of the results when the GetFeature
+     *         request sets a {@link GetFeatureRequest#setStartIndex(Integer) start index}
+     */
+    public abstract boolean supportsPaging();
+
     public abstract boolean supportsTransaction(QName typeName);
 
     /**
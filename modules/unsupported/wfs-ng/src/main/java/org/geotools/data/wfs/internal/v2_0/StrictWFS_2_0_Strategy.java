@@ -31,6 +31,9 @@ import java.util.Set;
 import javax.xml.namespace.QName;
 
 import net.opengis.fes20.FilterCapabilitiesType;
+import net.opengis.ows11.DomainType;
+import net.opengis.ows11.OperationsMetadataType;
+import net.opengis.ows11.ValueType;
 import net.opengis.wfs20.FeatureTypeListType;
 import net.opengis.wfs20.FeatureTypeType;
 import net.opengis.wfs20.WFSCapabilitiesType;
@@ -129,6 +132,25 @@ public class StrictWFS_2_0_Strategy extends AbstractWFSStrategy {
         }
     }
 
+    /**
+     * @return whether the server declares the {@code ImplementsResultPaging} constraint
+     */
+    @Override
+    public boolean supportsPaging() {
+        OperationsMetadataType operationsMetadata = capabilities.getOperationsMetadata();
+        if (operationsMetadata == null) {
+            return false;
+        }
+        for (Object o : operationsMetadata.getConstraint()) {
+            DomainType constraint = (DomainType) o;
+            if ("ImplementsResultPaging".equals(constraint.getName())) {
+                ValueType value = constraint.getDefaultValue();
+                return value != null && "TRUE".equalsIgnoreCase(value.getValue());
+            }
+        }
+        return false;
+    }
+
     @Override
     public Version getServiceVersion() {
         return Versions.v2_0_0;
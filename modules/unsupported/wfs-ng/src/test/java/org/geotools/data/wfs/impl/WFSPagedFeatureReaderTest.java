@@ -0,0 +1,144 @@
+package org.geotools.data.wfs.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.wfs.impl.WFSPagedFeatureReader.PageLoader;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class WFSPagedFeatureReaderTest {
+
+    private static SimpleFeatureType featureType;
+
+    @BeforeClass
+    public static void oneTimeSetUp() throws Exception {
+        featureType = DataUtilities.createType("http://example.com", "points",
+                "index:Integer,geom:Point:srid=4326");
+    }
+
+    /**
+     * Stands in for a server holding {@code total} features, the later pages being the fastest to
+     * come back and recording the number of pages fetched concurrently
+     */
+    private static class TestLoader implements PageLoader {
+
+        final int total;
+
+        final int pageSize;
+
+        final AtomicInteger loads = new AtomicInteger();
+
+        final AtomicInteger active = new AtomicInteger();
+
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        TestLoader(int total, int pageSize) {
+            this.total = total;
+            this.pageSize = pageSize;
+        }
+
+        public List<SimpleFeature> load(int page) throws IOException {
+            loads.incrementAndGet();
+            int running = active.incrementAndGet();
+            synchronized (maxActive) {
+                maxActive.set(Math.max(maxActive.get(), running));
+            }
+            try {
+                Thread.sleep(Math.max(0, 20 - page * 5));
+                List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+                for (int i = page * pageSize; i < Math.min(total, (page + 1) * pageSize); i++) {
+                    features.add(SimpleFeatureBuilder.build(featureType, new Object[] { i, null },
+                            "points." + i));
+                }
+                return features;
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+
+    private int readAll(WFSPagedFeatureReader reader) throws IOException {
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                SimpleFeature feature = reader.next();
+                assertEquals(count, feature.getAttribute("index"));
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    @Test
+    public void testPagesInOrder() throws Exception {
+        TestLoader loader = new TestLoader(95, 10);
+        WFSPagedFeatureReader reader = new WFSPagedFeatureReader(featureType, loader,
+                Integer.MAX_VALUE, 10, 3);
+        assertEquals(95, readAll(reader));
+        // three pages ahead of the one being waited for
+        assertTrue(loader.maxActive.get() <= 4);
+        // the loading stops shortly after the incomplete page
+        assertTrue(loader.loads.get() <= 10 + 3);
+    }
+
+    @Test
+    public void testFullLastPage() throws Exception {
+        TestLoader loader = new TestLoader(40, 10);
+        WFSPagedFeatureReader reader = new WFSPagedFeatureReader(featureType, loader, 4, 10, 2);
+        assertEquals(40, readAll(reader));
+        assertEquals(4, loader.loads.get());
+    }
+
+    @Test
+    public void testEmptyPagesWithoutFixedSize() throws Exception {
+        // tiles holding no features do not end the results
+        PageLoader loader = new PageLoader() {
+            TestLoader delegate = new TestLoader(30, 10);
+
+            public List<SimpleFeature> load(int page) throws IOException {
+                return page % 2 == 0 ? new ArrayList<SimpleFeature>() : delegate.load(page / 2);
+            }
+        };
+        WFSPagedFeatureReader reader = new WFSPagedFeatureReader(featureType, loader, 6, 0, 2);
+        assertEquals(30, readAll(reader));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        PageLoader loader = new PageLoader() {
+            TestLoader delegate = new TestLoader(100, 10);
+
+            public List<SimpleFeature> load(int page) throws IOException {
+                if (page == 1) {
+                    throw new IOException("Server error");
+                }
+                return delegate.load(page);
+            }
+        };
+        WFSPagedFeatureReader reader = new WFSPagedFeatureReader(featureType, loader,
+                Integer.MAX_VALUE, 10, 2);
+        try {
+            readAll(reader);
+            fail("The page failure should have been reported");
+        } catch (IOException e) {
+            assertEquals("Server error", e.getMessage());
+        }
+        assertFalse(reader.hasNext());
+    }
+}